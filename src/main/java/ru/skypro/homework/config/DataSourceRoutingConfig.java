@@ -0,0 +1,105 @@
+package ru.skypro.homework.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Primary + реплики для чтения. Включается app.datasource.routing.enabled=true,
+ * иначе остается обычный DataSource из spring.datasource.*.
+ * Пулы реплик получают те же настройки spring.datasource.hikari.*, что и primary.
+ */
+@Slf4j
+@Configuration
+@ConditionalOnProperty(name = "app.datasource.routing.enabled", havingValue = "true")
+public class DataSourceRoutingConfig {
+
+    @Value("${app.datasource.replica.urls:}")
+    private List<String> replicaUrls;
+
+    @Value("${app.datasource.replica.username:${spring.datasource.username:}}")
+    private String replicaUsername;
+
+    @Value("${app.datasource.replica.password:${spring.datasource.password:}}")
+    private String replicaPassword;
+
+    @Value("${app.datasource.replica.maximum-pool-size:10}")
+    private int replicaMaximumPoolSize;
+
+    @Value("${app.datasource.routing.read-your-writes-window:PT5S}")
+    private Duration readYourWritesWindow;
+
+    private final CompositeMeterRegistry poolMetrics = new CompositeMeterRegistry();
+
+    @Bean
+    public ReadReplicaRoutingDataSource routingDataSource(DataSourceProperties properties, Environment environment) {
+        HikariDataSource primary = createPool(properties, environment, ReadReplicaRoutingDataSource.PRIMARY);
+
+        List<DataSource> replicas = new ArrayList<>();
+        for (String url : replicaUrls) {
+            if (url.isBlank()) {
+                continue;
+            }
+            DataSourceProperties replicaProperties = new DataSourceProperties();
+            replicaProperties.setUrl(url.trim());
+            replicaProperties.setUsername(replicaUsername);
+            replicaProperties.setPassword(replicaPassword);
+            replicaProperties.setDriverClassName(properties.getDriverClassName());
+            HikariDataSource replica = createPool(replicaProperties, environment, "replica-" + (replicas.size() + 1));
+            replica.setMaximumPoolSize(replicaMaximumPoolSize);
+            replica.setReadOnly(true);
+            replicas.add(replica);
+        }
+        log.info("Read-replica routing enabled: {} replica(s), read-your-writes window {}",
+                replicas.size(), readYourWritesWindow);
+
+        return new ReadReplicaRoutingDataSource(primary, replicas, readYourWritesWindow);
+    }
+
+    /**
+     * DataSource приложения (JPA, Liquibase): соединение берется при первом запросе,
+     * когда флаг readOnly транзакции уже известен
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(ReadReplicaRoutingDataSource routingDataSource) {
+        return new LazyConnectionDataSourceProxy(routingDataSource);
+    }
+
+    /**
+     * Метрики hikaricp.* по каждому пулу (тег pool): пулы не бины, поэтому Boot сам их не видит.
+     * Пулы пишут метрики в poolMetrics с самого создания, реестр приложения подключается к нему,
+     * когда готов: первое соединение primary берет Liquibase раньше, чем применяются MeterBinder'ы,
+     * а запущенному пулу Hikari трекер метрик уже не сменить.
+     */
+    @Bean
+    public MeterBinder routingDataSourceMetrics() {
+        return registry -> poolMetrics.add(registry);
+    }
+
+    private HikariDataSource createPool(DataSourceProperties properties, Environment environment, String poolName) {
+        HikariDataSource pool = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(pool));
+        pool.setPoolName(poolName);
+        pool.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(poolMetrics));
+        return pool;
+    }
+
+}
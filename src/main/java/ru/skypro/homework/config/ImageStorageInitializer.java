@@ -1,45 +1,115 @@
 package ru.skypro.homework.config;
 
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import ru.skypro.homework.storage.ImageFileIndex;
+import ru.skypro.homework.storage.ImageStorage;
+import ru.skypro.homework.storage.StoredObject;
 
 import javax.annotation.PostConstruct;
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
+/**
+ * Каталоги картинок при старте. Нужны только хранилищу на локальном диске: в S3 и в памяти
+ * каталогов нет, ключи создаются вместе с объектами.
+ * С app.images.index.enabled здесь же строится опись файлов ImageFileIndex: каталоги users, ads
+ * и blobs обходятся параллельно на ForkJoinPool (каждый подкаталог - отдельная задача), так что
+ * время старта на большом дереве упирается в диск, а не в один поток.
+ */
 @Slf4j
 @Component
+@RequiredArgsConstructor
 public class ImageStorageInitializer {
 
-    @Value("${app.images.path:uploads/images}")
-    private String imagesPath;
+    private static final String[] DIRECTORIES = {"users", "ads", "blobs"};
+
+    private final ImageStorage imageStorage;
+    private final ImageFileIndex imageFileIndex;
 
     @Value("${app.images.auto-create-dir:true}")
     private boolean autoCreateDir;
 
+    @Value("${app.images.index.enabled:false}")
+    private boolean indexEnabled;
+
+    /**
+     * Потоков обхода; 0 - по числу процессоров
+     */
+    @Value("${app.images.index.parallelism:0}")
+    private int indexParallelism;
+
     @PostConstruct
     public void initializeImageStorage() {
+        Path root = imageStorage.localPath("");
+        if (root == null) {
+            log.info("Image storage is not local, no directories to create or index");
+            return;
+        }
+
         if (!autoCreateDir) {
             log.info("Auto directory creation is disabled");
-            return;
+        } else {
+            try {
+                for (String directory : DIRECTORIES) {
+                    createDirectory(directory);
+                }
+                log.info("Image storage successfully initialized at: {}", root);
+
+            } catch (IOException e) {
+                log.error("Failed to initialize image storage at: {}", root, e);
+                // Не бросаем исключение, чтобы приложение могло запуститься
+            }
         }
 
-        try {
-            createDirectory("users");
-            createDirectory("ads");
-            log.info("Image storage successfully initialized at: {}", imagesPath);
+        if (indexEnabled) {
+            buildIndex(root);
+        }
+    }
 
-        } catch (IOException e) {
-            log.error("Failed to initialize image storage at: {}", imagesPath, e);
-            // Не бросаем исключение, чтобы приложение могло запуститься
+    /**
+     * Обойти каталоги параллельно и опубликовать опись. Недоступный каталог пропускается
+     * с предупреждением: его файлы будут проверяться на диске при отдаче.
+     */
+    private void buildIndex(Path root) {
+        int parallelism = indexParallelism > 0 ? indexParallelism : Runtime.getRuntime().availableProcessors();
+        Map<String, StoredObject> entries = new ConcurrentHashMap<>();
+        List<DirectoryScan> scans = new ArrayList<>();
+        for (String directory : DIRECTORIES) {
+            Path path = root.resolve(directory);
+            if (Files.isDirectory(path)) {
+                scans.add(new DirectoryScan(root, path, entries));
+            }
         }
+
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(scans)));
+        } finally {
+            pool.shutdown();
+        }
+        imageFileIndex.publish(entries);
+        log.info("Image index built: {} files in {} ms ({} threads)",
+                entries.size(), (System.nanoTime() - start) / 1_000_000, parallelism);
     }
 
     private void createDirectory(String subdirectory) throws IOException {
-        Path directoryPath = Paths.get(imagesPath, subdirectory);
+        Path directoryPath = imageStorage.localPath(subdirectory);
 
         if (Files.exists(directoryPath)) {
             log.debug("Directory already exists: {}", directoryPath);
@@ -50,4 +120,42 @@ public class ImageStorageInitializer {
         log.info("📁 Created image directory: {}", directoryPath);
     }
 
-}
\ No newline at end of file
+    /**
+     * Обход одного каталога: файлы попадают в опись, подкаталоги - в параллельные подзадачи.
+     * Скрытые файлы (временные файлы загрузок .upload-*, .put-*) пропускаются.
+     */
+    private static class DirectoryScan extends RecursiveAction {
+
+        private final Path root;
+        private final Path directory;
+        private final Map<String, StoredObject> entries;
+
+        private DirectoryScan(Path root, Path directory, Map<String, StoredObject> entries) {
+            this.root = root;
+            this.directory = directory;
+            this.entries = entries;
+        }
+
+        @Override
+        protected void compute() {
+            List<DirectoryScan> subdirectories = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (Path entry : stream) {
+                    BasicFileAttributes attributes = Files.readAttributes(entry, BasicFileAttributes.class,
+                            LinkOption.NOFOLLOW_LINKS);
+                    if (attributes.isDirectory()) {
+                        subdirectories.add(new DirectoryScan(root, entry, entries));
+                    } else if (attributes.isRegularFile() && !entry.getFileName().toString().startsWith(".")) {
+                        String key = root.relativize(entry).toString().replace(File.separatorChar, '/');
+                        entries.put(key, new StoredObject(attributes.size(), attributes.lastModifiedTime().toMillis()));
+                    }
+                }
+            } catch (IOException e) {
+                log.warn("Failed to index image directory {}", directory, e);
+            }
+            invokeAll(subdirectories);
+        }
+
+    }
+
+}
@@ -0,0 +1,180 @@
+package ru.skypro.homework.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Направляет соединения read-only транзакций на реплики (по кругу), все остальные - на primary.
+ * Работает только за LazyConnectionDataSourceProxy: транзакция получает флаг readOnly
+ * уже после того, как менеджер транзакций запросил соединение.
+ * <p>
+ * Read-your-writes: после пишущей транзакции пользователя его чтения в течение окна
+ * read-your-writes-window идут на primary, чтобы он не увидел свои данные до репликации.
+ * Список недавних писателей (recentWriters) свой у каждого узла, поэтому между узлами метку записи
+ * несет сам клиент: ReadYourWritesFilter ставит cookie с временем записи и по ней привязывает
+ * к запросу ClientWrites (bindClient). Клиенту без cookie (не браузер, cookie отключены) нужен
+ * балансировщик с липкими сессиями, иначе запрос на другом узле прочитает реплику с лагом.
+ */
+@Slf4j
+public class ReadReplicaRoutingDataSource extends AbstractRoutingDataSource implements Closeable {
+
+    public static final String PRIMARY = "primary";
+
+    private static final ThreadLocal<Boolean> FORCE_PRIMARY = new ThreadLocal<>();
+    private static final ThreadLocal<ClientWrites> CLIENT = new ThreadLocal<>();
+
+    private final DataSource primary;
+    private final List<DataSource> replicas;
+    private final List<String> replicaKeys = new ArrayList<>();
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    private final Cache<String, Boolean> recentWriters;
+
+    public ReadReplicaRoutingDataSource(DataSource primary, List<DataSource> replicas, Duration readYourWritesWindow) {
+        this.primary = primary;
+        this.replicas = replicas;
+        this.recentWriters = Caffeine.newBuilder()
+                .expireAfterWrite(readYourWritesWindow)
+                .build();
+
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        for (int i = 0; i < replicas.size(); i++) {
+            String key = "replica-" + (i + 1);
+            replicaKeys.add(key);
+            targets.put(key, replicas.get(i));
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        afterPropertiesSet();
+    }
+
+    /**
+     * Выполнить действие на primary, даже если оно в read-only транзакции
+     * (чтение сразу после записи, которое не привязано к пользователю)
+     */
+    public static <T> T onPrimary(Supplier<T> action) {
+        Boolean previous = FORCE_PRIMARY.get();
+        FORCE_PRIMARY.set(Boolean.TRUE);
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                FORCE_PRIMARY.remove();
+            } else {
+                FORCE_PRIMARY.set(previous);
+            }
+        }
+    }
+
+    /**
+     * Привязать к текущему потоку клиента запроса; снимается clearClient в конце запроса
+     */
+    public static void bindClient(ClientWrites client) {
+        CLIENT.set(client);
+    }
+
+    public static void clearClient() {
+        CLIENT.remove();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        String principal = currentPrincipal();
+        ClientWrites client = CLIENT.get();
+        boolean readOnly = TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+
+        if (!readOnly) {
+            if (TransactionSynchronizationManager.isActualTransactionActive()) {
+                if (principal != null) {
+                    recentWriters.put(principal, Boolean.TRUE);
+                }
+                if (client != null) {
+                    client.written();
+                }
+            }
+            return PRIMARY;
+        }
+        if (replicaKeys.isEmpty() || Boolean.TRUE.equals(FORCE_PRIMARY.get())) {
+            return PRIMARY;
+        }
+        if (principal != null && recentWriters.getIfPresent(principal) != null) {
+            log.debug("Routing read of {} to primary (read-your-writes)", principal);
+            return PRIMARY;
+        }
+        if (client != null && client.isRecent()) {
+            log.debug("Routing read to primary (client wrote recently)");
+            return PRIMARY;
+        }
+        return replicaKeys.get(Math.floorMod(nextReplica.getAndIncrement(), replicaKeys.size()));
+    }
+
+    private static String currentPrincipal() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || authentication instanceof AnonymousAuthenticationToken) {
+            return null;
+        }
+        return authentication.getName();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeQuietly(primary);
+        replicas.forEach(ReadReplicaRoutingDataSource::closeQuietly);
+    }
+
+    private static void closeQuietly(DataSource dataSource) {
+        if (dataSource instanceof Closeable) {
+            try {
+                ((Closeable) dataSource).close();
+            } catch (IOException e) {
+                log.warn("Failed to close data source {}", dataSource, e);
+            }
+        }
+    }
+
+    /**
+     * Записи клиента в рамках запроса: recent - клиент писал в пределах окна (метка пришла с запросом)
+     * или пишет в этом запросе; onWrite вызывается на первую пишущую транзакцию запроса, чтобы обновить метку
+     */
+    public static final class ClientWrites {
+
+        private final Runnable onWrite;
+        private volatile boolean recent;
+        private boolean written;
+
+        public ClientWrites(boolean recent, Runnable onWrite) {
+            this.recent = recent;
+            this.onWrite = onWrite;
+        }
+
+        boolean isRecent() {
+            return recent;
+        }
+
+        void written() {
+            recent = true;
+            if (!written) {
+                written = true;
+                onWrite.run();
+            }
+        }
+    }
+
+}
@@ -8,9 +8,12 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springdoc.api.annotations.ParameterObject;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.DeleteMapping;
@@ -18,19 +21,35 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RequestPart;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.skypro.homework.model.dto.Ad;
+import ru.skypro.homework.model.dto.AdFeedFilter;
+import ru.skypro.homework.model.dto.AdImages;
+import ru.skypro.homework.model.dto.AdImportReport;
 import ru.skypro.homework.model.dto.Ads;
 import ru.skypro.homework.model.dto.CreateOrUpdateAd;
 import ru.skypro.homework.model.dto.ExtendedAd;
+import ru.skypro.homework.model.enums.AdSort;
+import ru.skypro.homework.model.enums.ImageVariant;
+import ru.skypro.homework.service.AdFeedPage;
+import ru.skypro.homework.service.AdGalleryService;
+import ru.skypro.homework.service.AdImportService;
 import ru.skypro.homework.service.AdService;
 import ru.skypro.homework.service.CommentService;
+import ru.skypro.homework.service.ETags;
+import ru.skypro.homework.service.ImageFile;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.List;
 
 @Slf4j
 @RestController
@@ -42,6 +61,9 @@ public class AdController {
 
     private final AdService adService;
     private final CommentService commentService;
+    private final AdImportService adImportService;
+    private final AdGalleryService adGalleryService;
+    private final ImageAccelRedirect imageAccelRedirect;
 
     @Operation(
             summary = "Получение всех объявлений",
@@ -50,15 +72,58 @@ public class AdController {
                             responseCode = "200",
                             description = "OK",
                             content = @Content(schema = @Schema(implementation = Ads.class))
-                    )
+                    ),
+                    @ApiResponse(responseCode = "304", description = "Not Modified"),
+                    @ApiResponse(responseCode = "400", description = "Bad Request")
             }
     )
 
     @GetMapping
-    public ResponseEntity<Ads> getAllAds() {
-        log.info("Called getAllAds");
-        Ads ads = new Ads();
-        return ResponseEntity.ok(ads);
+    public ResponseEntity<Ads> getAllAds(@ParameterObject AdFeedFilter filter,
+                                         @RequestParam(value = "sort", defaultValue = "NEWEST") AdSort sort,
+                                         @RequestParam(value = "cursor", required = false) String cursor,
+                                         @RequestParam(value = "size", required = false) Integer size,
+                                         @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false)
+                                         String ifNoneMatch) {
+        log.info("Called getAllAds with filter: {}, sort: {}, cursor: {}, size: {}", filter, sort, cursor, size);
+        try {
+            AdFeedPage page = adService.getFeedPage(filter, sort, cursor, size);
+            if (ETags.matches(ifNoneMatch, page.getETag())) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(page.getETag()).build();
+            }
+            return ResponseEntity.ok().eTag(page.getETag()).body(adService.toAds(page));
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid ads page request: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @Operation(
+            summary = "Полнотекстовый поиск объявлений",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "OK",
+                            content = @Content(schema = @Schema(implementation = Ads.class))
+                    ),
+                    @ApiResponse(responseCode = "400", description = "Bad Request")
+            }
+    )
+    @GetMapping("/search")
+    public ResponseEntity<Ads> searchAds(@RequestParam("q") String query,
+                                         @RequestParam(value = "anyTerm", defaultValue = "false") boolean anyTerm,
+                                         @RequestParam(value = "minPrice", required = false) Integer minPrice,
+                                         @RequestParam(value = "maxPrice", required = false) Integer maxPrice,
+                                         @RequestParam(value = "cursor", required = false) String cursor,
+                                         @RequestParam(value = "size", required = false) Integer size) {
+        log.info("Called searchAds with query: {}, anyTerm: {}, price: {}-{}, cursor: {}, size: {}",
+                query, anyTerm, minPrice, maxPrice, cursor, size);
+        try {
+            return ResponseEntity.ok(adService.searchAds(query, anyTerm, minPrice, maxPrice, cursor, size));
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid ads search request: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
     }
 
     @Operation(
@@ -129,8 +194,9 @@ public class AdController {
     @GetMapping("/{id}")
     public ResponseEntity<ExtendedAd> getAds(@PathVariable("id") Integer id) {
         log.info("Called getAds with id: {}", id);
-        ExtendedAd extendedAd = new ExtendedAd();
-        return ResponseEntity.ok(extendedAd);
+        return adService.getAdById(id)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
     }
 
     @Operation(
@@ -181,10 +247,62 @@ public class AdController {
             }
     )
     @GetMapping("/me")
-    public ResponseEntity<Ads> getAdsMe() {
+    public ResponseEntity<StreamingResponseBody> getAdsMe() {
         log.info("Called getAdsMe");
-        Ads ads = new Ads();
-        return ResponseEntity.ok(ads);
+        Integer authorId = adService.getCurrentAuthorId();
+        StreamingResponseBody body = out -> adService.writeAdsByAuthor(authorId, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body);
+    }
+
+    @Operation(
+            summary = "Выгрузка всех объявлений (только для администратора)",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "OK",
+                            content = @Content(schema = @Schema(implementation = Ads.class))
+                    ),
+                    @ApiResponse(responseCode = "401", description = "Unauthorized"),
+                    @ApiResponse(responseCode = "403", description = "Forbidden")
+            }
+    )
+    @GetMapping("/export")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<StreamingResponseBody> exportAds() {
+        log.info("Called exportAds");
+        StreamingResponseBody body = adService::writeAllAds;
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body);
+    }
+
+    @Operation(
+            summary = "Массовый импорт объявлений текущего пользователя (NDJSON или CSV)",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "OK",
+                            content = @Content(schema = @Schema(implementation = AdImportReport.class))
+                    ),
+                    @ApiResponse(responseCode = "400", description = "Bad Request"),
+                    @ApiResponse(responseCode = "401", description = "Unauthorized")
+            }
+    )
+    @PostMapping(value = "/import", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<AdImportReport> importAds(@RequestPart("file") MultipartFile file,
+                                                    @RequestPart(value = "images", required = false)
+                                                    MultipartFile images,
+                                                    @RequestParam(value = "format", required = false)
+                                                    String format) {
+        log.info("Called importAds with file: {}, format: {}", file.getOriginalFilename(), format);
+        try {
+            return ResponseEntity.ok(adImportService.importAds(file, images, format));
+        } catch (IllegalArgumentException | IOException e) {
+            log.warn("Failed to import ads: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
     }
 
     @Operation(
@@ -230,6 +348,8 @@ public class AdController {
         try {
             Ad updatedAd = adService.updateAdImage(id, image);
             return ResponseEntity.ok(updatedAd);
+        } catch (ObjectOptimisticLockingFailureException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Failed to update ad image for id: {}", id, e);
             return ResponseEntity.badRequest().build();
@@ -237,20 +357,135 @@ public class AdController {
     }
 
     /**
-     * Получить картинку объявления
+     * Получить картинку объявления; ?variant=THUMBNAIL|CARD|FULL - уменьшенная копия, если она готова
      */
     @GetMapping("/{id}/image")
-    public ResponseEntity<byte[]> getAdImage(@PathVariable("id") Integer id) {
+    public void getAdImage(@PathVariable("id") Integer id,
+                           @RequestParam(value = "variant", required = false) ImageVariant variant,
+                           HttpServletRequest request, HttpServletResponse response) throws IOException {
         log.info("Getting image for ad id: {}", id);
+        ImageFile image;
         try {
-            byte[] imageBytes = adService.getAdImage(id);
-            return ResponseEntity.ok()
-                    .contentType(MediaType.IMAGE_JPEG)
-                    .body(imageBytes);
+            image = adService.getAdImageFile(id, variant);
         } catch (Exception e) {
             log.error("Failed to get ad image for id: {}", id, e);
+            response.setStatus(HttpStatus.NOT_FOUND.value());
+            return;
+        }
+        ImageResponses.write(image, ImageResponses.REVALIDATE, imageAccelRedirect.internalUri(image, request),
+                request, response, adService::loadHotImageContent, adService::evictMissingImage);
+    }
+
+    @Operation(
+            summary = "Галерея объявления",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "OK",
+                            content = @Content(schema = @Schema(implementation = AdImages.class))
+                    ),
+                    @ApiResponse(responseCode = "404", description = "Not found")
+            }
+    )
+    @GetMapping("/{id}/images")
+    public ResponseEntity<AdImages> getAdImages(@PathVariable("id") Integer id) {
+        log.info("Called getAdImages with id: {}", id);
+        try {
+            return ResponseEntity.ok(adGalleryService.getImages(id));
+        } catch (RuntimeException e) {
+            log.warn("Failed to get images of ad {}: {}", id, e.getMessage());
             return ResponseEntity.notFound().build();
         }
     }
 
+    /**
+     * Добавить в галерею несколько картинок одним multipart-запросом (части images)
+     */
+    @Operation(
+            summary = "Добавление картинок в галерею объявления",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "OK",
+                            content = @Content(schema = @Schema(implementation = AdImages.class))
+                    ),
+                    @ApiResponse(responseCode = "400", description = "Bad Request"),
+                    @ApiResponse(responseCode = "401", description = "Unauthorized"),
+                    @ApiResponse(responseCode = "403", description = "Forbidden")
+            }
+    )
+    @PostMapping(value = "/{id}/images", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @PreAuthorize("hasRole('ADMIN') or @adService.isAdOwner(#id, authentication.name)")
+    public ResponseEntity<AdImages> addAdImages(@PathVariable("id") Integer id,
+                                                @RequestPart("images") List<MultipartFile> images) {
+        log.info("Adding {} images to ad id: {}", images.size(), id);
+        try {
+            return ResponseEntity.ok(adGalleryService.addImages(id, images));
+        } catch (ObjectOptimisticLockingFailureException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("Failed to add images to ad id: {}", id, e);
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * Задать порядок галереи: ?imageIds=5,3,4 - все картинки объявления
+     */
+    @Operation(
+            summary = "Порядок картинок галереи",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "OK",
+                            content = @Content(schema = @Schema(implementation = AdImages.class))
+                    ),
+                    @ApiResponse(responseCode = "400", description = "Bad Request"),
+                    @ApiResponse(responseCode = "401", description = "Unauthorized"),
+                    @ApiResponse(responseCode = "403", description = "Forbidden")
+            }
+    )
+    @PutMapping("/{id}/images/order")
+    @PreAuthorize("hasRole('ADMIN') or @adService.isAdOwner(#id, authentication.name)")
+    public ResponseEntity<AdImages> reorderAdImages(@PathVariable("id") Integer id,
+                                                    @RequestParam("imageIds") List<Integer> imageIds) {
+        log.info("Reordering images of ad id: {} to {}", id, imageIds);
+        try {
+            return ResponseEntity.ok(adGalleryService.reorderImages(id, imageIds));
+        } catch (ObjectOptimisticLockingFailureException e) {
+            throw e;
+        } catch (Exception e) {
+            log.warn("Failed to reorder images of ad id: {}: {}", id, e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @Operation(
+            summary = "Выбор главной картинки объявления",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "OK",
+                            content = @Content(schema = @Schema(implementation = AdImages.class))
+                    ),
+                    @ApiResponse(responseCode = "400", description = "Bad Request"),
+                    @ApiResponse(responseCode = "401", description = "Unauthorized"),
+                    @ApiResponse(responseCode = "403", description = "Forbidden")
+            }
+    )
+    @PutMapping("/{id}/images/{imageId}/main")
+    @PreAuthorize("hasRole('ADMIN') or @adService.isAdOwner(#id, authentication.name)")
+    public ResponseEntity<AdImages> setMainAdImage(@PathVariable("id") Integer id,
+                                                   @PathVariable("imageId") Integer imageId) {
+        log.info("Setting main image of ad id: {} to {}", id, imageId);
+        try {
+            return ResponseEntity.ok(adGalleryService.setMainImage(id, imageId));
+        } catch (ObjectOptimisticLockingFailureException e) {
+            throw e;
+        } catch (Exception e) {
+            log.warn("Failed to set main image of ad id: {}: {}", id, e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
 }
@@ -8,17 +8,22 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 import ru.skypro.homework.model.dto.Comment;
 import ru.skypro.homework.model.dto.Comments;
 import ru.skypro.homework.model.dto.CreateOrUpdateComment;
+import ru.skypro.homework.service.CommentService;
+import ru.skypro.homework.service.ETags;
 
 @Slf4j
 @RestController
@@ -27,6 +32,8 @@ import ru.skypro.homework.model.dto.CreateOrUpdateComment;
 @Tag(name = "Комментарии")
 public class CommentController {
 
+    private final CommentService commentService;
+
     @Operation(
             summary = "Получение комментариев объявления",
             responses = {
@@ -35,16 +42,23 @@ public class CommentController {
                             description = "OK",
                             content = @Content(schema = @Schema(implementation = Comments.class))
                     ),
+                    @ApiResponse(responseCode = "304", description = "Not Modified"),
                     @ApiResponse(responseCode = "401", description = "Unauthorized"),
                     @ApiResponse(responseCode = "404", description = "Not found")
             }
     )
 
     @GetMapping("/{id}/comments")
-    public ResponseEntity<Comments> getComments(@PathVariable("id") Integer id) {
+    public ResponseEntity<Comments> getComments(@PathVariable("id") Integer id,
+                                                @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false)
+                                                String ifNoneMatch) {
         log.info("Called getComments for ad id: {}", id);
-        Comments comments = new Comments();
-        return ResponseEntity.ok(comments);
+        String eTag = commentService.getCommentsETag(id);
+        if (ETags.matches(ifNoneMatch, eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+        }
+        Comments comments = commentService.getCommentsByAdId(id);
+        return ResponseEntity.ok().eTag(eTag).body(comments);
     }
 
     @Operation(
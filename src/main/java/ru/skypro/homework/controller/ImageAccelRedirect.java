@@ -0,0 +1,52 @@
+package ru.skypro.homework.controller;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.skypro.homework.service.ImageFile;
+
+import javax.servlet.http.HttpServletRequest;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Отдача файлов картинок силами nginx: приложение только находит файл и проверяет доступ,
+ * а в ответ ставит X-Accel-Redirect на internal-location nginx над тем же каталогом картинок.
+ * Поток Tomcat освобождается сразу, байты, Range и sendfile - забота nginx.
+ * Работает, только если запрос пришел через nginx: он ставит заголовок X-Sendfile-Type: X-Accel-Redirect
+ * (см. nginx.conf). Без него, например при запуске без nginx, файл отдает само приложение.
+ * Так же и с картинками не с локального диска (хранилище S3): nginx их не видит.
+ */
+@Component
+public class ImageAccelRedirect {
+
+    static final String SENDFILE_TYPE = "X-Sendfile-Type";
+    static final String ACCEL_REDIRECT = "X-Accel-Redirect";
+
+    @Value("${app.images.path:uploads/images}")
+    private String imagesPath;
+
+    @Value("${app.images.accel-redirect.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.images.accel-redirect.location:/internal-images/}")
+    private String location;
+
+    /**
+     * Внутренний URI nginx для файла или null - отдавать файл из приложения
+     * (выключено, запрос не через nginx, файл не на диске или вне каталога картинок)
+     */
+    public String internalUri(ImageFile image, HttpServletRequest request) {
+        if (!enabled || image.getPath() == null
+                || !ACCEL_REDIRECT.equalsIgnoreCase(request.getHeader(SENDFILE_TYPE))) {
+            return null;
+        }
+        Path root = Paths.get(imagesPath).toAbsolutePath().normalize();
+        Path file = image.getPath().toAbsolutePath().normalize();
+        if (!file.startsWith(root)) {
+            return null;
+        }
+        // Имена файлов картинок из [A-Za-z0-9._-], кодировать нечего
+        return location + root.relativize(file).toString().replace('\\', '/');
+    }
+
+}
@@ -3,18 +3,18 @@ package ru.skypro.homework.controller;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
+import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
-import ru.skypro.homework.service.AdService;
+import ru.skypro.homework.model.enums.ImageVariant;
+import ru.skypro.homework.service.ImageFile;
 import ru.skypro.homework.service.ImageService;
-import ru.skypro.homework.service.UserService;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 
 @Slf4j
@@ -25,49 +25,81 @@ import java.io.IOException;
 public class ImageController {
 
     private final ImageService imageService;
+    private final ImageAccelRedirect imageAccelRedirect;
 
+    /**
+     * Картинка объявления; ?variant=THUMBNAIL|CARD|FULL - уменьшенная копия, если она уже готова
+     */
     @GetMapping("/ads/{adId}/image")
-    public ResponseEntity<byte[]> getAdImage(@PathVariable Integer adId) {
+    public void getAdImage(@PathVariable Integer adId,
+                           @RequestParam(value = "variant", required = false) ImageVariant variant,
+                           HttpServletRequest request, HttpServletResponse response) throws IOException {
         log.info("Request for ad image, adId: {}", adId);
 
+        ImageFile image;
         try {
-            byte[] imageBytes = imageService.getAdImage(adId);
-            String contentType = imageService.getImageContentType(adId, "ad");
-
-            return ResponseEntity.ok()
-                    .contentType(MediaType.parseMediaType(contentType))
-                    .header(HttpHeaders.CACHE_CONTROL, "max-age=3600")
-                    .body(imageBytes);
-
+            image = imageService.getAdImageFile(adId, variant);
         } catch (IOException e) {
             log.warn("Ad image not found for adId: {}", adId);
-            return ResponseEntity.notFound().build();
+            response.setStatus(HttpStatus.NOT_FOUND.value());
+            return;
         } catch (Exception e) {
             log.error("Error loading ad image for adId: {}", adId, e);
-            return ResponseEntity.internalServerError().build();
+            response.setStatus(HttpStatus.INTERNAL_SERVER_ERROR.value());
+            return;
         }
+        ImageResponses.write(image, ImageResponses.REVALIDATE, imageAccelRedirect.internalUri(image, request),
+                request, response, imageService::loadHotContent, imageService::evictMissing);
     }
 
     @GetMapping("/users/{userId}/avatar")
-    public ResponseEntity<byte[]> getUserAvatar(@PathVariable Integer userId) {
+    public void getUserAvatar(@PathVariable Integer userId,
+                              @RequestParam(value = "variant", required = false) ImageVariant variant,
+                              HttpServletRequest request, HttpServletResponse response) throws IOException {
         log.info("Request for user avatar, userId: {}", userId);
 
+        ImageFile image;
         try {
-            byte[] imageBytes = imageService.getUserAvatar(userId);
-            String contentType = imageService.getImageContentType(userId, "user");
-
-            return ResponseEntity.ok()
-                    .contentType(MediaType.parseMediaType(contentType))
-                    .header(HttpHeaders.CACHE_CONTROL, "max-age=3600")
-                    .body(imageBytes);
-
+            image = imageService.getUserAvatarFile(userId, variant);
         } catch (IOException e) {
             log.warn("User avatar not found for userId: {}", userId);
-            return ResponseEntity.notFound().build();
+            response.setStatus(HttpStatus.NOT_FOUND.value());
+            return;
         } catch (Exception e) {
             log.error("Error loading user avatar for userId: {}", userId, e);
-            return ResponseEntity.internalServerError().build();
+            response.setStatus(HttpStatus.INTERNAL_SERVER_ERROR.value());
+            return;
+        }
+        ImageResponses.write(image, ImageResponses.REVALIDATE, imageAccelRedirect.internalUri(image, request),
+                request, response, imageService::loadHotContent, imageService::evictMissing);
+    }
+
+    /**
+     * Картинка по ссылке конкретной загрузки (поле image в DTO). Файл под такой ссылкой
+     * не меняется - новая картинка получает новое имя, поэтому ответ кэшируется навсегда.
+     * Исключение - оригинал, отданный вместо неготового варианта: его надо перепроверить.
+     */
+    @GetMapping("/{kind:ads|users}/{filename:[A-Za-z0-9_-][A-Za-z0-9._-]*}")
+    public void getImageFile(@PathVariable String kind, @PathVariable String filename,
+                             @RequestParam(value = "variant", required = false) ImageVariant variant,
+                             HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String imageUrl = "/images/" + kind + "/" + filename;
+
+        ImageFile image;
+        try {
+            image = imageService.getImageFileByUrl(imageUrl, variant);
+        } catch (IOException e) {
+            log.warn("Image file not found: {}", imageUrl);
+            response.setStatus(HttpStatus.NOT_FOUND.value());
+            return;
+        } catch (Exception e) {
+            log.error("Error loading image file: {}", imageUrl, e);
+            response.setStatus(HttpStatus.INTERNAL_SERVER_ERROR.value());
+            return;
         }
+        String cacheControl = image.getVariant() == variant ? ImageResponses.IMMUTABLE : ImageResponses.REVALIDATE;
+        ImageResponses.write(image, cacheControl, imageAccelRedirect.internalUri(image, request), request, response,
+                imageService::loadHotContent, imageService::evictMissing);
     }
 
 }
\ No newline at end of file
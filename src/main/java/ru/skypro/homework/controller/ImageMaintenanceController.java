@@ -0,0 +1,109 @@
+package ru.skypro.homework.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import ru.skypro.homework.model.dto.ImageReconciliationRun;
+import ru.skypro.homework.service.ImageReconciliationService;
+
+import java.net.URI;
+
+@Slf4j
+@RestController
+@RequestMapping("/admin/images")
+@RequiredArgsConstructor
+@Tag(name = "Администрирование изображений")
+public class ImageMaintenanceController {
+
+    private static final String RUNS_PATH = "/admin/images/reconciliation/";
+
+    private final ImageReconciliationService imageReconciliationService;
+
+    @Operation(
+            summary = "Запустить сверку файлов картинок с БД в фоне: сироты в карантин, счетчики ссылок исправляются; "
+                    + "dryRun - только отчет (только для администратора)",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "202",
+                            description = "Accepted, прогон доступен по Location",
+                            content = @Content(schema = @Schema(implementation = ImageReconciliationRun.class))
+                    ),
+                    @ApiResponse(responseCode = "401", description = "Unauthorized"),
+                    @ApiResponse(responseCode = "403", description = "Forbidden"),
+                    @ApiResponse(responseCode = "409", description = "Conflict")
+            }
+    )
+    @PostMapping("/reconciliation")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<ImageReconciliationRun> startReconciliation(
+            @RequestParam(defaultValue = "false") boolean dryRun) {
+        log.info("Called startReconciliation, dryRun: {}", dryRun);
+        try {
+            ImageReconciliationRun run = imageReconciliationService.start(dryRun);
+            return ResponseEntity.accepted()
+                    .location(URI.create(RUNS_PATH + run.getId()))
+                    .body(run);
+        } catch (IllegalStateException e) {
+            log.warn("Image reconciliation rejected: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+    }
+
+    @Operation(
+            summary = "Прогон сверки: состояние и отчет (только для администратора)",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "OK",
+                            content = @Content(schema = @Schema(implementation = ImageReconciliationRun.class))
+                    ),
+                    @ApiResponse(responseCode = "401", description = "Unauthorized"),
+                    @ApiResponse(responseCode = "403", description = "Forbidden"),
+                    @ApiResponse(responseCode = "404", description = "Not Found")
+            }
+    )
+    @GetMapping("/reconciliation/{id}")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<ImageReconciliationRun> getReconciliation(@PathVariable String id) {
+        log.info("Called getReconciliation, id: {}", id);
+        return imageReconciliationService.findRun(id)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    @Operation(
+            summary = "Последний прогон сверки (только для администратора)",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "OK",
+                            content = @Content(schema = @Schema(implementation = ImageReconciliationRun.class))
+                    ),
+                    @ApiResponse(responseCode = "401", description = "Unauthorized"),
+                    @ApiResponse(responseCode = "403", description = "Forbidden"),
+                    @ApiResponse(responseCode = "404", description = "Not Found")
+            }
+    )
+    @GetMapping("/reconciliation")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<ImageReconciliationRun> getLatestReconciliation() {
+        log.info("Called getLatestReconciliation");
+        return imageReconciliationService.findLatestRun()
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+}
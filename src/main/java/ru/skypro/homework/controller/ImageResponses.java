@@ -0,0 +1,261 @@
+package ru.skypro.homework.controller;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import ru.skypro.homework.service.ImageFile;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Отдача файла картинки без чтения его в память: целиком, одним диапазоном (Range/If-Range),
+ * 304 по If-None-Match/If-Modified-Since или 416 для недостижимого диапазона.
+ * ETag - хэш содержимого картинки, если он известен.
+ * За nginx тело отдает сам nginx по X-Accel-Redirect (ImageAccelRedirect), приложение ставит только заголовки.
+ * Без nginx содержимое из HotImageCache пишется прямо из памяти (в кэш картинка попадает здесь же,
+ * через loadContent, - только когда тело отдает приложение, а не при 304, HEAD или X-Accel-Redirect);
+ * иначе под Tomcat тело отдает
+ * sendfile коннектора, а без него - FileChannel.transferTo в поток ответа. Картинки из нелокального
+ * хранилища (S3) копируются потоком, диапазон запрашивается у хранилища.
+ * Атрибуты файла могли прийти из описи ImageFileIndex, а файл - пропасть (его удалил другой узел
+ * на общем диске). Поэтому файл открывается до того, как ответ уйдет клиенту. Если его нет,
+ * вызывается onMissing (сбросить опись), а клиент получает 404 вместо обрезанного 200.
+ */
+final class ImageResponses {
+
+    /**
+     * Для ссылок на конкретную загрузку (/images/ads/{файл}): файл под ссылкой никогда не меняется
+     */
+    static final String IMMUTABLE = "public, max-age=31536000, immutable";
+
+    /**
+     * Для ссылок на картинку сущности (/ads/{id}/image): картинку могут заменить,
+     * поэтому клиент каждый раз сверяет ETag и обычно получает 304 без тела
+     */
+    static final String REVALIDATE = "public, no-cache";
+
+    static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private ImageResponses() {
+    }
+
+    /**
+     * Содержимое картинки для отдачи из памяти или null - отдавать из файла или хранилища
+     */
+    @FunctionalInterface
+    interface ContentLoader {
+
+        ByteBuffer load(ImageFile image) throws IOException;
+
+    }
+
+    /**
+     * accelRedirect - внутренний URI nginx (ImageAccelRedirect.internalUri) или null;
+     * loadContent - содержимое картинки из памяти (ImageService.loadHotContent) или null
+     */
+    static void write(ImageFile image, String cacheControl, String accelRedirect,
+                      HttpServletRequest request, HttpServletResponse response,
+                      ContentLoader loadContent, Consumer<ImageFile> onMissing) throws IOException {
+        try {
+            send(image, cacheControl, accelRedirect, request, response, loadContent);
+        } catch (NoSuchFileException e) {
+            onMissing.accept(image);
+            if (response.isCommitted()) {
+                throw e;
+            }
+            response.reset();
+            response.setStatus(HttpStatus.NOT_FOUND.value());
+        }
+    }
+
+    private static void send(ImageFile image, String cacheControl, String accelRedirect,
+                             HttpServletRequest request, HttpServletResponse response,
+                             ContentLoader loadContent) throws IOException {
+        long length = image.getLength();
+        long lastModified = image.getLastModified();
+        String etag = image.getContentHash() != null ? "\"" + image.getContentHash() + "\"" : null;
+
+        response.setContentType(image.getContentType());
+        response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setDateHeader(HttpHeaders.LAST_MODIFIED, lastModified);
+        if (etag != null) {
+            response.setHeader(HttpHeaders.ETAG, etag);
+        }
+
+        if (notModified(request, etag, lastModified)) {
+            response.setStatus(HttpStatus.NOT_MODIFIED.value());
+            return;
+        }
+
+        if (accelRedirect != null) {
+            // Range, HEAD и длину обработает nginx; Content-Type, Cache-Control и ETag он берет из этого ответа.
+            // Тело отдаст nginx, поэтому картинка не читается ни в ответ, ни в горячий кэш
+            response.setHeader(ImageAccelRedirect.ACCEL_REDIRECT, accelRedirect);
+            return;
+        }
+
+        long start = 0;
+        long end = length - 1;
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        if (rangeHeader != null && rangeApplies(request, etag, lastModified)) {
+            HttpRange range = singleRange(rangeHeader);
+            if (range != null) {
+                start = range.getRangeStart(length);
+                end = range.getRangeEnd(length);
+                // HttpRange не проверяет начало диапазона относительно длины файла
+                if (start >= length || start > end) {
+                    response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                    return;
+                }
+                response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+            }
+        }
+
+        long count = end - start + 1;
+        response.setContentLengthLong(count);
+        if (count <= 0 || HttpMethod.HEAD.matches(request.getMethod())) {
+            return;
+        }
+
+        ByteBuffer content = image.getContent() != null ? image.getContent() : loadContent.load(image);
+        if (content != null) {
+            writeCached(content, start, count, response);
+            return;
+        }
+        if (image.getPath() == null) {
+            stream(image, start, count, response);
+            return;
+        }
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            // Tomcat откроет файл уже после отправки заголовков: без проверки пропавший файл дал бы обрыв
+            if (!Files.isRegularFile(image.getPath())) {
+                throw new NoSuchFileException(image.getPath().toString());
+            }
+            // Tomcat сам передаст файл в сокет после выхода из обработчика
+            request.setAttribute(SENDFILE_FILENAME, image.getPath().toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end + 1);
+            return;
+        }
+        transfer(image, start, count, response);
+    }
+
+    private static void writeCached(ByteBuffer cached, long start, long count,
+                                    HttpServletResponse response) throws IOException {
+        // Свой view буфера: позиция общего буфера кэша не меняется
+        ByteBuffer content = cached.duplicate();
+        content.position((int) start).limit((int) (start + count));
+        WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+        while (content.hasRemaining()) {
+            out.write(content);
+        }
+    }
+
+    private static void transfer(ImageFile image, long start, long count,
+                                 HttpServletResponse response) throws IOException {
+        try (FileChannel file = FileChannel.open(image.getPath(), StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            long remaining = count;
+            while (remaining > 0) {
+                long sent = file.transferTo(position, remaining, out);
+                if (sent <= 0) {
+                    // Файл укоротили после того, как был отправлен Content-Length
+                    throw new IOException("Image file truncated: " + image.getPath());
+                }
+                position += sent;
+                remaining -= sent;
+            }
+        }
+    }
+
+    private static void stream(ImageFile image, long start, long count,
+                               HttpServletResponse response) throws IOException {
+        try (InputStream content = image.getStorage().get(image.getStorageKey(), start, count)) {
+            long copied = content.transferTo(response.getOutputStream());
+            if (copied != count) {
+                // Объект заменили или укоротили после того, как был отправлен Content-Length
+                throw new IOException("Image truncated in storage: " + image.getStorageKey());
+            }
+        }
+    }
+
+    /**
+     * If-None-Match главнее If-Modified-Since (RFC 7232, 6): если он есть, дата не проверяется.
+     * Для GET сравнение слабое, поэтому префикс W/ игнорируется.
+     */
+    private static boolean notModified(HttpServletRequest request, String etag, long lastModified) {
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            if (etag == null) {
+                return false;
+            }
+            for (String candidate : ifNoneMatch.split(",")) {
+                String tag = candidate.trim();
+                if (tag.equals("*") || (tag.startsWith("W/") ? tag.substring(2) : tag).equals(etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        long ifModifiedSince = dateHeader(request, HttpHeaders.IF_MODIFIED_SINCE);
+        return ifModifiedSince != -1 && lastModified / 1000 <= ifModifiedSince / 1000;
+    }
+
+    /**
+     * If-Range: диапазон отдается, только если картинка не менялась - ETag совпадает строго
+     * (слабый W/ не подходит) или дата равна Last-Modified. Иначе отдаем файл целиком.
+     */
+    private static boolean rangeApplies(HttpServletRequest request, String etag, long lastModified) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return ifRange.equals(etag);
+        }
+        long date = dateHeader(request, HttpHeaders.IF_RANGE);
+        return date != -1 && date / 1000 == lastModified / 1000;
+    }
+
+    /**
+     * Несколько диапазонов (multipart/byteranges) и синтаксически неверный Range игнорируются -
+     * RFC 7233 это разрешает, отдается файл целиком
+     */
+    private static HttpRange singleRange(String rangeHeader) {
+        try {
+            List<HttpRange> ranges = HttpRange.parseRanges(rangeHeader);
+            return ranges.size() == 1 ? ranges.get(0) : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static long dateHeader(HttpServletRequest request, String name) {
+        try {
+            return request.getDateHeader(name);
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+}
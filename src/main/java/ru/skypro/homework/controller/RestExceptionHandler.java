@@ -0,0 +1,27 @@
+package ru.skypro.homework.controller;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+/**
+ * Общие ответы на исключения, которые контроллеры не обрабатывают сами.
+ * ObjectOptimisticLockingFailureException - строку (объявление, пользователь, комментарий) изменили
+ * между чтением и записью, @Version разошелся: это 409, клиент перечитывает и повторяет,
+ * а не 500/400, как было бы из общего catch.
+ */
+@Slf4j
+@RestControllerAdvice
+public class RestExceptionHandler {
+
+    @ExceptionHandler(ObjectOptimisticLockingFailureException.class)
+    public ResponseEntity<Void> handleOptimisticLock(ObjectOptimisticLockingFailureException e) {
+        log.warn("Concurrent modification of {} {}: {}", e.getPersistentClassName(), e.getIdentifier(),
+                e.getMessage());
+        return ResponseEntity.status(HttpStatus.CONFLICT).build();
+    }
+
+}
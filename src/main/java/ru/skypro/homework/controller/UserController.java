@@ -8,12 +8,16 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
@@ -22,6 +26,7 @@ import ru.skypro.homework.model.dto.NewPassword;
 import ru.skypro.homework.model.dto.UpdateUser;
 import ru.skypro.homework.model.dto.User;
 import ru.skypro.homework.security.CustomUserDetailsManager;
+import ru.skypro.homework.service.ETags;
 import ru.skypro.homework.service.ImageService;
 import ru.skypro.homework.service.UserService;
 
@@ -64,6 +69,8 @@ public class UserController {
         } catch (IllegalArgumentException e) {
             log.warn("Password change failed for user {}: {}", authentication.getName(), e.getMessage());
             return ResponseEntity.badRequest().build();
+        } catch (ObjectOptimisticLockingFailureException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Error changing password for user {}", authentication.getName(), e);
             return ResponseEntity.internalServerError().build();
@@ -78,14 +85,21 @@ public class UserController {
                             description = "OK",
                             content = @Content(schema = @Schema(implementation = User.class))
                     ),
+                    @ApiResponse(responseCode = "304", description = "Not Modified"),
                     @ApiResponse(responseCode = "401", description = "Unauthorized")
             }
     )
     @GetMapping("/me")
-    public ResponseEntity<User> getUser(Authentication authentication) {
+    public ResponseEntity<User> getUser(Authentication authentication,
+                                        @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false)
+                                        String ifNoneMatch) {
         log.info("Called getUser for user: {}", authentication.getName());
+        String eTag = userService.getCurrentUserETag();
+        if (ETags.matches(ifNoneMatch, eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+        }
         User currentUser = userService.getCurrentUser();
-        return ResponseEntity.ok(currentUser);
+        return ResponseEntity.ok().eTag(eTag).body(currentUser);
     }
 
     @Operation(
@@ -135,7 +149,7 @@ public class UserController {
             String imageUrl = imageService.saveUserImage(image, authentication.getName());
             log.info("User image successfully updated for user: {}", authentication.getName());
             return ResponseEntity.ok(imageUrl);
-        } catch (IOException e) {
+        } catch (IOException | IllegalArgumentException e) {
             log.error("Failed to save user image for user: {}", authentication.getName(), e);
             return ResponseEntity.badRequest().build();
         }
@@ -26,9 +26,9 @@ public class BasicAuthCorsFilter extends OncePerRequestFilter {
         response.setHeader("Access-Control-Allow-Credentials", "true");
         response.setHeader("Access-Control-Allow-Methods", "GET, POST, PUT, PATCH, DELETE, OPTIONS");
         response.setHeader("Access-Control-Allow-Headers",
-                "Authorization, Content-Type, Accept, X-Requested-With, remember-me, Origin, X-Auth-Token");
+                "Authorization, Content-Type, Accept, X-Requested-With, remember-me, Origin, X-Auth-Token, If-None-Match");
         response.setHeader("Access-Control-Max-Age", "3600");
-        response.setHeader("Access-Control-Expose-Headers", "Authorization");
+        response.setHeader("Access-Control-Expose-Headers", "Authorization, ETag");
 
         // Для preflight запросов (OPTIONS) сразу отвечаем OK
         if ("OPTIONS".equalsIgnoreCase(request.getMethod())) {
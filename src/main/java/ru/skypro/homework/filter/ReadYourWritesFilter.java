@@ -0,0 +1,91 @@
+package ru.skypro.homework.filter;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import ru.skypro.homework.config.ReadReplicaRoutingDataSource;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+
+/**
+ * Read-your-writes между узлами: после пишущей транзакции клиент получает cookie last-write
+ * со временем записи, и пока не прошло read-your-writes-window, его чтения на любом узле идут на primary.
+ * Cookie ставится в момент записи: тело ответа к этому времени еще не начато, заголовки можно менять.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@ConditionalOnProperty(name = "app.datasource.routing.enabled", havingValue = "true")
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+
+    static final String COOKIE = "last-write";
+
+    private final Duration window;
+    private final Clock clock;
+
+    @Autowired
+    public ReadYourWritesFilter(@Value("${app.datasource.routing.read-your-writes-window:PT5S}") Duration window) {
+        this(window, Clock.systemUTC());
+    }
+
+    ReadYourWritesFilter(Duration window, Clock clock) {
+        this.window = window;
+        this.clock = clock;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain)
+            throws ServletException, IOException {
+        long lastWrite = lastWrite(request);
+        // Метка из будущего (часы узлов разошлись) засчитывается только в пределах окна
+        boolean recent = lastWrite > 0 && Math.abs(clock.millis() - lastWrite) < window.toMillis();
+        ReadReplicaRoutingDataSource.bindClient(
+                new ReadReplicaRoutingDataSource.ClientWrites(recent, () -> markWrite(response)));
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            ReadReplicaRoutingDataSource.clearClient();
+        }
+    }
+
+    private void markWrite(HttpServletResponse response) {
+        if (response.isCommitted()) {
+            return;
+        }
+        Cookie cookie = new Cookie(COOKIE, Long.toString(clock.millis()));
+        cookie.setPath("/");
+        cookie.setHttpOnly(true);
+        cookie.setMaxAge((int) Math.max(1, window.toSeconds() + 1));
+        response.addCookie(cookie);
+    }
+
+    private static long lastWrite(HttpServletRequest request) {
+        Cookie[] cookies = request.getCookies();
+        if (cookies == null) {
+            return 0;
+        }
+        for (Cookie cookie : cookies) {
+            if (COOKIE.equals(cookie.getName())) {
+                try {
+                    return Long.parseLong(cookie.getValue());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 0;
+    }
+
+}
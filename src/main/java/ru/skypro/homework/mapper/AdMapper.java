@@ -6,8 +6,11 @@ import ru.skypro.homework.model.dto.Ad;
 import ru.skypro.homework.model.dto.CreateOrUpdateAd;
 import ru.skypro.homework.model.dto.ExtendedAd;
 import ru.skypro.homework.model.entity.AdEntity;
+import ru.skypro.homework.model.enums.ImageVariant;
+import ru.skypro.homework.model.projection.AdSearchResult;
+import ru.skypro.homework.model.projection.AdSummary;
 
-@Mapper(componentModel = "spring", uses = {UserMapper.class})
+@Mapper(componentModel = "spring", uses = {UserMapper.class}, imports = ImageVariant.class)
 public interface AdMapper {
 
     @Mapping(target = "author", source = "author.id")
@@ -15,6 +18,19 @@ public interface AdMapper {
     @Mapping(target = "pk", source = "id")
     Ad entityToAdDto(AdEntity entity);
 
+    /**
+     * Карточка ленты: картинка - вариант CARD (пока он не готов, по ссылке отдается оригинал)
+     */
+    @Mapping(target = "author", source = "authorId")
+    @Mapping(target = "pk", source = "id")
+    @Mapping(target = "image", expression = "java(ImageVariant.CARD.url(summary.getImage()))")
+    Ad summaryToAdDto(AdSummary summary);
+
+    @Mapping(target = "author", source = "authorId")
+    @Mapping(target = "pk", source = "id")
+    @Mapping(target = "image", expression = "java(ImageVariant.CARD.url(result.getImage()))")
+    Ad searchResultToAdDto(AdSearchResult result);
+
     @Mapping(target = "pk", source = "id")
     @Mapping(target = "authorFirstName", source = "author.firstName")
     @Mapping(target = "authorLastName", source = "author.lastName")
@@ -27,12 +43,14 @@ public interface AdMapper {
     @Mapping(target = "imagePath", ignore = true)
     @Mapping(target = "author", ignore = true)
     @Mapping(target = "comments", ignore = true)
+    @Mapping(target = "version", ignore = true)
     AdEntity createOrUpdateAdToEntity(CreateOrUpdateAd dto);
 
     @Mapping(target = "id", ignore = true)
     @Mapping(target = "imagePath", ignore = true)
     @Mapping(target = "author", ignore = true)
     @Mapping(target = "comments", ignore = true)
+    @Mapping(target = "version", ignore = true)
     void updateEntityFromDto(CreateOrUpdateAd dto, @org.mapstruct.MappingTarget AdEntity entity);
 
 }
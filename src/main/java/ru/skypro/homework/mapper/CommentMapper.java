@@ -20,6 +20,7 @@ public interface CommentMapper {
     @Mapping(target = "createdAt", ignore = true)
     @Mapping(target = "author", ignore = true)
     @Mapping(target = "ad", ignore = true)
+    @Mapping(target = "version", ignore = true)
     @Mapping(target = "text", source = "text")
     CommentEntity createOrUpdateCommentToEntity(CreateOrUpdateComment dto);
 
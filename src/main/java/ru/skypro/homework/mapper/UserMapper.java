@@ -19,6 +19,8 @@ public interface UserMapper {
     @Mapping(target = "password", ignore = true)
     @Mapping(target = "ads", ignore = true)
     @Mapping(target = "comments", ignore = true)
+    @Mapping(target = "image", ignore = true)
+    @Mapping(target = "version", ignore = true)
     UserEntity dtoToEntity(User dto);
 
     @Mapping(target = "id", ignore = true)
@@ -26,6 +28,8 @@ public interface UserMapper {
     @Mapping(target = "password", ignore = true)
     @Mapping(target = "ads", ignore = true)
     @Mapping(target = "comments", ignore = true)
+    @Mapping(target = "image", ignore = true)
+    @Mapping(target = "version", ignore = true)
     void updateEntityFromDto(User dto, @org.mapstruct.MappingTarget UserEntity entity);
 
 }
\ No newline at end of file
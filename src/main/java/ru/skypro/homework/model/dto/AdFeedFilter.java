@@ -0,0 +1,23 @@
+package ru.skypro.homework.model.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "Фильтр ленты объявлений")
+public class AdFeedFilter {
+
+    @Schema(description = "минимальная цена", minimum = "0")
+    private Integer minPrice;
+
+    @Schema(description = "максимальная цена", minimum = "0")
+    private Integer maxPrice;
+
+    @Schema(description = "id автора объявлений")
+    private Integer authorId;
+
+}
@@ -0,0 +1,19 @@
+package ru.skypro.homework.model.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+@Data
+@Schema(description = "Картинка галереи объявления")
+public class AdImage {
+
+    @Schema(description = "id картинки")
+    private Integer id;
+
+    @Schema(description = "ссылка на картинку")
+    private String image;
+
+    @Schema(description = "главная картинка объявления (показывается в ленте)")
+    private boolean main;
+
+}
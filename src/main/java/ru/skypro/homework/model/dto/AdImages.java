@@ -0,0 +1,18 @@
+package ru.skypro.homework.model.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Schema(description = "Галерея объявления")
+public class AdImages {
+
+    @Schema(description = "количество картинок")
+    private Integer count;
+
+    @Schema(description = "картинки в порядке показа")
+    private List<AdImage> results;
+
+}
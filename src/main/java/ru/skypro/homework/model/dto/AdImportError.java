@@ -0,0 +1,20 @@
+package ru.skypro.homework.model.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "Ошибка импорта одной записи")
+public class AdImportError {
+
+    @Schema(description = "номер записи в файле, начиная с 1 (строка заголовка CSV не считается)")
+    private Long row;
+
+    @Schema(description = "описание ошибки")
+    private String message;
+
+}
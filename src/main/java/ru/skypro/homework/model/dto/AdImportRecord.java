@@ -0,0 +1,17 @@
+package ru.skypro.homework.model.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@EqualsAndHashCode(callSuper = true)
+@Schema(description = "Строка массового импорта объявлений (NDJSON или CSV)")
+public class AdImportRecord extends CreateOrUpdateAd {
+
+    @Schema(description = "путь к картинке внутри загруженного архива (необязательно)")
+    private String image;
+
+}
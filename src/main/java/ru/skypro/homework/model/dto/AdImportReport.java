@@ -0,0 +1,25 @@
+package ru.skypro.homework.model.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@Schema(description = "Результат массового импорта объявлений")
+public class AdImportReport {
+
+    @Schema(description = "всего прочитано записей")
+    private long total;
+
+    @Schema(description = "создано объявлений")
+    private long imported;
+
+    @Schema(description = "записей с ошибками")
+    private long failed;
+
+    @Schema(description = "ошибки по записям (не больше app.ads.import.max-errors)")
+    private List<AdImportError> errors = new ArrayList<>();
+
+}
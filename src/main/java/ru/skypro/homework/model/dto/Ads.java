@@ -14,4 +14,7 @@ public class Ads {
     @Schema(description = "список объявлений")
     private List<Ad> results;
 
+    @Schema(description = "курсор следующей страницы (null, если страница последняя)")
+    private String nextCursor;
+
 }
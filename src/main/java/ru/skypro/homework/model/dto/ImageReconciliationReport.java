@@ -0,0 +1,46 @@
+package ru.skypro.homework.model.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@Schema(description = "Результат сверки файлов картинок с БД")
+public class ImageReconciliationReport {
+
+    @Schema(description = "пробный прогон: ничего не перемещалось и не менялось")
+    private boolean dryRun;
+
+    @Schema(description = "просмотрено файлов (без тех, что моложе grace-period)")
+    private long scannedFiles;
+
+    @Schema(description = "файлов без строки в БД")
+    private long orphanFiles;
+
+    @Schema(description = "суммарный размер файлов без строки в БД, байт")
+    private long orphanBytes;
+
+    @Schema(description = "файлов перенесено в карантин")
+    private long quarantinedFiles;
+
+    @Schema(description = "файлов удалено из карантина по истечении quarantine-retention")
+    private long purgedFiles;
+
+    @Schema(description = "картинок в БД, у которых нет файла")
+    private long missingFiles;
+
+    @Schema(description = "содержимого со счетчиком ссылок, не совпавшим с images")
+    private long refCountMismatches;
+
+    @Schema(description = "содержимого без единой ссылки из images")
+    private long unreferencedBlobs;
+
+    @Schema(description = "примеры файлов без строки в БД (не больше app.images.gc.max-samples)")
+    private List<String> orphanSamples = new ArrayList<>();
+
+    @Schema(description = "примеры картинок без файла (не больше app.images.gc.max-samples)")
+    private List<String> missingSamples = new ArrayList<>();
+
+}
@@ -0,0 +1,37 @@
+package ru.skypro.homework.model.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+import ru.skypro.homework.model.enums.ReconciliationStatus;
+
+import java.time.LocalDateTime;
+
+@Data
+@Schema(description = "Прогон сверки файлов картинок с БД")
+public class ImageReconciliationRun {
+
+    @Schema(description = "id прогона")
+    private String id;
+
+    @Schema(description = "пробный прогон: ничего не перемещалось и не менялось")
+    private boolean dryRun;
+
+    @Schema(description = "состояние прогона")
+    private ReconciliationStatus status;
+
+    @Schema(description = "узел, выполняющий прогон")
+    private String node;
+
+    @Schema(description = "время запуска")
+    private LocalDateTime startedAt;
+
+    @Schema(description = "время завершения (пусто, пока прогон идет)")
+    private LocalDateTime finishedAt;
+
+    @Schema(description = "отчет (только у завершенного прогона)")
+    private ImageReconciliationReport report;
+
+    @Schema(description = "причина сбоя (только у FAILED)")
+    private String error;
+
+}
@@ -12,25 +12,36 @@ import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.OneToMany;
 import javax.persistence.OneToOne;
+import javax.persistence.OrderBy;
 import javax.persistence.PrePersist;
 import javax.persistence.PreUpdate;
+import javax.persistence.SequenceGenerator;
 import javax.persistence.Table;
+import javax.persistence.Version;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 
 @Data
 @Entity
-@Table(name = "ads")
+@Table(name = "ads", indexes = {
+        // Дублируют индексы ленты из liquibase, чтобы они были и в схеме, созданной Hibernate (тесты)
+        @Index(name = "idx_ads_created_at_id", columnList = "created_at DESC, id DESC"),
+        @Index(name = "idx_ads_price_id", columnList = "price, id"),
+        @Index(name = "idx_ads_author_created_at_id", columnList = "author_id, created_at DESC, id DESC"),
+        @Index(name = "idx_ads_author_price_id", columnList = "author_id, price, id")
+})
 @EntityListeners(AuditingEntityListener.class)
 public class AdEntity {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "ads_seq")
+    @SequenceGenerator(name = "ads_seq", sequenceName = "ads_seq", allocationSize = 50)
     private Integer id;
 
     @Column(nullable = false, length = 300)
@@ -51,12 +62,16 @@ public class AdEntity {
     @Column(name = "image_type", length = 300)
     private String imageType;
 
-    @Column(name = "created_at")
+    @Column(name = "created_at", nullable = false)
     private LocalDateTime createdAt;
 
     @Column(name = "updated_at")
     private LocalDateTime updatedAt;
 
+    @Version
+    @Column(name = "version", nullable = false)
+    private Long version;
+
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "author_id", nullable = false)
     private UserEntity author;
@@ -65,7 +80,11 @@ public class AdEntity {
     @ToString.Exclude
     private List<CommentEntity> comments;
 
+    /**
+     * Галерея в порядке, заданном владельцем. Лента и поиск ее не читают - им хватает главной картинки
+     */
     @OneToMany(mappedBy = "ad", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
+    @OrderBy("position ASC, id ASC")
     private List<ImageEntity> images = new ArrayList<>();
 
     @OneToOne(fetch = FetchType.LAZY)
@@ -97,6 +116,7 @@ public class AdEntity {
      */
     public void addImage(ImageEntity image) {
         image.setAd(this);
+        image.setPosition(this.images.size());
         this.images.add(image);
         // Если это первое изображение, устанавливаем как главное
         if (this.images.size() == 1) {
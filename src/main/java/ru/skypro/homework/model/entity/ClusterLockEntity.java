@@ -0,0 +1,35 @@
+package ru.skypro.homework.model.entity;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.time.LocalDateTime;
+
+/**
+ * Блокировка фоновой задачи на весь кластер (ClusterLock). Меняется только запросами
+ * ClusterLockRepository: захват - условный UPDATE/INSERT, поэтому два узла не захватят ее одновременно.
+ */
+@Data
+@NoArgsConstructor
+@Entity
+@Table(name = "cluster_locks")
+public class ClusterLockEntity {
+
+    @Id
+    @Column(name = "name", length = 100)
+    private String name;
+
+    @Column(name = "locked_until", nullable = false)
+    private LocalDateTime lockedUntil;
+
+    @Column(name = "locked_at", nullable = false)
+    private LocalDateTime lockedAt;
+
+    @Column(name = "locked_by", nullable = false)
+    private String lockedBy;
+
+}
@@ -0,0 +1,52 @@
+package ru.skypro.homework.model.entity;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.PrePersist;
+import javax.persistence.Table;
+import java.time.LocalDateTime;
+
+/**
+ * Содержимое картинки в хранилище, адресуемом по SHA-256: один файл на одинаковое содержимое,
+ * сколько бы раз его ни загрузили. ImageEntity ссылаются на него, refCount - число таких ссылок;
+ * файл удаляется, когда уходит последняя.
+ * refCount меняется только запросами ImageBlobRepository (атомарно в БД), не через поле сущности.
+ */
+@Data
+@NoArgsConstructor
+@Entity
+@Table(name = "image_blobs")
+public class ImageBlobEntity {
+
+    @Id
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
+    /**
+     * Путь файла в хранилище в том же виде, что и ссылки картинок: /images/blobs/ab/cd/{hash}.jpg
+     */
+    @Column(name = "file_path", nullable = false, length = 500)
+    private String filePath;
+
+    @Column(name = "file_size", nullable = false)
+    private Long fileSize;
+
+    @Column(name = "content_type", nullable = false, length = 100)
+    private String contentType;
+
+    @Column(name = "ref_count", nullable = false)
+    private Integer refCount;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    public void prePersist() {
+        this.createdAt = LocalDateTime.now();
+    }
+
+}
@@ -2,12 +2,17 @@ package ru.skypro.homework.model.entity;
 
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 import ru.skypro.homework.model.dto.Ad;
 import ru.skypro.homework.model.dto.User;
+import ru.skypro.homework.model.enums.ImageVariant;
 
 import javax.persistence.*;
 import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.Map;
 
 @Data
 @NoArgsConstructor
@@ -17,7 +22,8 @@ import java.time.LocalDateTime;
 public class ImageEntity {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "images_seq")
+    @SequenceGenerator(name = "images_seq", sequenceName = "images_seq", allocationSize = 50)
     private Integer id;
 
     @Column(name = "file_path", nullable = false, unique = true)
@@ -32,9 +38,38 @@ public class ImageEntity {
     @Column(name = "original_file_name")
     private String originalFileName;
 
+    /**
+     * SHA-256 содержимого файла (hex), считается при загрузке; основа ETag картинки
+     */
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
+    /**
+     * Общий файл с содержимым; null у картинок, загруженных до хранилища по хэшу -
+     * их файл лежит прямо по filePath
+     */
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "blob_hash")
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private ImageBlobEntity blob;
+
     @Column(name = "created_at")
     private LocalDateTime createdAt;
 
+    /**
+     * Готовые уменьшенные копии: вариант -> ссылка на файл. Заполняется фоновой генерацией;
+     * если картинка не больше варианта, ссылка указывает на сам оригинал.
+     */
+    @ElementCollection(fetch = FetchType.LAZY)
+    @CollectionTable(name = "image_variants", joinColumns = @JoinColumn(name = "image_id"))
+    @MapKeyEnumerated(EnumType.STRING)
+    @MapKeyColumn(name = "variant", length = 20)
+    @Column(name = "file_path", nullable = false, length = 500)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private Map<ImageVariant, String> variants = new EnumMap<>(ImageVariant.class);
+
     @OneToOne(mappedBy = "image")
     private UserEntity user;
 
@@ -42,6 +77,19 @@ public class ImageEntity {
     @JoinColumn(name = "ad_id")
     private AdEntity ad;
 
+    /**
+     * Место в галерее объявления (с 0); у аватаров null
+     */
+    @Column(name = "position")
+    private Integer position;
+
+    /**
+     * Где лежит файл: в хранилище по хэшу или (старые картинки) по самой ссылке
+     */
+    public String getStoragePath() {
+        return blob != null ? blob.getFilePath() : filePath;
+    }
+
     @PrePersist
     public void prePersist() {
         this.createdAt = LocalDateTime.now();
@@ -0,0 +1,50 @@
+package ru.skypro.homework.model.entity;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import ru.skypro.homework.model.enums.ReconciliationStatus;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.time.LocalDateTime;
+
+/**
+ * Прогон сверки картинок. Отчет хранится в JSON: его читают только целиком, из админки.
+ */
+@Data
+@NoArgsConstructor
+@Entity
+@Table(name = "image_reconciliation_runs")
+public class ImageReconciliationRunEntity {
+
+    @Id
+    @Column(name = "id", length = 36)
+    private String id;
+
+    @Column(name = "dry_run", nullable = false)
+    private boolean dryRun;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 20)
+    private ReconciliationStatus status;
+
+    @Column(name = "node", nullable = false)
+    private String node;
+
+    @Column(name = "started_at", nullable = false)
+    private LocalDateTime startedAt;
+
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+
+    @Column(name = "report", columnDefinition = "TEXT")
+    private String report;
+
+    @Column(name = "error", columnDefinition = "TEXT")
+    private String error;
+
+}
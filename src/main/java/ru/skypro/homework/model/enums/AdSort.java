@@ -0,0 +1,10 @@
+package ru.skypro.homework.model.enums;
+
+/**
+ * Порядок сортировки ленты объявлений
+ */
+public enum AdSort {
+
+    NEWEST, PRICE_ASC, PRICE_DESC
+
+}
@@ -0,0 +1,27 @@
+package ru.skypro.homework.model.enums;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Уменьшенные копии картинки, которые генерируются в фоне после загрузки.
+ * maxSize - длинная сторона в пикселях; картинка меньше этого размера не увеличивается.
+ */
+@Getter
+@RequiredArgsConstructor
+public enum ImageVariant {
+
+    THUMBNAIL(160),
+    CARD(400),
+    FULL(1280);
+
+    private final int maxSize;
+
+    /**
+     * Ссылка на этот вариант картинки (пока вариант не готов, по ней отдается оригинал)
+     */
+    public String url(String imageUrl) {
+        return imageUrl != null ? imageUrl + "?variant=" + name() : null;
+    }
+
+}
@@ -0,0 +1,7 @@
+package ru.skypro.homework.model.enums;
+
+public enum ReconciliationStatus {
+
+    RUNNING, COMPLETED, FAILED
+
+}
@@ -0,0 +1,16 @@
+package ru.skypro.homework.model.projection;
+
+/**
+ * Поля объявления, по которым строится поисковый индекс в памяти
+ */
+public interface AdSearchDocument {
+
+    Integer getId();
+
+    String getTitle();
+
+    String getDescription();
+
+    Integer getPrice();
+
+}
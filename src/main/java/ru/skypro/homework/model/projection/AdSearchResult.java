@@ -0,0 +1,23 @@
+package ru.skypro.homework.model.projection;
+
+/**
+ * Результат полнотекстового поиска объявлений с релевантностью
+ */
+public interface AdSearchResult {
+
+    Integer getId();
+
+    Integer getAuthorId();
+
+    String getTitle();
+
+    Integer getPrice();
+
+    String getImage();
+
+    /**
+     * Релевантность по ts_rank
+     */
+    Float getRank();
+
+}
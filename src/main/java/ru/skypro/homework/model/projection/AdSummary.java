@@ -0,0 +1,31 @@
+package ru.skypro.homework.model.projection;
+
+import java.time.LocalDateTime;
+
+/**
+ * Плоская проекция объявления для списков (лента, мои объявления).
+ * Загружается одним запросом без подгрузки автора и изображений.
+ */
+public interface AdSummary {
+
+    Integer getId();
+
+    Integer getAuthorId();
+
+    String getTitle();
+
+    Integer getPrice();
+
+    /**
+     * Ссылка на главное изображение (или устаревшее поле image_path)
+     */
+    String getImage();
+
+    LocalDateTime getCreatedAt();
+
+    /**
+     * Версия строки, из версий строк страницы строится ETag ленты
+     */
+    Long getVersion();
+
+}
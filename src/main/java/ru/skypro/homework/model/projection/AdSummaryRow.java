@@ -0,0 +1,21 @@
+package ru.skypro.homework.model.projection;
+
+import lombok.Value;
+
+import java.time.LocalDateTime;
+
+/**
+ * Реализация AdSummary для JPQL-конструктора в динамических запросах ленты
+ */
+@Value
+public class AdSummaryRow implements AdSummary {
+
+    Integer id;
+    Integer authorId;
+    String title;
+    Integer price;
+    String image;
+    LocalDateTime createdAt;
+    Long version;
+
+}
@@ -0,0 +1,12 @@
+package ru.skypro.homework.model.projection;
+
+/**
+ * Сколько строк images на самом деле ссылается на содержимое в image_blobs
+ */
+public interface BlobReferenceCount {
+
+    String getContentHash();
+
+    Long getReferenceCount();
+
+}
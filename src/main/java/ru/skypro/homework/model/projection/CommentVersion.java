@@ -0,0 +1,12 @@
+package ru.skypro.homework.model.projection;
+
+/**
+ * Версия комментария и его автора (имя и аватар автора входят в ответ)
+ */
+public interface CommentVersion extends EntityVersion {
+
+    Integer getAuthorId();
+
+    Long getAuthorVersion();
+
+}
@@ -0,0 +1,12 @@
+package ru.skypro.homework.model.projection;
+
+/**
+ * ID и версия строки - по ним строится ETag без загрузки сущности
+ */
+public interface EntityVersion {
+
+    Integer getId();
+
+    Long getVersion();
+
+}
@@ -0,0 +1,31 @@
+package ru.skypro.homework.model.projection;
+
+import ru.skypro.homework.model.enums.ImageVariant;
+
+/**
+ * Строка запроса метаданных картинки: поля картинки повторяются в каждой строке,
+ * строк столько, сколько у нее вариантов (одна, если вариантов нет)
+ */
+public interface ImageMetadataRow {
+
+    /**
+     * Ссылка картинки; у старых записей без ImageEntity - image_path объявления или пользователя
+     */
+    String getImageUrl();
+
+    /**
+     * Файл содержимого в хранилище по хэшу или null (старая картинка, файл прямо по ссылке)
+     */
+    String getBlobPath();
+
+    String getContentType();
+
+    Long getFileSize();
+
+    String getContentHash();
+
+    ImageVariant getVariant();
+
+    String getVariantPath();
+
+}
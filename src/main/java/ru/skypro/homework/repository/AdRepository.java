@@ -2,25 +2,126 @@ package ru.skypro.homework.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import ru.skypro.homework.model.entity.AdEntity;
+import ru.skypro.homework.model.projection.AdSearchDocument;
+import ru.skypro.homework.model.projection.AdSearchResult;
+import ru.skypro.homework.model.projection.AdSummary;
+import ru.skypro.homework.model.projection.ImageMetadataRow;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
 
 @Repository
-public interface AdRepository extends JpaRepository<AdEntity, Integer> {
+public interface AdRepository extends JpaRepository<AdEntity, Integer>, AdRepositoryCustom {
+
+    /**
+     * Общая часть запросов списков: главное изображение подтягивается LEFT JOIN,
+     * автор - только по внешнему ключу, без join на users
+     */
+    String SUMMARY_SELECT = "SELECT a.id AS id, a.author.id AS authorId, a.title AS title, a.price AS price, " +
+            "COALESCE(i.filePath, a.imagePath) AS image, a.createdAt AS createdAt, a.version AS version " +
+            "FROM AdEntity a LEFT JOIN a.image i ";
+
+    /**
+     * Полнотекстовый поиск (PostgreSQL): совпадения ищутся по GIN-индексу на ads.search_vector,
+     * релевантность считается один раз во вложенном запросе.
+     * :query - слова запроса, соединенные операторами to_tsquery (И или ИЛИ)
+     */
+    String SEARCH_SELECT = "SELECT * FROM (" +
+            "SELECT a.id AS \"id\", a.author_id AS \"authorId\", a.title AS \"title\", a.price AS \"price\", " +
+            "COALESCE(i.file_path, a.image_path) AS \"image\", ts_rank(a.search_vector, q.query) AS \"rank\" " +
+            "FROM ads a " +
+            "CROSS JOIN (SELECT to_tsquery('russian', :query) || to_tsquery('english', :query) AS query) q " +
+            "LEFT JOIN images i ON i.id = a.main_image_id " +
+            "WHERE a.search_vector @@ q.query AND a.price BETWEEN :minPrice AND :maxPrice) r ";
+
+    String SEARCH_ORDER = "ORDER BY r.\"rank\" DESC, r.\"id\" DESC LIMIT :limit";
+
+    /**
+     * Размер порции строк, которую JDBC-драйвер читает за один раз при потоковой выгрузке
+     */
+    String STREAM_FETCH_SIZE = "500";
 
     List<AdEntity> findByAuthorId(Integer authorId);
 
+    @Query("SELECT a.id FROM AdEntity a WHERE a.author.id = :authorId")
+    List<Integer> findIdsByAuthorId(@Param("authorId") Integer authorId);
+
+    /**
+     * Какие из ссылок записаны в ads.image_path (сверка файлов картинок)
+     */
+    @Query("SELECT a.imagePath FROM AdEntity a WHERE a.imagePath IN :paths")
+    List<String> findImagePathsIn(@Param("paths") Collection<String> paths);
+
     @Query("SELECT a FROM AdEntity a WHERE a.author.id = :authorId AND a.id = :adId")
     Optional<AdEntity> findByAuthorIdAndAdId(@Param("authorId") Integer authorId,
                                              @Param("adId") Integer adId);
 
     List<AdEntity> findByTitleContainingIgnoreCase(String title);
 
+    /**
+     * Метаданные главной картинки объявления одним запросом (ImageMetadataResolver);
+     * пусто - объявления нет
+     */
+    @Query("SELECT COALESCE(i.filePath, a.imagePath) AS imageUrl, " + ImageRepository.METADATA_COLUMNS
+            + "FROM AdEntity a LEFT JOIN a.image i " + ImageRepository.METADATA_JOINS + "WHERE a.id = :id")
+    List<ImageMetadataRow> findImageMetadata(@Param("id") Integer id);
+
     @Query("SELECT a FROM AdEntity a LEFT JOIN FETCH a.author WHERE a.id = :id")
     Optional<AdEntity> findByIdWithAuthor(@Param("id") Integer id);
 
+    @Query(SUMMARY_SELECT + "WHERE a.author.id = :authorId ORDER BY a.createdAt DESC, a.id DESC")
+    List<AdSummary> findSummariesByAuthorId(@Param("authorId") Integer authorId);
+
+    /**
+     * Потоковая выгрузка всех объявлений. Требует открытой транзакции, Stream нужно закрыть
+     */
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = STREAM_FETCH_SIZE))
+    @Query(SUMMARY_SELECT + "ORDER BY a.createdAt DESC, a.id DESC")
+    Stream<AdSummary> streamAllSummaries();
+
+    /**
+     * Потоковая выгрузка объявлений автора. Требует открытой транзакции, Stream нужно закрыть
+     */
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = STREAM_FETCH_SIZE))
+    @Query(SUMMARY_SELECT + "WHERE a.author.id = :authorId ORDER BY a.createdAt DESC, a.id DESC")
+    Stream<AdSummary> streamSummariesByAuthorId(@Param("authorId") Integer authorId);
+
+    /**
+     * Потоковая выгрузка полей для поискового индекса в памяти
+     */
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = STREAM_FETCH_SIZE))
+    @Query("SELECT a.id AS id, a.title AS title, a.description AS description, a.price AS price FROM AdEntity a")
+    Stream<AdSearchDocument> streamSearchDocuments();
+
+    /**
+     * Загрузка страницы найденных объявлений одним запросом
+     */
+    @Query(SUMMARY_SELECT + "WHERE a.id IN :ids")
+    List<AdSummary> findSummariesByIdIn(@Param("ids") Collection<Integer> ids);
+
+    @Query(value = SEARCH_SELECT + SEARCH_ORDER, nativeQuery = true)
+    List<AdSearchResult> searchFirstPage(@Param("query") String query,
+                                         @Param("minPrice") int minPrice,
+                                         @Param("maxPrice") int maxPrice,
+                                         @Param("limit") int limit);
+
+    @Query(value = SEARCH_SELECT +
+            "WHERE r.\"rank\" < CAST(:rank AS REAL) OR (r.\"rank\" = CAST(:rank AS REAL) AND r.\"id\" < :id) " +
+            SEARCH_ORDER, nativeQuery = true)
+    List<AdSearchResult> searchPageAfter(@Param("query") String query,
+                                         @Param("minPrice") int minPrice,
+                                         @Param("maxPrice") int maxPrice,
+                                         @Param("rank") Float rank,
+                                         @Param("id") Integer id,
+                                         @Param("limit") int limit);
+
 }
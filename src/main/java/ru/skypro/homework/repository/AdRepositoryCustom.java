@@ -0,0 +1,21 @@
+package ru.skypro.homework.repository;
+
+import ru.skypro.homework.model.dto.AdFeedFilter;
+import ru.skypro.homework.model.enums.AdSort;
+import ru.skypro.homework.model.projection.AdSummary;
+
+import java.util.List;
+
+/**
+ * Динамические запросы ленты объявлений
+ */
+public interface AdRepositoryCustom {
+
+    /**
+     * Страница ленты с фильтрами и сортировкой, keyset-пагинация без OFFSET.
+     *
+     * @param after последняя строка предыдущей страницы (нужны id и поле сортировки) или null
+     */
+    List<AdSummary> findFeedPage(AdFeedFilter filter, AdSort sort, AdSummary after, int limit);
+
+}
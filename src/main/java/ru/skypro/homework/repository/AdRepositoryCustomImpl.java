@@ -0,0 +1,88 @@
+package ru.skypro.homework.repository;
+
+import ru.skypro.homework.model.dto.AdFeedFilter;
+import ru.skypro.homework.model.enums.AdSort;
+import ru.skypro.homework.model.projection.AdSummary;
+import ru.skypro.homework.model.projection.AdSummaryRow;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Каждое сочетание фильтра и сортировки обслуживается составным индексом
+ * (см. 006-feed-composite-indexes.sql): сортировка идет по индексу, а не по всей выборке.
+ */
+public class AdRepositoryCustomImpl implements AdRepositoryCustom {
+
+    private static final String FEED_SELECT = "SELECT new ru.skypro.homework.model.projection.AdSummaryRow(" +
+            "a.id, a.author.id, a.title, a.price, COALESCE(i.filePath, a.imagePath), a.createdAt, a.version) " +
+            "FROM AdEntity a LEFT JOIN a.image i";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<AdSummary> findFeedPage(AdFeedFilter filter, AdSort sort, AdSummary after, int limit) {
+        List<String> conditions = new ArrayList<>();
+        Map<String, Object> parameters = new HashMap<>();
+
+        if (filter.getAuthorId() != null) {
+            conditions.add("a.author.id = :authorId");
+            parameters.put("authorId", filter.getAuthorId());
+        }
+        if (filter.getMinPrice() != null) {
+            conditions.add("a.price >= :minPrice");
+            parameters.put("minPrice", filter.getMinPrice());
+        }
+        if (filter.getMaxPrice() != null) {
+            conditions.add("a.price <= :maxPrice");
+            parameters.put("maxPrice", filter.getMaxPrice());
+        }
+
+        String orderBy;
+        switch (sort) {
+            case PRICE_ASC:
+                orderBy = "a.price ASC, a.id ASC";
+                if (after != null) {
+                    conditions.add("(a.price > :afterPrice OR (a.price = :afterPrice AND a.id > :afterId))");
+                    parameters.put("afterPrice", after.getPrice());
+                }
+                break;
+            case PRICE_DESC:
+                orderBy = "a.price DESC, a.id DESC";
+                if (after != null) {
+                    conditions.add("(a.price < :afterPrice OR (a.price = :afterPrice AND a.id < :afterId))");
+                    parameters.put("afterPrice", after.getPrice());
+                }
+                break;
+            case NEWEST:
+            default:
+                orderBy = "a.createdAt DESC, a.id DESC";
+                if (after != null) {
+                    conditions.add("(a.createdAt < :afterCreatedAt OR (a.createdAt = :afterCreatedAt AND a.id < :afterId))");
+                    parameters.put("afterCreatedAt", after.getCreatedAt());
+                }
+                break;
+        }
+        if (after != null) {
+            parameters.put("afterId", after.getId());
+        }
+
+        StringBuilder jpql = new StringBuilder(FEED_SELECT);
+        if (!conditions.isEmpty()) {
+            jpql.append(" WHERE ").append(String.join(" AND ", conditions));
+        }
+        jpql.append(" ORDER BY ").append(orderBy);
+
+        TypedQuery<AdSummaryRow> query = entityManager.createQuery(jpql.toString(), AdSummaryRow.class);
+        parameters.forEach(query::setParameter);
+        query.setMaxResults(limit);
+        return new ArrayList<>(query.getResultList());
+    }
+
+}
@@ -0,0 +1,52 @@
+package ru.skypro.homework.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import ru.skypro.homework.model.entity.ClusterLockEntity;
+
+import java.time.LocalDateTime;
+
+/**
+ * Захват и продление - условные UPDATE/INSERT: из двух узлов строку меняет только один
+ */
+@Repository
+public interface ClusterLockRepository extends JpaRepository<ClusterLockEntity, String> {
+
+    /**
+     * Захватить истекшую блокировку; 1 - захвачена
+     */
+    @Modifying
+    @Query("UPDATE ClusterLockEntity l SET l.lockedUntil = :until, l.lockedAt = :now, l.lockedBy = :owner"
+            + " WHERE l.name = :name AND l.lockedUntil <= :now")
+    int acquireExpired(@Param("name") String name, @Param("owner") String owner,
+                       @Param("now") LocalDateTime now, @Param("until") LocalDateTime until);
+
+    /**
+     * Создать блокировку, если ее еще не было; 1 - создана и захвачена
+     */
+    @Modifying
+    @Query(value = "INSERT INTO cluster_locks (name, locked_until, locked_at, locked_by)"
+            + " VALUES (:name, :until, :now, :owner) ON CONFLICT DO NOTHING", nativeQuery = true)
+    int insertIfAbsent(@Param("name") String name, @Param("owner") String owner,
+                       @Param("now") LocalDateTime now, @Param("until") LocalDateTime until);
+
+    /**
+     * Продлить свою блокировку; 0 - она истекла и ее захватил другой узел
+     */
+    @Modifying
+    @Query("UPDATE ClusterLockEntity l SET l.lockedUntil = :until WHERE l.name = :name AND l.lockedBy = :owner"
+            + " AND l.lockedUntil > :now")
+    int extend(@Param("name") String name, @Param("owner") String owner,
+               @Param("now") LocalDateTime now, @Param("until") LocalDateTime until);
+
+    /**
+     * Отпустить свою блокировку: она сразу становится истекшей
+     */
+    @Modifying
+    @Query("UPDATE ClusterLockEntity l SET l.lockedUntil = :now WHERE l.name = :name AND l.lockedBy = :owner")
+    int release(@Param("name") String name, @Param("owner") String owner, @Param("now") LocalDateTime now);
+
+}
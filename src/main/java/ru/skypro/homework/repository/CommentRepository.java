@@ -5,6 +5,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import ru.skypro.homework.model.entity.CommentEntity;
+import ru.skypro.homework.model.projection.CommentVersion;
 
 import java.util.List;
 import java.util.Optional;
@@ -22,6 +23,10 @@ public interface CommentRepository extends JpaRepository<CommentEntity, Integer>
                                                               @Param("authorId") Integer authorId,
                                                               @Param("commentId") Integer commentId);
 
+    @Query("SELECT c.id AS id, c.version AS version, u.id AS authorId, u.version AS authorVersion " +
+            "FROM CommentEntity c JOIN c.author u WHERE c.ad.id = :adId ORDER BY c.id")
+    List<CommentVersion> findVersionsByAdId(@Param("adId") Integer adId);
+
     void deleteByAdId(Integer adId);
 
     Optional<CommentEntity> findByIdAndAdId(Integer id, Integer adId);
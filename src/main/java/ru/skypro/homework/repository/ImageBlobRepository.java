@@ -0,0 +1,85 @@
+package ru.skypro.homework.repository;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import ru.skypro.homework.model.entity.ImageBlobEntity;
+
+import javax.persistence.LockModeType;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Счетчики ссылок меняются одним UPDATE в БД: параллельные загрузки и удаления
+ * одной и той же картинки не теряют инкременты
+ */
+@Repository
+public interface ImageBlobRepository extends JpaRepository<ImageBlobEntity, String> {
+
+    /**
+     * +1 ссылка; 0 - такого содержимого в хранилище еще нет
+     */
+    @Modifying
+    @Query("UPDATE ImageBlobEntity b SET b.refCount = b.refCount + 1 WHERE b.contentHash = :hash")
+    int incrementRefCount(@Param("hash") String hash);
+
+    /**
+     * Создать запись со счетчиком 1, если ее нет; 1 - создана этой транзакцией, файл кладет она.
+     * Параллельная вставка того же хэша ждет коммита первой и ничего не вставляет (0),
+     * тогда ссылку нужно взять через incrementRefCount.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO image_blobs (content_hash, file_path, file_size, content_type, ref_count, created_at)"
+            + " VALUES (:hash, :filePath, :fileSize, :contentType, 1, CURRENT_TIMESTAMP)"
+            + " ON CONFLICT DO NOTHING", nativeQuery = true)
+    int insertIfAbsent(@Param("hash") String hash, @Param("filePath") String filePath,
+                       @Param("fileSize") long fileSize, @Param("contentType") String contentType);
+
+    @Modifying
+    @Query("UPDATE ImageBlobEntity b SET b.refCount = b.refCount - 1 WHERE b.contentHash = :hash AND b.refCount > 0")
+    int decrementRefCount(@Param("hash") String hash);
+
+    /**
+     * Выставить счетчик по фактическому числу ссылок (сверка), если он все еще равен прочитанному expected;
+     * 0 - счетчик успела поменять загрузка или удаление, исправит следующий прогон
+     */
+    @Modifying
+    @Query("UPDATE ImageBlobEntity b SET b.refCount = :refCount WHERE b.contentHash = :hash AND b.refCount = :expected")
+    int updateRefCount(@Param("hash") String hash, @Param("expected") int expected, @Param("refCount") int refCount);
+
+    /**
+     * Какие из хэшей есть в хранилище (для сверки файлов на диске пачками)
+     */
+    @Query("SELECT b.contentHash FROM ImageBlobEntity b WHERE b.contentHash IN :hashes")
+    List<String> findContentHashesIn(@Param("hashes") Collection<String> hashes);
+
+    /**
+     * Следующая пачка содержимого по хэшу (keyset)
+     */
+    @Query("SELECT b FROM ImageBlobEntity b WHERE b.contentHash > :afterHash ORDER BY b.contentHash")
+    List<ImageBlobEntity> findBatchAfter(@Param("afterHash") String afterHash, Pageable pageable);
+
+    /**
+     * Запись с блокировкой строки (SELECT ... FOR UPDATE): пока она держится, incrementRefCount
+     * и insertIfAbsent того же хэша ждут, так что файл можно удалять без гонки с повторной загрузкой
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT b FROM ImageBlobEntity b WHERE b.contentHash = :hash")
+    Optional<ImageBlobEntity> findByIdForUpdate(@Param("hash") String hash);
+
+    /**
+     * Удалить запись, если ссылок не осталось; 1 - удалена, файл можно удалять.
+     * Вызывается после коммита удаления картинки под блокировкой findByIdForUpdate: строки images
+     * к этому времени уже нет, а проверка NOT EXISTS страхует от разошедшегося счетчика.
+     */
+    @Modifying
+    @Query("DELETE FROM ImageBlobEntity b WHERE b.contentHash = :hash AND b.refCount <= 0"
+            + " AND NOT EXISTS (SELECT i FROM ImageEntity i WHERE i.blob = b)")
+    int deleteIfUnreferenced(@Param("hash") String hash);
+
+}
@@ -0,0 +1,28 @@
+package ru.skypro.homework.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import ru.skypro.homework.model.entity.ImageReconciliationRunEntity;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+@Repository
+public interface ImageReconciliationRunRepository extends JpaRepository<ImageReconciliationRunEntity, String> {
+
+    Optional<ImageReconciliationRunEntity> findFirstByOrderByStartedAtDesc();
+
+    /**
+     * Закрыть прогоны, оставшиеся RUNNING после падения узла: вызывается, когда блокировка
+     * сверки уже захвачена, значит ни один из них больше не идет
+     */
+    @Modifying
+    @Query("UPDATE ImageReconciliationRunEntity r SET r.status = ru.skypro.homework.model.enums.ReconciliationStatus.FAILED,"
+            + " r.finishedAt = :now, r.error = :error"
+            + " WHERE r.status = ru.skypro.homework.model.enums.ReconciliationStatus.RUNNING")
+    int failRunning(@Param("now") LocalDateTime now, @Param("error") String error);
+
+}
@@ -1,9 +1,16 @@
 package ru.skypro.homework.repository;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import ru.skypro.homework.model.entity.ImageEntity;
+import ru.skypro.homework.model.projection.BlobReferenceCount;
+import ru.skypro.homework.model.projection.ImageMetadataRow;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -15,4 +22,41 @@ public interface ImageRepository extends JpaRepository<ImageEntity, Integer> {
 
     void deleteByFilePath(String filePath);
 
+    /**
+     * Колонки ImageMetadataRow: картинка i, ее содержимое b и варианты v (LEFT JOIN, см. findImageMetadata)
+     */
+    String METADATA_COLUMNS = "b.filePath AS blobPath, i.contentType AS contentType, i.fileSize AS fileSize, "
+            + "i.contentHash AS contentHash, KEY(v) AS variant, VALUE(v) AS variantPath ";
+
+    String METADATA_JOINS = "LEFT JOIN i.blob b LEFT JOIN i.variants v ";
+
+    /**
+     * Метаданные картинки по ссылке одним запросом - строка на вариант
+     */
+    @Query("SELECT i.filePath AS imageUrl, " + METADATA_COLUMNS
+            + "FROM ImageEntity i " + METADATA_JOINS + "WHERE i.filePath = :url")
+    List<ImageMetadataRow> findImageMetadata(@Param("url") String url);
+
+    /**
+     * Какие из ссылок принадлежат картинкам (для сверки файлов на диске пачками)
+     */
+    @Query("SELECT i.filePath FROM ImageEntity i WHERE i.filePath IN :paths")
+    List<String> findFilePathsIn(@Param("paths") Collection<String> paths);
+
+    /**
+     * Какие из ссылок - файлы вариантов картинок
+     */
+    @Query("SELECT v FROM ImageEntity i JOIN i.variants v WHERE v IN :paths")
+    List<String> findVariantPathsIn(@Param("paths") Collection<String> paths);
+
+    /**
+     * Следующая пачка картинок по ID (keyset) вместе с содержимым из хранилища по хэшу
+     */
+    @Query("SELECT i FROM ImageEntity i LEFT JOIN FETCH i.blob WHERE i.id > :afterId ORDER BY i.id")
+    List<ImageEntity> findBatchAfter(@Param("afterId") Integer afterId, Pageable pageable);
+
+    @Query("SELECT i.blob.contentHash AS contentHash, COUNT(i) AS referenceCount FROM ImageEntity i"
+            + " WHERE i.blob.contentHash IN :hashes GROUP BY i.blob.contentHash")
+    List<BlobReferenceCount> countReferences(@Param("hashes") Collection<String> hashes);
+
 }
@@ -1,9 +1,15 @@
 package ru.skypro.homework.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import ru.skypro.homework.model.entity.UserEntity;
+import ru.skypro.homework.model.projection.EntityVersion;
+import ru.skypro.homework.model.projection.ImageMetadataRow;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -15,4 +21,20 @@ public interface UserRepository extends JpaRepository<UserEntity, Integer> {
 
     Optional<UserEntity> findByIdAndEmail(Integer id, String email);
 
+    @Query("SELECT u.id AS id, u.version AS version FROM UserEntity u WHERE u.email = :email")
+    Optional<EntityVersion> findVersionByEmail(@Param("email") String email);
+
+    /**
+     * Какие из ссылок записаны в users.image_path (сверка файлов картинок)
+     */
+    @Query("SELECT u.imagePath FROM UserEntity u WHERE u.imagePath IN :paths")
+    List<String> findImagePathsIn(@Param("paths") Collection<String> paths);
+
+    /**
+     * Метаданные аватара пользователя одним запросом (ImageMetadataResolver); пусто - пользователя нет
+     */
+    @Query("SELECT COALESCE(i.filePath, u.imagePath) AS imageUrl, " + ImageRepository.METADATA_COLUMNS
+            + "FROM UserEntity u LEFT JOIN u.image i " + ImageRepository.METADATA_JOINS + "WHERE u.id = :id")
+    List<ImageMetadataRow> findImageMetadata(@Param("id") Integer id);
+
 }
\ No newline at end of file
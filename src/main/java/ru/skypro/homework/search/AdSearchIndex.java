@@ -0,0 +1,254 @@
+package ru.skypro.homework.search;
+
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.skypro.homework.config.AfterCommit;
+import ru.skypro.homework.model.projection.AdSearchDocument;
+import ru.skypro.homework.repository.AdRepository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * Инвертированный индекс объявлений в памяти приложения (app.search.engine=memory).
+ * Строится при старте по заголовку и описанию, дальше обновляется из AdService после коммита.
+ * Поиск выполняется без обращения к базе, база нужна только для загрузки найденной страницы.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class AdSearchIndex {
+
+    public static final String ENGINE_MEMORY = "memory";
+
+    private final AdRepository adRepository;
+    private final PlatformTransactionManager transactionManager;
+
+    @org.springframework.beans.factory.annotation.Value("${app.search.engine:database}")
+    private String engine;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, PostingList> postings = new HashMap<>();
+    private final Map<Integer, IndexedAd> indexedAds = new HashMap<>();
+
+    public boolean isEnabled() {
+        return ENGINE_MEMORY.equalsIgnoreCase(engine);
+    }
+
+    /**
+     * Построить индекс по всем объявлениям
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        if (!isEnabled()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setReadOnly(true);
+
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+            indexedAds.clear();
+            transactionTemplate.executeWithoutResult(status -> {
+                try (Stream<AdSearchDocument> documents = adRepository.streamSearchDocuments()) {
+                    documents.forEach(document -> addToIndex(document.getId(), document.getTitle(),
+                            document.getDescription(), document.getPrice()));
+                }
+            });
+            log.info("Ad search index built: {} ads, {} terms in {} ms",
+                    indexedAds.size(), postings.size(), System.currentTimeMillis() - start);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Добавить или переиндексировать объявление (после коммита текущей транзакции)
+     */
+    public void indexAd(Integer id, String title, String description, Integer price) {
+        if (!isEnabled() || id == null) {
+            return;
+        }
+        AfterCommit.run(() -> {
+            lock.writeLock().lock();
+            try {
+                removeFromIndex(id);
+                addToIndex(id, title, description, price);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    /**
+     * Удалить объявление из индекса (после коммита текущей транзакции)
+     */
+    public void removeAd(Integer id) {
+        if (!isEnabled() || id == null) {
+            return;
+        }
+        AfterCommit.run(() -> {
+            lock.writeLock().lock();
+            try {
+                removeFromIndex(id);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    /**
+     * Найти объявления по термам запроса.
+     *
+     * @param anyTerm  true - достаточно одного терма (OR), false - нужны все термы (AND)
+     * @param after    последний результат предыдущей страницы или null
+     * @return найденные объявления по убыванию (score, id), не больше limit
+     */
+    public List<Hit> search(String query, boolean anyTerm, int minPrice, int maxPrice, Hit after, int limit) {
+        List<String> terms = AdTokenizer.terms(query);
+        if (terms.isEmpty()) {
+            return List.of();
+        }
+
+        lock.readLock().lock();
+        try {
+            List<Hit> hits = anyTerm ? matchAny(terms) : matchAll(terms);
+            List<Hit> result = new ArrayList<>();
+            hits.stream()
+                    .filter(hit -> {
+                        int price = indexedAds.get(hit.getId()).getPrice();
+                        return price >= minPrice && price <= maxPrice;
+                    })
+                    .filter(hit -> after == null || HIT_ORDER.compare(hit, after) > 0)
+                    .sorted(HIT_ORDER)
+                    .limit(limit)
+                    .forEach(result::add);
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return indexedAds.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static final Comparator<Hit> HIT_ORDER = Comparator.comparingInt(Hit::getScore).reversed()
+            .thenComparing(Comparator.comparingInt(Hit::getId).reversed());
+
+    private List<Hit> matchAll(List<String> terms) {
+        List<int[]> lists = new ArrayList<>();
+        for (String term : terms) {
+            PostingList postingList = postings.get(term);
+            if (postingList == null) {
+                return List.of();
+            }
+            lists.add(postingList.toArray());
+        }
+        // Начинаем с самого короткого списка, чтобы промежуточные пересечения были минимальными
+        lists.sort(Comparator.comparingInt(ids -> ids.length));
+        int[] matched = lists.get(0);
+        for (int i = 1; i < lists.size() && matched.length > 0; i++) {
+            matched = PostingList.intersect(matched, lists.get(i));
+        }
+
+        List<Hit> hits = new ArrayList<>(matched.length);
+        for (int id : matched) {
+            hits.add(new Hit(id, terms.size()));
+        }
+        return hits;
+    }
+
+    private List<Hit> matchAny(List<String> terms) {
+        int total = 0;
+        List<int[]> lists = new ArrayList<>();
+        for (String term : terms) {
+            PostingList postingList = postings.get(term);
+            if (postingList != null) {
+                lists.add(postingList.toArray());
+                total += postingList.size();
+            }
+        }
+
+        // Склеиваем списки и сортируем: длина серии одинаковых ID - число совпавших термов
+        int[] all = new int[total];
+        int offset = 0;
+        for (int[] ids : lists) {
+            System.arraycopy(ids, 0, all, offset, ids.length);
+            offset += ids.length;
+        }
+        Arrays.sort(all);
+
+        List<Hit> hits = new ArrayList<>();
+        int i = 0;
+        while (i < all.length) {
+            int j = i;
+            while (j < all.length && all[j] == all[i]) {
+                j++;
+            }
+            hits.add(new Hit(all[i], j - i));
+            i = j;
+        }
+        return hits;
+    }
+
+    private void addToIndex(Integer id, String title, String description, Integer price) {
+        List<String> terms = AdTokenizer.terms(title + " " + description);
+        for (String term : terms) {
+            postings.computeIfAbsent(term, key -> new PostingList()).add(id);
+        }
+        indexedAds.put(id, new IndexedAd(price != null ? price : 0, terms.toArray(new String[0])));
+    }
+
+    private void removeFromIndex(Integer id) {
+        IndexedAd previous = indexedAds.remove(id);
+        if (previous == null) {
+            return;
+        }
+        for (String term : previous.getTerms()) {
+            PostingList postingList = postings.get(term);
+            if (postingList != null) {
+                postingList.remove(id);
+                if (postingList.isEmpty()) {
+                    postings.remove(term);
+                }
+            }
+        }
+    }
+
+    /**
+     * Найденное объявление: ID и число совпавших термов запроса
+     */
+    @Value
+    public static class Hit {
+        int id;
+        int score;
+    }
+
+    @Value
+    private static class IndexedAd {
+        int price;
+        String[] terms;
+    }
+
+}
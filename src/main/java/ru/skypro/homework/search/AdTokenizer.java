@@ -0,0 +1,86 @@
+package ru.skypro.homework.search;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Разбиение текста объявлений на слова и термы поискового индекса.
+ * Стемминг упрощенный: отсекаются типовые окончания русских слов и множественное число английских.
+ */
+public final class AdTokenizer {
+
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private static final int MIN_STEM_LENGTH = 3;
+
+    // Отсортированы по убыванию длины - отсекается самое длинное подходящее окончание
+    private static final String[] RUSSIAN_ENDINGS = {
+            "иями", "ями", "ами", "ией", "ием", "иях", "ого", "его", "ому", "ему", "ыми", "ими",
+            "ая", "яя", "ое", "ее", "ые", "ие", "ый", "ий", "ой", "ей", "ом", "ем", "ам", "ям",
+            "ах", "ях", "ую", "юю", "ов", "ев",
+            "а", "я", "о", "е", "ы", "и", "у", "ю", "ь", "й"
+    };
+
+    private AdTokenizer() {
+    }
+
+    /**
+     * Слова текста в нижнем регистре (ё заменяется на е), без стемминга
+     */
+    public static List<String> words(String text) {
+        List<String> words = new ArrayList<>();
+        if (text == null) {
+            return words;
+        }
+        for (String word : NON_WORD.split(text.toLowerCase(Locale.ROOT).replace('ё', 'е'))) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Уникальные термы текста после стемминга в порядке появления
+     */
+    public static List<String> terms(String text) {
+        Set<String> terms = new LinkedHashSet<>();
+        for (String word : words(text)) {
+            terms.add(stem(word));
+        }
+        return new ArrayList<>(terms);
+    }
+
+    static String stem(String word) {
+        if (isCyrillic(word)) {
+            for (String ending : RUSSIAN_ENDINGS) {
+                if (word.endsWith(ending) && word.length() - ending.length() >= MIN_STEM_LENGTH) {
+                    return word.substring(0, word.length() - ending.length());
+                }
+            }
+            return word;
+        }
+        if (word.length() > MIN_STEM_LENGTH + 1 && word.endsWith("ies")) {
+            return word.substring(0, word.length() - 3) + "y";
+        }
+        if (word.length() > MIN_STEM_LENGTH && word.endsWith("s")
+                && !word.endsWith("ss") && !word.endsWith("us")) {
+            return word.substring(0, word.length() - 1);
+        }
+        return word;
+    }
+
+    private static boolean isCyrillic(String word) {
+        for (int i = 0; i < word.length(); i++) {
+            if (Character.UnicodeBlock.of(word.charAt(i)) == Character.UnicodeBlock.CYRILLIC) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
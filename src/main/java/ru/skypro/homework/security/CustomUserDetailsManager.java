@@ -1,29 +1,86 @@
 package ru.skypro.homework.security;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.provisioning.UserDetailsManager;
 import org.springframework.stereotype.Component;
+import ru.skypro.homework.config.AfterCommit;
+import ru.skypro.homework.config.ReadReplicaRoutingDataSource;
 import ru.skypro.homework.model.entity.UserEntity;
 import ru.skypro.homework.repository.UserRepository;
 import org.springframework.security.core.userdetails.User;
 import org.springframework.security.crypto.password.PasswordEncoder;
 
-import java.time.LocalDateTime;
+import javax.annotation.PostConstruct;
+import java.time.Duration;
 import java.util.Optional;
 
+/**
+ * Пользователи для Spring Security. httpBasic вызывает loadUserByUsername на каждый запрос, поэтому
+ * UserDetails (email, хэш пароля, роль) кэшируются по email: попадание обходится без БД.
+ * Кэш ограничен по размеру и времени жизни записи, запись сбрасывается после коммита смены пароля,
+ * изменения или удаления пользователя (evict). Сброс локальный: на других узлах старый пароль
+ * и старая роль действуют до истечения ttl, поэтому ttl короткий - это цена того, что запрос
+ * не ходит в БД. Кэш можно выключить, задав ttl=0.
+ * Отсутствие пользователя не кэшируется. Наружу отдается копия записи: ProviderManager стирает пароль
+ * в UserDetails после аутентификации (eraseCredentials), и общий объект из кэша остался бы без пароля.
+ * Статистика - в метриках cache.* с тегом cache=security.users.
+ */
 @Component
 @RequiredArgsConstructor
 public class CustomUserDetailsManager implements UserDetailsManager {
 
+    public static final String CACHE_NAME = "security.users";
+
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.security.user-cache.maximum-size:10000}")
+    private long maximumSize;
+
+    @Value("${app.security.user-cache.ttl:PT30S}")
+    private Duration ttl;
+
+    private Cache<String, UserDetails> cache;
+
+    @PostConstruct
+    void init() {
+        cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
 
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-        Optional<UserEntity> userEntityOpt = userRepository.findByEmail(username);
+        return User.withUserDetails(cache.get(username, this::loadUser)).build();
+    }
+
+    /**
+     * Сбросить пользователя после коммита текущей транзакции: сменились пароль, роль или email,
+     * пользователь удален
+     */
+    public void evict(String username) {
+        AfterCommit.run(() -> cache.invalidate(username));
+    }
 
+    /**
+     * Пользователь читается с primary: аутентификация идет до того, как известен principal, поэтому
+     * read-your-writes маршрутизации ее не защищает, а отстающая реплика после смены пароля
+     * положила бы в кэш старый хэш на весь ttl
+     */
+    private UserDetails loadUser(String username) {
+        Optional<UserEntity> userEntityOpt =
+                ReadReplicaRoutingDataSource.onPrimary(() -> userRepository.findByEmail(username));
         if (userEntityOpt.isEmpty()) {
             throw new UsernameNotFoundException("User not found with email: " + username);
         }
@@ -51,6 +108,7 @@ public class CustomUserDetailsManager implements UserDetailsManager {
 
         userEntity.setPassword(userDetails.getPassword());
         userRepository.save(userEntity);
+        evict(userEntity.getEmail());
     }
 
     @Override
@@ -58,6 +116,7 @@ public class CustomUserDetailsManager implements UserDetailsManager {
         UserEntity userEntity = userRepository.findByEmail(username)
                 .orElseThrow(() -> new UsernameNotFoundException("User not found: " + username));
         userRepository.delete(userEntity);
+        evict(username);
     }
 
     @Override
@@ -75,6 +134,7 @@ public class CustomUserDetailsManager implements UserDetailsManager {
 
         userEntity.setPassword(passwordEncoder.encode(newPassword));
         userRepository.save(userEntity);
+        evict(username);
     }
 
     @Override
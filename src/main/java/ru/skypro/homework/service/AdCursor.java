@@ -0,0 +1,103 @@
+package ru.skypro.homework.service;
+
+import lombok.Value;
+import ru.skypro.homework.model.enums.AdSort;
+import ru.skypro.homework.model.projection.AdSummary;
+import ru.skypro.homework.model.projection.AdSummaryRow;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.regex.Pattern;
+
+/**
+ * Позиция в выдаче объявлений для keyset-пагинации: порядок выдачи, ключ сортировки и id
+ * последнего объявления страницы (id различает объявления с равным ключом).
+ * Порядок - сортировка ленты (AdSort, ключ created_at или price) или RELEVANCE для поиска (ключ - ранг).
+ * Клиенту передается в виде непрозрачной base64-строки.
+ */
+@Value
+public class AdCursor {
+
+    public static final String RELEVANCE = "RELEVANCE";
+
+    private static final String SEPARATOR = "|";
+
+    String order;
+    Object key;
+    Integer id;
+
+    public static AdCursor of(AdSort sort, AdSummary last) {
+        Object key = sort == AdSort.NEWEST ? last.getCreatedAt() : last.getPrice();
+        return new AdCursor(sort.name(), key, last.getId());
+    }
+
+    public static AdCursor ofRank(float rank, Integer id) {
+        return new AdCursor(RELEVANCE, rank, id);
+    }
+
+    /**
+     * Строка ленты, после которой начинается следующая страница
+     *
+     * @throws IllegalArgumentException если курсор выдан для другого порядка
+     */
+    public AdSummary toAnchor(AdSort sort) {
+        requireOrder(sort.name());
+        return sort == AdSort.NEWEST
+                ? new AdSummaryRow(id, null, null, null, null, (LocalDateTime) key, null)
+                : new AdSummaryRow(id, null, null, (Integer) key, null, null, null);
+    }
+
+    /**
+     * Ранг последнего результата поиска
+     *
+     * @throws IllegalArgumentException если курсор выдан не поиском
+     */
+    public float getRank() {
+        requireOrder(RELEVANCE);
+        return (Float) key;
+    }
+
+    public String encode() {
+        String raw = order + SEPARATOR + key + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Разобрать курсор, полученный от клиента
+     *
+     * @throws IllegalArgumentException если курсор поврежден
+     */
+    public static AdCursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split(Pattern.quote(SEPARATOR), -1);
+            if (parts.length != 3) {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor);
+            }
+            String order = parts[0];
+            Integer id = Integer.valueOf(parts[2]);
+            return new AdCursor(order, parseKey(order, parts[1]), id);
+        } catch (DateTimeParseException | IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+    }
+
+    private static Object parseKey(String order, String key) {
+        if (RELEVANCE.equals(order)) {
+            return Float.valueOf(key);
+        }
+        // Ключ ленты не бывает NULL (created_at и price NOT NULL): "null" - поврежденный курсор
+        AdSort sort = AdSort.valueOf(order);
+        return sort == AdSort.NEWEST ? LocalDateTime.parse(key) : Integer.valueOf(key);
+    }
+
+    private void requireOrder(String expected) {
+        if (!expected.equals(order)) {
+            throw new IllegalArgumentException("Cursor was issued for " + order + ", not " + expected);
+        }
+    }
+
+}
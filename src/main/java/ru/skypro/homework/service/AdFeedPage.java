@@ -0,0 +1,18 @@
+package ru.skypro.homework.service;
+
+import lombok.Value;
+import ru.skypro.homework.model.projection.AdSummary;
+
+import java.util.List;
+
+/**
+ * Загруженная страница ленты до маппинга в DTO: строки, курсор следующей страницы и ETag
+ */
+@Value
+public class AdFeedPage {
+
+    List<AdSummary> ads;
+    String nextCursor;
+    String eTag;
+
+}
@@ -0,0 +1,237 @@
+package ru.skypro.homework.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+import ru.skypro.homework.model.dto.AdImage;
+import ru.skypro.homework.model.dto.AdImages;
+import ru.skypro.homework.model.entity.AdEntity;
+import ru.skypro.homework.model.entity.ImageEntity;
+import ru.skypro.homework.repository.AdRepository;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Галерея объявления: несколько картинок, их порядок и главная картинка (ее показывают лента и поиск).
+ * Картинки одной загрузки пишутся параллельно на ограниченном пуле upload-threads, поэтому загрузка
+ * из десяти фотографий длится примерно как самая долгая из них. Если очередь пула заполнена,
+ * картинка пишется в потоке запроса.
+ * Соединение с БД на время записи файлов не держится: файл пишется и хэшируется вне транзакции,
+ * ссылка на содержимое берется короткой транзакцией (ImageService.writeAdImage), а объявление
+ * меняется одной короткой транзакцией после того, как записаны все картинки. Если хоть одна не записалась, уже записанные отпускаются
+ * и объявление не меняется.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class AdGalleryService {
+
+    private final AdRepository adRepository;
+    private final ImageService imageService;
+    private final ExtendedAdCache extendedAdCache;
+    private final ImageMetadataResolver imageMetadataResolver;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${app.ads.gallery.max-images:20}")
+    private int maxImages;
+
+    @Value("${app.ads.gallery.upload-threads:8}")
+    private int uploadThreads;
+
+    @Value("${app.ads.gallery.queue-capacity:100}")
+    private int queueCapacity;
+
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    void init() {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("ad-gallery-upload-");
+        threadFactory.setDaemon(true);
+        executor = new ThreadPoolExecutor(uploadThreads, uploadThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), threadFactory, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Картинки объявления в порядке показа
+     */
+    @Transactional(readOnly = true)
+    public AdImages getImages(Integer adId) {
+        return toAdImages(findAd(adId));
+    }
+
+    /**
+     * Добавить картинки в конец галереи. Первая картинка объявления без картинок становится главной.
+     * IllegalArgumentException - пустая загрузка, картинок больше max-images, файл не картинка или слишком большой.
+     */
+    @PreAuthorize("hasRole('ADMIN') or @adService.isAdOwner(#adId, authentication.name)")
+    public AdImages addImages(Integer adId, List<MultipartFile> files) {
+        if (files == null || files.isEmpty()) {
+            throw new IllegalArgumentException("No images to upload");
+        }
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        Integer existing = transaction.execute(status -> findAd(adId).getImages().size());
+        checkLimit(existing + files.size());
+
+        List<ImageEntity> written = writeAll(files);
+        try {
+            return transaction.execute(status -> {
+                AdEntity adEntity = findAd(adId);
+                checkLimit(adEntity.getImages().size() + written.size());
+                for (ImageEntity image : written) {
+                    adEntity.addImage(image);
+                    imageService.scheduleVariants(image.getFilePath());
+                }
+                adEntity.setUpdatedAt(LocalDateTime.now());
+                AdEntity saved = adRepository.save(adEntity);
+                evict(adId);
+                log.info("Added {} images to ad {}", written.size(), adId);
+                return toAdImages(saved);
+            });
+        } catch (RuntimeException e) {
+            written.forEach(imageService::releaseUnsavedImage);
+            throw e;
+        }
+    }
+
+    /**
+     * Сделать картинку галереи главной. IllegalArgumentException - картинка не из этого объявления.
+     */
+    @Transactional
+    @PreAuthorize("hasRole('ADMIN') or @adService.isAdOwner(#adId, authentication.name)")
+    public AdImages setMainImage(Integer adId, Integer imageId) {
+        AdEntity adEntity = findAd(adId);
+        ImageEntity image = adEntity.getImages().stream()
+                .filter(candidate -> candidate.getId().equals(imageId))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Image " + imageId + " is not in ad " + adId));
+        adEntity.setImage(image);
+        adEntity.setUpdatedAt(LocalDateTime.now());
+        AdEntity saved = adRepository.save(adEntity);
+        evict(adId);
+        return toAdImages(saved);
+    }
+
+    /**
+     * Задать порядок галереи: imageIds - все картинки объявления, каждая один раз.
+     * Главная картинка не меняется.
+     */
+    @Transactional
+    @PreAuthorize("hasRole('ADMIN') or @adService.isAdOwner(#adId, authentication.name)")
+    public AdImages reorderImages(Integer adId, List<Integer> imageIds) {
+        AdEntity adEntity = findAd(adId);
+        Map<Integer, ImageEntity> images = adEntity.getImages().stream()
+                .collect(Collectors.toMap(ImageEntity::getId, Function.identity()));
+        if (imageIds == null || imageIds.size() != images.size()
+                || !new HashSet<>(imageIds).equals(images.keySet())) {
+            throw new IllegalArgumentException("Expected every image of ad " + adId + " exactly once: "
+                    + images.keySet());
+        }
+        List<ImageEntity> ordered = new ArrayList<>(imageIds.size());
+        for (int position = 0; position < imageIds.size(); position++) {
+            ImageEntity image = images.get(imageIds.get(position));
+            image.setPosition(position);
+            ordered.add(image);
+        }
+        adEntity.getImages().clear();
+        adEntity.getImages().addAll(ordered);
+        return toAdImages(adRepository.save(adEntity));
+    }
+
+    /**
+     * Записать файлы параллельно. При первой же ошибке дожидается остальных и отпускает записанные.
+     */
+    private List<ImageEntity> writeAll(List<MultipartFile> files) {
+        List<CompletableFuture<ImageEntity>> uploads = files.stream()
+                .map(file -> CompletableFuture.supplyAsync(() -> write(file), executor))
+                .collect(Collectors.toList());
+
+        List<ImageEntity> written = new ArrayList<>(files.size());
+        RuntimeException failure = null;
+        for (CompletableFuture<ImageEntity> upload : uploads) {
+            try {
+                written.add(upload.join());
+            } catch (CompletionException e) {
+                if (failure == null) {
+                    failure = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+                }
+            }
+        }
+        if (failure != null) {
+            written.forEach(imageService::releaseUnsavedImage);
+            throw failure;
+        }
+        return written;
+    }
+
+    private ImageEntity write(MultipartFile file) {
+        try (InputStream content = file.getInputStream()) {
+            return imageService.writeAdImage(content, file.getOriginalFilename());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to store image " + file.getOriginalFilename(), e);
+        }
+    }
+
+    private void checkLimit(int count) {
+        if (count > maxImages) {
+            throw new IllegalArgumentException("An ad can have at most " + maxImages + " images");
+        }
+    }
+
+    private AdEntity findAd(Integer adId) {
+        return adRepository.findById(adId)
+                .orElseThrow(() -> new RuntimeException("Ad not found"));
+    }
+
+    private void evict(Integer adId) {
+        extendedAdCache.evict(adId);
+        imageMetadataResolver.evictAd(adId);
+    }
+
+    private static AdImages toAdImages(AdEntity adEntity) {
+        ImageEntity main = adEntity.getImage();
+        List<AdImage> results = adEntity.getImages().stream()
+                .map(image -> {
+                    AdImage adImage = new AdImage();
+                    adImage.setId(image.getId());
+                    adImage.setImage(image.getFilePath());
+                    adImage.setMain(main == image || main != null && main.getId() != null
+                            && Objects.equals(main.getId(), image.getId()));
+                    return adImage;
+                })
+                .collect(Collectors.toList());
+        AdImages adImages = new AdImages();
+        adImages.setCount(results.size());
+        adImages.setResults(results);
+        return adImages;
+    }
+
+}
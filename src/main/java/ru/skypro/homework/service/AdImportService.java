@@ -0,0 +1,395 @@
+package ru.skypro.homework.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.RuntimeJsonMappingException;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+import ru.skypro.homework.mapper.AdMapper;
+import ru.skypro.homework.model.dto.AdImportError;
+import ru.skypro.homework.model.dto.AdImportRecord;
+import ru.skypro.homework.model.dto.AdImportReport;
+import ru.skypro.homework.model.entity.AdEntity;
+import ru.skypro.homework.model.entity.ImageEntity;
+import ru.skypro.homework.model.entity.UserEntity;
+import ru.skypro.homework.repository.AdRepository;
+import ru.skypro.homework.repository.UserRepository;
+import ru.skypro.homework.search.AdSearchIndex;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Массовый импорт объявлений текущего пользователя из NDJSON или CSV.
+ * Записи читаются и проверяются потоком по одной, объявления сохраняются пачками
+ * по app.ads.import.batch-size в отдельных транзакциях (INSERT уходят JDBC-батчами).
+ * Если пачка не сохранилась, ее записи сохраняются по одной, чтобы найти и отчитаться о плохих.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class AdImportService {
+
+    public static final String FORMAT_CSV = "csv";
+    public static final String FORMAT_NDJSON = "ndjson";
+
+    private final AdRepository adRepository;
+    private final UserRepository userRepository;
+    private final UserService userService;
+    private final ImageService imageService;
+    private final AdMapper adMapper;
+    private final AdSearchIndex adSearchIndex;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${app.ads.import.batch-size:500}")
+    private int batchSize;
+
+    @Value("${app.ads.import.max-errors:1000}")
+    private int maxErrors;
+
+    /**
+     * Импортировать объявления
+     *
+     * @param file   записи CreateOrUpdateAd (+ необязательный путь к картинке в архиве)
+     * @param images zip-архив с картинками, может быть null
+     * @param format csv или ndjson; если null - определяется по имени и типу файла
+     * @throws IllegalArgumentException если формат не поддерживается или архив поврежден
+     */
+    public AdImportReport importAds(MultipartFile file, MultipartFile images, String format) throws IOException {
+        String importFormat = resolveFormat(file, format);
+        Integer authorId = userService.getCurrentUserEntity().getId();
+        AdImportReport report = new AdImportReport();
+
+        Path archivePath = null;
+        ZipFile archive = null;
+        try {
+            if (images != null && !images.isEmpty()) {
+                // ZipFile нужен произвольный доступ к записям, поэтому архив кладем во временный файл
+                archivePath = Files.createTempFile("ads-import-", ".zip");
+                images.transferTo(archivePath);
+                archive = openArchive(archivePath);
+            }
+
+            List<PreparedAd> chunk = new ArrayList<>(batchSize);
+            try (RecordReader records = openRecords(importFormat, file.getInputStream())) {
+                ParsedRecord parsed;
+                while ((parsed = records.next()) != null) {
+                    report.setTotal(report.getTotal() + 1);
+                    if (parsed.getError() != null) {
+                        reject(report, parsed.getRow(), parsed.getError());
+                        continue;
+                    }
+                    PreparedAd prepared = prepare(parsed.getRow(), parsed.getRecord(), archive, report);
+                    if (prepared != null) {
+                        chunk.add(prepared);
+                        if (chunk.size() >= batchSize) {
+                            persistChunk(chunk, authorId, report);
+                        }
+                    }
+                }
+                persistChunk(chunk, authorId, report);
+            } finally {
+                // Импорт прерван посреди пачки (испорченный файл, сбой чтения): картинки уже записаны
+                // и держат ссылки на содержимое, а объявлений для них не будет
+                releaseUnsaved(chunk);
+            }
+        } finally {
+            if (archive != null) {
+                archive.close();
+            }
+            if (archivePath != null) {
+                Files.deleteIfExists(archivePath);
+            }
+        }
+
+        report.getErrors().sort(Comparator.comparing(AdImportError::getRow));
+        log.info("Ads import by user {}: {} records, {} imported, {} failed",
+                authorId, report.getTotal(), report.getImported(), report.getFailed());
+        return report;
+    }
+
+    private String resolveFormat(MultipartFile file, String format) {
+        if (format != null && !format.isBlank()) {
+            String requested = format.trim().toLowerCase();
+            if (!FORMAT_CSV.equals(requested) && !FORMAT_NDJSON.equals(requested)) {
+                throw new IllegalArgumentException("Unsupported import format: " + format);
+            }
+            return requested;
+        }
+        String filename = file.getOriginalFilename();
+        String contentType = file.getContentType();
+        boolean csv = (filename != null && filename.toLowerCase().endsWith(".csv"))
+                || (contentType != null && contentType.startsWith("text/csv"));
+        return csv ? FORMAT_CSV : FORMAT_NDJSON;
+    }
+
+    private ZipFile openArchive(Path archivePath) {
+        try {
+            return new ZipFile(archivePath.toFile());
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Images archive is not a valid zip file", e);
+        }
+    }
+
+    private RecordReader openRecords(String format, InputStream content) throws IOException {
+        if (FORMAT_CSV.equals(format)) {
+            MappingIterator<AdImportRecord> rows = new CsvMapper().readerFor(AdImportRecord.class)
+                    .with(CsvSchema.emptySchema().withHeader())
+                    .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+                    .readValues(content);
+            return new CsvRecordReader(rows);
+        }
+        return new NdjsonRecordReader(objectMapper,
+                new BufferedReader(new InputStreamReader(content, StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Проверить запись и извлечь ее картинку из архива
+     *
+     * @return подготовленная запись или null, если запись отклонена
+     */
+    private PreparedAd prepare(long row, AdImportRecord record, ZipFile archive, AdImportReport report) {
+        Set<ConstraintViolation<AdImportRecord>> violations = validator.validate(record);
+        if (!violations.isEmpty()) {
+            reject(report, row, violations.stream()
+                    .map(violation -> violation.getPropertyPath() + " " + violation.getMessage())
+                    .sorted()
+                    .collect(Collectors.joining("; ")));
+            return null;
+        }
+
+        String imageName = record.getImage();
+        if (imageName == null || imageName.isBlank()) {
+            return new PreparedAd(row, record, null);
+        }
+        if (archive == null) {
+            reject(report, row, "Image " + imageName + " referenced, but no images archive uploaded");
+            return null;
+        }
+        ZipEntry entry = archive.getEntry(imageName.trim().replaceFirst("^\\.?/", ""));
+        if (entry == null || entry.isDirectory()) {
+            reject(report, row, "Image " + imageName + " not found in archive");
+            return null;
+        }
+        try (InputStream image = archive.getInputStream(entry)) {
+            ImageEntity imageEntity = imageService.writeAdImage(image, entry.getName());
+            return new PreparedAd(row, record, imageEntity);
+        } catch (IllegalArgumentException e) {
+            reject(report, row, "Image " + imageName + " rejected: " + e.getMessage());
+            return null;
+        } catch (IOException e) {
+            log.warn("Failed to extract image {} for import row {}", imageName, row, e);
+            reject(report, row, "Image " + imageName + " could not be read");
+            return null;
+        }
+    }
+
+    /**
+     * Сохранить пачку; обработанные записи (сохраненные или отклоненные) из нее удаляются,
+     * так что после сбоя в пачке остаются только записи, до которых дело не дошло
+     */
+    private void persistChunk(List<PreparedAd> chunk, Integer authorId, AdImportReport report) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        try {
+            transactionTemplate.executeWithoutResult(status -> save(chunk, authorId));
+            report.setImported(report.getImported() + chunk.size());
+            chunk.clear();
+        } catch (RuntimeException chunkFailure) {
+            log.warn("Ads import batch of {} failed, retrying row by row", chunk.size(), chunkFailure);
+            for (Iterator<PreparedAd> rows = chunk.iterator(); rows.hasNext(); ) {
+                PreparedAd prepared = rows.next();
+                try {
+                    transactionTemplate.executeWithoutResult(status -> save(List.of(prepared), authorId));
+                    report.setImported(report.getImported() + 1);
+                } catch (RuntimeException e) {
+                    if (prepared.getImage() != null) {
+                        imageService.releaseUnsavedImage(prepared.getImage());
+                    }
+                    reject(report, prepared.getRow(), "Could not be saved: " + e.getMessage());
+                }
+                rows.remove();
+            }
+        }
+    }
+
+    /**
+     * Отпустить картинки записей, которые так и не дошли до сохранения
+     */
+    private void releaseUnsaved(List<PreparedAd> chunk) {
+        for (PreparedAd prepared : chunk) {
+            if (prepared.getImage() == null) {
+                continue;
+            }
+            try {
+                imageService.releaseUnsavedImage(prepared.getImage());
+            } catch (RuntimeException e) {
+                log.warn("Failed to release image {} of aborted import row {}",
+                        prepared.getImage().getFilePath(), prepared.getRow(), e);
+            }
+        }
+        chunk.clear();
+    }
+
+    private void save(List<PreparedAd> chunk, Integer authorId) {
+        UserEntity author = userRepository.getReferenceById(authorId);
+        List<AdEntity> entities = new ArrayList<>(chunk.size());
+        for (PreparedAd prepared : chunk) {
+            AdEntity adEntity = adMapper.createOrUpdateAdToEntity(prepared.getRecord());
+            adEntity.setAuthor(author);
+            if (prepared.getImage() != null) {
+                // Копия: при повторе пачки по одной записи сущность из отмененной транзакции не годится
+                ImageEntity image = new ImageEntity();
+                image.setFilePath(prepared.getImage().getFilePath());
+                image.setContentType(prepared.getImage().getContentType());
+                image.setFileSize(prepared.getImage().getFileSize());
+                image.setOriginalFileName(prepared.getImage().getOriginalFileName());
+                image.setContentHash(prepared.getImage().getContentHash());
+                image.setBlob(prepared.getImage().getBlob());
+                adEntity.addImage(image);
+            }
+            entities.add(adEntity);
+        }
+        adRepository.saveAll(entities);
+        entities.forEach(ad -> adSearchIndex.indexAd(ad.getId(), ad.getTitle(), ad.getDescription(), ad.getPrice()));
+        entities.stream()
+                .flatMap(ad -> ad.getImages().stream())
+                .forEach(image -> imageService.scheduleVariants(image.getFilePath()));
+    }
+
+    private void reject(AdImportReport report, long row, String message) {
+        report.setFailed(report.getFailed() + 1);
+        if (report.getErrors().size() < maxErrors) {
+            report.getErrors().add(new AdImportError(row, message));
+        }
+    }
+
+    /**
+     * Проверенная запись вместе с уже записанной на диск картинкой
+     */
+    @lombok.Value
+    private static class PreparedAd {
+        long row;
+        AdImportRecord record;
+        ImageEntity image;
+    }
+
+    /**
+     * Разобранная запись входного файла или ошибка разбора с номером строки
+     */
+    @lombok.Value
+    private static class ParsedRecord {
+        long row;
+        AdImportRecord record;
+        String error;
+    }
+
+    private interface RecordReader extends Closeable {
+
+        /**
+         * @return следующая запись или null, если файл закончился
+         */
+        ParsedRecord next() throws IOException;
+    }
+
+    /**
+     * NDJSON разбирается построчно: испорченная строка - ошибка только этой строки.
+     * Номер строки в отчете - номер строки файла.
+     */
+    @RequiredArgsConstructor
+    private static class NdjsonRecordReader implements RecordReader {
+
+        private final ObjectMapper objectMapper;
+        private final BufferedReader reader;
+        private long line;
+
+        @Override
+        public ParsedRecord next() throws IOException {
+            String text;
+            do {
+                text = reader.readLine();
+                if (text == null) {
+                    return null;
+                }
+                line++;
+            } while (text.isBlank());
+            try {
+                return new ParsedRecord(line, objectMapper.readValue(text, AdImportRecord.class), null);
+            } catch (JsonProcessingException e) {
+                return new ParsedRecord(line, null, "Malformed record: " + e.getOriginalMessage());
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
+    /**
+     * CSV с заголовком. Номер строки в отчете - номер записи без учета заголовка.
+     * Если поток CSV испорчен так, что дальше читать нельзя, импорт останавливается с ошибкой.
+     */
+    @RequiredArgsConstructor
+    private static class CsvRecordReader implements RecordReader {
+
+        private final MappingIterator<AdImportRecord> rows;
+        private long row;
+        private boolean broken;
+
+        @Override
+        public ParsedRecord next() throws IOException {
+            if (broken) {
+                return null;
+            }
+            try {
+                if (!rows.hasNextValue()) {
+                    return null;
+                }
+                row++;
+                return new ParsedRecord(row, rows.nextValue(), null);
+            } catch (RuntimeJsonMappingException e) {
+                return new ParsedRecord(row, null, "Malformed record: " + e.getMessage());
+            } catch (JsonProcessingException e) {
+                broken = true;
+                return new ParsedRecord(Math.max(row, 1), null,
+                        "Unreadable input, import stopped: " + e.getOriginalMessage());
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            rows.close();
+        }
+    }
+
+}
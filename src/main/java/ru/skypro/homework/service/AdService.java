@@ -1,26 +1,46 @@
 package ru.skypro.homework.service;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 import ru.skypro.homework.mapper.AdMapper;
 import ru.skypro.homework.model.dto.Ad;
+import ru.skypro.homework.model.dto.AdFeedFilter;
 import ru.skypro.homework.model.dto.Ads;
 import ru.skypro.homework.model.dto.CreateOrUpdateAd;
 import ru.skypro.homework.model.dto.ExtendedAd;
 import ru.skypro.homework.model.entity.AdEntity;
 import ru.skypro.homework.model.entity.ImageEntity;
 import ru.skypro.homework.model.entity.UserEntity;
+import ru.skypro.homework.model.enums.AdSort;
+import ru.skypro.homework.model.enums.ImageVariant;
+import ru.skypro.homework.model.projection.AdSearchResult;
+import ru.skypro.homework.model.projection.AdSummary;
 import ru.skypro.homework.repository.AdRepository;
+import ru.skypro.homework.search.AdSearchIndex;
+import ru.skypro.homework.search.AdTokenizer;
 
-import javax.transaction.Transactional;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.time.LocalDateTime;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Slf4j
 @Service
@@ -31,82 +51,117 @@ public class AdService {
     private final UserService userService;
     private final ImageService imageService;
     private final AdMapper adMapper;
+    private final ObjectMapper objectMapper;
+    private final AdSearchIndex adSearchIndex;
+    private final ExtendedAdCache extendedAdCache;
+    private final ImageMetadataResolver imageMetadataResolver;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${app.ads.page-size:20}")
+    private int defaultPageSize;
+
+    @Value("${app.ads.max-page-size:100}")
+    private int maxPageSize;
 
     /**
-     * Создать объявление
+     * Создать объявление. Картинка пишется и хэшируется до транзакции (ImageService.writeAdImage),
+     * соединение с БД берется только на короткую транзакцию, в которой сохраняется объявление.
      */
-    @Transactional
     public Ad createAd(CreateOrUpdateAd createAd, MultipartFile image) {
-        UserEntity author = userService.getCurrentUserEntity();
+        ImageEntity imageEntity = null;
+        if (image != null && !image.isEmpty()) {
+            try {
+                imageEntity = writeImage(image);
+            } catch (IOException e) {
+                log.error("Failed to save ad image", e);
+                throw new RuntimeException("Failed to save image", e);
+            }
+        }
 
+        ImageEntity written = imageEntity;
         try {
-            // Создаем объявление
-            AdEntity adEntity = adMapper.createOrUpdateAdToEntity(createAd);
-            adEntity.setAuthor(author);
-            adEntity.setCreatedAt(LocalDateTime.now());
-
-            // Сохраняем картинку и получаем ImageEntity
-            if (image != null && !image.isEmpty()) {
-                // Сохраняем объявление чтобы получить ID
-                AdEntity savedEntity = adRepository.save(adEntity);
-
-                // Сохраняем изображение с привязкой к объявлению
-                ImageEntity imageEntity = imageService.saveAdImageEntity(image, savedEntity.getId());
-
-                // Обновляем объявление
-                savedEntity.setImagePath(imageEntity.getFilePath());
-                savedEntity.addImage(imageEntity);
+            return new TransactionTemplate(transactionManager).execute(status -> {
+                // Создаем объявление
+                AdEntity adEntity = adMapper.createOrUpdateAdToEntity(createAd);
+                adEntity.setAuthor(userService.getCurrentUserEntity());
+                adEntity.setCreatedAt(LocalDateTime.now());
+
+                // Картинка сохранится каскадом вместе с объявлением
+                if (written != null) {
+                    adEntity.addImage(written);
+                    imageService.scheduleVariants(written.getFilePath());
+                }
 
-                AdEntity finalEntity = adRepository.save(savedEntity);
-                return adMapper.entityToAdDto(finalEntity);
-            } else {
-                // Без изображения
                 AdEntity savedEntity = adRepository.save(adEntity);
+                indexForSearch(savedEntity);
                 return adMapper.entityToAdDto(savedEntity);
+            });
+        } catch (RuntimeException e) {
+            if (written != null) {
+                imageService.releaseUnsavedImage(written);
             }
-
-        } catch (IOException e) {
-            log.error("Failed to save ad image", e);
-            throw new RuntimeException("Failed to save image", e);
+            throw e;
         }
     }
 
     /**
-     * Обновить изображение объявления
+     * Заменить главное изображение объявления. Новая картинка встает на место старой главной
+     * (в начало галереи, если главной не было); остальные картинки галереи остаются.
+     * Как и в createAd, картинка пишется до короткой транзакции, которая меняет объявление.
      */
-    @Transactional
     @PreAuthorize("hasRole('ADMIN') or @adService.isAdOwner(#adId, authentication.name)")
     public Ad updateAdImage(Integer adId, MultipartFile image) {
-        AdEntity adEntity = adRepository.findById(adId)
-                .orElseThrow(() -> new RuntimeException("Ad not found"));
+        ImageEntity imageEntity;
+        try {
+            imageEntity = writeImage(image);
+        } catch (IOException e) {
+            log.error("Failed to update ad image for adId: {}", adId, e);
+            throw new RuntimeException("Failed to update image", e);
+        }
 
         try {
-            // Удаляем старое изображение если есть
-            if (!adEntity.getImages().isEmpty()) {
-                for (ImageEntity oldImage : adEntity.getImages()) {
+            return new TransactionTemplate(transactionManager).execute(status -> {
+                AdEntity adEntity = adRepository.findById(adId)
+                        .orElseThrow(() -> new RuntimeException("Ad not found"));
+
+                // Удаляем старое главное изображение, если есть
+                ImageEntity oldImage = adEntity.getImage();
+                Integer position = 0;
+                if (oldImage != null && adEntity.getImages().remove(oldImage)) {
+                    position = oldImage.getPosition() != null ? oldImage.getPosition() : 0;
                     imageService.deleteImageEntity(oldImage.getId());
                 }
-                adEntity.getImages().clear();
-            }
-
-            // Сохраняем новое изображение с привязкой к объявлению
-            ImageEntity imageEntity = imageService.saveAdImageEntity(image, adId);
 
-            // Обновляем объявление
-            adEntity.setImagePath(imageEntity.getFilePath());
-            adEntity.addImage(imageEntity);
-            adEntity.setUpdatedAt(LocalDateTime.now());
+                // Обновляем объявление
+                imageEntity.setPosition(position);
+                imageEntity.setAd(adEntity);
+                adEntity.getImages().add(Math.min(position, adEntity.getImages().size()), imageEntity);
+                adEntity.setImage(imageEntity);
+                adEntity.setUpdatedAt(LocalDateTime.now());
+                imageService.scheduleVariants(imageEntity.getFilePath());
 
-            AdEntity savedEntity = adRepository.save(adEntity);
-            return adMapper.entityToAdDto(savedEntity);
+                AdEntity savedEntity = adRepository.save(adEntity);
+                extendedAdCache.evict(adId);
+                imageMetadataResolver.evictAd(adId);
+                return adMapper.entityToAdDto(savedEntity);
+            });
+        } catch (RuntimeException e) {
+            imageService.releaseUnsavedImage(imageEntity);
+            throw e;
+        }
+    }
 
-        } catch (IOException e) {
-            log.error("Failed to update ad image for adId: {}", adId, e);
-            throw new RuntimeException("Failed to update image", e);
+    /**
+     * Записать загруженную картинку вне транзакции; ImageEntity сохранит каскад объявления
+     */
+    private ImageEntity writeImage(MultipartFile image) throws IOException {
+        try (InputStream content = image.getInputStream()) {
+            return imageService.writeAdImage(content, image.getOriginalFilename());
         }
     }
 
     // Остальные методы остаются без изменений...
+    @Transactional
     @PreAuthorize("hasRole('ADMIN') or @adService.isAdOwner(#id, authentication.name)")
     public void deleteAd(Integer id) {
         AdEntity adEntity = adRepository.findById(id)
@@ -120,42 +175,178 @@ public class AdService {
         }
 
         adRepository.delete(adEntity);
+        adSearchIndex.removeAd(id);
+        extendedAdCache.evict(id);
+        imageMetadataResolver.evictAd(id);
     }
 
     /**
-     * Получить картинку объявления
+     * Получить файл картинки объявления (или ее варианта, если он уже готов)
      */
-    public byte[] getAdImage(Integer adId) {
+    public ImageFile getAdImageFile(Integer adId, ImageVariant variant) {
         try {
-            return imageService.getAdImage(adId);
+            return imageService.getAdImageFile(adId, variant);
         } catch (IOException e) {
             log.error("Failed to load ad image for adId: {}", adId, e);
             throw new RuntimeException("Failed to load image", e);
         }
     }
 
+    /**
+     * Содержимое картинки объявления из памяти, когда тело ответа отдает приложение
+     */
+    public ByteBuffer loadHotImageContent(ImageFile image) throws IOException {
+        return imageService.loadHotContent(image);
+    }
+
+    /**
+     * Файл картинки объявления пропал из хранилища во время отдачи
+     */
+    public void evictMissingImage(ImageFile image) {
+        imageService.evictMissing(image);
+    }
+
     // Остальные методы без изменений...
+    @Transactional(readOnly = true)
     public boolean isAdOwner(Integer adId, String userEmail) {
         return adRepository.findById(adId)
                 .map(ad -> ad.getAuthor().getEmail().equals(userEmail))
                 .orElse(false);
     }
 
-    public Ads getAllAds() {
-        List<AdEntity> adEntities = adRepository.findAll();
-        List<Ad> ads = adEntities.stream()
-                .map(adMapper::entityToAdDto)
+    /**
+     * Получить страницу ленты объявлений с фильтрами и сортировкой.
+     * Курсор - позиция последнего объявления предыдущей страницы, null для первой страницы.
+     */
+    @Transactional(readOnly = true)
+    public Ads getAllAds(AdFeedFilter filter, AdSort sort, String cursor, Integer size) {
+        return toAds(getFeedPage(filter, sort, cursor, size));
+    }
+
+    /**
+     * Загрузить страницу ленты без маппинга в DTO. ETag страницы строится по ID и версиям ее строк,
+     * так что при совпадении с If-None-Match маппинг и сериализацию можно пропустить.
+     */
+    @Transactional(readOnly = true)
+    public AdFeedPage getFeedPage(AdFeedFilter filter, AdSort sort, String cursor, Integer size) {
+        int pageSize = resolvePageSize(size);
+        AdFeedFilter feedFilter = filter != null ? filter : new AdFeedFilter();
+        AdSort feedSort = sort != null ? sort : AdSort.NEWEST;
+
+        AdSummary after = null;
+        if (cursor != null && !cursor.isBlank()) {
+            after = AdCursor.decode(cursor).toAnchor(feedSort);
+        }
+
+        // Запрашиваем на одну запись больше, чтобы понять, есть ли следующая страница
+        List<AdSummary> summaries = adRepository.findFeedPage(feedFilter, feedSort, after, pageSize + 1);
+
+        boolean hasNext = summaries.size() > pageSize;
+        List<AdSummary> pageSummaries = hasNext ? summaries.subList(0, pageSize) : summaries;
+        String nextCursor = hasNext
+                ? AdCursor.of(feedSort, pageSummaries.get(pageSummaries.size() - 1)).encode()
+                : null;
+
+        StringBuilder fingerprint = new StringBuilder("ads");
+        pageSummaries.forEach(ad -> fingerprint.append(':').append(ad.getId()).append('.').append(ad.getVersion()));
+        fingerprint.append(':').append(hasNext);
+        return new AdFeedPage(pageSummaries, nextCursor, ETags.of(fingerprint.toString()));
+    }
+
+    public Ads toAds(AdFeedPage page) {
+        Ads result = toAds(page.getAds());
+        result.setNextCursor(page.getNextCursor());
+        return result;
+    }
+
+    /**
+     * Полнотекстовый поиск по заголовку и описанию с фильтром по цене, сортировка по релевантности.
+     * Ищет в индексе в памяти, если app.search.engine=memory, иначе - средствами PostgreSQL.
+     *
+     * @param anyTerm true - достаточно совпадения одного слова, false - нужны все слова запроса
+     */
+    @Transactional(readOnly = true)
+    public Ads searchAds(String query, boolean anyTerm, Integer minPrice, Integer maxPrice,
+                         String cursor, Integer size) {
+        List<String> words = AdTokenizer.words(query);
+        if (words.isEmpty()) {
+            throw new IllegalArgumentException("Search query must not be empty");
+        }
+        int pageSize = resolvePageSize(size);
+        int priceFrom = minPrice != null ? minPrice : 0;
+        int priceTo = maxPrice != null ? maxPrice : Integer.MAX_VALUE;
+        AdCursor position = cursor == null || cursor.isBlank() ? null : AdCursor.decode(cursor);
+
+        if (adSearchIndex.isEnabled()) {
+            return searchInIndex(query, anyTerm, priceFrom, priceTo, position, pageSize);
+        }
+
+        String tsQuery = String.join(anyTerm ? " | " : " & ", words);
+        List<AdSearchResult> found = position == null
+                ? adRepository.searchFirstPage(tsQuery, priceFrom, priceTo, pageSize + 1)
+                : adRepository.searchPageAfter(tsQuery, priceFrom, priceTo,
+                position.getRank(), position.getId(), pageSize + 1);
+
+        boolean hasNext = found.size() > pageSize;
+        List<AdSearchResult> pageResults = hasNext ? found.subList(0, pageSize) : found;
+
+        List<Ad> ads = pageResults.stream()
+                .map(adMapper::searchResultToAdDto)
                 .collect(Collectors.toList());
 
         Ads result = new Ads();
         result.setCount(ads.size());
         result.setResults(ads);
+        if (hasNext) {
+            AdSearchResult last = pageResults.get(pageResults.size() - 1);
+            result.setNextCursor(AdCursor.ofRank(last.getRank(), last.getId()).encode());
+        }
+        return result;
+    }
+
+    private Ads searchInIndex(String query, boolean anyTerm, int priceFrom, int priceTo,
+                              AdCursor position, int pageSize) {
+        AdSearchIndex.Hit after = position == null ? null
+                : new AdSearchIndex.Hit(position.getId(), (int) position.getRank());
+        List<AdSearchIndex.Hit> hits = adSearchIndex.search(query, anyTerm, priceFrom, priceTo, after, pageSize + 1);
+
+        boolean hasNext = hits.size() > pageSize;
+        List<AdSearchIndex.Hit> pageHits = hasNext ? hits.subList(0, pageSize) : hits;
+
+        // Загружаем страницу одним запросом и восстанавливаем порядок релевантности
+        Map<Integer, AdSummary> summaries = pageHits.isEmpty() ? Map.of()
+                : adRepository.findSummariesByIdIn(pageHits.stream()
+                        .map(AdSearchIndex.Hit::getId)
+                        .collect(Collectors.toList()))
+                .stream()
+                .collect(Collectors.toMap(AdSummary::getId, Function.identity()));
+
+        Ads result = toAds(pageHits.stream()
+                .map(hit -> summaries.get(hit.getId()))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList()));
+        if (hasNext) {
+            AdSearchIndex.Hit last = pageHits.get(pageHits.size() - 1);
+            result.setNextCursor(AdCursor.ofRank(last.getScore(), last.getId()).encode());
+        }
         return result;
     }
 
+    private int resolvePageSize(Integer size) {
+        if (size == null) {
+            return defaultPageSize;
+        }
+        if (size < 1) {
+            throw new IllegalArgumentException("Page size must be positive: " + size);
+        }
+        return Math.min(size, maxPageSize);
+    }
+
+    /**
+     * Получить карточку объявления (через кэш)
+     */
     public Optional<ExtendedAd> getAdById(Integer id) {
-        return adRepository.findById(id)
-                .map(adMapper::entityToExtendedAdDto);
+        return extendedAdCache.get(id);
     }
 
     public AdEntity getAdEntityById(Integer id) {
@@ -163,6 +354,7 @@ public class AdService {
                 .orElseThrow(() -> new RuntimeException("Ad not found with id: " + id));
     }
 
+    @Transactional
     @PreAuthorize("hasRole('ADMIN') or @adService.isAdOwner(#id, authentication.name)")
     public Ad updateAd(Integer id, CreateOrUpdateAd updateAd) {
         AdEntity adEntity = adRepository.findById(id)
@@ -171,14 +363,72 @@ public class AdService {
         adMapper.updateEntityFromDto(updateAd, adEntity);
         adEntity.setUpdatedAt(LocalDateTime.now());
         AdEntity savedEntity = adRepository.save(adEntity);
+        indexForSearch(savedEntity);
+        extendedAdCache.evict(id);
         return adMapper.entityToAdDto(savedEntity);
     }
 
+    private void indexForSearch(AdEntity entity) {
+        adSearchIndex.indexAd(entity.getId(), entity.getTitle(), entity.getDescription(), entity.getPrice());
+    }
+
+    @Transactional(readOnly = true)
     public Ads getAdsByAuthor() {
         UserEntity currentUser = userService.getCurrentUserEntity();
-        List<AdEntity> adEntities = adRepository.findByAuthorId(currentUser.getId());
-        List<Ad> ads = adEntities.stream()
-                .map(adMapper::entityToAdDto)
+        return toAds(adRepository.findSummariesByAuthorId(currentUser.getId()));
+    }
+
+    /**
+     * ID текущего пользователя - нужно получить до начала потоковой выдачи,
+     * так как она выполняется вне потока запроса
+     */
+    public Integer getCurrentAuthorId() {
+        return userService.getCurrentUserEntity().getId();
+    }
+
+    /**
+     * Записать объявления автора в JSON формата Ads, не собирая их в память
+     */
+    @Transactional(readOnly = true)
+    public void writeAdsByAuthor(Integer authorId, OutputStream out) throws IOException {
+        try (Stream<AdSummary> summaries = adRepository.streamSummariesByAuthorId(authorId)) {
+            writeAds(summaries, out);
+        }
+    }
+
+    /**
+     * Записать все объявления в JSON формата Ads, не собирая их в память
+     */
+    @Transactional(readOnly = true)
+    public void writeAllAds(OutputStream out) throws IOException {
+        try (Stream<AdSummary> summaries = adRepository.streamAllSummaries()) {
+            writeAds(summaries, out);
+        }
+    }
+
+    private void writeAds(Stream<AdSummary> summaries, OutputStream out) throws IOException {
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.writeStartObject();
+
+            // Количество известно только в конце, поэтому count пишется после results
+            generator.writeArrayFieldStart("results");
+            int count = 0;
+            Iterator<AdSummary> iterator = summaries.iterator();
+            while (iterator.hasNext()) {
+                generator.writeObject(adMapper.summaryToAdDto(iterator.next()));
+                count++;
+            }
+            generator.writeEndArray();
+
+            generator.writeNumberField("count", count);
+            generator.writeEndObject();
+        }
+    }
+
+    private Ads toAds(List<AdSummary> summaries) {
+        List<Ad> ads = summaries.stream()
+                .map(adMapper::summaryToAdDto)
                 .collect(Collectors.toList());
 
         Ads result = new Ads();
@@ -0,0 +1,83 @@
+package ru.skypro.homework.service;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.skypro.homework.repository.ClusterLockRepository;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Блокировка фоновой задачи на весь кластер по таблице cluster_locks (как ShedLock):
+ * блокировку держит узел, чья аренда не истекла. Пока задача идет, она продлевает аренду (extend);
+ * если узел упал, блокировку можно захватить, как только аренда истечет.
+ * Время аренды считается по часам узлов, поэтому их расхождение должно быть много меньше аренды.
+ * Каждая операция - своя короткая транзакция, закоммиченная сразу, даже внутри чужой.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ClusterLock {
+
+    private final ClusterLockRepository clusterLockRepository;
+    private final PlatformTransactionManager transactionManager;
+
+    /**
+     * Владелец блокировок этого процесса: host/случайный id
+     */
+    @Getter
+    private final String owner = hostName() + "/" + UUID.randomUUID();
+
+    /**
+     * Захватить блокировку на lease; false - ее держит другой узел (или этот же, другой задачей)
+     */
+    public boolean tryAcquire(String name, Duration lease) {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime until = now.plus(lease);
+        Boolean acquired = transaction().execute(status ->
+                clusterLockRepository.acquireExpired(name, owner, now, until) > 0
+                        || clusterLockRepository.insertIfAbsent(name, owner, now, until) > 0);
+        if (Boolean.TRUE.equals(acquired)) {
+            log.debug("Cluster lock {} acquired by {} until {}", name, owner, until);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Продлить свою блокировку на lease от текущего момента; false - аренда истекла и блокировка потеряна
+     */
+    public boolean extend(String name, Duration lease) {
+        LocalDateTime now = LocalDateTime.now();
+        Integer extended = transaction().execute(status ->
+                clusterLockRepository.extend(name, owner, now, now.plus(lease)));
+        return extended != null && extended > 0;
+    }
+
+    public void release(String name) {
+        transaction().executeWithoutResult(status -> clusterLockRepository.release(name, owner, LocalDateTime.now()));
+    }
+
+    private TransactionTemplate transaction() {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        return transactionTemplate;
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return "unknown";
+        }
+    }
+
+}
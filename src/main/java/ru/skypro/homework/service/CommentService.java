@@ -3,6 +3,7 @@ package ru.skypro.homework.service;
 import lombok.RequiredArgsConstructor;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import ru.skypro.homework.mapper.CommentMapper;
 import ru.skypro.homework.model.dto.Comment;
 import ru.skypro.homework.model.dto.Comments;
@@ -31,12 +32,26 @@ public class CommentService {
     /**
      * Проверка, является ли пользователь владельцем комментария - используется в @PreAuthorize
      */
+    @Transactional(readOnly = true)
     public boolean isCommentOwner(Integer commentId, String userEmail) {
         return commentRepository.findById(commentId)
                 .map(comment -> comment.getAuthor().getEmail().equals(userEmail))
                 .orElse(false);
     }
 
+    /**
+     * ETag комментариев объявления по версиям комментариев и их авторов, без загрузки сущностей
+     */
+    @Transactional(readOnly = true)
+    public String getCommentsETag(Integer adId) {
+        StringBuilder fingerprint = new StringBuilder("comments:").append(adId);
+        commentRepository.findVersionsByAdId(adId).forEach(comment -> fingerprint
+                .append(':').append(comment.getId()).append('.').append(comment.getVersion())
+                .append('.').append(comment.getAuthorId()).append('.').append(comment.getAuthorVersion()));
+        return ETags.of(fingerprint.toString());
+    }
+
+    @Transactional(readOnly = true)
     public Comments getCommentsByAdId(Integer adId) {
         List<CommentEntity> commentEntities = commentRepository.findByAdIdWithAuthor(adId);
         List<Comment> comments = commentEntities.stream()
@@ -52,6 +67,7 @@ public class CommentService {
     /**
      * Создать комментарий (автор определяется из SecurityContext)
      */
+    @Transactional
     public Comment createComment(Integer adId, CreateOrUpdateComment createComment) {
         UserEntity author = userService.getCurrentUserEntity();
         AdEntity ad = adRepository.findById(adId)
@@ -69,6 +85,7 @@ public class CommentService {
     /**
      * Обновить комментарий с проверкой прав через @PreAuthorize
      */
+    @Transactional
     @PreAuthorize("hasRole('ADMIN') or @commentService.isCommentOwner(#commentId, authentication.name)")
     public Comment updateComment(Integer adId, Integer commentId, CreateOrUpdateComment updateComment) {
         CommentEntity commentEntity = commentRepository.findByIdAndAdId(commentId, adId)
@@ -82,6 +99,7 @@ public class CommentService {
     /**
      * Удалить комментарий с проверкой прав через @PreAuthorize
      */
+    @Transactional
     @PreAuthorize("hasRole('ADMIN') or @commentService.isCommentOwner(#commentId, authentication.name)")
     public void deleteComment(Integer adId, Integer commentId) {
         CommentEntity commentEntity = commentRepository.findByIdAndAdId(commentId, adId)
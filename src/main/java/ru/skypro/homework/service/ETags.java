@@ -0,0 +1,46 @@
+package ru.skypro.homework.service;
+
+import org.springframework.util.DigestUtils;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Сильные ETag на основе версий строк в базе.
+ * Значение считается до загрузки и маппинга данных, поэтому на совпавший If-None-Match
+ * можно ответить 304, не выполняя основной работы.
+ */
+public final class ETags {
+
+    private ETags() {
+    }
+
+    /**
+     * ETag из "отпечатка" ресурса: ID и версий строк, из которых собирается ответ
+     */
+    public static String of(String fingerprint) {
+        return "\"" + DigestUtils.md5DigestAsHex(fingerprint.getBytes(StandardCharsets.UTF_8)) + "\"";
+    }
+
+    /**
+     * Совпадает ли ETag с заголовком If-None-Match (список значений, "*" или слабые W/ теги)
+     */
+    public static boolean matches(String ifNoneMatch, String eTag) {
+        if (ifNoneMatch == null || ifNoneMatch.isBlank() || eTag == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*")) {
+                return true;
+            }
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(eTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,147 @@
+package ru.skypro.homework.service;
+
+import org.w3c.dom.Node;
+
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Ориентация снимка из EXIF (тег 0x0112) и ее применение к картинке.
+ * Телефоны пишут пиксели как есть и поворот только в EXIF; ImageIO его не применяет, а варианты
+ * пишутся без метаданных - без поворота при генерации снимок «с боку» так и остался бы.
+ * Разбирается только JPEG (APP1 Exif), для остальных форматов ориентация 1 (как есть).
+ */
+final class ExifOrientation {
+
+    static final int NORMAL = 1;
+
+    private static final String JPEG_METADATA = "javax_imageio_jpeg_image_1.0";
+    private static final int APP1 = 0xE1;
+    private static final int ORIENTATION_TAG = 0x0112;
+    private static final byte[] EXIF_HEADER = "Exif\0\0".getBytes(StandardCharsets.US_ASCII);
+
+    private ExifOrientation() {
+    }
+
+    /**
+     * Ориентация первой картинки ридера (1-8); 1 - тега нет или метаданные не разобрать
+     */
+    static int read(ImageReader reader) throws IOException {
+        IIOMetadata metadata = reader.getImageMetadata(0);
+        if (metadata == null || !JPEG_METADATA.equals(metadata.getNativeMetadataFormatName())) {
+            return NORMAL;
+        }
+        Node root = metadata.getAsTree(JPEG_METADATA);
+        for (Node child = root.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (!"markerSequence".equals(child.getNodeName())) {
+                continue;
+            }
+            for (Node marker = child.getFirstChild(); marker != null; marker = marker.getNextSibling()) {
+                if ("unknown".equals(marker.getNodeName()) && isApp1(marker)
+                        && ((IIOMetadataNode) marker).getUserObject() instanceof byte[]) {
+                    int orientation = parse((byte[]) ((IIOMetadataNode) marker).getUserObject());
+                    if (orientation != NORMAL) {
+                        return orientation;
+                    }
+                }
+            }
+        }
+        return NORMAL;
+    }
+
+    /**
+     * Ориентация из содержимого сегмента APP1: "Exif\0\0", заголовок TIFF, IFD0
+     */
+    static int parse(byte[] app1) {
+        int tiff = EXIF_HEADER.length;
+        if (app1.length < tiff + 8) {
+            return NORMAL;
+        }
+        for (int i = 0; i < EXIF_HEADER.length; i++) {
+            if (app1[i] != EXIF_HEADER[i]) {
+                return NORMAL;
+            }
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(app1);
+        if (app1[tiff] == 'I' && app1[tiff + 1] == 'I') {
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+        } else if (app1[tiff] != 'M' || app1[tiff + 1] != 'M') {
+            return NORMAL;
+        }
+        long ifd = tiff + Integer.toUnsignedLong(buffer.getInt(tiff + 4));
+        if (ifd + 2 > app1.length) {
+            return NORMAL;
+        }
+        int entries = Short.toUnsignedInt(buffer.getShort((int) ifd));
+        for (int i = 0; i < entries; i++) {
+            int entry = (int) ifd + 2 + i * 12;
+            if (entry + 12 > app1.length) {
+                return NORMAL;
+            }
+            if (Short.toUnsignedInt(buffer.getShort(entry)) == ORIENTATION_TAG) {
+                int orientation = Short.toUnsignedInt(buffer.getShort(entry + 8));
+                return orientation >= 1 && orientation <= 8 ? orientation : NORMAL;
+            }
+        }
+        return NORMAL;
+    }
+
+    /**
+     * Повернуть/отразить картинку так, как ее нужно показывать. 5-8 меняют ширину и высоту местами.
+     */
+    static BufferedImage apply(BufferedImage image, int orientation) {
+        if (orientation <= NORMAL || orientation > 8) {
+            return image;
+        }
+        int w = image.getWidth();
+        int h = image.getHeight();
+        // x' = m00*x + m01*y + m02, y' = m10*x + m11*y + m12
+        AffineTransform transform;
+        switch (orientation) {
+            case 2:
+                transform = new AffineTransform(-1, 0, 0, 1, w, 0);
+                break;
+            case 3:
+                transform = new AffineTransform(-1, 0, 0, -1, w, h);
+                break;
+            case 4:
+                transform = new AffineTransform(1, 0, 0, -1, 0, h);
+                break;
+            case 5:
+                transform = new AffineTransform(0, 1, 1, 0, 0, 0);
+                break;
+            case 6:
+                transform = new AffineTransform(0, 1, -1, 0, h, 0);
+                break;
+            case 7:
+                transform = new AffineTransform(0, -1, -1, 0, h, w);
+                break;
+            default:
+                transform = new AffineTransform(0, -1, 1, 0, 0, w);
+                break;
+        }
+        boolean swap = orientation >= 5;
+        BufferedImage oriented = new BufferedImage(swap ? h : w, swap ? w : h, image.getType());
+        Graphics2D graphics = oriented.createGraphics();
+        try {
+            graphics.drawImage(image, transform, null);
+        } finally {
+            graphics.dispose();
+        }
+        return oriented;
+    }
+
+    private static boolean isApp1(Node marker) {
+        Node tag = marker.getAttributes().getNamedItem("MarkerTag");
+        return tag != null && String.valueOf(APP1).equals(tag.getNodeValue());
+    }
+
+}
@@ -0,0 +1,95 @@
+package ru.skypro.homework.service;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.skypro.homework.config.AfterCommit;
+import ru.skypro.homework.config.ReadReplicaRoutingDataSource;
+import ru.skypro.homework.mapper.AdMapper;
+import ru.skypro.homework.model.dto.ExtendedAd;
+import ru.skypro.homework.repository.AdRepository;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Кэш карточек объявлений (ExtendedAd) по ID объявления. При промахе объявление загружается
+ * одним запросом вместе с автором.
+ * Ограничен по размеру и времени жизни записи, сбрасывается точечно после коммита изменений
+ * объявления или его автора. Статистика публикуется в метриках cache.* с тегом cache=ads.details.
+ */
+@Component
+@RequiredArgsConstructor
+public class ExtendedAdCache {
+
+    public static final String CACHE_NAME = "ads.details";
+
+    private final AdRepository adRepository;
+    private final AdMapper adMapper;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.ads.details-cache.maximum-size:10000}")
+    private long maximumSize;
+
+    @Value("${app.ads.details-cache.ttl:PT10M}")
+    private Duration ttl;
+
+    private LoadingCache<Integer, ExtendedAd> cache;
+
+    @PostConstruct
+    void init() {
+        cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build(this::load);
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+
+    /**
+     * Получить карточку из кэша или загрузить ее.
+     * Отсутствующие объявления не кэшируются.
+     */
+    public Optional<ExtendedAd> get(Integer adId) {
+        return Optional.ofNullable(cache.get(adId));
+    }
+
+    /**
+     * Сбросить карточку объявления после коммита текущей транзакции
+     */
+    public void evict(Integer adId) {
+        AfterCommit.run(() -> cache.invalidate(adId));
+    }
+
+    /**
+     * Сбросить карточки всех объявлений автора (в них имя и телефон автора)
+     */
+    public void evictByAuthor(Integer authorId) {
+        List<Integer> adIds = adRepository.findIdsByAuthorId(authorId);
+        if (!adIds.isEmpty()) {
+            AfterCommit.run(() -> cache.invalidateAll(adIds));
+        }
+    }
+
+    public long size() {
+        cache.cleanUp();
+        return cache.estimatedSize();
+    }
+
+    /**
+     * Карточка читается с primary: сброс идет сразу после коммита, и загрузка с отстающей реплики
+     * положила бы в кэш старую версию на весь TTL
+     */
+    private ExtendedAd load(Integer adId) {
+        return ReadReplicaRoutingDataSource.onPrimary(() -> adRepository.findByIdWithAuthor(adId))
+                .map(adMapper::entityToExtendedAdDto)
+                .orElse(null);
+    }
+
+}
@@ -0,0 +1,176 @@
+package ru.skypro.homework.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import ru.skypro.homework.storage.ImageStorage;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.time.Duration;
+
+/**
+ * Кэш содержимого часто запрашиваемых картинок (главная, популярные продавцы) по ссылке файла:
+ * попадание отдается из памяти без обращения к хранилищу - ни stat, ни open (для S3 - ни одного запроса).
+ * Байты лежат вне кучи в direct ByteBuffer, поэтому не копируются сборщиком мусора;
+ * в куче остаются только маленькие обертки. Память буфера освобождается, когда сборщик
+ * заберет вытесненную обертку, так что -XX:MaxDirectMemorySize должен быть больше maximum-size.
+ * Ограничен суммарным размером; вытеснение и допуск новых записей - W-TinyLFU Caffeine:
+ * картинка, запрошенная один раз, не вытесняет постоянно читаемые.
+ * Файлы больше max-entry-size не кэшируются. Метрики: cache.* с тегом cache=images.hot,
+ * images.hot.resident.bytes и images.hot.hit.ratio.
+ * Кэш свой у каждого узла, invalidate сбрасывает только его. Содержимое по хэшу (blobs/) неизменно
+ * и живет до вытеснения; файл по старой ссылке (ads/, users/) другой узел может перезаписать
+ * или удалить, поэтому такая запись живет не дольше legacy-ttl.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class HotImageCache {
+
+    public static final String CACHE_NAME = "images.hot";
+
+    private static final String BLOBS_PREFIX = ImageStorage.url(ImageService.BLOBS_DIRECTORY + "/");
+
+    /**
+     * Сколько ссылок помнить как «уже запрошенные один раз»
+     */
+    private static final int DOORKEEPER_SIZE = 10_000;
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.images.hot-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.images.hot-cache.maximum-size:64MB}")
+    private DataSize maximumSize;
+
+    @Value("${app.images.hot-cache.max-entry-size:512KB}")
+    private DataSize maxEntrySize;
+
+    @Value("${app.images.hot-cache.legacy-ttl:PT1M}")
+    private Duration legacyTtl;
+
+    private Cache<String, CachedImage> cache;
+    private Cache<String, Boolean> doorkeeper;
+
+    @PostConstruct
+    void init() {
+        cache = Caffeine.newBuilder()
+                .maximumWeight(maximumSize.toBytes())
+                .weigher((String imageUrl, CachedImage image) -> image.getContent().capacity())
+                .expireAfter(new Expiry<String, CachedImage>() {
+                    @Override
+                    public long expireAfterCreate(String imageUrl, CachedImage image, long currentTime) {
+                        return imageUrl.startsWith(BLOBS_PREFIX) ? Long.MAX_VALUE : legacyTtl.toNanos();
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String imageUrl, CachedImage image, long currentTime,
+                                                  long currentDuration) {
+                        return expireAfterCreate(imageUrl, image, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String imageUrl, CachedImage image, long currentTime,
+                                                long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+        doorkeeper = Caffeine.newBuilder()
+                .maximumSize(DOORKEEPER_SIZE)
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+        Gauge.builder(CACHE_NAME + ".resident.bytes", this, HotImageCache::residentBytes)
+                .baseUnit("bytes")
+                .description("Bytes of image content held off-heap")
+                .register(meterRegistry);
+        Gauge.builder(CACHE_NAME + ".hit.ratio", cache, c -> c.stats().hitRate())
+                .register(meterRegistry);
+    }
+
+    /**
+     * Картинка из кэша или null
+     */
+    public CachedImage get(String imageUrl) {
+        return enabled ? cache.getIfPresent(imageUrl) : null;
+    }
+
+    /**
+     * Прочитать картинку из хранилища (source) в память и положить в кэш, если она не больше max-entry-size.
+     * Файл читается со второго промаха: картинки, которые запросили один раз, не копируются
+     * в память вовсе (doorkeeper перед TinyLFU).
+     * Возвращает закэшированную картинку или null (не подошла, кэш выключен, файл изменился при чтении).
+     */
+    public CachedImage load(String imageUrl, InputStreamSource source, long length,
+                            long lastModified) throws IOException {
+        if (!enabled || length > maxEntrySize.toBytes()) {
+            return null;
+        }
+        if (doorkeeper.asMap().remove(imageUrl) == null) {
+            doorkeeper.put(imageUrl, Boolean.TRUE);
+            return null;
+        }
+        ByteBuffer content = ByteBuffer.allocateDirect((int) length);
+        try (InputStream in = source.getInputStream(); ReadableByteChannel channel = Channels.newChannel(in)) {
+            while (content.hasRemaining()) {
+                if (channel.read(content) < 0) {
+                    log.debug("Image {} was truncated while caching", imageUrl);
+                    return null;
+                }
+            }
+            if (in.read() >= 0) {
+                log.debug("Image {} changed while caching", imageUrl);
+                return null;
+            }
+        }
+        content.flip();
+        CachedImage image = new CachedImage(content.asReadOnlyBuffer(), lastModified);
+        cache.put(imageUrl, image);
+        return image;
+    }
+
+    /**
+     * Сбросить картинку (файл удален или перезаписан)
+     */
+    public void invalidate(String imageUrl) {
+        cache.invalidate(imageUrl);
+        doorkeeper.invalidate(imageUrl);
+    }
+
+    public long residentBytes() {
+        cache.cleanUp();
+        return cache.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0L))
+                .orElse(0L);
+    }
+
+    /**
+     * Содержимое картинки (только для чтения, position 0) и время изменения файла на момент чтения
+     */
+    @Getter
+    @RequiredArgsConstructor
+    public static class CachedImage {
+
+        private final ByteBuffer content;
+        private final long lastModified;
+
+    }
+
+}
@@ -0,0 +1,42 @@
+package ru.skypro.homework.service;
+
+import lombok.Value;
+import ru.skypro.homework.model.enums.ImageVariant;
+import ru.skypro.homework.storage.ImageStorage;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+/**
+ * Файл картинки в хранилище с тем, что нужно для ответа: тип, длина, время изменения,
+ * хэш содержимого (null у картинок, загруженных до появления хэшей) и вариант
+ * (null - оригинал, в том числе когда запрошенный вариант еще не готов).
+ * Содержимое не читается - его отдает контроллер прямо из файла (path) или потоком из хранилища,
+ * если оно не на локальном диске; исключение - картинки, уже лежащие в HotImageCache,
+ * у них content в памяти. В кэш картинку кладет ImageService.loadHotContent при отдаче тела.
+ */
+@Value
+public class ImageFile {
+
+    /**
+     * Файл на локальном диске или null - хранилище не локальное (S3), читать через storage
+     */
+    Path path;
+    String contentType;
+    long length;
+    long lastModified;
+    String contentHash;
+    ImageVariant variant;
+
+    /**
+     * Содержимое из HotImageCache (только для чтения) или null - отдавать из файла
+     */
+    ByteBuffer content;
+
+    /**
+     * Ключ картинки в хранилище и само хранилище - откуда читать, когда path нет
+     */
+    String storageKey;
+    ImageStorage storage;
+
+}
@@ -0,0 +1,67 @@
+package ru.skypro.homework.service;
+
+import lombok.Value;
+import ru.skypro.homework.model.enums.ImageVariant;
+import ru.skypro.homework.model.projection.ImageMetadataRow;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Все, что нужно для ответа картинкой, без сущностей: ссылка, файл в хранилище, тип, размер,
+ * хэш и готовые варианты. У старых картинок без ImageEntity известны только ссылка и файл
+ * (тип по расширению, хэша нет).
+ */
+@Value
+public class ImageMetadata {
+
+    String imageUrl;
+
+    /**
+     * Файл в хранилище: содержимое по хэшу или сама ссылка у старых картинок
+     */
+    String storagePath;
+
+    /**
+     * Тип из ImageEntity или null - определять по расширению
+     */
+    String contentType;
+
+    Long fileSize;
+    String contentHash;
+    Map<ImageVariant, String> variants;
+
+    /**
+     * Картинка, о которой известна только ссылка: файл лежит прямо по ней
+     */
+    static ImageMetadata ofUrl(String imageUrl) {
+        return new ImageMetadata(imageUrl, imageUrl, null, null, null, Collections.emptyMap());
+    }
+
+    /**
+     * Собрать метаданные из строк запроса (строка на вариант); null - картинки нет
+     */
+    static ImageMetadata fromRows(List<ImageMetadataRow> rows) {
+        if (rows.isEmpty()) {
+            return null;
+        }
+        ImageMetadataRow first = rows.get(0);
+        String imageUrl = first.getImageUrl();
+        if (imageUrl == null || imageUrl.isEmpty()) {
+            return null;
+        }
+        Map<ImageVariant, String> variants = new EnumMap<>(ImageVariant.class);
+        for (ImageMetadataRow row : rows) {
+            if (row.getVariant() != null) {
+                variants.put(row.getVariant(), row.getVariantPath());
+            }
+        }
+        return new ImageMetadata(imageUrl,
+                first.getBlobPath() != null ? first.getBlobPath() : imageUrl,
+                first.getContentType(), first.getFileSize(), first.getContentHash(),
+                Collections.unmodifiableMap(variants));
+    }
+
+}
@@ -0,0 +1,120 @@
+package ru.skypro.homework.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.skypro.homework.config.AfterCommit;
+import ru.skypro.homework.config.ReadReplicaRoutingDataSource;
+import ru.skypro.homework.repository.AdRepository;
+import ru.skypro.homework.repository.ImageRepository;
+import ru.skypro.homework.repository.UserRepository;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Метаданные картинок (ImageMetadata) для отдачи: картинка объявления, аватар пользователя или
+ * картинка по ссылке. При промахе - один запрос-проекция с картинкой, содержимым и вариантами,
+ * без загрузки сущностей; попадание обходится без БД.
+ * Читается с primary: сброс идет сразу после коммита, и загрузка с отстающей реплики положила бы
+ * в кэш старую картинку на весь TTL.
+ * Кэш ограничен по размеру и времени жизни записи, сбрасывается после коммита замены картинки,
+ * ее удаления и записи вариантов; на других узлах старая запись живет не дольше ttl.
+ * Статистика - в метриках cache.* с тегом cache=images.metadata.
+ */
+@Component
+@RequiredArgsConstructor
+public class ImageMetadataResolver {
+
+    public static final String CACHE_NAME = "images.metadata";
+
+    private static final String AD = "ad:";
+    private static final String USER = "user:";
+    private static final String URL = "url:";
+
+    private final AdRepository adRepository;
+    private final UserRepository userRepository;
+    private final ImageRepository imageRepository;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.images.metadata-cache.maximum-size:10000}")
+    private long maximumSize;
+
+    @Value("${app.images.metadata-cache.ttl:PT10M}")
+    private Duration ttl;
+
+    private Cache<String, ImageMetadata> cache;
+
+    @PostConstruct
+    void init() {
+        cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+
+    /**
+     * Главная картинка объявления; пусто - объявления нет или у него нет картинки
+     */
+    public Optional<ImageMetadata> forAd(Integer adId) {
+        return Optional.ofNullable(cache.get(AD + adId, key -> ImageMetadata.fromRows(
+                ReadReplicaRoutingDataSource.onPrimary(() -> adRepository.findImageMetadata(adId)))));
+    }
+
+    /**
+     * Аватар пользователя; пусто - пользователя нет или у него нет аватара
+     */
+    public Optional<ImageMetadata> forUser(Integer userId) {
+        return Optional.ofNullable(cache.get(USER + userId, key -> ImageMetadata.fromRows(
+                ReadReplicaRoutingDataSource.onPrimary(() -> userRepository.findImageMetadata(userId)))));
+    }
+
+    /**
+     * Картинка по ссылке загрузки. Ссылка без ImageEntity (загружена до появления таблицы images)
+     * не кэшируется: файл ищется прямо по ней.
+     */
+    public ImageMetadata forUrl(String imageUrl) {
+        ImageMetadata metadata = cache.get(URL + imageUrl, key -> ImageMetadata.fromRows(
+                ReadReplicaRoutingDataSource.onPrimary(() -> imageRepository.findImageMetadata(imageUrl))));
+        return metadata != null ? metadata : ImageMetadata.ofUrl(imageUrl);
+    }
+
+    /**
+     * Сбросить картинку объявления после коммита текущей транзакции (картинку заменили, объявление удалено)
+     */
+    public void evictAd(Integer adId) {
+        AfterCommit.run(() -> cache.invalidate(AD + adId));
+    }
+
+    /**
+     * Сбросить аватар пользователя после коммита текущей транзакции
+     */
+    public void evictUser(Integer userId) {
+        AfterCommit.run(() -> cache.invalidate(USER + userId));
+    }
+
+    /**
+     * Сбросить все записи с этой картинкой после коммита: у нее появились варианты или ее удалили.
+     * Владелец картинки здесь неизвестен, поэтому кэш просматривается целиком - это бывает
+     * раз на загрузку, а записей не больше maximum-size.
+     */
+    public void evictImage(String imageUrl) {
+        AfterCommit.run(() -> {
+            cache.invalidate(URL + imageUrl);
+            cache.asMap().values().removeIf(metadata -> imageUrl.equals(metadata.getImageUrl()));
+        });
+    }
+
+    public long size() {
+        cache.cleanUp();
+        return cache.estimatedSize();
+    }
+
+}
@@ -0,0 +1,528 @@
+package ru.skypro.homework.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.skypro.homework.model.dto.ImageReconciliationReport;
+import ru.skypro.homework.model.dto.ImageReconciliationRun;
+import ru.skypro.homework.model.entity.ImageBlobEntity;
+import ru.skypro.homework.model.entity.ImageEntity;
+import ru.skypro.homework.model.entity.ImageReconciliationRunEntity;
+import ru.skypro.homework.model.enums.ReconciliationStatus;
+import ru.skypro.homework.model.projection.BlobReferenceCount;
+import ru.skypro.homework.repository.AdRepository;
+import ru.skypro.homework.repository.ImageBlobRepository;
+import ru.skypro.homework.repository.ImageReconciliationRunRepository;
+import ru.skypro.homework.repository.ImageRepository;
+import ru.skypro.homework.repository.UserRepository;
+import ru.skypro.homework.storage.ImageFileIndex;
+import ru.skypro.homework.storage.ImageStorage;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Сверка файлов картинок с БД и уборка сирот. Файлы остаются без строк, когда удаление
+ * упало посередине (строку удалили, файл нет), после сбоя между записью файла и коммитом,
+ * после отмененного импорта.
+ * Прогон по шагам, все пачками по batch-size с паузой batch-pause между ними:
+ * 1. счетчики ссылок image_blobs сверяются с images и исправляются, содержимое без ссылок удаляется
+ *    вместе с файлами (ImageService.deleteBlobIfUnreferenced);
+ * 2. строки images без файла попадают в отчет (восстановить их нечем);
+ * 3. каталоги ads, users и blobs обходятся потоково, файлы пачки проверяются в БД одним запросом
+ *    на таблицу, сироты переносятся в карантин (quarantine-path/дата/...);
+ * 4. карантин старше quarantine-retention удаляется.
+ * В памяти только одна пачка путей. Файлы моложе grace-period не трогаются: это могут быть
+ * загрузки, чья транзакция еще не закоммичена.
+ * Шаги 3 и 4 - только для хранилища на локальном диске: в S3 обхода каталогов нет,
+ * сверяются счетчики и наличие файлов.
+ * На весь кластер идет один прогон: он держит ClusterLock image-reconciliation и продлевает аренду
+ * (lock-lease) после каждой пачки; остальные узлы в это время прогон пропускают.
+ * Прогон идет в фоне: start сразу возвращает запись image_reconciliation_runs, отчет появляется
+ * в ней по завершении и виден с любого узла.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ImageReconciliationService {
+
+    private static final String[] DIRECTORIES = {"ads", "users", ImageService.BLOBS_DIRECTORY};
+    private static final String LOCK_NAME = "image-reconciliation";
+
+    private final ImageRepository imageRepository;
+    private final ImageBlobRepository imageBlobRepository;
+    private final AdRepository adRepository;
+    private final UserRepository userRepository;
+    private final HotImageCache hotImageCache;
+    private final PlatformTransactionManager transactionManager;
+    private final ImageStorage imageStorage;
+    private final ImageFileIndex imageFileIndex;
+    private final ImageService imageService;
+    private final ClusterLock clusterLock;
+    private final ImageReconciliationRunRepository imageReconciliationRunRepository;
+    private final ObjectMapper objectMapper;
+
+    @Value("${app.images.gc.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.images.gc.quarantine-path:uploads/quarantine}")
+    private String quarantinePath;
+
+    @Value("${app.images.gc.batch-size:500}")
+    private int batchSize;
+
+    @Value("${app.images.gc.batch-pause:PT0.1S}")
+    private Duration batchPause;
+
+    @Value("${app.images.gc.grace-period:PT1H}")
+    private Duration gracePeriod;
+
+    @Value("${app.images.gc.quarantine-retention:P7D}")
+    private Duration quarantineRetention;
+
+    @Value("${app.images.gc.max-samples:100}")
+    private int maxSamples;
+
+    @Value("${app.images.gc.lock-lease:PT10M}")
+    private Duration lockLease;
+
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    void init() {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("image-reconciliation-");
+        threadFactory.setDaemon(true);
+        // прогон один на кластер (блокировка), очередь на случай, когда прошлый поток еще не освободился
+        executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(1), threadFactory);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Scheduled(cron = "${app.images.gc.cron:0 30 3 * * *}")
+    public void scheduledReconcile() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            start(false);
+        } catch (IllegalStateException e) {
+            log.info("Image reconciliation skipped: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Запустить сверку в фоне и вернуть ее прогон (RUNNING). dryRun - только отчет, без изменений на диске и в БД.
+     * IllegalStateException - сверка уже идет (на этом или другом узле).
+     */
+    public ImageReconciliationRun start(boolean dryRun) {
+        if (!clusterLock.tryAcquire(LOCK_NAME, lockLease)) {
+            throw new IllegalStateException("Image reconciliation is already running");
+        }
+        ImageReconciliationRunEntity run;
+        try {
+            run = inTransaction(() -> {
+                imageReconciliationRunRepository.failRunning(LocalDateTime.now(), "Node stopped before the run finished");
+                ImageReconciliationRunEntity entity = new ImageReconciliationRunEntity();
+                entity.setId(UUID.randomUUID().toString());
+                entity.setDryRun(dryRun);
+                entity.setStatus(ReconciliationStatus.RUNNING);
+                entity.setNode(clusterLock.getOwner());
+                entity.setStartedAt(LocalDateTime.now());
+                return imageReconciliationRunRepository.save(entity);
+            });
+            executor.execute(() -> execute(run.getId(), dryRun));
+        } catch (RuntimeException e) {
+            clusterLock.release(LOCK_NAME);
+            throw e;
+        }
+        return toDto(run);
+    }
+
+    public Optional<ImageReconciliationRun> findRun(String id) {
+        return imageReconciliationRunRepository.findById(id).map(this::toDto);
+    }
+
+    public Optional<ImageReconciliationRun> findLatestRun() {
+        return imageReconciliationRunRepository.findFirstByOrderByStartedAtDesc().map(this::toDto);
+    }
+
+    /**
+     * Выполнить прогон, записать результат и отпустить блокировку, захваченную в start
+     */
+    private void execute(String runId, boolean dryRun) {
+        try {
+            ImageReconciliationReport report = reconcile(dryRun);
+            log.info("Image reconciliation {}: {} files scanned, {} orphans quarantined, {} purged, "
+                            + "{} images without files, {} ref counts fixed",
+                    runId, report.getScannedFiles(), report.getQuarantinedFiles(), report.getPurgedFiles(),
+                    report.getMissingFiles(), report.getRefCountMismatches());
+            finish(runId, ReconciliationStatus.COMPLETED, objectMapper.writeValueAsString(report), null);
+        } catch (RuntimeException | JsonProcessingException e) {
+            log.error("Image reconciliation {} failed", runId, e);
+            finish(runId, ReconciliationStatus.FAILED, null, e.getMessage());
+        } finally {
+            clusterLock.release(LOCK_NAME);
+        }
+    }
+
+    private void finish(String runId, ReconciliationStatus status, String report, String error) {
+        inTransaction(() -> imageReconciliationRunRepository.findById(runId).map(run -> {
+            run.setStatus(status);
+            run.setFinishedAt(LocalDateTime.now());
+            run.setReport(report);
+            run.setError(error);
+            return run;
+        }));
+    }
+
+    /**
+     * Сверить файлы с БД. Вызывается только под блокировкой LOCK_NAME (из start).
+     * IllegalStateException - блокировка потеряна посреди прогона.
+     */
+    ImageReconciliationReport reconcile(boolean dryRun) {
+        try {
+            ImageReconciliationReport report = new ImageReconciliationReport();
+            report.setDryRun(dryRun);
+            Instant cutoff = Instant.now().minus(gracePeriod);
+
+            reconcileBlobs(report, cutoff);
+            findMissingFiles(report);
+            if (imageStorage.localPath("") == null) {
+                log.debug("Image storage is not local, directory sweep skipped");
+                return report;
+            }
+            for (String directory : DIRECTORIES) {
+                sweepDirectory(directory, report, cutoff);
+            }
+            purgeQuarantine(report);
+            return report;
+        } catch (IOException e) {
+            throw new RuntimeException("Image reconciliation failed", e);
+        }
+    }
+
+    /**
+     * Счетчик ставится по фактическому числу ссылок, только если с момента чтения пачки его никто
+     * не поменял: загрузка или удаление, идущие одновременно со сверкой, не затираются значением
+     * из устаревшего снимка. Пропущенное расхождение поправит следующий прогон.
+     */
+    private void reconcileBlobs(ImageReconciliationReport report, Instant cutoff) {
+        String afterHash = "";
+        List<ImageBlobEntity> blobs;
+        do {
+            String from = afterHash;
+            blobs = inTransaction(() -> imageBlobRepository.findBatchAfter(from, PageRequest.of(0, batchSize)));
+            if (blobs.isEmpty()) {
+                return;
+            }
+            Set<String> hashes = blobs.stream().map(ImageBlobEntity::getContentHash).collect(Collectors.toSet());
+            Map<String, Long> references = inTransaction(() -> imageRepository.countReferences(hashes)).stream()
+                    .collect(Collectors.toMap(BlobReferenceCount::getContentHash, BlobReferenceCount::getReferenceCount));
+
+            for (ImageBlobEntity blob : blobs) {
+                String hash = blob.getContentHash();
+                int actual = references.getOrDefault(hash, 0L).intValue();
+                if (actual != blob.getRefCount()) {
+                    report.setRefCountMismatches(report.getRefCountMismatches() + 1);
+                    log.warn("Image blob {} has ref count {}, but {} references", hash, blob.getRefCount(), actual);
+                    if (!report.isDryRun()) {
+                        inTransaction(() -> imageBlobRepository.updateRefCount(hash, blob.getRefCount(), actual));
+                    }
+                }
+                boolean old = blob.getCreatedAt() == null
+                        || blob.getCreatedAt().atZone(ZoneId.systemDefault()).toInstant().isBefore(cutoff);
+                if (actual == 0 && old) {
+                    report.setUnreferencedBlobs(report.getUnreferencedBlobs() + 1);
+                    // Запись и файлы (оригинал и варианты) удаляются вместе, как при освобождении
+                    // последней ссылки: в S3 обхода каталогов нет, и файлы без записи остались бы навсегда
+                    if (!report.isDryRun()) {
+                        imageService.deleteBlobIfUnreferenced(hash);
+                    }
+                }
+            }
+            afterHash = blobs.get(blobs.size() - 1).getContentHash();
+            pause();
+        } while (blobs.size() == batchSize);
+    }
+
+    private void findMissingFiles(ImageReconciliationReport report) throws IOException {
+        int afterId = 0;
+        List<ImageEntity> images;
+        do {
+            int from = afterId;
+            images = inTransaction(() -> imageRepository.findBatchAfter(from, PageRequest.of(0, batchSize)));
+            for (ImageEntity image : images) {
+                if (!imageStorage.exists(ImageStorage.key(image.getStoragePath()))) {
+                    report.setMissingFiles(report.getMissingFiles() + 1);
+                    addSample(report.getMissingSamples(), image.getFilePath());
+                }
+            }
+            if (!images.isEmpty()) {
+                afterId = images.get(images.size() - 1).getId();
+                pause();
+            }
+        } while (images.size() == batchSize);
+    }
+
+    /**
+     * Потоковый обход каталога: пути копятся в пачку и проверяются, как только ее набралось
+     */
+    private void sweepDirectory(String directory, ImageReconciliationReport report, Instant cutoff) throws IOException {
+        Path root = imageStorage.localPath(directory);
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+        Map<String, Long> batch = new LinkedHashMap<>();
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                if (attributes.isRegularFile() && attributes.lastModifiedTime().toInstant().isBefore(cutoff)) {
+                    batch.put(toUrl(file), attributes.size());
+                    if (batch.size() >= batchSize) {
+                        sweepBatch(batch, report);
+                        batch.clear();
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                log.warn("Image reconciliation cannot read {}", file, e);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        if (!batch.isEmpty()) {
+            sweepBatch(batch, report);
+        }
+    }
+
+    private void sweepBatch(Map<String, Long> batch, ImageReconciliationReport report) {
+        report.setScannedFiles(report.getScannedFiles() + batch.size());
+        Set<String> live = findLive(batch.keySet());
+        for (Map.Entry<String, Long> file : batch.entrySet()) {
+            String url = file.getKey();
+            if (live.contains(url)) {
+                continue;
+            }
+            report.setOrphanFiles(report.getOrphanFiles() + 1);
+            report.setOrphanBytes(report.getOrphanBytes() + file.getValue());
+            addSample(report.getOrphanSamples(), url);
+            if (!report.isDryRun() && quarantine(url)) {
+                report.setQuarantinedFiles(report.getQuarantinedFiles() + 1);
+            }
+        }
+        pause();
+    }
+
+    /**
+     * Файл нужен, если на него ссылается БД: в хранилище по хэшу - запись содержимого
+     * (и для самого файла, и для его вариантов), иначе - картинка, вариант или старое поле image_path
+     */
+    private Set<String> findLive(Set<String> urls) {
+        String blobsPrefix = "/images/" + ImageService.BLOBS_DIRECTORY + "/";
+        Map<String, String> blobHashes = new LinkedHashMap<>();
+        Set<String> plain = new HashSet<>();
+        for (String url : urls) {
+            if (url.startsWith(blobsPrefix)) {
+                blobHashes.put(url, contentHash(url));
+            } else {
+                plain.add(url);
+            }
+        }
+
+        return inTransaction(() -> {
+            Set<String> live = new HashSet<>();
+            if (!blobHashes.isEmpty()) {
+                Set<String> known = new HashSet<>(imageBlobRepository.findContentHashesIn(new HashSet<>(blobHashes.values())));
+                blobHashes.forEach((url, hash) -> {
+                    if (known.contains(hash)) {
+                        live.add(url);
+                    }
+                });
+            }
+            if (!plain.isEmpty()) {
+                live.addAll(imageRepository.findFilePathsIn(plain));
+                live.addAll(imageRepository.findVariantPathsIn(plain));
+                live.addAll(adRepository.findImagePathsIn(plain));
+                live.addAll(userRepository.findImagePathsIn(plain));
+            }
+            return live;
+        });
+    }
+
+    /**
+     * Хэш по имени файла хранилища: {hash}.png, {hash}_card.jpg; у временных файлов хэша нет
+     */
+    private static String contentHash(String url) {
+        String name = url.substring(url.lastIndexOf('/') + 1);
+        int end = name.length();
+        for (char separator : new char[]{'_', '.'}) {
+            int index = name.indexOf(separator);
+            if (index >= 0 && index < end) {
+                end = index;
+            }
+        }
+        return name.substring(0, end);
+    }
+
+    /**
+     * Перенести файл в карантин; false - не вышло (файл уже удален, нет прав), сверка идет дальше
+     */
+    private boolean quarantine(String url) {
+        Path source = imageStorage.localPath(ImageStorage.key(url));
+        Path target = Paths.get(quarantinePath, LocalDate.now().toString(), ImageStorage.key(url));
+        try {
+            Files.createDirectories(target.getParent());
+            // Карантин вне app.images.path: эта папка раздается как статика
+            Files.move(source, target);
+        } catch (IOException e) {
+            log.warn("Failed to quarantine orphan image file {}", source, e);
+            return false;
+        }
+        hotImageCache.invalidate(url);
+        imageFileIndex.remove(ImageStorage.key(url));
+        log.info("Orphan image file quarantined: {} -> {}", source, target);
+        return true;
+    }
+
+    private void purgeQuarantine(ImageReconciliationReport report) throws IOException {
+        Path root = Paths.get(quarantinePath);
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+        LocalDate expired = LocalDate.now().minusDays(quarantineRetention.toDays());
+        try (DirectoryStream<Path> days = Files.newDirectoryStream(root)) {
+            for (Path day : days) {
+                LocalDate date;
+                try {
+                    date = LocalDate.parse(day.getFileName().toString());
+                } catch (DateTimeParseException e) {
+                    continue;
+                }
+                if (date.isBefore(expired)) {
+                    report.setPurgedFiles(report.getPurgedFiles() + deleteTree(day, report.isDryRun()));
+                }
+            }
+        }
+    }
+
+    private static long deleteTree(Path root, boolean dryRun) throws IOException {
+        long[] files = {0};
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                files[0]++;
+                if (!dryRun) {
+                    Files.delete(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path directory, IOException e) throws IOException {
+                if (!dryRun) {
+                    Files.delete(directory);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return files[0];
+    }
+
+    private void addSample(List<String> samples, String value) {
+        if (samples.size() < maxSamples) {
+            samples.add(value);
+        }
+    }
+
+    /**
+     * Пауза между пачками, чтобы сверка не забирала диск и пул соединений у запросов.
+     * Заодно продлевается аренда блокировки: без нее другой узел начал бы второй прогон.
+     */
+    private void pause() {
+        if (!clusterLock.extend(LOCK_NAME, lockLease)) {
+            throw new IllegalStateException("Image reconciliation lost its cluster lock");
+        }
+        if (batchPause.isZero()) {
+            return;
+        }
+        try {
+            Thread.sleep(batchPause.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Image reconciliation interrupted", e);
+        }
+    }
+
+    /**
+     * Каждая пачка - своя короткая транзакция на primary: долгая транзакция на весь обход
+     * держала бы соединение, а реплика может не видеть только что закоммиченные картинки
+     */
+    private <T> T inTransaction(Supplier<T> action) {
+        return new TransactionTemplate(transactionManager).execute(status -> action.get());
+    }
+
+    private ImageReconciliationRun toDto(ImageReconciliationRunEntity entity) {
+        ImageReconciliationRun run = new ImageReconciliationRun();
+        run.setId(entity.getId());
+        run.setDryRun(entity.isDryRun());
+        run.setStatus(entity.getStatus());
+        run.setNode(entity.getNode());
+        run.setStartedAt(entity.getStartedAt());
+        run.setFinishedAt(entity.getFinishedAt());
+        run.setError(entity.getError());
+        if (entity.getReport() != null) {
+            try {
+                run.setReport(objectMapper.readValue(entity.getReport(), ImageReconciliationReport.class));
+            } catch (JsonProcessingException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return run;
+    }
+
+    private String toUrl(Path file) {
+        Path relative = imageStorage.localPath("").relativize(file);
+        return ImageStorage.url(relative.toString().replace('\\', '/'));
+    }
+
+}
@@ -1,21 +1,38 @@
 package ru.skypro.homework.service;
 
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.multipart.MultipartFile;
-import ru.skypro.homework.model.entity.AdEntity;
+import ru.skypro.homework.config.AfterCommit;
+import ru.skypro.homework.model.entity.ImageBlobEntity;
 import ru.skypro.homework.model.entity.ImageEntity;
 import ru.skypro.homework.model.entity.UserEntity;
-import ru.skypro.homework.repository.AdRepository;
+import ru.skypro.homework.model.enums.ImageVariant;
+import ru.skypro.homework.repository.ImageBlobRepository;
 import ru.skypro.homework.repository.ImageRepository;
 import ru.skypro.homework.repository.UserRepository;
+import ru.skypro.homework.storage.ImageFileIndex;
+import ru.skypro.homework.storage.ImageStorage;
+import ru.skypro.homework.storage.StoredObject;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
 import java.util.UUID;
 
 @Slf4j
@@ -23,99 +40,181 @@ import java.util.UUID;
 @RequiredArgsConstructor
 public class ImageService {
 
+    private static final int COPY_BUFFER_SIZE = 16 * 1024;
+
+    /**
+     * Попыток взять ссылку на содержимое, которое параллельно создают и удаляют
+     */
+    private static final int ACQUIRE_ATTEMPTS = 3;
+
+    /**
+     * Каталог (префикс ключей) хранилища по хэшу в ImageStorage
+     */
+    static final String BLOBS_DIRECTORY = "blobs";
+
     private final UserRepository userRepository;
-    private final AdRepository adRepository;
     private final ImageRepository imageRepository;
+    private final ImageVariantService imageVariantService;
+    private final ImageBlobRepository imageBlobRepository;
+    private final PlatformTransactionManager transactionManager;
+    private final HotImageCache hotImageCache;
+    private final ImageStorage imageStorage;
+    private final ImageMetadataResolver imageMetadataResolver;
+    private final ImageFileIndex imageFileIndex;
 
-    @Value("${app.images.path:uploads/images}")
-    private String imagesPath;
+    @Value("${app.images.max-file-size:10MB}")
+    private DataSize maxFileSize;
 
-    public byte[] getUserAvatar(Integer userId) throws IOException {
-        UserEntity user = userRepository.findById(userId)
-                .orElseThrow(() -> new IOException("User not found: " + userId));
+    /**
+     * Файл аватара пользователя (без чтения содержимого).
+     * variant - уменьшенная копия; пока она не готова, отдается оригинал. null - оригинал.
+     * Метаданные берутся из ImageMetadataResolver: не больше одного запроса к БД, при попадании - ни одного.
+     */
+    public ImageFile getUserAvatarFile(Integer userId, ImageVariant variant) throws IOException {
+        ImageMetadata metadata = imageMetadataResolver.forUser(userId)
+                .orElseThrow(() -> new IOException("User not found or has no avatar: " + userId));
+        return selectImageFile(metadata, variant);
+    }
 
-        String imagePath = user.getImagePath();
-        if (imagePath == null || imagePath.isEmpty()) {
-            throw new IOException("User has no avatar: " + userId);
-        }
+    /**
+     * Файл картинки объявления (без чтения содержимого), вариант - как в getUserAvatarFile
+     */
+    public ImageFile getAdImageFile(Integer adId, ImageVariant variant) throws IOException {
+        ImageMetadata metadata = imageMetadataResolver.forAd(adId)
+                .orElseThrow(() -> new IOException("Ad not found or has no image: " + adId));
+        return selectImageFile(metadata, variant);
+    }
 
-        return getImageFile(imagePath);
+    /**
+     * Файл картинки по ее ссылке (/images/ads/..., /images/users/...), как она хранится в ImageEntity.
+     * Имя файла уникально для каждой загрузки и не перезаписывается, поэтому ссылка - версия картинки.
+     */
+    public ImageFile getImageFileByUrl(String imageUrl, ImageVariant variant) throws IOException {
+        return selectImageFile(imageMetadataResolver.forUrl(imageUrl), variant);
     }
 
-    public byte[] getAdImage(Integer adId) throws IOException {
-        AdEntity ad = adRepository.findById(adId)
-                .orElseThrow(() -> new IOException("Ad not found: " + adId));
+    /**
+     * Сохранить ImageEntity для объявления и вернуть сущность.
+     * IllegalArgumentException - файл больше app.images.max-file-size или это не картинка.
+     */
+    @Transactional
+    public ImageEntity saveAdImageEntity(MultipartFile image, Integer adId) throws IOException {
+        String prefix = adId != null ? "ad_" + adId : "ad_temp";
 
-        String imagePath = ad.getImagePath();
-        if (imagePath == null || imagePath.isEmpty()) {
-            throw new IOException("Ad has no image: " + adId);
+        // Создаем и сохраняем ImageEntity
+        ImageEntity imageEntity;
+        try (InputStream content = image.getInputStream()) {
+            imageEntity = writeImageFile(content, "ads", generateFilename(prefix));
         }
+        imageEntity.setOriginalFileName(image.getOriginalFilename());
 
-        return getImageFile(imagePath);
+        ImageEntity savedImage = imageRepository.save(imageEntity);
+        imageVariantService.scheduleAfterCommit(savedImage.getFilePath());
+        return savedImage;
     }
 
-    public String getImageContentType(Integer entityId, String type) {
-        try {
-            String imagePath = null;
-
-            if ("user".equals(type)) {
-                UserEntity user = userRepository.findById(entityId).orElse(null);
-                imagePath = user != null ? user.getImagePath() : null;
-            } else if ("ad".equals(type)) {
-                AdEntity ad = adRepository.findById(entityId).orElse(null);
-                imagePath = ad != null ? ad.getImagePath() : null;
-            }
+    /**
+     * Записать картинку объявления из потока (массовый импорт, галерея). ImageEntity не сохраняется,
+     * ее сохранит каскад при сохранении объявления; варианты ставит в очередь вызывающий,
+     * когда объявление сохранено.
+     * Поток пишется во временный файл и хэшируется вне транзакции: соединение с БД берется
+     * только на короткую транзакцию, в которой берется ссылка на содержимое (acquireBlob).
+     * Ссылка фиксируется сразу; если объявление так и не сохранится,
+     * ее нужно отпустить через releaseUnsavedImage.
+     */
+    public ImageEntity writeAdImage(InputStream content, String originalFilename) throws IOException {
+        return writeImage(content, originalFilename, "ads", generateFilename("ad"));
+    }
 
-            if (imagePath != null) {
-                return determineContentType(imagePath);
+    /**
+     * Записать картинку вне транзакции: spool, затем acquireBlob в короткой транзакции
+     */
+    private ImageEntity writeImage(InputStream content, String originalFilename, String directory,
+                                   String baseName) throws IOException {
+        SpooledImage spooled = spool(content);
+        try {
+            ImageBlobEntity blob;
+            try {
+                blob = new TransactionTemplate(transactionManager).execute(status -> {
+                    try {
+                        return acquireBlob(spooled);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
             }
-        } catch (Exception e) {
-            log.debug("Error determining content type for {} {}: {}", type, entityId, e.getMessage());
+            ImageEntity imageEntity = toImageEntity(spooled, blob, directory, baseName);
+            imageEntity.setOriginalFileName(originalFilename);
+            return imageEntity;
+        } finally {
+            Files.deleteIfExists(spooled.getFile());
         }
-
-        return "image/jpeg";
     }
 
     /**
-     * Сохранить ImageEntity для объявления и вернуть сущность
+     * Поставить генерацию вариантов картинки в очередь после коммита текущей транзакции
      */
-    public ImageEntity saveAdImageEntity(MultipartFile image, Integer adId) throws IOException {
-        String prefix = adId != null ? "ad_" + adId : "ad_temp";
-        String filename = generateFilename(prefix, getFileExtension(image));
-        Path filePath = Paths.get(imagesPath, "ads", filename);
-
-        Files.createDirectories(filePath.getParent());
-        Files.write(filePath, image.getBytes());
-
-        String imageUrl = "/images/ads/" + filename;
+    public void scheduleVariants(String imageUrl) {
+        imageVariantService.scheduleAfterCommit(imageUrl);
+    }
 
-        // Создаем и сохраняем ImageEntity
-        ImageEntity imageEntity = new ImageEntity();
-        imageEntity.setFilePath(imageUrl);
-        imageEntity.setContentType(image.getContentType());
-        imageEntity.setFileSize(image.getSize());
-        imageEntity.setOriginalFileName(image.getOriginalFilename());
+    /**
+     * Отпустить картинку, записанную writeAdImage, но не сохраненную (строка импорта не записалась)
+     */
+    @Transactional
+    public void releaseUnsavedImage(ImageEntity imageEntity) {
+        if (imageEntity.getBlob() != null) {
+            releaseBlob(imageEntity.getBlob().getContentHash());
+        } else {
+            deleteImageFile(imageEntity.getFilePath());
+        }
+    }
 
-        return imageRepository.save(imageEntity);
+    /**
+     * Удалить файл картинки по ее ссылке (/images/...), если он есть
+     */
+    public void deleteImageFile(String imageUrl) {
+        hotImageCache.invalidate(imageUrl);
+        imageFileIndex.remove(ImageStorage.key(imageUrl));
+        try {
+            imageStorage.delete(ImageStorage.key(imageUrl));
+        } catch (IOException e) {
+            log.warn("Failed to delete image file: {}", imageUrl, e);
+        }
     }
 
     /**
-     * Удалить ImageEntity по ID
+     * Удалить ImageEntity по ID. Файлы картинки из хранилища по хэшу удаляются, только когда
+     * уходит последняя ссылка на содержимое; у старых картинок файлы оригинала и вариантов
+     * удаляются сразу.
      */
+    @Transactional
     public void deleteImageEntity(Integer imageId) {
         try {
             ImageEntity imageEntity = imageRepository.findById(imageId)
                     .orElseThrow(() -> new IOException("Image entity not found: " + imageId));
 
-            // Удаляем файл с диска
-            String relativePath = imageEntity.getFilePath().replaceFirst("^/images/", "");
-            Path filePath = Paths.get(imagesPath, relativePath);
-
-            if (Files.exists(filePath)) {
-                Files.delete(filePath);
-                log.info("Image file deleted: {}", filePath);
+            imageMetadataResolver.evictImage(imageEntity.getFilePath());
+            if (imageEntity.getBlob() != null) {
+                String contentHash = imageEntity.getBlob().getContentHash();
+                imageRepository.deleteById(imageId);
+                releaseBlob(contentHash);
+                log.info("Image entity deleted: {}", imageId);
+                return;
             }
 
+            imageEntity.getVariants().values().stream()
+                    .filter(variantUrl -> !variantUrl.equals(imageEntity.getFilePath()))
+                    .forEach(this::deleteImageFile);
+
+            // Удаляем файл из хранилища
+            hotImageCache.invalidate(imageEntity.getFilePath());
+            imageFileIndex.remove(ImageStorage.key(imageEntity.getFilePath()));
+            imageStorage.delete(ImageStorage.key(imageEntity.getFilePath()));
+            log.info("Image file deleted: {}", imageEntity.getFilePath());
+
             // Удаляем из БД
             imageRepository.deleteById(imageId);
             log.info("Image entity deleted: {}", imageId);
@@ -131,29 +230,268 @@ public class ImageService {
     }
 
     /**
-     * Получить файл изображения с диска
+     * Записать картинку в текущей транзакции: spool, затем acquireBlob.
+     * Ссылка картинки (/images/{directory}/{baseName}.ext) по-прежнему уникальна для загрузки,
+     * а файл один на содержимое: /images/blobs/ab/cd/{hash}.ext.
+     * Возвращает ImageEntity с заполненными ссылкой, размером, типом, хэшем и содержимым.
      */
-    private byte[] getImageFile(String imagePath) throws IOException {
-        String relativePath = imagePath.replaceFirst("^/images/", "");
-        Path filePath = Paths.get(imagesPath, relativePath);
+    private ImageEntity writeImageFile(InputStream content, String directory, String baseName) throws IOException {
+        SpooledImage spooled = spool(content);
+        try {
+            return toImageEntity(spooled, acquireBlob(spooled), directory, baseName);
+        } finally {
+            Files.deleteIfExists(spooled.getFile());
+        }
+    }
 
-        if (!Files.exists(filePath)) {
-            throw new IOException("Image file not found: " + filePath);
+    /**
+     * Записать поток во временный файл за один проход: данные идут через буфер фиксированного
+     * размера, по дороге проверяется лимит размера, по первым байтам определяется формат
+     * и считается SHA-256. К БД не обращается. Временный файл удаляет вызывающий.
+     */
+    private SpooledImage spool(InputStream content) throws IOException {
+        Path tempFile = createSpoolFile();
+        try {
+            MessageDigest digest = sha256();
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            byte[] header = new byte[ImageFormat.HEADER_LENGTH];
+            int headerLength = 0;
+            long size = 0;
+            long limit = maxFileSize.toBytes();
+
+            try (OutputStream out = Files.newOutputStream(tempFile)) {
+                int read;
+                while ((read = content.read(buffer)) != -1) {
+                    size += read;
+                    if (size > limit) {
+                        throw new IllegalArgumentException("Image is larger than " + maxFileSize);
+                    }
+                    if (headerLength < header.length) {
+                        int copied = Math.min(read, header.length - headerLength);
+                        System.arraycopy(buffer, 0, header, headerLength, copied);
+                        headerLength += copied;
+                    }
+                    digest.update(buffer, 0, read);
+                    out.write(buffer, 0, read);
+                }
+            }
+
+            ImageFormat format = ImageFormat.detect(header, headerLength);
+            if (format == null) {
+                throw new IllegalArgumentException("Unsupported image format, expected JPEG, PNG, GIF or WEBP");
+            }
+            return new SpooledImage(tempFile, toHex(digest.digest()), format, size);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
         }
+    }
 
-        return Files.readAllBytes(filePath);
+    private static ImageEntity toImageEntity(SpooledImage spooled, ImageBlobEntity blob, String directory,
+                                             String baseName) {
+        ImageEntity imageEntity = new ImageEntity();
+        imageEntity.setFilePath("/images/" + directory + "/" + baseName + spooled.getFormat().getExtension());
+        imageEntity.setFileSize(spooled.getSize());
+        imageEntity.setContentType(spooled.getFormat().getContentType());
+        imageEntity.setContentHash(spooled.getContentHash());
+        imageEntity.setBlob(blob);
+        return imageEntity;
     }
 
-    private String getFileExtension(MultipartFile file) {
-        String originalFilename = file.getOriginalFilename();
-        if (originalFilename != null && originalFilename.contains(".")) {
-            return originalFilename.substring(originalFilename.lastIndexOf("."));
+    /**
+     * Временный файл загрузки. При локальном хранилище - в его каталоге blobs, чтобы перенос
+     * на место был атомарным переименованием; иначе - во временном каталоге системы
+     * (оттуда файл загружается в хранилище).
+     */
+    private Path createSpoolFile() throws IOException {
+        Path blobsPath = imageStorage.localPath(BLOBS_DIRECTORY);
+        if (blobsPath == null) {
+            return Files.createTempFile("image-upload-", ".tmp");
         }
-        return ".jpg";
+        Files.createDirectories(blobsPath);
+        return Files.createTempFile(blobsPath, ".upload-", ".tmp");
     }
 
-    private String generateFilename(String prefix, String extension) {
-        return prefix + "_" + System.currentTimeMillis() + extension;
+    /**
+     * Взять ссылку на содержимое. Если его еще нет, создается ImageBlobEntity со счетчиком 1
+     * и временный файл переносится в хранилище (в локальном - переименование, в S3 - загрузка).
+     * Если такое уже загружали, временный файл просто удаляется и повторная загрузка стоит одного UPDATE. Если запись есть, а файла нет
+     * (сбой между переносом файла и коммитом), файл восстанавливается из этой загрузки.
+     * Две первые загрузки одного содержимого не конфликтуют по ключу: вставка второй ждет
+     * коммита первой и ничего не вставляет, после чего вторая берет ссылку обычным UPDATE.
+     * Если запись успели удалить между вставкой и UPDATE, попытка повторяется.
+     */
+    private ImageBlobEntity acquireBlob(SpooledImage spooled) throws IOException {
+        Path tempFile = spooled.getFile();
+        String contentHash = spooled.getContentHash();
+        ImageFormat format = spooled.getFormat();
+        String blobUrl = "/images/" + BLOBS_DIRECTORY + "/" + contentHash.substring(0, 2) + "/"
+                + contentHash.substring(2, 4) + "/" + contentHash + format.getExtension();
+        String blobKey = ImageStorage.key(blobUrl);
+
+        for (int attempt = 0; attempt < ACQUIRE_ATTEMPTS; attempt++) {
+            if (imageBlobRepository.incrementRefCount(contentHash) > 0) {
+                if (!imageStorage.exists(blobKey)) {
+                    log.warn("Image blob {} was missing in storage, restored from upload", blobUrl);
+                    imageStorage.putFile(blobKey, tempFile, format.getContentType());
+                    imageFileIndex.update(blobKey);
+                }
+                return imageBlobRepository.getReferenceById(contentHash);
+            }
+            if (imageBlobRepository.insertIfAbsent(contentHash, blobUrl, spooled.getSize(), format.getContentType()) > 0) {
+                imageStorage.putFile(blobKey, tempFile, format.getContentType());
+                imageFileIndex.update(blobKey);
+                return imageBlobRepository.getReferenceById(contentHash);
+            }
+        }
+        throw new IllegalStateException("Failed to acquire image blob " + contentHash);
+    }
+
+    /**
+     * Отпустить ссылку на содержимое. Запись и файлы удаляются после коммита отдельной
+     * транзакцией: строки images к этому времени уже нет.
+     */
+    private void releaseBlob(String contentHash) {
+        imageBlobRepository.decrementRefCount(contentHash);
+        AfterCommit.run(() -> deleteBlobIfUnreferenced(contentHash));
+    }
+
+    /**
+     * Удалить содержимое без ссылок. Строка блокируется (SELECT ... FOR UPDATE), и файлы удаляются
+     * до коммита, пока блокировка держится: повторная загрузка того же содержимого ждет ее
+     * на incrementRefCount/insertIfAbsent и после коммита создает запись и файл заново.
+     * Если ее успели сделать раньше, счетчик уже поднят и ничего не удаляется.
+     * Если файлы удалены, а коммит не прошел, запись остается без файла - его восстановит
+     * следующая загрузка того же содержимого (acquireBlob).
+     * Вызывается после коммита освобождения ссылки и сверкой (ImageReconciliationService).
+     *
+     * @return true, если запись и файлы содержимого удалены
+     */
+    public boolean deleteBlobIfUnreferenced(String contentHash) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        // В afterCommit ресурсы завершенной транзакции еще привязаны к потоку
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        return Boolean.TRUE.equals(transactionTemplate.execute(status -> imageBlobRepository
+                .findByIdForUpdate(contentHash)
+                .filter(blob -> imageBlobRepository.deleteIfUnreferenced(contentHash) == 1)
+                .map(blob -> {
+                    ImageVariantService.possibleVariantUrls(blob.getFilePath()).forEach(this::deleteImageFile);
+                    deleteImageFile(blob.getFilePath());
+                    log.info("Image blob deleted: {}", blob.getFilePath());
+                    return true;
+                })
+                .orElse(false)));
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 обязан быть в любой JRE
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Выбрать файл для ответа: готовый вариант картинки или оригинал.
+     * ETag варианта отличается от ETag оригинала, чтобы клиент, получивший оригинал вместо
+     * неготового варианта, скачал вариант при следующей проверке.
+     */
+    private ImageFile selectImageFile(ImageMetadata image, ImageVariant variant) throws IOException {
+        String contentHash = image.getContentHash();
+        // Ссылка картинки и ее файл различаются, если содержимое лежит в хранилище по хэшу
+        String storagePath = image.getStoragePath();
+        String variantPath = variant != null ? image.getVariants().get(variant) : null;
+        if (variantPath != null) {
+            boolean original = variantPath.equals(image.getImageUrl());
+            String variantHash = contentHash == null || original
+                    ? contentHash
+                    : contentHash + "-" + variant.name().toLowerCase(Locale.ROOT);
+            try {
+                return original
+                        ? getImageFile(storagePath, contentTypeOf(image.getContentType(), storagePath), variantHash, variant)
+                        : getImageFile(variantPath, contentTypeOf(null, variantPath), variantHash, variant);
+            } catch (IOException e) {
+                log.warn("Variant {} of {} is missing in storage, serving the original", variant, image.getImageUrl());
+            }
+        }
+        return getImageFile(storagePath, contentTypeOf(image.getContentType(), storagePath), contentHash, null);
+    }
+
+    /**
+     * Найти файл изображения: горячие отдаются из HotImageCache без обращения к хранилищу,
+     * у остальных атрибуты берутся из описи ImageFileIndex, а при промахе - из хранилища (stat).
+     * Содержимое здесь не читается: ответ может оказаться 304, HEAD или X-Accel-Redirect,
+     * в кэш картинку кладет loadHotContent, когда тело действительно отдает приложение.
+     */
+    private ImageFile getImageFile(String imagePath, String contentType, String contentHash,
+                                   ImageVariant variant) throws IOException {
+        String key = ImageStorage.key(imagePath);
+        Path filePath = imageStorage.localPath(key);
+
+        HotImageCache.CachedImage cached = hotImageCache.get(imagePath);
+        if (cached != null) {
+            return new ImageFile(filePath, contentType, cached.getContent().capacity(),
+                    cached.getLastModified(), contentHash, variant, cached.getContent(), key, imageStorage);
+        }
+
+        StoredObject stored = imageFileIndex.get(key);
+        if (stored == null) {
+            stored = imageStorage.stat(key);
+            if (stored == null) {
+                throw new IOException("Image file not found: " + imagePath);
+            }
+            imageFileIndex.put(key, stored);
+        }
+
+        return new ImageFile(filePath, contentType, stored.getLength(), stored.getLastModified(), contentHash,
+                variant, null, key, imageStorage);
+    }
+
+    /**
+     * Содержимое картинки для отдачи из памяти: прочитать ее в HotImageCache, если она туда подходит
+     * (запрошена не впервые и не больше max-entry-size). Возвращает содержимое или null - отдавать из файла.
+     * Вызывается, только когда тело пишет само приложение.
+     */
+    public ByteBuffer loadHotContent(ImageFile image) throws IOException {
+        String key = image.getStorageKey();
+        HotImageCache.CachedImage cached = hotImageCache.load(ImageStorage.url(key), () -> imageStorage.get(key),
+                image.getLength(), image.getLastModified());
+        return cached != null ? cached.getContent() : null;
+    }
+
+    /**
+     * Файл из ответа пропал из хранилища (удалил другой узел на общем диске): запись описи
+     * и горячего кэша устарела и больше не должна выдаваться за существующий файл
+     */
+    public void evictMissing(ImageFile image) {
+        log.warn("Image file {} is missing in storage, evicted from the index", image.getStorageKey());
+        imageFileIndex.remove(image.getStorageKey());
+        hotImageCache.invalidate(ImageStorage.url(image.getStorageKey()));
+    }
+
+    /**
+     * Имя файла не по времени: в одну миллисекунду пишется много картинок (импорт, галерея,
+     * параллельные загрузки на разных узлах), а имя - ключ в хранилище и ссылка-версия картинки
+     */
+    private String generateFilename(String prefix) {
+        return prefix + "_" + UUID.randomUUID();
+    }
+
+    /**
+     * Тип, сохраненный при загрузке (определен по первым байтам файла), или по расширению -
+     * у вариантов и старых картинок его нет
+     */
+    private String contentTypeOf(String storedContentType, String filePath) {
+        return storedContentType != null ? storedContentType : determineContentType(filePath);
     }
 
     private String determineContentType(String filePath) {
@@ -163,39 +501,69 @@ public class ImageService {
             return "image/png";
         } else if (filePath.toLowerCase().endsWith(".gif")) {
             return "image/gif";
+        } else if (filePath.toLowerCase().endsWith(".webp")) {
+            return "image/webp";
         } else {
             return "application/octet-stream";
         }
     }
 
+    /**
+     * Сохранить новый аватар пользователя. Файл пишется и хэшируется до транзакции (как writeAdImage),
+     * пользователь меняется короткой транзакцией. Прежний ImageEntity удаляется, и его ссылка
+     * на содержимое отпускается: файлы уходят вместе с последней ссылкой.
+     */
     public String saveUserImage(MultipartFile image, String userEmail) throws IOException {
-        UserEntity user = userRepository.findByEmail(userEmail)
+        Integer userId = userRepository.findByEmail(userEmail)
+                .map(UserEntity::getId)
                 .orElseThrow(() -> new IOException("User not found: " + userEmail));
 
-        String filename = generateFilename("user_" + user.getId(), getFileExtension(image));
-        Path filePath = Paths.get(imagesPath, "users", filename);
-
-        Files.createDirectories(filePath.getParent());
-        Files.write(filePath, image.getBytes());
+        ImageEntity imageEntity;
+        try (InputStream content = image.getInputStream()) {
+            imageEntity = writeImage(content, image.getOriginalFilename(), "users", generateFilename("user_" + userId));
+        }
 
-        String imageUrl = "/images/users/" + filename;
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        try {
+            return transaction.execute(status -> attachUserImage(userEmail, imageEntity));
+        } catch (RuntimeException e) {
+            transaction.executeWithoutResult(status -> releaseUnsavedImage(imageEntity));
+            throw e;
+        }
+    }
 
-        // Создаем и сохраняем ImageEntity
-        ImageEntity imageEntity = new ImageEntity();
-        imageEntity.setFilePath(imageUrl);
-        imageEntity.setContentType(image.getContentType());
-        imageEntity.setFileSize(image.getSize());
-        imageEntity.setOriginalFileName(image.getOriginalFilename());
+    private String attachUserImage(String userEmail, ImageEntity imageEntity) {
+        UserEntity user = userRepository.findByEmail(userEmail)
+                .orElseThrow(() -> new IllegalStateException("User not found: " + userEmail));
+        ImageEntity previousImage = user.getImage();
+        String imageUrl = imageEntity.getFilePath();
 
         ImageEntity savedImage = imageRepository.save(imageEntity);
+        imageVariantService.scheduleAfterCommit(imageUrl);
 
         // Обновляем пользователя
         user.setImage(savedImage);
         user.setImagePath(imageUrl); // Для обратной совместимости
         userRepository.save(user);
+        imageMetadataResolver.evictUser(user.getId());
+        if (previousImage != null) {
+            deleteImageEntity(previousImage.getId());
+        }
 
         log.info("User image saved: {}", imageUrl);
         return imageUrl;
     }
 
-}
\ No newline at end of file
+    /**
+     * Загрузка во временном файле: хэш, формат и размер уже известны
+     */
+    @Getter
+    @RequiredArgsConstructor
+    private static class SpooledImage {
+        private final Path file;
+        private final String contentHash;
+        private final ImageFormat format;
+        private final long size;
+    }
+
+}
@@ -0,0 +1,305 @@
+package ru.skypro.homework.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.skypro.homework.config.AfterCommit;
+import ru.skypro.homework.model.entity.ImageEntity;
+import ru.skypro.homework.model.enums.ImageVariant;
+import ru.skypro.homework.repository.ImageRepository;
+import ru.skypro.homework.storage.ImageFileIndex;
+import ru.skypro.homework.storage.ImageStorage;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Фоновая генерация уменьшенных копий картинок (ImageVariant) после загрузки.
+ * Работает на ограниченном пуле потоков с ограниченной очередью: при переполнении задача
+ * отбрасывается, и по ссылкам вариантов продолжает отдаваться оригинал.
+ * Копии пишутся рядом с файлом оригинала (ad_7_1700.png -> ad_7_1700_card.jpg,
+ * в хранилище по хэшу - {hash}.png -> {hash}_card.jpg) и записываются в ImageEntity.
+ * Картинки с одинаковым содержимым делят и файлы вариантов: уже готовые не пересчитываются.
+ * Размер оригинала читается из заголовка до декодирования: картинки больше max-source-pixels
+ * не декодируются вовсе (декомпрессионная бомба в несколько КБ заняла бы гигабайты кучи),
+ * большие декодируются с прореживанием - не крупнее, чем нужно для FULL. Поворот из EXIF
+ * применяется к вариантам: метаданные в них не копируются.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ImageVariantService {
+
+    private final ImageRepository imageRepository;
+    private final PlatformTransactionManager transactionManager;
+    private final HotImageCache hotImageCache;
+    private final ImageStorage imageStorage;
+    private final ImageMetadataResolver imageMetadataResolver;
+    private final ImageFileIndex imageFileIndex;
+
+    @Value("${app.images.variants.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.images.variants.threads:2}")
+    private int threads;
+
+    @Value("${app.images.variants.queue-capacity:200}")
+    private int queueCapacity;
+
+    @Value("${app.images.variants.jpeg-quality:0.82}")
+    private float jpegQuality;
+
+    @Value("${app.images.variants.max-source-pixels:50000000}")
+    private long maxSourcePixels;
+
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    void init() {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("image-variants-");
+        threadFactory.setDaemon(true);
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), threadFactory,
+                (task, pool) -> log.warn("Image variant queue is full ({}), task dropped", queueCapacity));
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Поставить генерацию вариантов картинки в очередь после коммита текущей транзакции
+     * (до коммита ImageEntity может быть не видна или вовсе откатиться)
+     */
+    public void scheduleAfterCommit(String imageUrl) {
+        if (!enabled) {
+            return;
+        }
+        AfterCommit.run(() -> executor.execute(() -> generate(imageUrl)));
+    }
+
+    /**
+     * Сгенерировать варианты картинки и записать их в ImageEntity.
+     * Если картинку за это время удалили, созданные файлы удаляются; файлы вариантов
+     * из хранилища по хэшу остаются - их удалят вместе с содержимым.
+     */
+    void generate(String imageUrl) {
+        String storagePath = new TransactionTemplate(transactionManager).execute(status ->
+                imageRepository.findByFilePath(imageUrl).map(ImageEntity::getStoragePath).orElse(null));
+        if (storagePath == null) {
+            log.debug("Image {} was deleted before its variants were generated", imageUrl);
+            return;
+        }
+        boolean shared = !storagePath.equals(imageUrl);
+
+        BufferedImage source;
+        int longestSide;
+        int orientation;
+        try (InputStream content = imageStorage.get(ImageStorage.key(storagePath));
+             ImageInputStream input = ImageIO.createImageInputStream(content)) {
+            ImageReader reader = input != null ? readerFor(input) : null;
+            if (reader == null) {
+                // Нет декодера ImageIO (например, WEBP): по ссылкам вариантов отдается оригинал
+                log.debug("No ImageIO reader for {}, variants skipped", imageUrl);
+                return;
+            }
+            try {
+                reader.setInput(input, true, false);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if ((long) width * height > maxSourcePixels) {
+                    log.warn("Image {} is {}x{}, above {} pixels, variants skipped", imageUrl, width, height, maxSourcePixels);
+                    return;
+                }
+                longestSide = Math.max(width, height);
+                orientation = ExifOrientation.read(reader);
+                ImageReadParam param = reader.getDefaultReadParam();
+                int subsampling = subsampling(longestSide);
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                source = reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to read image {} for variants", imageUrl, e);
+            return;
+        }
+
+        boolean alpha = source.getColorModel().hasAlpha();
+        Map<ImageVariant, String> created = new EnumMap<>(ImageVariant.class);
+        List<String> written = new ArrayList<>();
+        try {
+            for (ImageVariant variant : ImageVariant.values()) {
+                if (longestSide <= variant.getMaxSize()) {
+                    created.put(variant, imageUrl);
+                    continue;
+                }
+                String variantUrl = variantUrl(storagePath, variant, alpha ? ".png" : ".jpg");
+                String target = ImageStorage.key(variantUrl);
+                if (!shared || !imageStorage.exists(target)) {
+                    write(ExifOrientation.apply(scale(source, variant.getMaxSize(), alpha), orientation), target, alpha);
+                    hotImageCache.invalidate(variantUrl);
+                    imageFileIndex.update(target);
+                    written.add(variantUrl);
+                }
+                created.put(variant, variantUrl);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to generate variants for {}", imageUrl, e);
+            deleteFiles(written);
+            return;
+        }
+
+        Boolean recorded = new TransactionTemplate(transactionManager).execute(status ->
+                imageRepository.findByFilePath(imageUrl)
+                        .map(image -> {
+                            image.getVariants().putAll(created);
+                            return true;
+                        })
+                        .orElse(false));
+        if (!Boolean.TRUE.equals(recorded)) {
+            log.debug("Image {} was deleted before its variants were recorded", imageUrl);
+            if (!shared) {
+                deleteFiles(written);
+            }
+            return;
+        }
+        // Закэшированные метаданные без вариантов отдавали бы оригинал до конца ttl
+        imageMetadataResolver.evictImage(imageUrl);
+        log.debug("Variants generated for {}: {}", imageUrl, created.keySet());
+    }
+
+    /**
+     * Ссылка на файл варианта: имя оригинала без расширения + _вариант + расширение
+     */
+    static String variantUrl(String imageUrl, ImageVariant variant, String extension) {
+        int slash = imageUrl.lastIndexOf('/');
+        int dot = imageUrl.lastIndexOf('.');
+        String base = dot > slash ? imageUrl.substring(0, dot) : imageUrl;
+        return base + "_" + variant.name().toLowerCase(Locale.ROOT) + extension;
+    }
+
+    /**
+     * Все ссылки, под которыми могут лежать варианты файла (и JPEG, и PNG) - для удаления
+     * вместе с содержимым, когда какие именно были созданы, уже не записано
+     */
+    static List<String> possibleVariantUrls(String imageUrl) {
+        List<String> urls = new ArrayList<>();
+        for (ImageVariant variant : ImageVariant.values()) {
+            urls.add(variantUrl(imageUrl, variant, ".jpg"));
+            urls.add(variantUrl(imageUrl, variant, ".png"));
+        }
+        return urls;
+    }
+
+    private static ImageReader readerFor(ImageInputStream input) {
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        return readers.hasNext() ? readers.next() : null;
+    }
+
+    /**
+     * Прореживание при декодировании: берется каждый n-й пиксель, но не меньше чем вдвое больше FULL,
+     * чтобы дальше уменьшение шагами по-прежнему сглаживало
+     */
+    static int subsampling(int longestSide) {
+        int largest = 0;
+        for (ImageVariant variant : ImageVariant.values()) {
+            largest = Math.max(largest, variant.getMaxSize());
+        }
+        return Math.max(1, longestSide / (2 * largest));
+    }
+
+    /**
+     * Уменьшение шагами не больше чем вдвое: билинейная интерполяция за один большой шаг
+     * теряет детали и дает «лесенку»
+     */
+    private static BufferedImage scale(BufferedImage source, int maxSize, boolean alpha) {
+        double ratio = (double) maxSize / Math.max(source.getWidth(), source.getHeight());
+        int targetWidth = Math.max(1, (int) Math.round(source.getWidth() * ratio));
+        int targetHeight = Math.max(1, (int) Math.round(source.getHeight() * ratio));
+        int type = alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+
+        BufferedImage current = source;
+        int width = source.getWidth();
+        int height = source.getHeight();
+        do {
+            width = Math.max(targetWidth, width / 2);
+            height = Math.max(targetHeight, height / 2);
+            BufferedImage step = new BufferedImage(width, height, type);
+            Graphics2D graphics = step.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                graphics.drawImage(current, 0, 0, width, height, null);
+            } finally {
+                graphics.dispose();
+            }
+            current = step;
+        } while (width != targetWidth || height != targetHeight);
+        return current;
+    }
+
+    /**
+     * Кодирование в память (варианты не больше FULL - сотни килобайт) и запись в хранилище одним put:
+     * читатели не видят недописанный файл
+     */
+    private void write(BufferedImage image, String key, boolean alpha) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName(alpha ? "png" : "jpeg").next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        if (!alpha) {
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(jpegQuality);
+        }
+
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(encoded)) {
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        imageStorage.put(key, new ByteArrayInputStream(encoded.toByteArray()), encoded.size(),
+                alpha ? "image/png" : "image/jpeg");
+    }
+
+    private void deleteFiles(List<String> variantUrls) {
+        for (String variantUrl : variantUrls) {
+            imageFileIndex.remove(ImageStorage.key(variantUrl));
+            try {
+                imageStorage.delete(ImageStorage.key(variantUrl));
+            } catch (IOException e) {
+                log.warn("Failed to delete image variant {}", variantUrl, e);
+            }
+        }
+    }
+
+}
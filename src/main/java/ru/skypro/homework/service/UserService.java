@@ -3,14 +3,15 @@ package ru.skypro.homework.service;
 import lombok.RequiredArgsConstructor;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import ru.skypro.homework.mapper.UserMapper;
 import ru.skypro.homework.model.dto.Register;
 import ru.skypro.homework.model.dto.User;
 import ru.skypro.homework.model.entity.ImageEntity;
 import ru.skypro.homework.model.entity.UserEntity;
 import ru.skypro.homework.repository.UserRepository;
+import ru.skypro.homework.security.CustomUserDetailsManager;
 
-import javax.transaction.Transactional;
 import java.time.LocalDateTime;
 import java.util.Optional;
 
@@ -21,19 +22,34 @@ public class UserService {
 
     private final UserRepository userRepository;
     private final UserMapper userMapper;
+    private final ExtendedAdCache extendedAdCache;
+    private final ImageMetadataResolver imageMetadataResolver;
+    private final CustomUserDetailsManager userDetailsManager;
 
     /**
      * Получить текущего аутентифицированного пользователя
      */
+    @Transactional(readOnly = true)
     public User getCurrentUser() {
         String email = getCurrentUserEmail();
         return getUserByEmail(email)
                 .orElseThrow(() -> new RuntimeException("User not found"));
     }
 
+    /**
+     * ETag профиля текущего пользователя по версии строки, без загрузки сущности
+     */
+    @Transactional(readOnly = true)
+    public String getCurrentUserETag() {
+        return userRepository.findVersionByEmail(getCurrentUserEmail())
+                .map(user -> ETags.of("user:" + user.getId() + "." + user.getVersion()))
+                .orElseThrow(() -> new RuntimeException("User not found"));
+    }
+
     /**
      * Получить Entity текущего пользователя
      */
+    @Transactional(readOnly = true)
     public UserEntity getCurrentUserEntity() {
         String email = getCurrentUserEmail();
         return getUserEntityByEmail(email)
@@ -56,11 +72,13 @@ public class UserService {
                 .anyMatch(a -> a.getAuthority().equals("ROLE_ADMIN"));
     }
 
+    @Transactional(readOnly = true)
     public Optional<User> getUserById(Integer id) {
         return userRepository.findById(id)
                 .map(userMapper::entityToDto);
     }
 
+    @Transactional(readOnly = true)
     public Optional<User> getUserByEmail(String email) {
         return userRepository.findByEmail(email)
                 .map(userMapper::entityToDto);
@@ -69,12 +87,19 @@ public class UserService {
     public Optional<User> updateUser(Integer id, User userDto) {
         return userRepository.findById(id)
                 .map(userEntity -> {
+                    String oldEmail = userEntity.getEmail();
                     userMapper.updateEntityFromDto(userDto, userEntity);
                     UserEntity savedEntity = userRepository.save(userEntity);
+                    // Имя и телефон автора входят в карточки его объявлений
+                    extendedAdCache.evictByAuthor(id);
+                    // Email и роль входят в UserDetails
+                    userDetailsManager.evict(oldEmail);
+                    userDetailsManager.evict(savedEntity.getEmail());
                     return userMapper.entityToDto(savedEntity);
                 });
     }
 
+    @Transactional(readOnly = true)
     public boolean existsByEmail(String email) {
         return userRepository.existsByEmail(email);
     }
@@ -92,10 +117,12 @@ public class UserService {
         return userMapper.entityToDto(savedEntity);
     }
 
+    @Transactional(readOnly = true)
     public Optional<UserEntity> getUserEntityById(Integer id) {
         return userRepository.findById(id);
     }
 
+    @Transactional(readOnly = true)
     public Optional<UserEntity> getUserEntityByEmail(String email) {
         return userRepository.findByEmail(email);
     }
@@ -108,6 +135,7 @@ public class UserService {
                 .orElseThrow(() -> new RuntimeException("User not found"));
         userEntity.setImagePath(imageUrl);
         userRepository.save(userEntity);
+        imageMetadataResolver.evictUser(userEntity.getId());
     }
 
     /**
@@ -118,6 +146,7 @@ public class UserService {
                 .orElseThrow(() -> new RuntimeException("User not found"));
         userEntity.setImage(image);
         userRepository.save(userEntity);
+        imageMetadataResolver.evictUser(userEntity.getId());
     }
 
 }
@@ -0,0 +1,465 @@
+package ru.skypro.homework.storage;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Упаковка мелких объектов в большие файлы-сегменты (pack-000001.dat, ...), которые только дописываются.
+ * Запись сегмента: заголовок (magic, тип, длина ключа, длина данных, время изменения, CRC32 ключа и данных),
+ * ключ, данные. Удаление дописывает запись-надгробие.
+ * Индекс ключ -> (сегмент, смещение, длина) - в памяти, при открытии восстанавливается чтением
+ * сегментов по порядку; недописанный хвост (сбой посреди записи) отрезается.
+ * Чтение - срез MappedByteBuffer сегмента, без open/read/close на каждый объект. Активный сегмент
+ * отображается заново, когда чтение выходит за уже отображенную часть.
+ * Уплотнение переписывает живые записи сегмента с большой долей мусора в конец активного
+ * и удаляет сегмент. Надгробия переносятся, пока есть более старые сегменты, иначе при
+ * восстановлении удаленный объект вернулся бы.
+ * Запись и уплотнение идут под одной блокировкой, чтение без блокировок.
+ * Писатель у каталога один: конец сегмента известен только в памяти процесса, и второй процесс
+ * дописывал бы поверх чужих записей. Поэтому при открытии берется блокировка файла pack.lock
+ * (FileChannel.tryLock); если ее держит другой процесс, открытие завершается ошибкой.
+ */
+@Slf4j
+class BlobPack implements Closeable {
+
+    static final int MAGIC = 0x494D4750;
+    static final int HEADER_SIZE = 4 + 1 + 2 + 4 + 8 + 4;
+
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final String PREFIX = "pack-";
+    private static final String SUFFIX = ".dat";
+    private static final int READ_ATTEMPTS = 3;
+    private static final String LOCK_FILE = "pack.lock";
+
+    private final Path directory;
+    private final long segmentSize;
+    private final Map<String, Entry> index = new ConcurrentHashMap<>();
+    private final ConcurrentNavigableMap<Integer, Segment> segments = new ConcurrentSkipListMap<>();
+    private final Object writeLock = new Object();
+    private final FileChannel lockChannel;
+
+    private volatile Segment active;
+
+    BlobPack(Path directory, long segmentSize) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        Files.createDirectories(directory);
+        lockChannel = FileChannel.open(directory.resolve(LOCK_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            FileLock directoryLock = lockChannel.tryLock();
+            if (directoryLock == null) {
+                throw new IllegalStateException("Image pack " + directory + " is already open by another process");
+            }
+            recover();
+        } catch (OverlappingFileLockException e) {
+            lockChannel.close();
+            throw new IllegalStateException("Image pack " + directory + " is already open in this process", e);
+        } catch (IOException | RuntimeException e) {
+            lockChannel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Записать объект. Объект целиком в одной записи, поэтому читатели видят либо старую версию, либо новую.
+     */
+    void put(String key, byte[] content, long lastModified) throws IOException {
+        synchronized (writeLock) {
+            append(PUT, key, content, lastModified);
+        }
+    }
+
+    /**
+     * Удалить объект; false - его и не было
+     */
+    boolean delete(String key) throws IOException {
+        synchronized (writeLock) {
+            if (!index.containsKey(key)) {
+                return false;
+            }
+            append(DELETE, key, new byte[0], System.currentTimeMillis());
+            return true;
+        }
+    }
+
+    /**
+     * Данные объекта (только для чтения, position 0) или null, если объекта нет
+     */
+    ByteBuffer read(String key) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            Entry entry = index.get(key);
+            if (entry == null) {
+                return null;
+            }
+            Segment segment = segments.get(entry.segmentId);
+            try {
+                if (segment != null) {
+                    return segment.slice(entry.dataOffset, entry.length);
+                }
+            } catch (ClosedChannelException e) {
+                // Сегмент уплотнили между чтением индекса и отображением - индекс уже указывает на копию
+            }
+            if (attempt == READ_ATTEMPTS) {
+                throw new IOException("Packed object " + key + " moved while reading");
+            }
+        }
+    }
+
+    /**
+     * Размер и время изменения или null
+     */
+    StoredObject stat(String key) {
+        Entry entry = index.get(key);
+        return entry != null ? new StoredObject(entry.length, entry.lastModified) : null;
+    }
+
+    boolean contains(String key) {
+        return index.containsKey(key);
+    }
+
+    /**
+     * Уплотнить закрытые сегменты, в которых мусора не меньше garbageRatio. Возвращает число
+     * удаленных сегментов.
+     */
+    int compact(double garbageRatio) throws IOException {
+        int compacted = 0;
+        for (Segment segment : new ArrayList<>(segments.values())) {
+            if (segment == active || segment.size == 0) {
+                continue;
+            }
+            if (1.0 - (double) segment.liveBytes.get() / segment.size >= garbageRatio) {
+                compactSegment(segment);
+                compacted++;
+            }
+        }
+        return compacted;
+    }
+
+    int segmentCount() {
+        return segments.size();
+    }
+
+    long totalBytes() {
+        return segments.values().stream().mapToLong(segment -> segment.size).sum();
+    }
+
+    long liveBytes() {
+        return segments.values().stream().mapToLong(segment -> segment.liveBytes.get()).sum();
+    }
+
+    int objectCount() {
+        return index.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (writeLock) {
+            for (Segment segment : segments.values()) {
+                segment.channel.close();
+            }
+            segments.clear();
+            index.clear();
+            // Закрытие канала снимает и блокировку каталога
+            lockChannel.close();
+        }
+    }
+
+    private void compactSegment(Segment segment) throws IOException {
+        ByteBuffer records = segment.slice(0, segment.size);
+        int moved = 0;
+        while (records.hasRemaining()) {
+            Record record = Record.parse(records);
+            synchronized (writeLock) {
+                if (record.type == PUT) {
+                    Entry current = index.get(record.key);
+                    if (current != null && current.segmentId == segment.id && current.dataOffset == record.dataOffset) {
+                        append(PUT, record.key, record.data(), record.lastModified);
+                        moved++;
+                    }
+                } else if (!index.containsKey(record.key) && segments.firstKey() < segment.id) {
+                    append(DELETE, record.key, new byte[0], record.lastModified);
+                }
+            }
+        }
+        synchronized (writeLock) {
+            segments.remove(segment.id);
+            segment.channel.close();
+            Files.deleteIfExists(segment.file);
+        }
+        log.info("Compacted image pack {} ({} bytes): {} live objects moved",
+                segment.file.getFileName(), records.capacity(), moved);
+    }
+
+    /**
+     * Дописать запись в активный сегмент и обновить индекс. Вызывается под writeLock.
+     */
+    private void append(byte type, String key, byte[] content, long lastModified) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        if (keyBytes.length > 0xFFFF) {
+            throw new IllegalArgumentException("Packed object key is too long: " + key);
+        }
+        int recordSize = HEADER_SIZE + keyBytes.length + content.length;
+        if (active.size > 0 && active.size + recordSize > segmentSize) {
+            active = createSegment(active.id + 1);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(keyBytes);
+        crc.update(content);
+        ByteBuffer record = ByteBuffer.allocate(recordSize)
+                .putInt(MAGIC)
+                .put(type)
+                .putShort((short) keyBytes.length)
+                .putInt(content.length)
+                .putLong(lastModified)
+                .putInt((int) crc.getValue())
+                .put(keyBytes)
+                .put(content);
+        record.flip();
+        long offset = active.size;
+        while (record.hasRemaining()) {
+            active.channel.write(record, offset + record.position());
+        }
+        active.size = offset + recordSize;
+
+        Entry previous;
+        if (type == PUT) {
+            active.liveBytes.addAndGet(recordSize);
+            previous = index.put(key, new Entry(active.id, offset + HEADER_SIZE + keyBytes.length,
+                    content.length, lastModified, recordSize));
+        } else {
+            previous = index.remove(key);
+        }
+        release(previous);
+    }
+
+    private void release(Entry previous) {
+        if (previous != null) {
+            Segment segment = segments.get(previous.segmentId);
+            if (segment != null) {
+                segment.liveBytes.addAndGet(-previous.recordSize);
+            }
+        }
+    }
+
+    private void recover() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            stream.forEach(files::add);
+        }
+        files.sort(null);
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            int id = Integer.parseInt(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+            Segment segment = new Segment(id, file);
+            segments.put(id, segment);
+            replay(segment);
+        }
+        active = segments.isEmpty() ? createSegment(1) : segments.lastEntry().getValue();
+        if (active.size >= segmentSize) {
+            active = createSegment(active.id + 1);
+        }
+        log.info("Image pack opened at {}: {} segments, {} objects", directory, segments.size(), index.size());
+    }
+
+    /**
+     * Прочитать записи сегмента в индекс; с первой битой записи сегмент обрезается
+     */
+    private void replay(Segment segment) throws IOException {
+        long fileSize = segment.channel.size();
+        ByteBuffer records = fileSize > 0
+                ? segment.channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize)
+                : ByteBuffer.allocate(0);
+        long valid = 0;
+        while (records.hasRemaining()) {
+            Record record = Record.tryParse(records);
+            if (record == null) {
+                break;
+            }
+            if (record.type == PUT) {
+                segment.liveBytes.addAndGet(record.size());
+                release(index.put(record.key, new Entry(segment.id, record.dataOffset, record.length,
+                        record.lastModified, record.size())));
+            } else {
+                release(index.remove(record.key));
+            }
+            valid = records.position();
+        }
+        if (valid < fileSize) {
+            log.warn("Image pack {} has a torn record at {}, truncated ({} bytes dropped)",
+                    segment.file.getFileName(), valid, fileSize - valid);
+            segment.channel.truncate(valid);
+        }
+        segment.size = valid;
+    }
+
+    private Segment createSegment(int id) throws IOException {
+        Segment segment = new Segment(id, directory.resolve(String.format("%s%06d%s", PREFIX, id, SUFFIX)));
+        segments.put(id, segment);
+        return segment;
+    }
+
+    /**
+     * Место объекта: сегмент, смещение данных и размер всей записи (для учета мусора)
+     */
+    private static class Entry {
+
+        private final int segmentId;
+        private final long dataOffset;
+        private final int length;
+        private final long lastModified;
+        private final int recordSize;
+
+        private Entry(int segmentId, long dataOffset, int length, long lastModified, int recordSize) {
+            this.segmentId = segmentId;
+            this.dataOffset = dataOffset;
+            this.length = length;
+            this.lastModified = lastModified;
+            this.recordSize = recordSize;
+        }
+
+    }
+
+    private static class Segment {
+
+        private final int id;
+        private final Path file;
+        private final FileChannel channel;
+        private final AtomicLong liveBytes = new AtomicLong();
+
+        /**
+         * Конец последней целой записи; пишется только под writeLock
+         */
+        private volatile long size;
+        private volatile MappedByteBuffer mapped;
+
+        private Segment(int id, Path file) throws IOException {
+            this.id = id;
+            this.file = file;
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+        }
+
+        private ByteBuffer slice(long offset, long length) throws IOException {
+            MappedByteBuffer current = mapped;
+            if (current == null || current.capacity() < offset + length) {
+                current = remap(offset + length);
+            }
+            ByteBuffer slice = current.duplicate();
+            slice.position((int) offset).limit((int) (offset + length));
+            return slice.slice().asReadOnlyBuffer();
+        }
+
+        private synchronized MappedByteBuffer remap(long required) throws IOException {
+            MappedByteBuffer current = mapped;
+            if (current == null || current.capacity() < required) {
+                current = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                mapped = current;
+            }
+            return current;
+        }
+
+    }
+
+    /**
+     * Разобранная запись сегмента; данные - срез исходного буфера
+     */
+    private static class Record {
+
+        private final byte type;
+        private final String key;
+        private final int keyLength;
+        private final int length;
+        private final long lastModified;
+        private final long dataOffset;
+        private final ByteBuffer data;
+
+        private Record(byte type, String key, int keyLength, int length, long lastModified, long dataOffset,
+                       ByteBuffer data) {
+            this.type = type;
+            this.key = key;
+            this.keyLength = keyLength;
+            this.length = length;
+            this.lastModified = lastModified;
+            this.dataOffset = dataOffset;
+            this.data = data;
+        }
+
+        private int size() {
+            return HEADER_SIZE + keyLength + length;
+        }
+
+        private byte[] data() {
+            byte[] bytes = new byte[length];
+            data.duplicate().get(bytes);
+            return bytes;
+        }
+
+        private static Record parse(ByteBuffer buffer) throws IOException {
+            int start = buffer.position();
+            Record record = tryParse(buffer);
+            if (record == null) {
+                throw new IOException("Corrupted image pack record at " + start);
+            }
+            return record;
+        }
+
+        /**
+         * Запись с текущей позиции буфера или null (конец данных, недописанная или испорченная запись);
+         * при успехе позиция - за записью
+         */
+        private static Record tryParse(ByteBuffer buffer) {
+            int start = buffer.position();
+            if (buffer.remaining() < HEADER_SIZE || buffer.getInt(start) != MAGIC) {
+                return null;
+            }
+            byte type = buffer.get(start + 4);
+            int keyLength = Short.toUnsignedInt(buffer.getShort(start + 5));
+            int length = buffer.getInt(start + 7);
+            long lastModified = buffer.getLong(start + 11);
+            int checksum = buffer.getInt(start + 19);
+            if ((type != PUT && type != DELETE) || length < 0
+                    || buffer.remaining() - HEADER_SIZE < (long) keyLength + length) {
+                return null;
+            }
+            ByteBuffer keyBytes = buffer.duplicate();
+            keyBytes.position(start + HEADER_SIZE).limit(start + HEADER_SIZE + keyLength);
+            ByteBuffer data = buffer.duplicate();
+            data.position(start + HEADER_SIZE + keyLength).limit(start + HEADER_SIZE + keyLength + length);
+            CRC32 crc = new CRC32();
+            crc.update(keyBytes.duplicate());
+            crc.update(data.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                return null;
+            }
+            buffer.position(start + HEADER_SIZE + keyLength + length);
+            return new Record(type, StandardCharsets.UTF_8.decode(keyBytes).toString(), keyLength, length,
+                    lastModified, start + HEADER_SIZE + keyLength, data.slice());
+        }
+
+    }
+
+}
@@ -0,0 +1,119 @@
+package ru.skypro.homework.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Хранилище в каталоге app.images.path на локальном диске (или общем NFS).
+ * Запись - во временный файл рядом с целью и атомарное переименование.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "app.images.storage.type", havingValue = "filesystem", matchIfMissing = true)
+public class FileSystemImageStorage implements ImageStorage {
+
+    @Value("${app.images.path:uploads/images}")
+    private String imagesPath;
+
+    @Override
+    public void put(String key, InputStream content, long length, String contentType) throws IOException {
+        Path target = resolve(key);
+        Files.createDirectories(target.getParent());
+        Path tempFile = Files.createTempFile(target.getParent(), ".put-", ".tmp");
+        try {
+            long copied = Files.copy(content, tempFile, StandardCopyOption.REPLACE_EXISTING);
+            if (copied != length) {
+                throw new IOException("Expected " + length + " bytes for " + key + ", got " + copied);
+            }
+            Files.move(tempFile, target, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * Файл с того же диска просто переименовывается; с другого - копируется рядом с целью
+     * и переименовывается уже там
+     */
+    @Override
+    public void putFile(String key, Path file, String contentType) throws IOException {
+        Path target = resolve(key);
+        Files.createDirectories(target.getParent());
+        try {
+            Files.move(file, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            try (InputStream content = Files.newInputStream(file)) {
+                put(key, content, Files.size(file), contentType);
+            }
+        }
+    }
+
+    @Override
+    public InputStream get(String key) throws IOException {
+        return Files.newInputStream(resolve(key));
+    }
+
+    @Override
+    public InputStream get(String key, long offset, long length) throws IOException {
+        FileChannel channel = FileChannel.open(resolve(key), StandardOpenOption.READ);
+        try {
+            channel.position(offset);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new BoundedInputStream(Channels.newInputStream(channel), length);
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        Files.deleteIfExists(resolve(key));
+    }
+
+    @Override
+    public StoredObject stat(String key) throws IOException {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(resolve(key), BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        if (!attributes.isRegularFile()) {
+            return null;
+        }
+        return new StoredObject(attributes.size(), attributes.lastModifiedTime().toMillis());
+    }
+
+    @Override
+    public Path localPath(String key) {
+        return resolve(key);
+    }
+
+    /**
+     * Ключи приходят из БД и URL, поэтому выход за пределы каталога (../) запрещен
+     */
+    private Path resolve(String key) {
+        Path root = Paths.get(imagesPath).toAbsolutePath().normalize();
+        Path path = root.resolve(key).normalize();
+        if (!path.startsWith(root)) {
+            throw new IllegalArgumentException("Image storage key outside of storage: " + key);
+        }
+        return path;
+    }
+
+}
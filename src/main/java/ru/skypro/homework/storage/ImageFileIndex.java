@@ -0,0 +1,94 @@
+package ru.skypro.homework.storage;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Опись файлов локального хранилища в памяти: ключ -> размер и время изменения.
+ * Заполняется обходом каталогов при старте (ImageStorageInitializer, app.images.index.enabled),
+ * дальше поддерживается записями и удалениями этого узла. Попадание избавляет отдачу картинки
+ * от stat на диске; промах не значит, что файла нет (его мог записать другой узел на общем диске),
+ * поэтому вызывающий проверяет хранилище сам и кладет найденное через put.
+ * До публикации обхода опись пуста и ничего не запоминает.
+ * Опись своя у каждого узла. С s3 она не используется (localPath - null). На общем диске
+ * удаление файла другим узлом сюда не доходит: попадание не проверяется, но файл открывается
+ * до отправки ответа, и если его нет, запись сбрасывается (ImageService.evictMissing), а клиент
+ * получает 404.
+ * Метрика: images.index.entries.
+ */
+@Component
+@RequiredArgsConstructor
+public class ImageFileIndex {
+
+    private final ImageStorage imageStorage;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, StoredObject> entries = new ConcurrentHashMap<>();
+
+    private volatile boolean ready;
+
+    @PostConstruct
+    void init() {
+        Gauge.builder("images.index.entries", entries, Map::size)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Размер и время изменения из описи или null (нет в описи или опись не построена)
+     */
+    public StoredObject get(String key) {
+        return ready ? entries.get(key) : null;
+    }
+
+    public void put(String key, StoredObject stored) {
+        if (ready) {
+            entries.put(key, stored);
+        }
+    }
+
+    /**
+     * Объект записан или перезаписан: атрибуты перечитываются из хранилища
+     */
+    public void update(String key) throws IOException {
+        if (!ready) {
+            return;
+        }
+        StoredObject stored = imageStorage.stat(key);
+        if (stored != null) {
+            entries.put(key, stored);
+        } else {
+            entries.remove(key);
+        }
+    }
+
+    /**
+     * Объект удален или перенесен
+     */
+    public void remove(String key) {
+        entries.remove(key);
+    }
+
+    /**
+     * Опубликовать результат обхода при старте
+     */
+    public void publish(Map<String, StoredObject> scanned) {
+        entries.putAll(scanned);
+        ready = true;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+}
@@ -0,0 +1,77 @@
+package ru.skypro.homework.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Хранилище файлов картинок. Ключ - путь внутри хранилища без ведущего слэша
+ * (ads/ad_1_1700.jpg, blobs/ab/cd/{hash}.png), из ссылки /images/... его дает key(url).
+ * Реализация выбирается app.images.storage.type: filesystem (по умолчанию, каталог app.images.path),
+ * packed (то же, но мелкие объекты упакованы в сегменты),
+ * s3 (любое S3-совместимое хранилище) или memory (тесты). С s3 узлы приложения не делят диск
+ * и масштабируются горизонтально.
+ * Отсутствующий объект: get бросает NoSuchFileException, stat возвращает null, delete ничего не делает.
+ */
+public interface ImageStorage {
+
+    String URL_PREFIX = "/images/";
+
+    /**
+     * Записать объект из потока ровно длины length. Читатели видят либо старое содержимое,
+     * либо новое целиком, но не недописанное.
+     */
+    void put(String key, InputStream content, long length, String contentType) throws IOException;
+
+    /**
+     * Записать объект из локального файла. Файл может быть перенесен в хранилище (переименованием),
+     * поэтому после вызова на него нельзя рассчитывать; удалить остаток - забота вызывающего.
+     */
+    default void putFile(String key, Path file, String contentType) throws IOException {
+        try (InputStream content = Files.newInputStream(file)) {
+            put(key, content, Files.size(file), contentType);
+        }
+    }
+
+    InputStream get(String key) throws IOException;
+
+    /**
+     * length байт, начиная с offset (HTTP Range)
+     */
+    InputStream get(String key, long offset, long length) throws IOException;
+
+    void delete(String key) throws IOException;
+
+    default boolean exists(String key) throws IOException {
+        return stat(key) != null;
+    }
+
+    /**
+     * Размер и время изменения или null, если объекта нет
+     */
+    StoredObject stat(String key) throws IOException;
+
+    /**
+     * Файл объекта на локальном диске или null, если хранилище не локальное. Нужен, чтобы отдавать
+     * байты через sendfile и X-Accel-Redirect и обходить каталоги при сверке.
+     */
+    default Path localPath(String key) {
+        return null;
+    }
+
+    /**
+     * Ключ по ссылке картинки: /images/ads/ad_1.jpg -> ads/ad_1.jpg
+     */
+    static String key(String imageUrl) {
+        return imageUrl.startsWith(URL_PREFIX) ? imageUrl.substring(URL_PREFIX.length()) : imageUrl;
+    }
+
+    /**
+     * Ссылка картинки по ключу: ads/ad_1.jpg -> /images/ads/ad_1.jpg
+     */
+    static String url(String key) {
+        return URL_PREFIX + key;
+    }
+
+}
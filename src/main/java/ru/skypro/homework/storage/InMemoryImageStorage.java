@@ -0,0 +1,72 @@
+package ru.skypro.homework.storage;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.NoSuchFileException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Хранилище в памяти процесса - для тестов и локального запуска без диска и S3.
+ * Содержимое теряется при перезапуске и не видно другим узлам.
+ */
+@Component
+@ConditionalOnProperty(name = "app.images.storage.type", havingValue = "memory")
+public class InMemoryImageStorage implements ImageStorage {
+
+    private final Map<String, StoredContent> objects = new ConcurrentHashMap<>();
+
+    @Override
+    public void put(String key, InputStream content, long length, String contentType) throws IOException {
+        byte[] bytes = content.readAllBytes();
+        if (bytes.length != length) {
+            throw new IOException("Expected " + length + " bytes for " + key + ", got " + bytes.length);
+        }
+        objects.put(key, new StoredContent(bytes, System.currentTimeMillis()));
+    }
+
+    @Override
+    public InputStream get(String key) throws IOException {
+        return new ByteArrayInputStream(find(key).bytes);
+    }
+
+    @Override
+    public InputStream get(String key, long offset, long length) throws IOException {
+        byte[] bytes = find(key).bytes;
+        int from = (int) Math.min(offset, bytes.length);
+        return new ByteArrayInputStream(bytes, from, (int) Math.min(length, bytes.length - from));
+    }
+
+    @Override
+    public void delete(String key) {
+        objects.remove(key);
+    }
+
+    @Override
+    public StoredObject stat(String key) {
+        StoredContent content = objects.get(key);
+        return content != null ? new StoredObject(content.bytes.length, content.lastModified) : null;
+    }
+
+    private StoredContent find(String key) throws NoSuchFileException {
+        StoredContent content = objects.get(key);
+        if (content == null) {
+            throw new NoSuchFileException(key);
+        }
+        return content;
+    }
+
+    @RequiredArgsConstructor
+    private static class StoredContent {
+
+        private final byte[] bytes;
+        private final long lastModified;
+
+    }
+
+}
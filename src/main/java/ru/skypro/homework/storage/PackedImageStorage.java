@@ -0,0 +1,163 @@
+package ru.skypro.homework.storage;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Локальное хранилище, где мелкие объекты (аватары, миниатюры - до max-object-size) упакованы
+ * в сегменты BlobPack в каталоге app.images.packed.path, а крупные лежат файлами в app.images.path,
+ * как в FileSystemImageStorage. Не тратит inode и open/close на каждую мелкую картинку:
+ * чтение - срез отображенного в память сегмента.
+ * Упакованные объекты не отдаются через sendfile и X-Accel-Redirect (localPath - null)
+ * и не обходятся сверкой каталогов - она видит только крупные файлы.
+ * Сегменты с долей мусора от compaction.garbage-ratio уплотняются в фоне раз в compaction.interval.
+ * Хранилище одного узла: каталог сегментов открывает только один процесс (блокировка pack.lock),
+ * второй узел на общем диске не стартует. Для нескольких узлов - filesystem или s3.
+ * Метрики: images.pack.segments, images.pack.objects, images.pack.bytes (tag state=total|live).
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "app.images.storage.type", havingValue = "packed")
+public class PackedImageStorage extends FileSystemImageStorage {
+
+    private static final String METRIC_PREFIX = "images.pack";
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.images.packed.path:uploads/packs}")
+    private String packPath;
+
+    @Value("${app.images.packed.max-object-size:256KB}")
+    private DataSize maxObjectSize;
+
+    @Value("${app.images.packed.segment-size:64MB}")
+    private DataSize segmentSize;
+
+    @Value("${app.images.packed.compaction.garbage-ratio:0.5}")
+    private double garbageRatio;
+
+    private BlobPack pack;
+
+    @PostConstruct
+    void init() throws IOException {
+        // Смещения в отображенном сегменте - int
+        if (segmentSize.toBytes() > Integer.MAX_VALUE
+                || maxObjectSize.toBytes() + BlobPack.HEADER_SIZE + 0xFFFF > segmentSize.toBytes()) {
+            throw new IllegalStateException("app.images.packed.segment-size must be below 2GB "
+                    + "and fit app.images.packed.max-object-size");
+        }
+        pack = new BlobPack(Paths.get(packPath).toAbsolutePath(), segmentSize.toBytes());
+        Gauge.builder(METRIC_PREFIX + ".segments", pack, BlobPack::segmentCount)
+                .register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + ".objects", pack, BlobPack::objectCount)
+                .register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + ".bytes", pack, BlobPack::totalBytes)
+                .tag("state", "total")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + ".bytes", pack, BlobPack::liveBytes)
+                .tag("state", "live")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    void close() throws IOException {
+        pack.close();
+    }
+
+    @Override
+    public void put(String key, InputStream content, long length, String contentType) throws IOException {
+        if (length > maxObjectSize.toBytes()) {
+            super.put(key, content, length, contentType);
+            pack.delete(key);
+            return;
+        }
+        byte[] bytes = content.readAllBytes();
+        if (bytes.length != length) {
+            throw new IOException("Expected " + length + " bytes for " + key + ", got " + bytes.length);
+        }
+        pack.put(key, bytes, System.currentTimeMillis());
+        super.delete(key);
+    }
+
+    /**
+     * Мелкий файл копируется в сегмент и остается на месте, крупный переносится, как в FileSystemImageStorage
+     */
+    @Override
+    public void putFile(String key, Path file, String contentType) throws IOException {
+        if (Files.size(file) > maxObjectSize.toBytes()) {
+            super.putFile(key, file, contentType);
+            pack.delete(key);
+            return;
+        }
+        pack.put(key, Files.readAllBytes(file), System.currentTimeMillis());
+        super.delete(key);
+    }
+
+    @Override
+    public InputStream get(String key) throws IOException {
+        ByteBuffer content = pack.read(key);
+        return content != null ? new ByteBufferInputStream(content) : super.get(key);
+    }
+
+    @Override
+    public InputStream get(String key, long offset, long length) throws IOException {
+        ByteBuffer content = pack.read(key);
+        if (content == null) {
+            return super.get(key, offset, length);
+        }
+        content.position((int) Math.min(offset, content.limit()));
+        content.limit((int) Math.min(content.limit(), content.position() + length));
+        return new ByteBufferInputStream(content);
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        pack.delete(key);
+        super.delete(key);
+    }
+
+    @Override
+    public StoredObject stat(String key) throws IOException {
+        StoredObject packed = pack.stat(key);
+        return packed != null ? packed : super.stat(key);
+    }
+
+    @Override
+    public Path localPath(String key) {
+        return pack.contains(key) ? null : super.localPath(key);
+    }
+
+    @Scheduled(fixedDelayString = "${app.images.packed.compaction.interval:PT10M}",
+            initialDelayString = "${app.images.packed.compaction.interval:PT10M}")
+    public void compact() {
+        try {
+            int compacted = pack.compact(garbageRatio);
+            if (compacted > 0) {
+                log.info("Image pack compaction: {} segments rewritten, {} of {} bytes live",
+                        compacted, pack.liveBytes(), pack.totalBytes());
+            }
+        } catch (IOException e) {
+            log.warn("Image pack compaction failed", e);
+        }
+    }
+
+}
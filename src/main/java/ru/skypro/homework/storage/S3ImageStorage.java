@@ -0,0 +1,252 @@
+package ru.skypro.homework.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.AwsCredentials;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.AwsSessionCredentials;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.retry.RetryPolicy;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3ClientBuilder;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Хранилище в S3-совместимом объектном хранилище (AWS S3, MinIO, Ceph RGW): бакет app.images.s3.bucket,
+ * ключ объекта - ключ картинки. Узлы приложения не делят диск, поэтому масштабируются горизонтально.
+ * Работает через S3Client из AWS SDK v2:
+ * - учетные данные: access-key/secret-key (и session-token для временных), а если ключ не задан -
+ *   стандартная цепочка SDK (переменные окружения, профиль, роль сервисного аккаунта, роль инстанса);
+ * - повторы: max-retries с экспоненциальной задержкой SDK, каждая попытка ограничена timeout;
+ * - объекты от multipart-threshold грузятся частями по multipart-part-size (в памяти одна часть),
+ *   при сбое загрузка отменяется, чтобы недогруженные части не копились в бакете.
+ * endpoint задается для MinIO/Ceph (path-style {endpoint}/{bucket}/{key}); пустой - AWS по region.
+ * Отдавать байты через sendfile и nginx отсюда нельзя (localPath - null): приложение читает объект
+ * потоком, горячие картинки остаются в HotImageCache.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "app.images.storage.type", havingValue = "s3")
+public class S3ImageStorage implements ImageStorage {
+
+    /**
+     * Минимальный размер части multipart в S3 (кроме последней)
+     */
+    private static final long MIN_PART_SIZE = DataSize.ofMegabytes(5).toBytes();
+
+    @Value("${app.images.s3.endpoint:}")
+    private String endpoint;
+
+    @Value("${app.images.s3.region:us-east-1}")
+    private String region;
+
+    @Value("${app.images.s3.bucket:}")
+    private String bucket;
+
+    @Value("${app.images.s3.access-key:}")
+    private String accessKey;
+
+    @Value("${app.images.s3.secret-key:}")
+    private String secretKey;
+
+    @Value("${app.images.s3.session-token:}")
+    private String sessionToken;
+
+    @Value("${app.images.s3.timeout:PT10S}")
+    private Duration timeout;
+
+    @Value("${app.images.s3.max-retries:3}")
+    private int maxRetries;
+
+    @Value("${app.images.s3.max-connections:50}")
+    private int maxConnections;
+
+    @Value("${app.images.s3.multipart-threshold:16MB}")
+    private DataSize multipartThreshold;
+
+    @Value("${app.images.s3.multipart-part-size:8MB}")
+    private DataSize multipartPartSize;
+
+    private S3Client s3Client;
+
+    @PostConstruct
+    void init() {
+        if (bucket.isEmpty()) {
+            throw new IllegalStateException("app.images.s3.bucket is required for app.images.storage.type=s3");
+        }
+        if (multipartPartSize.toBytes() < MIN_PART_SIZE) {
+            throw new IllegalStateException("app.images.s3.multipart-part-size must be at least 5MB");
+        }
+        S3ClientBuilder builder = S3Client.builder()
+                .region(Region.of(region))
+                .credentialsProvider(credentialsProvider())
+                .httpClientBuilder(ApacheHttpClient.builder()
+                        .connectionTimeout(timeout)
+                        .socketTimeout(timeout)
+                        .maxConnections(maxConnections))
+                .overrideConfiguration(configuration -> configuration
+                        .retryPolicy(RetryPolicy.builder().numRetries(maxRetries).build())
+                        .apiCallAttemptTimeout(timeout));
+        if (!endpoint.isBlank()) {
+            builder.endpointOverride(URI.create(endpoint.replaceAll("/+$", "")))
+                    .forcePathStyle(true);
+        }
+        s3Client = builder.build();
+        log.info("Image storage: S3 bucket {} at {}", bucket, endpoint.isBlank() ? "AWS " + region : endpoint);
+    }
+
+    @PreDestroy
+    void close() {
+        if (s3Client != null) {
+            s3Client.close();
+        }
+    }
+
+    @Override
+    public void put(String key, InputStream content, long length, String contentType) throws IOException {
+        if (length >= multipartThreshold.toBytes()) {
+            uploadMultipart(key, content, contentType);
+            return;
+        }
+        // Варианты и аватары - сотни килобайт: тело в памяти, чтобы SDK мог повторить запрос
+        byte[] bytes = content.readNBytes((int) length);
+        call("PUT", key, () -> s3Client.putObject(request -> request.bucket(bucket).key(key).contentType(contentType),
+                RequestBody.fromBytes(bytes)));
+    }
+
+    @Override
+    public void putFile(String key, Path file, String contentType) throws IOException {
+        if (Files.size(file) >= multipartThreshold.toBytes()) {
+            try (InputStream content = Files.newInputStream(file)) {
+                uploadMultipart(key, content, contentType);
+            }
+            return;
+        }
+        call("PUT", key, () -> s3Client.putObject(request -> request.bucket(bucket).key(key).contentType(contentType),
+                RequestBody.fromFile(file)));
+    }
+
+    @Override
+    public InputStream get(String key) throws IOException {
+        return call("GET", key, () -> s3Client.getObject(request -> request.bucket(bucket).key(key)));
+    }
+
+    @Override
+    public InputStream get(String key, long offset, long length) throws IOException {
+        if (length <= 0) {
+            return InputStream.nullInputStream();
+        }
+        String range = "bytes=" + offset + "-" + (offset + length - 1);
+        return call("GET", key, () -> s3Client.getObject(request -> request.bucket(bucket).key(key).range(range)));
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        // Удаление отсутствующего объекта в S3 - тоже успех
+        call("DELETE", key, () -> s3Client.deleteObject(request -> request.bucket(bucket).key(key)));
+    }
+
+    @Override
+    public StoredObject stat(String key) throws IOException {
+        HeadObjectResponse response;
+        try {
+            response = call("HEAD", key, () -> s3Client.headObject(request -> request.bucket(bucket).key(key)));
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        long lastModified = response.lastModified() != null ? response.lastModified().toEpochMilli() : 0L;
+        return new StoredObject(response.contentLength(), lastModified);
+    }
+
+    /**
+     * Загрузка частями: каждая часть читается в память и отправляется отдельным запросом (его SDK
+     * может повторить); при любом сбое multipart-загрузка отменяется
+     */
+    private void uploadMultipart(String key, InputStream content, String contentType) throws IOException {
+        String uploadId = call("PUT", key, () -> s3Client.createMultipartUpload(request ->
+                request.bucket(bucket).key(key).contentType(contentType)).uploadId());
+        try {
+            List<CompletedPart> parts = new ArrayList<>();
+            int partSize = (int) multipartPartSize.toBytes();
+            byte[] part;
+            while ((part = content.readNBytes(partSize)).length > 0) {
+                int partNumber = parts.size() + 1;
+                byte[] body = part;
+                String eTag = call("PUT", key, () -> s3Client.uploadPart(request -> request.bucket(bucket).key(key)
+                                .uploadId(uploadId).partNumber(partNumber).contentLength((long) body.length),
+                        RequestBody.fromBytes(body)).eTag());
+                parts.add(CompletedPart.builder().partNumber(partNumber).eTag(eTag).build());
+            }
+            call("PUT", key, () -> s3Client.completeMultipartUpload(request -> request.bucket(bucket).key(key)
+                    .uploadId(uploadId).multipartUpload(CompletedMultipartUpload.builder().parts(parts).build())));
+        } catch (IOException | RuntimeException e) {
+            try {
+                s3Client.abortMultipartUpload(request -> request.bucket(bucket).key(key).uploadId(uploadId));
+            } catch (SdkException abortFailure) {
+                e.addSuppressed(abortFailure);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Ошибки SDK - непроверяемые; здесь они переводятся в контракт ImageStorage:
+     * нет объекта - NoSuchFileException, остальное - IOException
+     */
+    private <T> T call(String method, String key, S3Call<T> action) throws IOException {
+        try {
+            return action.execute();
+        } catch (NoSuchKeyException e) {
+            throw new NoSuchFileException(key);
+        } catch (S3Exception e) {
+            if (e.statusCode() == 404) {
+                throw new NoSuchFileException(key);
+            }
+            throw new IOException("S3 " + method + " " + key + " failed: HTTP " + e.statusCode() + " "
+                    + e.getMessage(), e);
+        } catch (SdkException e) {
+            throw new IOException("S3 " + method + " " + key + " failed: " + e.getMessage(), e);
+        }
+    }
+
+    private AwsCredentialsProvider credentialsProvider() {
+        if (accessKey.isBlank()) {
+            return DefaultCredentialsProvider.create();
+        }
+        AwsCredentials credentials = sessionToken.isBlank()
+                ? AwsBasicCredentials.create(accessKey, secretKey)
+                : AwsSessionCredentials.create(accessKey, secretKey, sessionToken);
+        return StaticCredentialsProvider.create(credentials);
+    }
+
+    @FunctionalInterface
+    private interface S3Call<T> {
+        T execute();
+    }
+
+}
@@ -0,0 +1,14 @@
+package ru.skypro.homework.storage;
+
+import lombok.Value;
+
+/**
+ * Атрибуты объекта хранилища: размер в байтах и время изменения (мс)
+ */
+@Value
+public class StoredObject {
+
+    long length;
+    long lastModified;
+
+}
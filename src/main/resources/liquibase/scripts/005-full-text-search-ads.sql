@@ -0,0 +1,30 @@
+--liquibase formatted sql
+
+-- changeset ekaterina-natashenkova:7
+-- Поисковый вектор объявления: заголовок важнее описания, словари русского и английского языков
+ALTER TABLE ads ADD COLUMN search_vector TSVECTOR;
+
+COMMENT ON COLUMN ads.search_vector IS 'Полнотекстовый индекс заголовка и описания (заполняется триггером)';
+
+-- changeset ekaterina-natashenkova:8 splitStatements:false
+CREATE OR REPLACE FUNCTION ads_search_vector_update() RETURNS trigger AS $$
+BEGIN
+    NEW.search_vector :=
+        setweight(to_tsvector('russian', COALESCE(NEW.title, '')), 'A') ||
+        setweight(to_tsvector('english', COALESCE(NEW.title, '')), 'A') ||
+        setweight(to_tsvector('russian', COALESCE(NEW.description, '')), 'B') ||
+        setweight(to_tsvector('english', COALESCE(NEW.description, '')), 'B');
+    RETURN NEW;
+END
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER trg_ads_search_vector
+    BEFORE INSERT OR UPDATE OF title, description ON ads
+    FOR EACH ROW EXECUTE PROCEDURE ads_search_vector_update();
+
+-- changeset ekaterina-natashenkova:9
+-- Заполняем вектор для существующих объявлений
+UPDATE ads SET title = title;
+
+CREATE INDEX idx_ads_search_vector ON ads USING GIN (search_vector);
+COMMENT ON INDEX idx_ads_search_vector IS 'GIN-индекс для полнотекстового поиска объявлений';
@@ -0,0 +1,21 @@
+--liquibase formatted sql
+
+-- changeset ekaterina-natashenkova:10
+-- Составные индексы ленты: для каждого сочетания фильтра и сортировки строки читаются по индексу
+-- в нужном порядке, id в конце индекса служит ключом keyset-пагинации
+CREATE INDEX idx_ads_created_at_id ON ads(created_at DESC, id DESC);
+COMMENT ON INDEX idx_ads_created_at_id IS 'Индекс для ленты по дате создания (в том числе с фильтром по цене)';
+
+CREATE INDEX idx_ads_price_id ON ads(price, id);
+COMMENT ON INDEX idx_ads_price_id IS 'Индекс для сортировки ленты по цене и фильтра по диапазону цен';
+
+CREATE INDEX idx_ads_author_created_at_id ON ads(author_id, created_at DESC, id DESC);
+COMMENT ON INDEX idx_ads_author_created_at_id IS 'Индекс для объявлений автора по дате создания';
+
+CREATE INDEX idx_ads_author_price_id ON ads(author_id, price, id);
+COMMENT ON INDEX idx_ads_author_price_id IS 'Индекс для объявлений автора с сортировкой и фильтром по цене';
+
+-- Одноколоночные индексы полностью покрываются составными
+DROP INDEX idx_ads_created_at;
+DROP INDEX idx_ads_price;
+DROP INDEX idx_ads_author_id;
@@ -0,0 +1,11 @@
+--liquibase formatted sql
+
+-- changeset ekaterina-natashenkova:11
+-- Версии строк (@Version): увеличиваются при каждом изменении и служат основой ETag
+ALTER TABLE users ADD COLUMN version BIGINT NOT NULL DEFAULT 0;
+ALTER TABLE ads ADD COLUMN version BIGINT NOT NULL DEFAULT 0;
+ALTER TABLE comments ADD COLUMN version BIGINT NOT NULL DEFAULT 0;
+
+COMMENT ON COLUMN users.version IS 'Версия строки для оптимистичной блокировки и ETag';
+COMMENT ON COLUMN ads.version IS 'Версия строки для оптимистичной блокировки и ETag';
+COMMENT ON COLUMN comments.version IS 'Версия строки для оптимистичной блокировки и ETag';
@@ -0,0 +1,31 @@
+--liquibase formatted sql
+
+-- changeset ekaterina-natashenkova:12
+-- Переход с SERIAL (IDENTITY) на последовательности с pooled-оптимизатором Hibernate:
+-- ID выдаются блоками по 50, поэтому вставки группируются в JDBC-батчи (hibernate.jdbc.batch_size).
+-- Hibernate считает значение последовательности верхней границей блока, поэтому ставим
+-- следующее значение в MAX(id) + 50: первый блок начнется сразу после существующих строк.
+CREATE SEQUENCE users_seq INCREMENT BY 50;
+SELECT setval('users_seq', (SELECT COALESCE(MAX(id), 0) FROM users) + 50, false);
+
+CREATE SEQUENCE ads_seq INCREMENT BY 50;
+SELECT setval('ads_seq', (SELECT COALESCE(MAX(id), 0) FROM ads) + 50, false);
+
+CREATE SEQUENCE comments_seq INCREMENT BY 50;
+SELECT setval('comments_seq', (SELECT COALESCE(MAX(id), 0) FROM comments) + 50, false);
+
+CREATE SEQUENCE images_seq INCREMENT BY 50;
+SELECT setval('images_seq', (SELECT COALESCE(MAX(id), 0) FROM images) + 50, false);
+
+-- Значения по умолчанию от SERIAL пересекались бы с блоками Hibernate, убираем их вместе со старыми последовательностями
+ALTER TABLE users ALTER COLUMN id DROP DEFAULT;
+DROP SEQUENCE users_id_seq;
+
+ALTER TABLE ads ALTER COLUMN id DROP DEFAULT;
+DROP SEQUENCE ads_id_seq;
+
+ALTER TABLE comments ALTER COLUMN id DROP DEFAULT;
+DROP SEQUENCE comments_id_seq;
+
+ALTER TABLE images ALTER COLUMN id DROP DEFAULT;
+DROP SEQUENCE images_id_seq;
@@ -0,0 +1,8 @@
+--liquibase formatted sql
+
+-- changeset ekaterina-natashenkova:13
+-- Хэш содержимого картинки: считается при загрузке и отдается как ETag.
+-- У картинок, загруженных раньше, хэша нет - они отдаются без ETag (только Last-Modified).
+ALTER TABLE images ADD COLUMN content_hash VARCHAR(64);
+
+COMMENT ON COLUMN images.content_hash IS 'SHA-256 содержимого файла (hex), используется как ETag';
@@ -0,0 +1,19 @@
+--liquibase formatted sql
+
+-- changeset ekaterina-natashenkova:14
+-- Уменьшенные копии картинок (THUMBNAIL, CARD, FULL), создаются в фоне после загрузки
+CREATE TABLE image_variants (
+    image_id INTEGER NOT NULL,
+    variant VARCHAR(20) NOT NULL,
+    file_path VARCHAR(500) NOT NULL,
+
+    CONSTRAINT pk_image_variants PRIMARY KEY (image_id, variant),
+    CONSTRAINT fk_image_variants_image
+        FOREIGN KEY (image_id)
+        REFERENCES images(id)
+        ON DELETE CASCADE
+);
+
+COMMENT ON TABLE image_variants IS 'Уменьшенные копии изображений';
+COMMENT ON COLUMN image_variants.variant IS 'Вариант: THUMBNAIL, CARD, FULL';
+COMMENT ON COLUMN image_variants.file_path IS 'Ссылка на файл варианта (или на оригинал, если он не больше варианта)';
@@ -0,0 +1,29 @@
+--liquibase formatted sql
+
+-- changeset ekaterina-natashenkova:15
+-- Хранилище содержимого картинок по SHA-256: одинаковые загрузки делят один файл,
+-- images ссылается на него, ref_count - число ссылок. Картинки, загруженные раньше,
+-- остаются отдельными файлами (blob_hash = NULL).
+CREATE TABLE image_blobs (
+    content_hash VARCHAR(64) PRIMARY KEY,
+    file_path VARCHAR(500) NOT NULL,
+    file_size BIGINT NOT NULL,
+    content_type VARCHAR(100) NOT NULL,
+    ref_count INTEGER NOT NULL,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
+COMMENT ON TABLE image_blobs IS 'Содержимое изображений, адресуемое по SHA-256';
+COMMENT ON COLUMN image_blobs.file_path IS 'Путь файла в хранилище (/images/blobs/ab/cd/<hash>.<ext>)';
+COMMENT ON COLUMN image_blobs.ref_count IS 'Число ссылок из images; при 0 запись и файл удаляются';
+
+ALTER TABLE images ADD COLUMN blob_hash VARCHAR(64);
+
+ALTER TABLE images
+ADD CONSTRAINT fk_images_blob
+    FOREIGN KEY (blob_hash)
+    REFERENCES image_blobs(content_hash);
+
+CREATE INDEX idx_images_blob_hash ON images(blob_hash);
+
+COMMENT ON COLUMN images.blob_hash IS 'Содержимое в image_blobs (NULL - старый отдельный файл по file_path)';
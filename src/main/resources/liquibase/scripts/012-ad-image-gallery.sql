@@ -0,0 +1,19 @@
+--liquibase formatted sql
+
+-- changeset ekaterina-natashenkova:16
+-- Галерея объявления: порядок картинок задает владелец, главная картинка по-прежнему main_image_id.
+-- Уже загруженные картинки получают порядок загрузки.
+ALTER TABLE images ADD COLUMN position INTEGER;
+
+UPDATE images
+SET position = numbered.position
+FROM (
+    SELECT id, ROW_NUMBER() OVER (PARTITION BY ad_id ORDER BY id) - 1 AS position
+    FROM images
+    WHERE ad_id IS NOT NULL
+) AS numbered
+WHERE images.id = numbered.id;
+
+CREATE INDEX idx_images_ad_position ON images(ad_id, position);
+
+COMMENT ON COLUMN images.position IS 'Порядок картинки в галерее объявления (с 0)';
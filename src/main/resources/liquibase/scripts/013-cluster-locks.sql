@@ -0,0 +1,15 @@
+--liquibase formatted sql
+
+-- changeset ekaterina-natashenkova:17
+-- Блокировки фоновых задач на весь кластер: задачу выполняет узел, чья запись действует
+-- (locked_until в будущем). Упавший узел не держит блокировку дольше аренды.
+CREATE TABLE cluster_locks (
+    name VARCHAR(100) PRIMARY KEY,
+    locked_until TIMESTAMP NOT NULL,
+    locked_at TIMESTAMP NOT NULL,
+    locked_by VARCHAR(255) NOT NULL
+);
+
+COMMENT ON TABLE cluster_locks IS 'Блокировки фоновых задач между узлами';
+COMMENT ON COLUMN cluster_locks.locked_until IS 'До какого времени действует блокировка (аренда продлевается, пока задача идет)';
+COMMENT ON COLUMN cluster_locks.locked_by IS 'Узел-владелец: host/идентификатор процесса';
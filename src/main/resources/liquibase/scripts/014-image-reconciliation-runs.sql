@@ -0,0 +1,22 @@
+--liquibase formatted sql
+
+-- changeset ekaterina-natashenkova:18
+-- Прогоны сверки картинок: запуск из админки возвращает id прогона сразу,
+-- ход и отчет читаются отсюда с любого узла.
+CREATE TABLE image_reconciliation_runs (
+    id VARCHAR(36) PRIMARY KEY,
+    dry_run BOOLEAN NOT NULL,
+    status VARCHAR(20) NOT NULL,
+    node VARCHAR(255) NOT NULL,
+    started_at TIMESTAMP NOT NULL,
+    finished_at TIMESTAMP,
+    report TEXT,
+    error TEXT
+);
+
+CREATE INDEX idx_image_reconciliation_runs_started_at ON image_reconciliation_runs(started_at);
+
+COMMENT ON TABLE image_reconciliation_runs IS 'Прогоны сверки файлов картинок с БД';
+COMMENT ON COLUMN image_reconciliation_runs.status IS 'RUNNING, COMPLETED или FAILED';
+COMMENT ON COLUMN image_reconciliation_runs.node IS 'Узел, выполнявший прогон (владелец cluster_locks)';
+COMMENT ON COLUMN image_reconciliation_runs.report IS 'Отчет ImageReconciliationReport в JSON';
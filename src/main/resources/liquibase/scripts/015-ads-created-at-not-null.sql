@@ -0,0 +1,7 @@
+--liquibase formatted sql
+
+-- changeset ekaterina-natashenkova:19
+-- created_at - ключ keyset-пагинации ленты и первая колонка ее индексов: строка с NULL
+-- обрывала выдачу (created_at < NULL не выполняется ни для одной строки)
+UPDATE ads SET created_at = COALESCE(updated_at, CURRENT_TIMESTAMP) WHERE created_at IS NULL;
+ALTER TABLE ads ALTER COLUMN created_at SET NOT NULL;
@@ -0,0 +1,50 @@
+package ru.skypro.benchmark;
+
+import lombok.Data;
+import ru.skypro.homework.model.entity.AdEntity;
+import ru.skypro.homework.model.entity.UserEntity;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
+import javax.persistence.Table;
+import javax.persistence.Version;
+import java.time.LocalDateTime;
+
+/**
+ * Копия CommentEntity со старой генерацией ID (IDENTITY) - точка отсчета для CommentInsertBenchmarkTest.
+ * Лежит вне пакета приложения, чтобы не попадать в схему остальных тестов.
+ */
+@Data
+@Entity
+@Table(name = "comments_identity_bench")
+public class IdentityCommentEntity {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Integer id;
+
+    @Column(nullable = false)
+    private String text;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Version
+    @Column(name = "version", nullable = false)
+    private Long version;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "author_id", nullable = false)
+    private UserEntity author;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "ad_id", nullable = false)
+    private AdEntity ad;
+
+}
@@ -0,0 +1,54 @@
+package ru.skypro.homework.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AfterCommitTest {
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    @DisplayName("run - без транзакции действие выполняется сразу")
+    void run_WithoutTransaction() {
+        // Given
+        AtomicInteger calls = new AtomicInteger();
+
+        // When
+        AfterCommit.run(calls::incrementAndGet);
+
+        // Then
+        assertThat(calls).hasValue(1);
+    }
+
+    @Test
+    @DisplayName("run - в транзакции действие ждет коммита и не выполняется при откате")
+    void run_InTransaction() {
+        // Given
+        AtomicInteger calls = new AtomicInteger();
+        TransactionSynchronizationManager.initSynchronization();
+
+        // When
+        AfterCommit.run(calls::incrementAndGet);
+        AfterCommit.run(calls::incrementAndGet);
+
+        // Then
+        assertThat(calls).hasValue(0);
+        TransactionSynchronizationManager.getSynchronizations().get(0).afterCommit();
+        TransactionSynchronizationManager.getSynchronizations().get(1)
+                .afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+        assertThat(calls).hasValue(1);
+    }
+
+}
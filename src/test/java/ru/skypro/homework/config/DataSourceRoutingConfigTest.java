@@ -0,0 +1,100 @@
+package ru.skypro.homework.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.skypro.homework.repository.UserRepository;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Контекст с включенной маршрутизацией. Реплику изображает та же база H2, что и primary
+ * (схему создает Hibernate только на primary); по метрикам пулов видно, куда ушли соединения.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:routing;DB_CLOSE_DELAY=-1;MODE=PostgreSQL",
+        "app.datasource.routing.enabled=true",
+        "app.datasource.replica.urls=jdbc:h2:mem:routing;DB_CLOSE_DELAY=-1;MODE=PostgreSQL",
+        "app.datasource.replica.maximum-pool-size=2"
+})
+class DataSourceRoutingConfigTest {
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    void readOnlyRepositoryCallsUseReplicaPool() {
+        // Given
+        double before = acquired("replica-1");
+
+        // When
+        userRepository.findByEmail("nobody@example.com");
+        userRepository.count();
+
+        // Then
+        assertThat(dataSource).isInstanceOf(LazyConnectionDataSourceProxy.class);
+        assertThat(acquired("replica-1")).isGreaterThan(before);
+    }
+
+    @Test
+    void writesUsePrimaryPool() {
+        // Given
+        double before = acquired("replica-1");
+        double primaryBefore = acquired(ReadReplicaRoutingDataSource.PRIMARY);
+
+        // When
+        userRepository.deleteAllInBatch();
+
+        // Then
+        assertThat(acquired("replica-1")).isEqualTo(before);
+        assertThat(acquired(ReadReplicaRoutingDataSource.PRIMARY)).isGreaterThan(primaryBefore);
+    }
+
+    @Test
+    void poolMetricsAreBoundEvenIfPoolStartedFirst() throws Exception {
+        // Given: Liquibase берет соединение primary раньше, чем реестр метрик применяет MeterBinder'ы
+        DataSourceRoutingConfig config = new DataSourceRoutingConfig();
+        ReflectionTestUtils.setField(config, "replicaUrls", List.of());
+        ReflectionTestUtils.setField(config, "readYourWritesWindow", Duration.ofSeconds(5));
+        DataSourceProperties properties = new DataSourceProperties();
+        properties.setUrl("jdbc:h2:mem:routing-metrics;DB_CLOSE_DELAY=-1");
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+        try (ReadReplicaRoutingDataSource routing = config.routingDataSource(properties, new MockEnvironment())) {
+            routing.getConnection().close();
+
+            // When
+            config.routingDataSourceMetrics().bindTo(registry);
+
+            // Then
+            assertThat(registry.find("hikaricp.connections.max")
+                    .tag("pool", ReadReplicaRoutingDataSource.PRIMARY).gauge()).isNotNull();
+        }
+    }
+
+    /**
+     * Сколько соединений выдал пул; метрики пула появляются при его старте (первом соединении)
+     */
+    private double acquired(String pool) {
+        Timer timer = meterRegistry.find("hikaricp.connections.acquire").tag("pool", pool).timer();
+        return timer != null ? timer.count() : 0;
+    }
+
+}
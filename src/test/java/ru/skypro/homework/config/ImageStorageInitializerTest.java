@@ -0,0 +1,81 @@
+package ru.skypro.homework.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.skypro.homework.storage.FileSystemImageStorage;
+import ru.skypro.homework.storage.ImageFileIndex;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ImageStorageInitializerTest {
+
+    @TempDir
+    Path imagesDir;
+
+    private FileSystemImageStorage imageStorage;
+    private ImageFileIndex imageFileIndex;
+    private ImageStorageInitializer initializer;
+
+    @BeforeEach
+    void setUp() {
+        imageStorage = new FileSystemImageStorage();
+        ReflectionTestUtils.setField(imageStorage, "imagesPath", imagesDir.toString());
+        imageFileIndex = new ImageFileIndex(imageStorage, new SimpleMeterRegistry());
+        initializer = new ImageStorageInitializer(imageStorage, imageFileIndex);
+        ReflectionTestUtils.setField(initializer, "autoCreateDir", true);
+        ReflectionTestUtils.setField(initializer, "indexParallelism", 4);
+    }
+
+    @Test
+    @DisplayName("Опись включена - каталоги обходятся параллельно, файлы попадают в опись, временные нет")
+    void initialize_BuildsIndex() throws IOException {
+        // Given
+        Files.createDirectories(imagesDir.resolve("blobs/ab/cd"));
+        Files.createDirectories(imagesDir.resolve("users"));
+        Files.writeString(imagesDir.resolve("blobs/ab/cd/abcd.jpg"), "0123456789");
+        Files.writeString(imagesDir.resolve("blobs/ab/cd/.upload-1.tmp"), "partial");
+        Files.writeString(imagesDir.resolve("users/avatar.png"), "png");
+        Files.writeString(imagesDir.resolve("other.txt"), "not an image directory");
+        ReflectionTestUtils.setField(initializer, "indexEnabled", true);
+
+        // When
+        initializer.initializeImageStorage();
+
+        // Then
+        assertThat(imagesDir.resolve("ads")).isDirectory();
+        assertThat(imageFileIndex.isReady()).isTrue();
+        assertThat(imageFileIndex.size()).isEqualTo(2);
+        assertThat(imageFileIndex.get("blobs/ab/cd/abcd.jpg").getLength()).isEqualTo(10L);
+        assertThat(imageFileIndex.get("users/avatar.png")).isNotNull();
+
+        // Запись и удаление поддерживают опись
+        Files.writeString(imagesDir.resolve("ads/ad_1.jpg"), "ad");
+        imageFileIndex.update("ads/ad_1.jpg");
+        imageFileIndex.remove("users/avatar.png");
+        assertThat(imageFileIndex.get("ads/ad_1.jpg").getLength()).isEqualTo(2L);
+        assertThat(imageFileIndex.get("users/avatar.png")).isNull();
+    }
+
+    @Test
+    @DisplayName("Опись выключена - только каталоги, опись не публикуется и ничего не запоминает")
+    void initialize_IndexDisabled() throws IOException {
+        // When
+        initializer.initializeImageStorage();
+        Files.writeString(imagesDir.resolve("ads/ad_1.jpg"), "ad");
+        imageFileIndex.update("ads/ad_1.jpg");
+
+        // Then
+        assertThat(imagesDir.resolve("users")).isDirectory();
+        assertThat(imageFileIndex.isReady()).isFalse();
+        assertThat(imageFileIndex.get("ads/ad_1.jpg")).isNull();
+    }
+
+}
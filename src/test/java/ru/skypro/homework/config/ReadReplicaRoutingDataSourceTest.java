@@ -0,0 +1,183 @@
+package ru.skypro.homework.config;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Маршрутизация на двух (трех) отдельных базах H2: в каждой таблица node с именем базы,
+ * так что по результату запроса видно, куда ушло соединение.
+ */
+class ReadReplicaRoutingDataSourceTest {
+
+    private ReadReplicaRoutingDataSource routingDataSource;
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate readOnly;
+    private TransactionTemplate readWrite;
+
+    @BeforeEach
+    void setUp() {
+        DataSource primary = database("primary");
+        List<DataSource> replicas = List.of(database("replica-1"), database("replica-2"));
+        routingDataSource = new ReadReplicaRoutingDataSource(primary, replicas, Duration.ofMinutes(1));
+
+        DataSource dataSource = new LazyConnectionDataSourceProxy(routingDataSource);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        readWrite = new TransactionTemplate(transactionManager);
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+        ReadReplicaRoutingDataSource.clearClient();
+    }
+
+    @Test
+    @DisplayName("read-only транзакции идут на реплики по кругу")
+    void readOnlyTransactionsAreSpreadOverReplicas() {
+        // When
+        List<String> nodes = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            nodes.add(readOnly.execute(status -> node()));
+        }
+
+        // Then
+        assertThat(nodes).containsExactly("replica-1", "replica-2", "replica-1", "replica-2");
+    }
+
+    @Test
+    @DisplayName("пишущие транзакции и запросы вне транзакции идут на primary")
+    void writesAndNonTransactionalWorkGoToPrimary() {
+        // When
+        String written = readWrite.execute(status -> node());
+        String nonTransactional = node();
+
+        // Then
+        assertThat(written).isEqualTo("primary");
+        assertThat(nonTransactional).isEqualTo("primary");
+    }
+
+    @Test
+    @DisplayName("после записи пользователь читает с primary, другие пользователи - с реплик")
+    void readYourWritesForWritingUserOnly() {
+        // Given
+        authenticate("alice@example.com");
+        readWrite.executeWithoutResult(status -> jdbcTemplate.update("UPDATE node SET name = name"));
+
+        // When
+        String aliceRead = readOnly.execute(status -> node());
+        authenticate("bob@example.com");
+        String bobRead = readOnly.execute(status -> node());
+
+        // Then
+        assertThat(aliceRead).isEqualTo("primary");
+        assertThat(bobRead).startsWith("replica-");
+    }
+
+    @Test
+    @DisplayName("read-your-writes действует только в пределах окна")
+    void readYourWritesExpires() throws InterruptedException {
+        // Given
+        routingDataSource = new ReadReplicaRoutingDataSource(database("primary"),
+                List.of(database("replica-1")), Duration.ofMillis(50));
+        DataSource dataSource = new LazyConnectionDataSourceProxy(routingDataSource);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        readWrite = new TransactionTemplate(transactionManager);
+        authenticate("alice@example.com");
+        readWrite.executeWithoutResult(status -> jdbcTemplate.update("UPDATE node SET name = name"));
+
+        // When
+        Thread.sleep(100);
+        String read = readOnly.execute(status -> node());
+
+        // Then
+        assertThat(read).isEqualTo("replica-1");
+    }
+
+    @Test
+    @DisplayName("клиент с меткой недавней записи (с другого узла) читает с primary")
+    void recentClientWriteFromAnotherNodeReadsPrimary() {
+        // Given
+        ReadReplicaRoutingDataSource.bindClient(new ReadReplicaRoutingDataSource.ClientWrites(true, () -> { }));
+
+        // When
+        String read = readOnly.execute(status -> node());
+
+        // Then
+        assertThat(read).isEqualTo("primary");
+    }
+
+    @Test
+    @DisplayName("пишущий запрос обновляет метку клиента один раз, дальнейшие чтения запроса - с primary")
+    void clientWriteIsMarkedOnce() {
+        // Given
+        AtomicInteger marks = new AtomicInteger();
+        ReadReplicaRoutingDataSource.bindClient(
+                new ReadReplicaRoutingDataSource.ClientWrites(false, marks::incrementAndGet));
+        String before = readOnly.execute(status -> node());
+
+        // When
+        readWrite.executeWithoutResult(status -> jdbcTemplate.update("UPDATE node SET name = name"));
+        readWrite.executeWithoutResult(status -> jdbcTemplate.update("UPDATE node SET name = name"));
+        String after = readOnly.execute(status -> node());
+
+        // Then
+        assertThat(before).startsWith("replica-");
+        assertThat(after).isEqualTo("primary");
+        assertThat(marks).hasValue(1);
+    }
+
+    @Test
+    @DisplayName("onPrimary переводит чтение на primary и восстанавливает маршрутизацию после себя")
+    void onPrimaryForcesPrimary() {
+        // When
+        String forced = ReadReplicaRoutingDataSource.onPrimary(() -> readOnly.execute(status -> node()));
+        String after = readOnly.execute(status -> node());
+
+        // Then
+        assertThat(forced).isEqualTo("primary");
+        assertThat(after).startsWith("replica-");
+    }
+
+    private String node() {
+        return jdbcTemplate.queryForObject("SELECT name FROM node", String.class);
+    }
+
+    private static void authenticate(String email) {
+        SecurityContextHolder.getContext()
+                .setAuthentication(new UsernamePasswordAuthenticationToken(email, null, List.of()));
+    }
+
+    private static DataSource database(String name) {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:routing-" + name + ";DB_CLOSE_DELAY=-1");
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        jdbc.execute("DROP TABLE IF EXISTS node");
+        jdbc.execute("CREATE TABLE node (name VARCHAR(32))");
+        jdbc.update("INSERT INTO node (name) VALUES (?)", name);
+        return dataSource;
+    }
+
+}
@@ -3,35 +3,142 @@ package ru.skypro.homework.controller;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
+import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.skypro.homework.model.dto.Ad;
+import ru.skypro.homework.model.dto.AdFeedFilter;
+import ru.skypro.homework.model.dto.AdImages;
+import ru.skypro.homework.model.dto.AdImportReport;
 import ru.skypro.homework.model.dto.Ads;
 import ru.skypro.homework.model.dto.CreateOrUpdateAd;
 import ru.skypro.homework.model.dto.ExtendedAd;
+import ru.skypro.homework.model.entity.AdEntity;
+import ru.skypro.homework.model.enums.AdSort;
+import ru.skypro.homework.service.AdFeedPage;
+import ru.skypro.homework.service.AdGalleryService;
+import ru.skypro.homework.service.AdImportService;
+import ru.skypro.homework.service.AdService;
+import ru.skypro.homework.service.CommentService;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
 class AdControllerTest {
 
+    @Mock
+    private AdService adService;
+
+    @Mock
+    private CommentService commentService;
+
+    @Mock
+    private AdImportService adImportService;
+
+    @Mock
+    private ImageAccelRedirect imageAccelRedirect;
+
+    @Mock
+    private AdGalleryService adGalleryService;
+
     @InjectMocks
     private AdController adController;
 
     @Test
-    void getAllAds_ShouldReturnOkWithEmptyAds() {
+    void getAllAds_ShouldReturnOkWithPageFromService() {
+        // Given
+        Ads page = new Ads();
+        page.setCount(0);
+        page.setNextCursor("next");
+        AdFeedFilter filter = new AdFeedFilter(100, null, null);
+        AdFeedPage feedPage = new AdFeedPage(Collections.emptyList(), "next", "\"etag\"");
+        when(adService.getFeedPage(filter, AdSort.PRICE_ASC, "cursor", 10)).thenReturn(feedPage);
+        when(adService.toAds(feedPage)).thenReturn(page);
+
         // When
-        ResponseEntity<Ads> response = adController.getAllAds();
+        ResponseEntity<Ads> response = adController.getAllAds(filter, AdSort.PRICE_ASC, "cursor", 10, null);
 
         // Then
         assertNotNull(response);
         assertEquals(HttpStatus.OK, response.getStatusCode());
-        assertNotNull(response.getBody());
-        assertNull(response.getBody().getCount());
-        assertNull(response.getBody().getResults());
+        assertEquals("\"etag\"", response.getHeaders().getETag());
+        assertSame(page, response.getBody());
+    }
+
+    @Test
+    void getAllAds_WithMatchingETag_ShouldReturnNotModifiedWithoutMapping() {
+        // Given
+        AdFeedFilter filter = new AdFeedFilter();
+        AdFeedPage feedPage = new AdFeedPage(Collections.emptyList(), null, "\"etag\"");
+        when(adService.getFeedPage(filter, AdSort.NEWEST, null, null)).thenReturn(feedPage);
+
+        // When
+        ResponseEntity<Ads> response = adController.getAllAds(filter, AdSort.NEWEST, null, null, "W/\"etag\"");
+
+        // Then
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+        assertEquals("\"etag\"", response.getHeaders().getETag());
+        assertNull(response.getBody());
+        verify(adService, never()).toAds(any(AdFeedPage.class));
+    }
+
+    @Test
+    void getAllAds_WithInvalidCursor_ShouldReturnBadRequest() {
+        // Given
+        AdFeedFilter filter = new AdFeedFilter();
+        when(adService.getFeedPage(filter, AdSort.NEWEST, "broken", null))
+                .thenThrow(new IllegalArgumentException("Invalid cursor: broken"));
+
+        // When
+        ResponseEntity<Ads> response = adController.getAllAds(filter, AdSort.NEWEST, "broken", null, null);
+
+        // Then
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        assertNull(response.getBody());
+    }
+
+    @Test
+    void searchAds_ShouldReturnOkWithResultsFromService() {
+        // Given
+        Ads page = new Ads();
+        page.setCount(0);
+        when(adService.searchAds("bike", true, 100, null, null, 5)).thenReturn(page);
+
+        // When
+        ResponseEntity<Ads> response = adController.searchAds("bike", true, 100, null, null, 5);
+
+        // Then
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertSame(page, response.getBody());
+    }
+
+    @Test
+    void searchAds_WithEmptyQuery_ShouldReturnBadRequest() {
+        // Given
+        when(adService.searchAds("", false, null, null, null, null))
+                .thenThrow(new IllegalArgumentException("Search query must not be empty"));
+
+        // When
+        ResponseEntity<Ads> response = adController.searchAds("", false, null, null, null, null);
+
+        // Then
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
     }
 
     @Test
@@ -95,6 +202,8 @@ class AdControllerTest {
     void getAds_ShouldReturnOkWithExtendedAd() {
         // Given
         Integer adId = 1;
+        ExtendedAd extendedAd = new ExtendedAd();
+        when(adService.getAdById(adId)).thenReturn(Optional.of(extendedAd));
 
         // When
         ResponseEntity<ExtendedAd> response = adController.getAds(adId);
@@ -102,8 +211,20 @@ class AdControllerTest {
         // Then
         assertNotNull(response);
         assertEquals(HttpStatus.OK, response.getStatusCode());
-        assertNotNull(response.getBody());
-        assertInstanceOf(ExtendedAd.class, response.getBody());
+        assertSame(extendedAd, response.getBody());
+    }
+
+    @Test
+    void getAds_WhenAdMissing_ShouldReturnNotFound() {
+        // Given
+        when(adService.getAdById(42)).thenReturn(Optional.empty());
+
+        // When
+        ResponseEntity<ExtendedAd> response = adController.getAds(42);
+
+        // Then
+        assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+        assertNull(response.getBody());
     }
 
     @Test
@@ -140,16 +261,37 @@ class AdControllerTest {
     }
 
     @Test
-    void getAdsMe_ShouldReturnOkWithEmptyAds() {
+    void getAdsMe_ShouldStreamAdsOfCurrentUser() throws Exception {
+        // Given
+        when(adService.getCurrentAuthorId()).thenReturn(7);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
         // When
-        ResponseEntity<Ads> response = adController.getAdsMe();
+        ResponseEntity<StreamingResponseBody> response = adController.getAdsMe();
 
         // Then
-        assertNotNull(response);
         assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(MediaType.APPLICATION_JSON, response.getHeaders().getContentType());
         assertNotNull(response.getBody());
-        assertNull(response.getBody().getCount());
-        assertNull(response.getBody().getResults());
+
+        response.getBody().writeTo(out);
+        verify(adService).writeAdsByAuthor(7, out);
+    }
+
+    @Test
+    void exportAds_ShouldStreamAllAds() throws Exception {
+        // Given
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // When
+        ResponseEntity<StreamingResponseBody> response = adController.exportAds();
+
+        // Then
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertNotNull(response.getBody());
+
+        response.getBody().writeTo(out);
+        verify(adService).writeAllAds(out);
     }
 
     @Test
@@ -168,4 +310,77 @@ class AdControllerTest {
         assertEquals(HttpStatus.OK, response.getStatusCode());
     }
 
-}
\ No newline at end of file
+    @Test
+    void importAds_ShouldReturnReportFromService() throws Exception {
+        // Given
+        MockMultipartFile file = new MockMultipartFile("file", "ads.csv", "text/csv", "title".getBytes());
+        AdImportReport report = new AdImportReport();
+        report.setTotal(1);
+        when(adImportService.importAds(file, null, "csv")).thenReturn(report);
+
+        // When
+        ResponseEntity<AdImportReport> response = adController.importAds(file, null, "csv");
+
+        // Then
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertSame(report, response.getBody());
+    }
+
+    @Test
+    void importAds_ShouldReturnBadRequest_WhenInputRejected() throws Exception {
+        // Given
+        MockMultipartFile file = new MockMultipartFile("file", "ads.xml", "text/xml", "<ads/>".getBytes());
+        when(adImportService.importAds(file, null, "xml"))
+                .thenThrow(new IllegalArgumentException("Unsupported import format: xml"));
+
+        // When
+        ResponseEntity<AdImportReport> response = adController.importAds(file, null, "xml");
+
+        // Then
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+    }
+
+    @Test
+    void addAdImages_ShouldReturnGalleryFromService() {
+        // Given
+        List<MultipartFile> images = List.of(
+                new MockMultipartFile("images", "a.jpg", "image/jpeg", "a".getBytes()),
+                new MockMultipartFile("images", "b.jpg", "image/jpeg", "b".getBytes()));
+        AdImages gallery = new AdImages();
+        gallery.setCount(2);
+        when(adGalleryService.addImages(1, images)).thenReturn(gallery);
+
+        // When
+        ResponseEntity<AdImages> response = adController.addAdImages(1, images);
+
+        // Then
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertSame(gallery, response.getBody());
+    }
+
+    @Test
+    void reorderAdImages_ShouldReturnBadRequest_WhenNotAPermutation() {
+        // Given
+        when(adGalleryService.reorderImages(1, List.of(2)))
+                .thenThrow(new IllegalArgumentException("Expected every image of ad 1 exactly once: [2, 3]"));
+
+        // When
+        ResponseEntity<AdImages> response = adController.reorderAdImages(1, List.of(2));
+
+        // Then
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+    }
+
+    @Test
+    void reorderAdImages_ShouldPropagateOptimisticLockFailure() {
+        // Given
+        ObjectOptimisticLockingFailureException conflict =
+                new ObjectOptimisticLockingFailureException(AdEntity.class, 1);
+        when(adGalleryService.reorderImages(1, List.of(2, 3))).thenThrow(conflict);
+
+        // When & Then: ответ 409 дает RestExceptionHandler, а не общий catch с 400
+        assertSame(conflict, assertThrows(ObjectOptimisticLockingFailureException.class,
+                () -> adController.reorderAdImages(1, List.of(2, 3))));
+    }
+
+}
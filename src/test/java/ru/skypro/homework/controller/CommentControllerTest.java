@@ -3,35 +3,59 @@ package ru.skypro.homework.controller;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
+import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import ru.skypro.homework.model.dto.Comment;
 import ru.skypro.homework.model.dto.Comments;
 import ru.skypro.homework.model.dto.CreateOrUpdateComment;
+import ru.skypro.homework.service.CommentService;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
 class CommentControllerTest {
 
+    @Mock
+    private CommentService commentService;
+
     @InjectMocks
     private CommentController commentController;
 
     @Test
-    void getComments_ShouldReturnOkWithEmptyComments() {
+    void getComments_ShouldReturnOkWithCommentsAndETag() {
         // Given
         Integer adId = 1;
+        Comments comments = new Comments();
+        when(commentService.getCommentsETag(adId)).thenReturn("\"v1\"");
+        when(commentService.getCommentsByAdId(adId)).thenReturn(comments);
 
         // When
-        ResponseEntity<Comments> response = commentController.getComments(adId);
+        ResponseEntity<Comments> response = commentController.getComments(adId, "\"v0\"");
 
         // Then
         assertNotNull(response);
         assertEquals(HttpStatus.OK, response.getStatusCode());
-        assertNotNull(response.getBody());
-        assertNull(response.getBody().getCount());
-        assertNull(response.getBody().getResults());
+        assertEquals("\"v1\"", response.getHeaders().getETag());
+        assertSame(comments, response.getBody());
+    }
+
+    @Test
+    void getComments_WithMatchingETag_ShouldReturnNotModifiedWithoutLoading() {
+        // Given
+        Integer adId = 1;
+        when(commentService.getCommentsETag(adId)).thenReturn("\"v1\"");
+
+        // When
+        ResponseEntity<Comments> response = commentController.getComments(adId, "\"v1\"");
+
+        // Then
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+        assertNull(response.getBody());
+        verify(commentService, never()).getCommentsByAdId(any());
     }
 
     @Test
@@ -0,0 +1,65 @@
+package ru.skypro.homework.controller;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.skypro.homework.service.ImageFile;
+
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ImageAccelRedirectTest {
+
+    private final ImageAccelRedirect accelRedirect = new ImageAccelRedirect();
+
+    @TempDir
+    Path imagesDir;
+
+    private MockHttpServletRequest request;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(accelRedirect, "imagesPath", imagesDir.toString());
+        ReflectionTestUtils.setField(accelRedirect, "enabled", true);
+        ReflectionTestUtils.setField(accelRedirect, "location", "/internal-images/");
+        request = new MockHttpServletRequest("GET", "/images/ads/1/image");
+    }
+
+    @Test
+    @DisplayName("internalUri - запрос через nginx: путь файла внутри каталога картинок под internal-location")
+    void internalUri_BehindNginx() {
+        // Given
+        request.addHeader("X-Sendfile-Type", "X-Accel-Redirect");
+
+        // When
+        String uri = accelRedirect.internalUri(file(imagesDir.resolve("blobs/ab/cd/abcd.jpg")), request);
+
+        // Then
+        assertThat(uri).isEqualTo("/internal-images/blobs/ab/cd/abcd.jpg");
+    }
+
+    @Test
+    @DisplayName("internalUri - без заголовка nginx, с выключенной настройкой или вне каталога картинок - null")
+    void internalUri_Fallback() {
+        // Given
+        ImageFile image = file(imagesDir.resolve("ads/ad_1.jpg"));
+
+        // When / Then
+        assertThat(accelRedirect.internalUri(image, request)).isNull();
+
+        request.addHeader("X-Sendfile-Type", "X-Accel-Redirect");
+        assertThat(accelRedirect.internalUri(file(imagesDir.resolve("../secret.jpg")), request)).isNull();
+
+        ReflectionTestUtils.setField(accelRedirect, "enabled", false);
+        assertThat(accelRedirect.internalUri(image, request)).isNull();
+    }
+
+    private static ImageFile file(Path path) {
+        return new ImageFile(path, "image/jpeg", 10, 0, null, null, null, null, null);
+    }
+
+}
@@ -1,232 +1,548 @@
 package ru.skypro.homework.controller;
 
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import ru.skypro.homework.model.enums.ImageVariant;
+import ru.skypro.homework.service.ImageFile;
 import ru.skypro.homework.service.ImageService;
+import ru.skypro.homework.storage.InMemoryImageStorage;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 import static org.assertj.core.api.Assertions.assertThat;
-import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
 class ImageControllerTest {
 
+    private static final String CONTENT = "0123456789abcdef";
+    private static final long LAST_MODIFIED = 1_700_000_000_000L;
+    private static final String HASH = "9f86d081884c7d659a2feaa0c55ad015";
+    private static final String ETAG = "\"" + HASH + "\"";
+
     @Mock
     private ImageService imageService;
 
+    @Mock
+    private ImageAccelRedirect imageAccelRedirect;
+
     @InjectMocks
     private ImageController imageController;
 
+    @TempDir
+    Path tempDir;
+
+    private ImageFile image;
+    private MockHttpServletRequest request;
+    private MockHttpServletResponse response;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Path file = tempDir.resolve("ad_1.jpg");
+        Files.writeString(file, CONTENT, StandardCharsets.US_ASCII);
+        image = new ImageFile(file, "image/jpeg", CONTENT.length(), LAST_MODIFIED, HASH, null, null, null, null);
+        request = new MockHttpServletRequest("GET", "/images/ads/1/image");
+        response = new MockHttpServletResponse();
+    }
+
     @Test
-    @DisplayName("GET /images/ads/{adId}/image - успешное получение изображения объявления")
+    @DisplayName("GET /images/ads/{adId}/image - файл отдается целиком с длиной, ETag и ревалидацией")
     void getAdImage_Success() throws Exception {
         // Given
-        Integer adId = 1;
-        byte[] imageBytes = "fake image data".getBytes();
-        String contentType = "image/jpeg";
-
-        when(imageService.getAdImage(adId)).thenReturn(imageBytes);
-        when(imageService.getImageContentType(adId, "ad")).thenReturn(contentType);
+        when(imageService.getAdImageFile(1, null)).thenReturn(image);
 
         // When
-        ResponseEntity<byte[]> response = imageController.getAdImage(adId);
+        imageController.getAdImage(1, null, request, response);
 
         // Then
-        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
-        assertThat(response.getBody()).isEqualTo(imageBytes);
-        assertThat(response.getHeaders().getContentType()).isEqualTo(MediaType.parseMediaType(contentType));
-        assertThat(response.getHeaders().getCacheControl()).isEqualTo("max-age=3600");
-
-        verify(imageService).getAdImage(adId);
-        verify(imageService).getImageContentType(adId, "ad");
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(response.getContentAsString()).isEqualTo(CONTENT);
+        assertThat(response.getContentType()).isEqualTo("image/jpeg");
+        assertThat(response.getContentLengthLong()).isEqualTo(CONTENT.length());
+        assertThat(response.getHeader(HttpHeaders.CACHE_CONTROL)).isEqualTo("public, no-cache");
+        assertThat(response.getHeader(HttpHeaders.ETAG)).isEqualTo(ETAG);
+        assertThat(response.getHeader(HttpHeaders.ACCEPT_RANGES)).isEqualTo("bytes");
+        assertThat(response.getDateHeader(HttpHeaders.LAST_MODIFIED)).isEqualTo(LAST_MODIFIED);
+        verify(imageService).getAdImageFile(1, null);
     }
 
     @Test
     @DisplayName("GET /images/ads/{adId}/image - изображение не найдено")
     void getAdImage_NotFound() throws Exception {
         // Given
-        Integer adId = 1;
-        when(imageService.getAdImage(adId)).thenThrow(new IOException("Image not found"));
+        when(imageService.getAdImageFile(1, null)).thenThrow(new IOException("Image not found"));
 
         // When
-        ResponseEntity<byte[]> response = imageController.getAdImage(adId);
+        imageController.getAdImage(1, null, request, response);
 
         // Then
-        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
-        assertThat(response.getBody()).isNull();
-
-        verify(imageService).getAdImage(adId);
-        verify(imageService, never()).getImageContentType(any(), any());
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.NOT_FOUND.value());
+        assertThat(response.getContentAsByteArray()).isEmpty();
     }
 
     @Test
     @DisplayName("GET /images/ads/{adId}/image - внутренняя ошибка сервера")
     void getAdImage_InternalServerError() throws Exception {
         // Given
-        Integer adId = 1;
-        when(imageService.getAdImage(adId)).thenThrow(new RuntimeException("Database error"));
+        when(imageService.getAdImageFile(1, null)).thenThrow(new RuntimeException("Database error"));
 
         // When
-        ResponseEntity<byte[]> response = imageController.getAdImage(adId);
+        imageController.getAdImage(1, null, request, response);
 
         // Then
-        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.INTERNAL_SERVER_ERROR);
-        assertThat(response.getBody()).isNull();
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.INTERNAL_SERVER_ERROR.value());
+        assertThat(response.getContentAsByteArray()).isEmpty();
+    }
+
+    @Test
+    @DisplayName("GET /images/ads/{adId}/image - Range отдает один диапазон с 206 и Content-Range")
+    void getAdImage_Range() throws Exception {
+        // Given
+        when(imageService.getAdImageFile(1, null)).thenReturn(image);
+        request.addHeader(HttpHeaders.RANGE, "bytes=2-5");
+
+        // When
+        imageController.getAdImage(1, null, request, response);
 
-        verify(imageService).getAdImage(adId);
-        verify(imageService, never()).getImageContentType(any(), any());
+        // Then
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.PARTIAL_CONTENT.value());
+        assertThat(response.getContentAsString()).isEqualTo("2345");
+        assertThat(response.getContentLengthLong()).isEqualTo(4);
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 2-5/16");
     }
 
     @Test
-    @DisplayName("GET /images/users/{userId}/avatar - успешное получение аватара пользователя")
-    void getUserAvatar_Success() throws Exception {
+    @DisplayName("GET /images/ads/{adId}/image - суффиксный диапазон (последние N байт)")
+    void getAdImage_SuffixRange() throws Exception {
         // Given
-        Integer userId = 1;
-        byte[] imageBytes = "fake avatar data".getBytes();
-        String contentType = "image/png";
+        when(imageService.getAdImageFile(1, null)).thenReturn(image);
+        request.addHeader(HttpHeaders.RANGE, "bytes=-3");
+
+        // When
+        imageController.getAdImage(1, null, request, response);
 
-        when(imageService.getUserAvatar(userId)).thenReturn(imageBytes);
-        when(imageService.getImageContentType(userId, "user")).thenReturn(contentType);
+        // Then
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.PARTIAL_CONTENT.value());
+        assertThat(response.getContentAsString()).isEqualTo("def");
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 13-15/16");
+    }
+
+    @Test
+    @DisplayName("GET /images/ads/{adId}/image - диапазон за концом файла - 416")
+    void getAdImage_UnsatisfiableRange() throws Exception {
+        // Given
+        when(imageService.getAdImageFile(1, null)).thenReturn(image);
+        request.addHeader(HttpHeaders.RANGE, "bytes=100-200");
 
         // When
-        ResponseEntity<byte[]> response = imageController.getUserAvatar(userId);
+        imageController.getAdImage(1, null, request, response);
 
         // Then
-        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
-        assertThat(response.getBody()).isEqualTo(imageBytes);
-        assertThat(response.getHeaders().getContentType()).isEqualTo(MediaType.parseMediaType(contentType));
-        assertThat(response.getHeaders().getCacheControl()).isEqualTo("max-age=3600");
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes */16");
+        assertThat(response.getContentAsByteArray()).isEmpty();
+    }
+
+    @Test
+    @DisplayName("GET /images/ads/{adId}/image - If-Range с устаревшей датой - файл целиком")
+    void getAdImage_StaleIfRange() throws Exception {
+        // Given
+        when(imageService.getAdImageFile(1, null)).thenReturn(image);
+        request.addHeader(HttpHeaders.RANGE, "bytes=2-5");
+        request.addHeader(HttpHeaders.IF_RANGE, "Mon, 01 Jan 2001 00:00:00 GMT");
 
-        verify(imageService).getUserAvatar(userId);
-        verify(imageService).getImageContentType(userId, "user");
+        // When
+        imageController.getAdImage(1, null, request, response);
+
+        // Then
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(response.getContentAsString()).isEqualTo(CONTENT);
     }
 
     @Test
-    @DisplayName("GET /images/users/{userId}/avatar - аватар не найден")
-    void getUserAvatar_NotFound() throws Exception {
+    @DisplayName("GET /images/ads/{adId}/image - If-Range с текущей датой - диапазон")
+    void getAdImage_MatchingIfRange() throws Exception {
         // Given
-        Integer userId = 1;
-        when(imageService.getUserAvatar(userId)).thenThrow(new IOException("Avatar not found"));
+        when(imageService.getAdImageFile(1, null)).thenReturn(image);
+        request.addHeader(HttpHeaders.RANGE, "bytes=0-0");
+        request.addHeader(HttpHeaders.IF_RANGE, LAST_MODIFIED);
 
         // When
-        ResponseEntity<byte[]> response = imageController.getUserAvatar(userId);
+        imageController.getAdImage(1, null, request, response);
 
         // Then
-        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
-        assertThat(response.getBody()).isNull();
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.PARTIAL_CONTENT.value());
+        assertThat(response.getContentAsString()).isEqualTo("0");
+    }
 
-        verify(imageService).getUserAvatar(userId);
-        verify(imageService, never()).getImageContentType(any(), any());
+    @Test
+    @DisplayName("GET /images/ads/{adId}/image - If-Modified-Since не старше файла - 304 без тела")
+    void getAdImage_NotModified() throws Exception {
+        // Given
+        when(imageService.getAdImageFile(1, null)).thenReturn(image);
+        request.addHeader(HttpHeaders.IF_MODIFIED_SINCE, LAST_MODIFIED);
+
+        // When
+        imageController.getAdImage(1, null, request, response);
+
+        // Then
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.NOT_MODIFIED.value());
+        assertThat(response.getContentAsByteArray()).isEmpty();
+        verify(imageService, never()).loadHotContent(any());
     }
 
     @Test
-    @DisplayName("GET /images/users/{userId}/avatar - внутренняя ошибка сервера")
-    void getUserAvatar_InternalServerError() throws Exception {
+    @DisplayName("GET /images/ads/{adId}/image - If-None-Match с текущим ETag - 304 без тела")
+    void getAdImage_IfNoneMatch() throws Exception {
         // Given
-        Integer userId = 1;
-        when(imageService.getUserAvatar(userId)).thenThrow(new RuntimeException("Service error"));
+        when(imageService.getAdImageFile(1, null)).thenReturn(image);
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, "\"other\", W/" + ETAG);
 
         // When
-        ResponseEntity<byte[]> response = imageController.getUserAvatar(userId);
+        imageController.getAdImage(1, null, request, response);
 
         // Then
-        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.INTERNAL_SERVER_ERROR);
-        assertThat(response.getBody()).isNull();
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.NOT_MODIFIED.value());
+        assertThat(response.getHeader(HttpHeaders.ETAG)).isEqualTo(ETAG);
+        assertThat(response.getContentAsByteArray()).isEmpty();
+        verify(imageService, never()).loadHotContent(any());
+    }
+
+    @Test
+    @DisplayName("GET /images/ads/{adId}/image - If-None-Match не совпал - If-Modified-Since не проверяется")
+    void getAdImage_IfNoneMatchTakesPrecedence() throws Exception {
+        // Given
+        when(imageService.getAdImageFile(1, null)).thenReturn(image);
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, "\"stale\"");
+        request.addHeader(HttpHeaders.IF_MODIFIED_SINCE, LAST_MODIFIED);
+
+        // When
+        imageController.getAdImage(1, null, request, response);
 
-        verify(imageService).getUserAvatar(userId);
-        verify(imageService, never()).getImageContentType(any(), any());
+        // Then
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(response.getContentAsString()).isEqualTo(CONTENT);
     }
 
     @Test
-    @DisplayName("GET /images/ads/{adId}/image - проверка разных Content-Type")
-    void getAdImage_DifferentContentTypes() throws Exception {
+    @DisplayName("GET /images/ads/{adId}/image - If-Range с ETag: совпал - диапазон, слабый - файл целиком")
+    void getAdImage_IfRangeEtag() throws Exception {
         // Given
-        Integer adId = 1;
-        byte[] imageBytes = "test image".getBytes();
+        when(imageService.getAdImageFile(1, null)).thenReturn(image);
+        request.addHeader(HttpHeaders.RANGE, "bytes=0-1");
+        request.addHeader(HttpHeaders.IF_RANGE, ETAG);
+        MockHttpServletRequest weakRequest = new MockHttpServletRequest("GET", "/images/ads/1/image");
+        weakRequest.addHeader(HttpHeaders.RANGE, "bytes=0-1");
+        weakRequest.addHeader(HttpHeaders.IF_RANGE, "W/" + ETAG);
+        MockHttpServletResponse weakResponse = new MockHttpServletResponse();
 
-        when(imageService.getAdImage(adId)).thenReturn(imageBytes);
+        // When
+        imageController.getAdImage(1, null, request, response);
+        imageController.getAdImage(1, null, weakRequest, weakResponse);
 
-        // Test JPEG
-        when(imageService.getImageContentType(adId, "ad")).thenReturn("image/jpeg");
-        ResponseEntity<byte[]> jpegResponse = imageController.getAdImage(adId);
-        assertThat(jpegResponse.getHeaders().getContentType()).isEqualTo(MediaType.IMAGE_JPEG);
+        // Then
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.PARTIAL_CONTENT.value());
+        assertThat(response.getContentAsString()).isEqualTo("01");
+        assertThat(weakResponse.getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(weakResponse.getContentAsString()).isEqualTo(CONTENT);
+    }
 
-        // Test PNG
-        when(imageService.getImageContentType(adId, "ad")).thenReturn("image/png");
-        ResponseEntity<byte[]> pngResponse = imageController.getAdImage(adId);
-        assertThat(pngResponse.getHeaders().getContentType()).isEqualTo(MediaType.IMAGE_PNG);
+    @Test
+    @DisplayName("GET /images/ads/{adId}/image - под Tomcat тело отдается через sendfile")
+    void getAdImage_Sendfile() throws Exception {
+        // Given
+        when(imageService.getAdImageFile(1, null)).thenReturn(image);
+        request.setAttribute(ImageResponses.SENDFILE_SUPPORT, Boolean.TRUE);
+        request.addHeader(HttpHeaders.RANGE, "bytes=4-");
 
-        // Test GIF
-        when(imageService.getImageContentType(adId, "ad")).thenReturn("image/gif");
-        ResponseEntity<byte[]> gifResponse = imageController.getAdImage(adId);
-        assertThat(gifResponse.getHeaders().getContentType()).isEqualTo(MediaType.IMAGE_GIF);
+        // When
+        imageController.getAdImage(1, null, request, response);
 
-        // Test fallback
-        when(imageService.getImageContentType(adId, "ad")).thenReturn("application/octet-stream");
-        ResponseEntity<byte[]> fallbackResponse = imageController.getAdImage(adId);
-        assertThat(fallbackResponse.getHeaders().getContentType()).isEqualTo(MediaType.APPLICATION_OCTET_STREAM);
+        // Then
+        assertThat(response.getContentAsByteArray()).isEmpty();
+        assertThat(response.getContentLengthLong()).isEqualTo(12);
+        assertThat(request.getAttribute(ImageResponses.SENDFILE_FILENAME))
+                .isEqualTo(image.getPath().toAbsolutePath().toString());
+        assertThat(request.getAttribute(ImageResponses.SENDFILE_START)).isEqualTo(4L);
+        assertThat(request.getAttribute(ImageResponses.SENDFILE_END)).isEqualTo(16L);
     }
 
     @Test
-    @DisplayName("GET /images/users/{userId}/avatar - проверка кэширования")
-    void getUserAvatar_CacheHeaders() throws Exception {
+    @DisplayName("GET /images/ads/{adId}/image - файл из описи пропал с диска: 404, запись описи сбрасывается")
+    void getAdImage_FileVanished() throws Exception {
         // Given
-        Integer userId = 1;
-        byte[] imageBytes = "avatar".getBytes();
-        String contentType = "image/jpeg";
+        Files.delete(image.getPath());
+        when(imageService.getAdImageFile(1, null)).thenReturn(image);
 
-        when(imageService.getUserAvatar(userId)).thenReturn(imageBytes);
-        when(imageService.getImageContentType(userId, "user")).thenReturn(contentType);
+        // When
+        imageController.getAdImage(1, null, request, response);
+
+        // Then
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.NOT_FOUND.value());
+        assertThat(response.getContentAsByteArray()).isEmpty();
+        assertThat(response.getHeader(HttpHeaders.ETAG)).isNull();
+        verify(imageService).evictMissing(image);
+    }
+
+    @Test
+    @DisplayName("GET /images/ads/{adId}/image - под Tomcat пропавший файл тоже дает 404, а не обрыв после заголовков")
+    void getAdImage_SendfileFileVanished() throws Exception {
+        // Given
+        Files.delete(image.getPath());
+        when(imageService.getAdImageFile(1, null)).thenReturn(image);
+        request.setAttribute(ImageResponses.SENDFILE_SUPPORT, Boolean.TRUE);
 
         // When
-        ResponseEntity<byte[]> response = imageController.getUserAvatar(userId);
+        imageController.getAdImage(1, null, request, response);
 
         // Then
-        assertThat(response.getHeaders().getCacheControl()).isEqualTo("max-age=3600");
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.NOT_FOUND.value());
+        assertThat(request.getAttribute(ImageResponses.SENDFILE_FILENAME)).isNull();
+        verify(imageService).evictMissing(image);
     }
 
     @Test
-    @DisplayName("GET /images/ads/{adId}/image - пустое тело ответа при ошибке")
-    void getAdImage_EmptyBodyOnError() throws Exception {
+    @DisplayName("GET /images/ads/{adId}/image - горячая картинка из памяти: диапазон без sendfile и без файла")
+    void getAdImage_CachedContent() throws Exception {
+        // Given: файла на диске уже нет, содержимое только в кэше
+        ByteBuffer content = ByteBuffer.allocateDirect(CONTENT.length());
+        content.put(CONTENT.getBytes(StandardCharsets.US_ASCII)).flip();
+        ImageFile cached = new ImageFile(tempDir.resolve("gone.jpg"), "image/jpeg", CONTENT.length(), LAST_MODIFIED,
+                HASH, null, content.asReadOnlyBuffer(), null, null);
+        when(imageService.getAdImageFile(1, null)).thenReturn(cached);
+        request.setAttribute(ImageResponses.SENDFILE_SUPPORT, Boolean.TRUE);
+        request.addHeader(HttpHeaders.RANGE, "bytes=4-7");
+
+        // When
+        imageController.getAdImage(1, null, request, response);
+
+        // Then
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.PARTIAL_CONTENT.value());
+        assertThat(response.getContentAsString()).isEqualTo("4567");
+        assertThat(request.getAttribute(ImageResponses.SENDFILE_FILENAME)).isNull();
+        assertThat(cached.getContent().position()).isZero();
+    }
+
+    @Test
+    @DisplayName("GET /images/ads/{adId}/image - тело отдает приложение: картинка берется в горячий кэш и пишется из памяти")
+    void getAdImage_LoadsHotContent() throws Exception {
         // Given
-        Integer adId = 1;
-        when(imageService.getAdImage(adId)).thenThrow(new IOException("Not found"));
+        ByteBuffer content = ByteBuffer.allocateDirect(CONTENT.length());
+        content.put(CONTENT.getBytes(StandardCharsets.US_ASCII)).flip();
+        when(imageService.getAdImageFile(1, null)).thenReturn(image);
+        when(imageService.loadHotContent(image)).thenReturn(content.asReadOnlyBuffer());
+        request.setAttribute(ImageResponses.SENDFILE_SUPPORT, Boolean.TRUE);
 
         // When
-        ResponseEntity<byte[]> response = imageController.getAdImage(adId);
+        imageController.getAdImage(1, null, request, response);
 
         // Then
-        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
-        assertThat(response.getBody()).isNull();
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(response.getContentAsString()).isEqualTo(CONTENT);
+        assertThat(request.getAttribute(ImageResponses.SENDFILE_FILENAME)).isNull();
+        verify(imageService).loadHotContent(image);
     }
 
     @Test
-    @DisplayName("GET /images/users/{userId}/avatar - проверка вызовов сервиса")
-    void getUserAvatar_ServiceCalls() throws Exception {
+    @DisplayName("GET /images/ads/{adId}/image - картинка не на локальном диске: диапазон читается из хранилища")
+    void getAdImage_FromStorage() throws Exception {
         // Given
-        Integer userId = 1;
-        byte[] imageBytes = "avatar data".getBytes();
-        String contentType = "image/jpeg";
+        InMemoryImageStorage storage = new InMemoryImageStorage();
+        storage.put("ads/ad_1.jpg", new ByteArrayInputStream(CONTENT.getBytes(StandardCharsets.US_ASCII)),
+                CONTENT.length(), "image/jpeg");
+        ImageFile stored = new ImageFile(null, "image/jpeg", CONTENT.length(), LAST_MODIFIED, HASH, null, null,
+                "ads/ad_1.jpg", storage);
+        when(imageService.getAdImageFile(1, null)).thenReturn(stored);
+        request.setAttribute(ImageResponses.SENDFILE_SUPPORT, Boolean.TRUE);
+        request.addHeader(HttpHeaders.RANGE, "bytes=10-");
 
-        when(imageService.getUserAvatar(userId)).thenReturn(imageBytes);
-        when(imageService.getImageContentType(userId, "user")).thenReturn(contentType);
+        // When
+        imageController.getAdImage(1, null, request, response);
+
+        // Then
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.PARTIAL_CONTENT.value());
+        assertThat(response.getContentAsString()).isEqualTo("abcdef");
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 10-15/16");
+        assertThat(request.getAttribute(ImageResponses.SENDFILE_FILENAME)).isNull();
+    }
+
+    @Test
+    @DisplayName("GET /images/ads/{adId}/image - за nginx ответ без тела с X-Accel-Redirect и заголовками картинки")
+    void getAdImage_AccelRedirect() throws Exception {
+        // Given
+        when(imageService.getAdImageFile(1, null)).thenReturn(image);
+        when(imageAccelRedirect.internalUri(image, request)).thenReturn("/internal-images/ads/ad_1.jpg");
+        request.addHeader(HttpHeaders.RANGE, "bytes=4-");
 
         // When
-        imageController.getUserAvatar(userId);
+        imageController.getAdImage(1, null, request, response);
 
         // Then
-        verify(imageService, times(1)).getUserAvatar(userId);
-        verify(imageService, times(1)).getImageContentType(userId, "user");
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(response.getHeader("X-Accel-Redirect")).isEqualTo("/internal-images/ads/ad_1.jpg");
+        assertThat(response.getContentAsByteArray()).isEmpty();
+        assertThat(response.getHeader(HttpHeaders.CONTENT_LENGTH)).isNull();
+        assertThat(response.getHeader(HttpHeaders.ETAG)).isEqualTo(ETAG);
+        assertThat(response.getHeader(HttpHeaders.CACHE_CONTROL)).isEqualTo("public, no-cache");
+        assertThat(response.getContentType()).isEqualTo("image/jpeg");
+        verify(imageService, never()).loadHotContent(any());
+    }
+
+    @Test
+    @DisplayName("GET /images/ads/{adId}/image - за nginx совпавший If-None-Match - 304 от приложения, без X-Accel-Redirect")
+    void getAdImage_AccelRedirectNotModified() throws Exception {
+        // Given
+        when(imageService.getAdImageFile(1, null)).thenReturn(image);
+        when(imageAccelRedirect.internalUri(image, request)).thenReturn("/internal-images/ads/ad_1.jpg");
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, ETAG);
+
+        // When
+        imageController.getAdImage(1, null, request, response);
+
+        // Then
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.NOT_MODIFIED.value());
+        assertThat(response.getHeader("X-Accel-Redirect")).isNull();
+        verify(imageService, never()).loadHotContent(any());
+    }
+
+    @Test
+    @DisplayName("HEAD /images/ads/{adId}/image - только заголовки")
+    void getAdImage_Head() throws Exception {
+        // Given
+        when(imageService.getAdImageFile(1, null)).thenReturn(image);
+        request.setMethod("HEAD");
+
+        // When
+        imageController.getAdImage(1, null, request, response);
+
+        // Then
+        assertThat(response.getContentLengthLong()).isEqualTo(CONTENT.length());
+        assertThat(response.getContentAsByteArray()).isEmpty();
+        verify(imageService, never()).loadHotContent(any());
+    }
+
+    @Test
+    @DisplayName("GET /images/users/{userId}/avatar - успешное получение аватара пользователя")
+    void getUserAvatar_Success() throws Exception {
+        // Given
+        ImageFile avatar = new ImageFile(image.getPath(), "image/png", CONTENT.length(), LAST_MODIFIED, null, null, null, null, null);
+        when(imageService.getUserAvatarFile(1, null)).thenReturn(avatar);
+
+        // When
+        imageController.getUserAvatar(1, null, request, response);
+
+        // Then
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(response.getContentAsString()).isEqualTo(CONTENT);
+        assertThat(response.getContentType()).isEqualTo("image/png");
+        assertThat(response.getHeader(HttpHeaders.CACHE_CONTROL)).isEqualTo("public, no-cache");
+        assertThat(response.getHeader(HttpHeaders.ETAG)).isNull();
+        verify(imageService, times(1)).getUserAvatarFile(1, null);
+        verify(imageService).loadHotContent(avatar);
         verifyNoMoreInteractions(imageService);
     }
 
-}
\ No newline at end of file
+    @Test
+    @DisplayName("GET /images/users/{userId}/avatar - аватар не найден")
+    void getUserAvatar_NotFound() throws Exception {
+        // Given
+        when(imageService.getUserAvatarFile(1, null)).thenThrow(new IOException("Avatar not found"));
+
+        // When
+        imageController.getUserAvatar(1, null, request, response);
+
+        // Then
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.NOT_FOUND.value());
+        assertThat(response.getContentAsByteArray()).isEmpty();
+    }
+
+    @Test
+    @DisplayName("GET /images/users/{userId}/avatar - внутренняя ошибка сервера")
+    void getUserAvatar_InternalServerError() throws Exception {
+        // Given
+        when(imageService.getUserAvatarFile(1, null)).thenThrow(new RuntimeException("Service error"));
+
+        // When
+        imageController.getUserAvatar(1, null, request, response);
+
+        // Then
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.INTERNAL_SERVER_ERROR.value());
+    }
+
+    @Test
+    @DisplayName("GET /images/ads/{filename} - ссылка загрузки кэшируется как immutable")
+    void getImageFile_Immutable() throws Exception {
+        // Given
+        when(imageService.getImageFileByUrl("/images/ads/ad_1_1700000000000.jpg", null)).thenReturn(image);
+
+        // When
+        imageController.getImageFile("ads", "ad_1_1700000000000.jpg", null, request, response);
+
+        // Then
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(response.getContentAsString()).isEqualTo(CONTENT);
+        assertThat(response.getHeader(HttpHeaders.CACHE_CONTROL)).isEqualTo("public, max-age=31536000, immutable");
+        assertThat(response.getHeader(HttpHeaders.ETAG)).isEqualTo(ETAG);
+    }
+
+    @Test
+    @DisplayName("GET /images/users/{filename} - файл не найден")
+    void getImageFile_NotFound() throws Exception {
+        // Given
+        when(imageService.getImageFileByUrl("/images/users/user_1_1.jpg", null)).thenThrow(new IOException("missing"));
+
+        // When
+        imageController.getImageFile("users", "user_1_1.jpg", null, request, response);
+
+        // Then
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.NOT_FOUND.value());
+        assertThat(response.getHeader(HttpHeaders.CACHE_CONTROL)).isNull();
+    }
+
+    @Test
+    @DisplayName("GET /images/ads/{filename}?variant=CARD - готовый вариант кэшируется как immutable")
+    void getImageFile_ReadyVariant() throws Exception {
+        // Given
+        ImageFile card = new ImageFile(image.getPath(), "image/jpeg", CONTENT.length(), LAST_MODIFIED,
+                HASH + "-card", ImageVariant.CARD, null, null, null);
+        when(imageService.getImageFileByUrl("/images/ads/ad_1_1.jpg", ImageVariant.CARD)).thenReturn(card);
+
+        // When
+        imageController.getImageFile("ads", "ad_1_1.jpg", ImageVariant.CARD, request, response);
+
+        // Then
+        assertThat(response.getHeader(HttpHeaders.CACHE_CONTROL)).isEqualTo("public, max-age=31536000, immutable");
+        assertThat(response.getHeader(HttpHeaders.ETAG)).isEqualTo("\"" + HASH + "-card\"");
+    }
+
+    @Test
+    @DisplayName("GET /images/ads/{filename}?variant=CARD - вариант не готов: оригинал без immutable")
+    void getImageFile_VariantNotReady() throws Exception {
+        // Given
+        when(imageService.getImageFileByUrl("/images/ads/ad_1_1.jpg", ImageVariant.CARD)).thenReturn(image);
+
+        // When
+        imageController.getImageFile("ads", "ad_1_1.jpg", ImageVariant.CARD, request, response);
+
+        // Then
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(response.getContentAsString()).isEqualTo(CONTENT);
+        assertThat(response.getHeader(HttpHeaders.CACHE_CONTROL)).isEqualTo("public, no-cache");
+    }
+
+}
@@ -0,0 +1,91 @@
+package ru.skypro.homework.controller;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import ru.skypro.homework.model.dto.ImageReconciliationRun;
+import ru.skypro.homework.model.enums.ReconciliationStatus;
+import ru.skypro.homework.service.ImageReconciliationService;
+
+import java.net.URI;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ImageMaintenanceControllerTest {
+
+    @Mock
+    private ImageReconciliationService imageReconciliationService;
+
+    @InjectMocks
+    private ImageMaintenanceController imageMaintenanceController;
+
+    @Test
+    void startReconciliation_ShouldAcceptAndPointToRun() {
+        // Given
+        ImageReconciliationRun run = new ImageReconciliationRun();
+        run.setId("run-1");
+        run.setDryRun(true);
+        run.setStatus(ReconciliationStatus.RUNNING);
+        when(imageReconciliationService.start(true)).thenReturn(run);
+
+        // When
+        ResponseEntity<ImageReconciliationRun> response = imageMaintenanceController.startReconciliation(true);
+
+        // Then
+        assertEquals(HttpStatus.ACCEPTED, response.getStatusCode());
+        assertEquals(URI.create("/admin/images/reconciliation/run-1"), response.getHeaders().getLocation());
+        assertSame(run, response.getBody());
+        verify(imageReconciliationService, never()).start(false);
+    }
+
+    @Test
+    void startReconciliation_WhenAlreadyRunning_ShouldReturnConflict() {
+        // Given
+        when(imageReconciliationService.start(false))
+                .thenThrow(new IllegalStateException("Image reconciliation is already running"));
+
+        // When
+        ResponseEntity<ImageReconciliationRun> response = imageMaintenanceController.startReconciliation(false);
+
+        // Then
+        assertEquals(HttpStatus.CONFLICT, response.getStatusCode());
+    }
+
+    @Test
+    void getReconciliation_ShouldReturnRunOrNotFound() {
+        // Given
+        ImageReconciliationRun run = new ImageReconciliationRun();
+        run.setId("run-1");
+        when(imageReconciliationService.findRun("run-1")).thenReturn(Optional.of(run));
+        when(imageReconciliationService.findRun("missing")).thenReturn(Optional.empty());
+
+        // When
+        ResponseEntity<ImageReconciliationRun> found = imageMaintenanceController.getReconciliation("run-1");
+        ResponseEntity<ImageReconciliationRun> missing = imageMaintenanceController.getReconciliation("missing");
+
+        // Then
+        assertEquals(HttpStatus.OK, found.getStatusCode());
+        assertSame(run, found.getBody());
+        assertEquals(HttpStatus.NOT_FOUND, missing.getStatusCode());
+    }
+
+    @Test
+    void getLatestReconciliation_WhenNoRuns_ShouldReturnNotFound() {
+        // Given
+        when(imageReconciliationService.findLatestRun()).thenReturn(Optional.empty());
+
+        // When
+        ResponseEntity<ImageReconciliationRun> response = imageMaintenanceController.getLatestReconciliation();
+
+        // Then
+        assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+    }
+
+}
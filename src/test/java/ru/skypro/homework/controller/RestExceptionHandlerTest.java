@@ -0,0 +1,26 @@
+package ru.skypro.homework.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import ru.skypro.homework.model.entity.UserEntity;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RestExceptionHandlerTest {
+
+    private final RestExceptionHandler handler = new RestExceptionHandler();
+
+    @Test
+    void handleOptimisticLock_ShouldReturnConflict() {
+        // When
+        ResponseEntity<Void> response = handler.handleOptimisticLock(
+                new ObjectOptimisticLockingFailureException(UserEntity.class, 1));
+
+        // Then
+        assertEquals(HttpStatus.CONFLICT, response.getStatusCode());
+        assertNull(response.getBody());
+    }
+
+}
@@ -113,19 +113,35 @@ class UserControllerTest {
         mockUser.setFirstName("John");
         mockUser.setLastName("Doe");
 
+        when(userService.getCurrentUserETag()).thenReturn("\"v1\"");
         when(userService.getCurrentUser()).thenReturn(mockUser);
 
         // When
-        ResponseEntity<User> response = userController.getUser(authentication);
+        ResponseEntity<User> response = userController.getUser(authentication, null);
 
         // Then
         assertNotNull(response);
         assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("\"v1\"", response.getHeaders().getETag());
         assertNotNull(response.getBody());
         assertEquals("test@example.com", response.getBody().getEmail());
         assertEquals("John", response.getBody().getFirstName());
     }
 
+    @Test
+    void getUser_WithMatchingETag_ShouldReturnNotModifiedWithoutLoadingUser() {
+        // Given
+        when(userService.getCurrentUserETag()).thenReturn("\"v1\"");
+
+        // When
+        ResponseEntity<User> response = userController.getUser(authentication, "\"v0\", \"v1\"");
+
+        // Then
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+        assertNull(response.getBody());
+        verify(userService, never()).getCurrentUser();
+    }
+
     @Test
     void updateUser_ShouldReturnOkWithUser() {
         // Given
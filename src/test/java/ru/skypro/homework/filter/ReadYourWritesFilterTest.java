@@ -0,0 +1,133 @@
+package ru.skypro.homework.filter;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.skypro.homework.config.ReadReplicaRoutingDataSource;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.sql.DataSource;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Фильтр с настоящим маршрутизатором: primary и реплика - отдельные базы H2 с таблицей node,
+ * по результату чтения видно, куда ушло соединение
+ */
+class ReadYourWritesFilterTest {
+
+    private static final Instant NOW = Instant.parse("2024-01-01T12:00:00Z");
+
+    private final ReadYourWritesFilter filter =
+            new ReadYourWritesFilter(Duration.ofSeconds(5), Clock.fixed(NOW, ZoneOffset.UTC));
+
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate readOnly;
+    private TransactionTemplate readWrite;
+
+    @BeforeEach
+    void setUp() {
+        ReadReplicaRoutingDataSource routingDataSource = new ReadReplicaRoutingDataSource(
+                database("primary"), List.of(database("replica-1")), Duration.ofSeconds(5));
+        DataSource dataSource = new LazyConnectionDataSourceProxy(routingDataSource);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        readWrite = new TransactionTemplate(transactionManager);
+    }
+
+    @Test
+    @DisplayName("пишущий запрос получает cookie last-write со временем записи")
+    void writeSetsCookie() throws Exception {
+        // Given
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // When
+        filter.doFilter(new MockHttpServletRequest(), response, new MockFilterChain(new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest req, HttpServletResponse resp) {
+                readWrite.executeWithoutResult(status -> jdbcTemplate.update("UPDATE node SET name = name"));
+            }
+        }));
+
+        // Then
+        Cookie cookie = response.getCookie(ReadYourWritesFilter.COOKIE);
+        assertThat(cookie).isNotNull();
+        assertThat(cookie.getValue()).isEqualTo(Long.toString(NOW.toEpochMilli()));
+        assertThat(cookie.getMaxAge()).isEqualTo(6);
+    }
+
+    @Test
+    @DisplayName("по свежей cookie чтение идет на primary, без записи cookie не ставится")
+    void recentCookieReadsPrimary() throws Exception {
+        // Given
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setCookies(new Cookie(ReadYourWritesFilter.COOKIE, Long.toString(NOW.minusSeconds(2).toEpochMilli())));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // When
+        String node = read(request, response);
+
+        // Then
+        assertThat(node).isEqualTo("primary");
+        assertThat(response.getCookie(ReadYourWritesFilter.COOKIE)).isNull();
+    }
+
+    @Test
+    @DisplayName("cookie старше окна, из далекого будущего или испорченная не переводит чтение на primary")
+    void staleOrForgedCookieIsIgnored() throws Exception {
+        for (String mark : List.of(Long.toString(NOW.minusSeconds(10).toEpochMilli()),
+                Long.toString(NOW.plusSeconds(3600).toEpochMilli()), "garbage")) {
+            // Given
+            MockHttpServletRequest request = new MockHttpServletRequest();
+            request.setCookies(new Cookie(ReadYourWritesFilter.COOKIE, mark));
+
+            // When
+            String node = read(request, new MockHttpServletResponse());
+
+            // Then
+            assertThat(node).as(mark).isEqualTo("replica-1");
+        }
+    }
+
+    private String read(MockHttpServletRequest request, MockHttpServletResponse response) throws Exception {
+        AtomicReference<String> node = new AtomicReference<>();
+        filter.doFilter(request, response, new MockFilterChain(new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest req, HttpServletResponse resp) {
+                node.set(readOnly.execute(status ->
+                        jdbcTemplate.queryForObject("SELECT name FROM node", String.class)));
+            }
+        }));
+        return node.get();
+    }
+
+    private static DataSource database(String name) {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:ryw-filter-" + name + ";DB_CLOSE_DELAY=-1");
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        jdbc.execute("DROP TABLE IF EXISTS node");
+        jdbc.execute("CREATE TABLE node (name VARCHAR(32))");
+        jdbc.update("INSERT INTO node (name) VALUES (?)", name);
+        return dataSource;
+    }
+
+}
@@ -7,8 +7,11 @@ import ru.skypro.homework.model.dto.CreateOrUpdateAd;
 import ru.skypro.homework.model.dto.ExtendedAd;
 import ru.skypro.homework.model.entity.AdEntity;
 import ru.skypro.homework.model.entity.UserEntity;
+import ru.skypro.homework.model.projection.AdSummary;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 class AdMapperTest {
 
@@ -38,6 +41,36 @@ class AdMapperTest {
         assertEquals("/images/ad20.jpg", dto.getImage());
     }
 
+    @Test
+    void summaryToAdDto_ShouldMapAllFieldsCorrectly() {
+
+        AdSummary summary = mock(AdSummary.class);
+        when(summary.getId()).thenReturn(20);
+        when(summary.getAuthorId()).thenReturn(5);
+        when(summary.getTitle()).thenReturn("Test Ad");
+        when(summary.getPrice()).thenReturn(1000);
+        when(summary.getImage()).thenReturn("/images/ad20.jpg");
+
+        Ad dto = adMapper.summaryToAdDto(summary);
+
+        assertEquals(20, dto.getPk());
+        assertEquals(5, dto.getAuthor());
+        assertEquals("Test Ad", dto.getTitle());
+        assertEquals(1000, dto.getPrice());
+        assertEquals("/images/ad20.jpg?variant=CARD", dto.getImage());
+    }
+
+    @Test
+    void summaryToAdDto_WithoutImage_ShouldKeepImageNull() {
+
+        AdSummary summary = mock(AdSummary.class);
+        when(summary.getId()).thenReturn(21);
+
+        Ad dto = adMapper.summaryToAdDto(summary);
+
+        assertNull(dto.getImage());
+    }
+
     @Test
     void entityToAdDto_WithNullEntity_ShouldReturnNull() {
 
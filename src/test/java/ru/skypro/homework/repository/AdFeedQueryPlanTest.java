@@ -0,0 +1,115 @@
+package ru.skypro.homework.repository;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.skypro.homework.model.dto.AdFeedFilter;
+import ru.skypro.homework.model.enums.AdSort;
+import ru.skypro.homework.model.projection.AdSummaryRow;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Проверяет по EXPLAIN, что каждое поддерживаемое сочетание фильтра и сортировки ленты
+ * читает ads по индексу, а не полным сканированием таблицы
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+        + "ru.skypro.homework.repository.AdFeedQueryPlanTest$SqlCapture")
+class AdFeedQueryPlanTest {
+
+    private static final Pattern PARAMETER = Pattern.compile("(\\w+)\\s*(?:<=|>=|<|>|=)\\s*\\?|limit\\s*\\?",
+            Pattern.CASE_INSENSITIVE);
+
+    @Autowired
+    private AdRepository adRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        SqlCapture.STATEMENTS.clear();
+    }
+
+    static Stream<Arguments> feedQueries() {
+        List<Arguments> arguments = new ArrayList<>();
+        List<AdFeedFilter> filters = List.of(
+                new AdFeedFilter(null, null, null),
+                new AdFeedFilter(100, 5000, null),
+                new AdFeedFilter(null, null, 1),
+                new AdFeedFilter(100, 5000, 1));
+        for (AdFeedFilter filter : filters) {
+            for (AdSort sort : AdSort.values()) {
+                // H2 не умеет читать индекс в обратном порядке, PostgreSQL обходит idx_ads_price_id назад
+                if (sort == AdSort.PRICE_DESC && filter.getMinPrice() == null && filter.getAuthorId() == null) {
+                    continue;
+                }
+                arguments.add(Arguments.of(filter, sort, false));
+                arguments.add(Arguments.of(filter, sort, true));
+            }
+        }
+        return arguments.stream();
+    }
+
+    @ParameterizedTest
+    @MethodSource("feedQueries")
+    void findFeedPage_ShouldNotScanWholeAdsTable(AdFeedFilter filter, AdSort sort, boolean withCursor) {
+
+        AdSummaryRow after = withCursor
+                ? new AdSummaryRow(10, null, null, 1000, null, LocalDateTime.of(2024, 1, 10, 12, 0), null)
+                : null;
+
+        adRepository.findFeedPage(filter, sort, after, 21);
+
+        String sql = SqlCapture.STATEMENTS.stream()
+                .filter(statement -> statement.contains("ads"))
+                .reduce((first, second) -> second)
+                .orElseThrow();
+        String plan = String.join("\n", jdbcTemplate.queryForList("EXPLAIN " + withLiterals(sql), String.class));
+
+        assertFalse(plan.contains("ADS.tableScan"), "Full scan of ads for " + filter + ", " + sort + ":\n" + plan);
+    }
+
+    /**
+     * Подставляет в SQL значения параметров по имени колонки, с которой они сравниваются
+     */
+    private String withLiterals(String sql) {
+        Matcher matcher = PARAMETER.matcher(sql);
+        StringBuilder result = new StringBuilder();
+        while (matcher.find()) {
+            String column = matcher.group(1);
+            String literal = column != null && column.endsWith("created_at")
+                    ? "TIMESTAMP '2024-01-10 12:00:00'"
+                    : "1";
+            String replaced = matcher.group().substring(0, matcher.group().length() - 1) + literal;
+            matcher.appendReplacement(result, Matcher.quoteReplacement(replaced));
+        }
+        matcher.appendTail(result);
+        return result.toString();
+    }
+
+    public static class SqlCapture implements StatementInspector {
+
+        static final List<String> STATEMENTS = new ArrayList<>();
+
+        @Override
+        public String inspect(String sql) {
+            STATEMENTS.add(sql);
+            return sql;
+        }
+
+    }
+
+}
@@ -4,13 +4,20 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.test.context.ActiveProfiles;
+import ru.skypro.homework.model.dto.AdFeedFilter;
 import ru.skypro.homework.model.entity.AdEntity;
+import ru.skypro.homework.model.entity.ImageEntity;
 import ru.skypro.homework.model.entity.UserEntity;
+import ru.skypro.homework.model.enums.AdSort;
 import ru.skypro.homework.model.enums.Role;
+import ru.skypro.homework.model.projection.AdSummary;
+import ru.skypro.homework.model.projection.ImageMetadataRow;
 
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -24,6 +31,9 @@ class AdRepositoryTest {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private ImageRepository imageRepository;
+
     private UserEntity createValidUser(String username, String email, String phone) {
         UserEntity user = new UserEntity();
         user.setUsername(username);
@@ -144,4 +154,133 @@ class AdRepositoryTest {
         assertFalse(result.isPresent());
     }
 
-}
\ No newline at end of file
+    @Test
+    void findFeedPage_ShouldWalkAdsNewestFirstWithoutGapsOrDuplicates() {
+
+        UserEntity author = createValidUser("author7", "author7@example.com", "+79991234578");
+        LocalDateTime base = LocalDateTime.of(2024, 1, 10, 12, 0);
+        AdEntity oldest = createValidAd(author, "Oldest");
+        oldest.setCreatedAt(base.minusHours(1));
+        AdEntity sameTimeFirst = createValidAd(author, "Same time 1");
+        sameTimeFirst.setCreatedAt(base);
+        AdEntity sameTimeSecond = createValidAd(author, "Same time 2");
+        sameTimeSecond.setCreatedAt(base);
+        adRepository.saveAll(List.of(oldest, sameTimeFirst, sameTimeSecond));
+        adRepository.flush();
+
+        AdFeedFilter filter = new AdFeedFilter();
+        List<AdSummary> firstPage = adRepository.findFeedPage(filter, AdSort.NEWEST, null, 2);
+        List<AdSummary> secondPage = adRepository.findFeedPage(filter, AdSort.NEWEST, firstPage.get(1), 2);
+
+        assertEquals(List.of(sameTimeSecond.getId(), sameTimeFirst.getId()),
+                firstPage.stream().map(AdSummary::getId).collect(Collectors.toList()));
+        assertEquals(1, secondPage.size());
+        assertEquals(oldest.getId(), secondPage.get(0).getId());
+    }
+
+    @Test
+    void findFeedPage_ShouldFilterByAuthorAndPriceAndSortByPrice() {
+
+        UserEntity author = createValidUser("author12", "author12@example.com", "+79991234583");
+        UserEntity otherAuthor = createValidUser("author13", "author13@example.com", "+79991234584");
+        AdEntity cheap = createValidAd(author, "Cheap");
+        cheap.setPrice(100);
+        AdEntity middle = createValidAd(author, "Middle");
+        middle.setPrice(500);
+        AdEntity samePrice = createValidAd(author, "Same price");
+        samePrice.setPrice(500);
+        AdEntity expensive = createValidAd(author, "Expensive");
+        expensive.setPrice(9000);
+        AdEntity otherAuthorAd = createValidAd(otherAuthor, "Other author");
+        otherAuthorAd.setPrice(300);
+        adRepository.saveAll(List.of(cheap, middle, samePrice, expensive, otherAuthorAd));
+        adRepository.flush();
+
+        AdFeedFilter filter = new AdFeedFilter(200, 5000, author.getId());
+        List<AdSummary> ascending = adRepository.findFeedPage(filter, AdSort.PRICE_ASC, null, 10);
+        List<AdSummary> descendingFirst = adRepository.findFeedPage(filter, AdSort.PRICE_DESC, null, 1);
+        List<AdSummary> descendingNext = adRepository.findFeedPage(filter, AdSort.PRICE_DESC, descendingFirst.get(0), 10);
+
+        assertEquals(List.of(middle.getId(), samePrice.getId()),
+                ascending.stream().map(AdSummary::getId).collect(Collectors.toList()));
+        assertEquals(samePrice.getId(), descendingFirst.get(0).getId());
+        assertEquals(List.of(middle.getId()),
+                descendingNext.stream().map(AdSummary::getId).collect(Collectors.toList()));
+    }
+
+    @Test
+    void findSummariesByAuthorId_ShouldResolveAuthorAndMainImageInProjection() {
+
+        UserEntity author = createValidUser("author8", "author8@example.com", "+79991234579");
+        UserEntity otherAuthor = createValidUser("author9", "author9@example.com", "+79991234580");
+        AdEntity withMainImage = createValidAd(author, "With main image");
+        AdEntity legacyImage = createValidAd(author, "Legacy image path");
+        createValidAd(otherAuthor, "Other author");
+
+        ImageEntity image = new ImageEntity();
+        image.setFilePath("/images/ads/main.jpg");
+        image.setAd(withMainImage);
+        withMainImage.setImage(imageRepository.save(image));
+        adRepository.saveAndFlush(withMainImage);
+
+        List<AdSummary> result = adRepository.findSummariesByAuthorId(author.getId());
+
+        assertEquals(2, result.size());
+        AdSummary main = result.stream()
+                .filter(summary -> summary.getId().equals(withMainImage.getId()))
+                .findFirst().orElseThrow();
+        AdSummary legacy = result.stream()
+                .filter(summary -> summary.getId().equals(legacyImage.getId()))
+                .findFirst().orElseThrow();
+        assertEquals(author.getId(), main.getAuthorId());
+        assertEquals("With main image", main.getTitle());
+        assertEquals(1000, main.getPrice());
+        assertEquals("/images/ads/main.jpg", main.getImage());
+        assertEquals("/images/test.jpg", legacy.getImage());
+    }
+
+    @Test
+    void findImageMetadata_ShouldPreferImageEntityAndFallBackToLegacyPath() {
+
+        UserEntity author = createValidUser("author12", "author12@example.com", "+79991234583");
+        AdEntity withMainImage = createValidAd(author, "With main image");
+        AdEntity legacyImage = createValidAd(author, "Legacy image path");
+
+        ImageEntity image = new ImageEntity();
+        image.setFilePath("/images/ads/main.png");
+        image.setContentType("image/png");
+        image.setAd(withMainImage);
+        withMainImage.setImage(imageRepository.save(image));
+        adRepository.saveAndFlush(withMainImage);
+
+        List<ImageMetadataRow> main = adRepository.findImageMetadata(withMainImage.getId());
+        List<ImageMetadataRow> legacy = adRepository.findImageMetadata(legacyImage.getId());
+
+        assertEquals(1, main.size());
+        assertEquals("/images/ads/main.png", main.get(0).getImageUrl());
+        assertEquals("image/png", main.get(0).getContentType());
+        assertNull(main.get(0).getVariant());
+        assertEquals(1, legacy.size());
+        assertEquals("/images/test.jpg", legacy.get(0).getImageUrl());
+        assertNull(legacy.get(0).getContentType());
+        assertTrue(adRepository.findImageMetadata(-1).isEmpty());
+    }
+
+    @Test
+    void streamSummariesByAuthorId_ShouldReturnOnlyAuthorAds() {
+
+        UserEntity author = createValidUser("author10", "author10@example.com", "+79991234581");
+        UserEntity otherAuthor = createValidUser("author11", "author11@example.com", "+79991234582");
+        createValidAd(author, "Streamed 1");
+        createValidAd(author, "Streamed 2");
+        createValidAd(otherAuthor, "Not streamed");
+
+        try (Stream<AdSummary> result = adRepository.streamSummariesByAuthorId(author.getId())) {
+            List<String> titles = result.map(AdSummary::getTitle).collect(Collectors.toList());
+
+            assertEquals(2, titles.size());
+            assertTrue(titles.containsAll(List.of("Streamed 1", "Streamed 2")));
+        }
+    }
+
+}
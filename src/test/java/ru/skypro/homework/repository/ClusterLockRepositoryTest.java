@@ -0,0 +1,88 @@
+package ru.skypro.homework.repository;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * insertIfAbsent - синтаксис PostgreSQL (ON CONFLICT), поэтому база берется из application.properties
+ * (H2 в режиме MODE=PostgreSQL), а не встроенная по умолчанию
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class ClusterLockRepositoryTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 1, 1, 12, 0);
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private ClusterLockRepository clusterLockRepository;
+
+    @Test
+    void insertIfAbsent_ShouldLetOnlyFirstNodeCreateLock() {
+        // When
+        int first = clusterLockRepository.insertIfAbsent("gc", "node-a", NOW, NOW.plusMinutes(10));
+        int second = clusterLockRepository.insertIfAbsent("gc", "node-b", NOW, NOW.plusMinutes(10));
+        entityManager.clear();
+
+        // Then
+        assertEquals(1, first);
+        assertEquals(0, second);
+        assertEquals("node-a", clusterLockRepository.findById("gc").orElseThrow().getLockedBy());
+    }
+
+    @Test
+    void acquireExpired_ShouldTakeOnlyExpiredLock() {
+        // Given
+        clusterLockRepository.insertIfAbsent("gc", "node-a", NOW, NOW.plusMinutes(10));
+
+        // When
+        int whileHeld = clusterLockRepository.acquireExpired("gc", "node-b", NOW.plusMinutes(5), NOW.plusMinutes(15));
+        int afterExpiry = clusterLockRepository.acquireExpired("gc", "node-b", NOW.plusMinutes(10), NOW.plusMinutes(20));
+        entityManager.clear();
+
+        // Then
+        assertEquals(0, whileHeld);
+        assertEquals(1, afterExpiry);
+        assertEquals("node-b", clusterLockRepository.findById("gc").orElseThrow().getLockedBy());
+    }
+
+    @Test
+    void extend_ShouldFailAfterLockTakenOver() {
+        // Given
+        clusterLockRepository.insertIfAbsent("gc", "node-a", NOW, NOW.plusMinutes(10));
+
+        // When
+        int ownExtend = clusterLockRepository.extend("gc", "node-a", NOW.plusMinutes(5), NOW.plusMinutes(15));
+        clusterLockRepository.acquireExpired("gc", "node-b", NOW.plusMinutes(15), NOW.plusMinutes(25));
+        int staleExtend = clusterLockRepository.extend("gc", "node-a", NOW.plusMinutes(16), NOW.plusMinutes(26));
+
+        // Then
+        assertEquals(1, ownExtend);
+        assertEquals(0, staleExtend);
+    }
+
+    @Test
+    void release_ShouldExpireOnlyOwnLock() {
+        // Given
+        clusterLockRepository.insertIfAbsent("gc", "node-a", NOW, NOW.plusMinutes(10));
+
+        // When
+        int foreign = clusterLockRepository.release("gc", "node-b", NOW.plusMinutes(1));
+        int own = clusterLockRepository.release("gc", "node-a", NOW.plusMinutes(1));
+        int reacquired = clusterLockRepository.acquireExpired("gc", "node-b", NOW.plusMinutes(1), NOW.plusMinutes(11));
+
+        // Then
+        assertEquals(0, foreign);
+        assertEquals(1, own);
+        assertEquals(1, reacquired);
+    }
+}
@@ -0,0 +1,175 @@
+package ru.skypro.homework.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.skypro.benchmark.IdentityCommentEntity;
+import ru.skypro.homework.HomeworkApplication;
+import ru.skypro.homework.model.entity.AdEntity;
+import ru.skypro.homework.model.entity.CommentEntity;
+import ru.skypro.homework.model.entity.UserEntity;
+import ru.skypro.homework.model.enums.Role;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceContext;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Сравнение скорости вставки комментариев через Hibernate: ID из IDENTITY (как было, каждая строка -
+ * отдельный INSERT с чтением ключа) и из pooled-последовательности (как стало, INSERT уходят JDBC-батчами).
+ * <p>
+ * Запускается только явно:
+ * {@code mvn test -Dtest=CommentInsertBenchmarkTest -Dbenchmark=true [-Dbenchmark.comments=100000]}.
+ * По умолчанию идет на H2 в памяти, где сетевых round trip нет и выигрыш виден в основном по числу
+ * JDBC-запросов; для замера на PostgreSQL добавьте {@code -Dspring.test.database.replace=NONE
+ * -Dspring.datasource.url=... -Dspring.datasource.username=... -Dspring.datasource.password=...}.
+ */
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.jdbc.batch_size=50",
+        "spring.jpa.properties.hibernate.order_inserts=true",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "spring.jpa.show-sql=false",
+        "logging.level.org.hibernate.SQL=WARN",
+        "logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN",
+        "logging.level.org.hibernate.engine.internal.StatisticalLoggingSessionEventListener=WARN"
+})
+@Slf4j
+@ActiveProfiles("test")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class CommentInsertBenchmarkTest {
+
+    private static final int FLUSH_SIZE = 1000;
+
+    @TestConfiguration
+    @EntityScan(basePackageClasses = {HomeworkApplication.class, IdentityCommentEntity.class})
+    static class BenchmarkEntities {
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Test
+    void insertComments_IdentityVersusPooledSequence() {
+        int count = Integer.getInteger("benchmark.comments", 100_000);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        Integer[] ids = transactionTemplate.execute(status -> {
+            UserEntity author = new UserEntity();
+            author.setUsername("bench");
+            author.setPassword("encodedPassword123");
+            author.setFirstName("Bench");
+            author.setLastName("Mark");
+            author.setEmail("bench@example.com");
+            author.setPhone("+79990000000");
+            author.setRole(Role.USER);
+            entityManager.persist(author);
+
+            AdEntity ad = new AdEntity();
+            ad.setTitle("Benchmark ad");
+            ad.setDescription("Benchmark ad");
+            ad.setPrice(1000);
+            ad.setAuthor(author);
+            entityManager.persist(ad);
+            return new Integer[]{author.getId(), ad.getId()};
+        });
+        Integer authorId = ids[0];
+        Integer adId = ids[1];
+
+        try {
+            statistics.clear();
+            long identityNanos = insert(transactionTemplate, count, authorId, adId, (author, ad, text) -> {
+                IdentityCommentEntity comment = new IdentityCommentEntity();
+                comment.setText(text);
+                comment.setCreatedAt(LocalDateTime.now());
+                comment.setAuthor(author);
+                comment.setAd(ad);
+                entityManager.persist(comment);
+            });
+            long identityStatements = statistics.getPrepareStatementCount();
+
+            statistics.clear();
+            long pooledNanos = insert(transactionTemplate, count, authorId, adId, (author, ad, text) -> {
+                CommentEntity comment = new CommentEntity();
+                comment.setText(text);
+                comment.setCreatedAt(LocalDateTime.now());
+                comment.setAuthor(author);
+                comment.setAd(ad);
+                entityManager.persist(comment);
+            });
+            long pooledStatements = statistics.getPrepareStatementCount();
+
+            log.info("Inserted {} comments", count);
+            log.info("  IDENTITY:                  {} inserts/s, {} JDBC statements",
+                    String.format("%,10.0f", count / (identityNanos / 1e9)), identityStatements);
+            log.info("  pooled sequence, batched:  {} inserts/s, {} JDBC statements",
+                    String.format("%,10.0f", count / (pooledNanos / 1e9)), pooledStatements);
+
+            assertEquals(count, jdbcTemplate.queryForObject(
+                    "SELECT COUNT(*) FROM comments_identity_bench", Integer.class));
+            assertEquals(count, jdbcTemplate.queryForObject(
+                    "SELECT COUNT(*) FROM comments WHERE ad_id = ?", Integer.class, adId));
+            assertTrue(pooledStatements * 10 < identityStatements,
+                    "Inserts were not batched: " + pooledStatements + " statements");
+        } finally {
+            jdbcTemplate.update("DELETE FROM comments_identity_bench");
+            jdbcTemplate.update("DELETE FROM comments WHERE ad_id = ?", adId);
+            jdbcTemplate.update("DELETE FROM ads WHERE id = ?", adId);
+            jdbcTemplate.update("DELETE FROM users WHERE id = ?", authorId);
+        }
+    }
+
+    /**
+     * Вставить count комментариев одной транзакцией, сбрасывая контекст каждые FLUSH_SIZE строк
+     *
+     * @return время в наносекундах
+     */
+    private long insert(TransactionTemplate transactionTemplate, int count, Integer authorId, Integer adId,
+                        CommentWriter writer) {
+        long start = System.nanoTime();
+        transactionTemplate.executeWithoutResult(status -> {
+            for (int i = 0; i < count; i++) {
+                writer.persist(entityManager.getReference(UserEntity.class, authorId),
+                        entityManager.getReference(AdEntity.class, adId), "Comment " + i);
+                if ((i + 1) % FLUSH_SIZE == 0) {
+                    entityManager.flush();
+                    entityManager.clear();
+                }
+            }
+            entityManager.flush();
+            entityManager.clear();
+        });
+        return System.nanoTime() - start;
+    }
+
+    @FunctionalInterface
+    private interface CommentWriter {
+        void persist(UserEntity author, AdEntity ad, String text);
+    }
+
+}
@@ -0,0 +1,124 @@
+package ru.skypro.homework.repository;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import ru.skypro.homework.model.entity.ImageBlobEntity;
+import ru.skypro.homework.model.entity.ImageEntity;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * insertIfAbsent - синтаксис PostgreSQL (ON CONFLICT), поэтому база берется из application.properties
+ * (H2 в режиме MODE=PostgreSQL), а не встроенная по умолчанию
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class ImageBlobRepositoryTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private ImageBlobRepository imageBlobRepository;
+
+    @Test
+    void incrementRefCount_WhenBlobMissing_ShouldReturnZero() {
+        // When
+        int updated = imageBlobRepository.incrementRefCount("missing");
+
+        // Then
+        assertEquals(0, updated);
+    }
+
+    @Test
+    void incrementAndDecrementRefCount_ShouldChangeCounter() {
+        // Given
+        entityManager.persistAndFlush(createBlob("aa", 1));
+
+        // When
+        imageBlobRepository.incrementRefCount("aa");
+        imageBlobRepository.incrementRefCount("aa");
+        imageBlobRepository.decrementRefCount("aa");
+        entityManager.clear();
+
+        // Then
+        assertEquals(2, imageBlobRepository.findById("aa").orElseThrow().getRefCount());
+    }
+
+    @Test
+    void insertIfAbsent_ShouldCreateBlobOnceThenDoNothing() {
+        // When
+        int first = imageBlobRepository.insertIfAbsent("dd", "/images/blobs/dd/dd/dd.jpg", 1024L, "image/jpeg");
+        int second = imageBlobRepository.insertIfAbsent("dd", "/images/blobs/dd/dd/dd.jpg", 1024L, "image/jpeg");
+        entityManager.clear();
+
+        // Then
+        assertEquals(1, first);
+        assertEquals(0, second);
+        ImageBlobEntity blob = imageBlobRepository.findById("dd").orElseThrow();
+        assertEquals(1, blob.getRefCount());
+        assertEquals("/images/blobs/dd/dd/dd.jpg", blob.getFilePath());
+        assertNotNull(blob.getCreatedAt());
+    }
+
+    @Test
+    void findByIdForUpdate_ShouldReturnLockedBlob() {
+        // Given
+        entityManager.persistAndFlush(createBlob("ee", 0));
+        entityManager.clear();
+
+        // When
+        ImageBlobEntity blob = imageBlobRepository.findByIdForUpdate("ee").orElseThrow();
+
+        // Then
+        assertEquals(0, blob.getRefCount());
+        assertTrue(imageBlobRepository.findByIdForUpdate("missing").isEmpty());
+    }
+
+    @Test
+    void deleteIfUnreferenced_WhenCounterIsZero_ShouldDeleteBlob() {
+        // Given
+        entityManager.persistAndFlush(createBlob("bb", 1));
+        imageBlobRepository.decrementRefCount("bb");
+
+        // When
+        int deleted = imageBlobRepository.deleteIfUnreferenced("bb");
+
+        // Then
+        assertEquals(1, deleted);
+        assertFalse(imageBlobRepository.existsById("bb"));
+    }
+
+    @Test
+    void deleteIfUnreferenced_WhenImageStillReferencesBlob_ShouldKeepBlob() {
+        // Given: счетчик разошелся с таблицей images
+        ImageBlobEntity blob = entityManager.persistAndFlush(createBlob("cc", 0));
+        ImageEntity image = new ImageEntity();
+        image.setFilePath("/images/ads/ad_1.jpg");
+        image.setContentType("image/jpeg");
+        image.setFileSize(1024L);
+        image.setBlob(blob);
+        entityManager.persistAndFlush(image);
+
+        // When
+        int deleted = imageBlobRepository.deleteIfUnreferenced("cc");
+
+        // Then
+        assertEquals(0, deleted);
+        assertTrue(imageBlobRepository.existsById("cc"));
+    }
+
+    private ImageBlobEntity createBlob(String contentHash, int refCount) {
+        ImageBlobEntity blob = new ImageBlobEntity();
+        blob.setContentHash(contentHash);
+        blob.setFilePath("/images/blobs/" + contentHash + ".jpg");
+        blob.setFileSize(1024L);
+        blob.setContentType("image/jpeg");
+        blob.setRefCount(refCount);
+        return blob;
+    }
+
+}
@@ -4,10 +4,18 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.PageRequest;
+import ru.skypro.homework.model.entity.ImageBlobEntity;
 import ru.skypro.homework.model.entity.ImageEntity;
+import ru.skypro.homework.model.enums.ImageVariant;
+import ru.skypro.homework.model.projection.BlobReferenceCount;
+import ru.skypro.homework.model.projection.ImageMetadataRow;
 
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -74,6 +82,84 @@ class ImageRepositoryTest {
         assertTrue(saved.getId() > 0);
     }
 
+    @Test
+    void findFilePathsInAndVariantPathsIn_ShouldReturnOnlyKnownPaths() {
+        // Given
+        ImageEntity imageEntity = createTestImageEntity("/images/ads/ad_1.jpg");
+        imageEntity.getVariants().put(ImageVariant.CARD, "/images/ads/ad_1_card.jpg");
+        entityManager.persistAndFlush(imageEntity);
+        List<String> paths = List.of("/images/ads/ad_1.jpg", "/images/ads/ad_1_card.jpg", "/images/ads/orphan.jpg");
+
+        // When
+        List<String> files = imageRepository.findFilePathsIn(paths);
+        List<String> variants = imageRepository.findVariantPathsIn(paths);
+
+        // Then
+        assertEquals(List.of("/images/ads/ad_1.jpg"), files);
+        assertEquals(List.of("/images/ads/ad_1_card.jpg"), variants);
+    }
+
+    @Test
+    void findBatchAfterAndCountReferences_ShouldPageByIdAndCountBlobReferences() {
+        // Given
+        ImageBlobEntity blob = new ImageBlobEntity();
+        blob.setContentHash("abcd");
+        blob.setFilePath("/images/blobs/ab/cd/abcd.jpg");
+        blob.setFileSize(1024L);
+        blob.setContentType("image/jpeg");
+        blob.setRefCount(5);
+        entityManager.persist(blob);
+        ImageEntity first = createTestImageEntity("/images/ads/ad_1.jpg");
+        first.setBlob(blob);
+        ImageEntity second = createTestImageEntity("/images/ads/ad_2.jpg");
+        second.setBlob(blob);
+        entityManager.persist(first);
+        entityManager.persistAndFlush(second);
+
+        // When
+        List<ImageEntity> batch = imageRepository.findBatchAfter(first.getId(), PageRequest.of(0, 10));
+        List<BlobReferenceCount> counts = imageRepository.countReferences(List.of("abcd"));
+
+        // Then
+        assertEquals(List.of(second.getId()), batch.stream().map(ImageEntity::getId).collect(Collectors.toList()));
+        assertEquals(1, counts.size());
+        assertEquals(2L, counts.get(0).getReferenceCount());
+    }
+
+    @Test
+    void findImageMetadata_ShouldReturnRowPerVariantWithBlobPath() {
+        // Given
+        ImageBlobEntity blob = new ImageBlobEntity();
+        blob.setContentHash("abcd");
+        blob.setFilePath("/images/blobs/ab/cd/abcd.jpg");
+        blob.setFileSize(1024L);
+        blob.setContentType("image/jpeg");
+        blob.setRefCount(1);
+        entityManager.persist(blob);
+        ImageEntity imageEntity = createTestImageEntity("/images/ads/ad_1.jpg");
+        imageEntity.setBlob(blob);
+        imageEntity.setContentHash("abcd");
+        imageEntity.getVariants().put(ImageVariant.CARD, "/images/ads/ad_1_card.jpg");
+        imageEntity.getVariants().put(ImageVariant.THUMBNAIL, "/images/ads/ad_1_thumb.jpg");
+        entityManager.persistAndFlush(imageEntity);
+        entityManager.clear();
+
+        // When
+        List<ImageMetadataRow> rows = imageRepository.findImageMetadata("/images/ads/ad_1.jpg");
+
+        // Then
+        assertEquals(2, rows.size());
+        ImageMetadataRow row = rows.get(0);
+        assertEquals("/images/ads/ad_1.jpg", row.getImageUrl());
+        assertEquals("/images/blobs/ab/cd/abcd.jpg", row.getBlobPath());
+        assertEquals("image/jpeg", row.getContentType());
+        assertEquals("abcd", row.getContentHash());
+        assertEquals(
+                Set.of(ImageVariant.CARD, ImageVariant.THUMBNAIL),
+                rows.stream().map(ImageMetadataRow::getVariant).collect(Collectors.toSet()));
+        assertTrue(imageRepository.findImageMetadata("/images/ads/none.jpg").isEmpty());
+    }
+
     private ImageEntity createTestImageEntity(String filePath) {
         ImageEntity imageEntity = new ImageEntity();
         imageEntity.setFilePath(filePath);
@@ -6,6 +6,7 @@ import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.test.context.ActiveProfiles;
 import ru.skypro.homework.model.entity.UserEntity;
 import ru.skypro.homework.model.enums.Role;
+import ru.skypro.homework.model.projection.EntityVersion;
 
 import java.time.LocalDateTime;
 import java.util.Optional;
@@ -111,4 +112,19 @@ class UserRepositoryTest {
         assertFalse(result.isPresent());
     }
 
-}
\ No newline at end of file
+    @Test
+    void findVersionByEmail_ShouldFollowEntityUpdates() {
+
+        UserEntity user = createValidUser("user6", "user6@example.com", "+79991234572");
+        UserEntity savedUser = userRepository.saveAndFlush(user);
+
+        EntityVersion initial = userRepository.findVersionByEmail("user6@example.com").orElseThrow();
+        savedUser.setFirstName("Jane");
+        userRepository.saveAndFlush(savedUser);
+        EntityVersion updated = userRepository.findVersionByEmail("user6@example.com").orElseThrow();
+
+        assertEquals(savedUser.getId(), initial.getId());
+        assertEquals(initial.getVersion() + 1, updated.getVersion());
+    }
+
+}
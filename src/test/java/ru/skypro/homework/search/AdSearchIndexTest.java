@@ -0,0 +1,135 @@
+package ru.skypro.homework.search;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import ru.skypro.homework.model.projection.AdSearchDocument;
+import ru.skypro.homework.repository.AdRepository;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AdSearchIndexTest {
+
+    @Mock
+    private AdRepository adRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @InjectMocks
+    private AdSearchIndex adSearchIndex;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(adSearchIndex, "engine", AdSearchIndex.ENGINE_MEMORY);
+        adSearchIndex.indexAd(1, "Горный велосипед", "Почти новый, 21 скорость", 15000);
+        adSearchIndex.indexAd(2, "Детский велосипед", "Для ребенка 5 лет", 4000);
+        adSearchIndex.indexAd(3, "Mountain bike", "Велосипеды и запчасти", 30000);
+        adSearchIndex.indexAd(4, "Диван", "Раскладной", 8000);
+    }
+
+    private List<Integer> ids(List<AdSearchIndex.Hit> hits) {
+        return hits.stream().map(AdSearchIndex.Hit::getId).collect(Collectors.toList());
+    }
+
+    @Test
+    void search_AllTerms_ShouldIntersectPostingLists() {
+
+        List<AdSearchIndex.Hit> hits = adSearchIndex.search("горные велосипеды", false, 0, Integer.MAX_VALUE, null, 10);
+
+        assertEquals(List.of(1), ids(hits));
+    }
+
+    @Test
+    void search_AnyTerm_ShouldRankAdsWithMoreMatchedTermsFirst() {
+
+        List<AdSearchIndex.Hit> hits = adSearchIndex.search("велосипед bike", true, 0, Integer.MAX_VALUE, null, 10);
+
+        assertEquals(List.of(3, 2, 1), ids(hits));
+        assertEquals(2, hits.get(0).getScore());
+        assertEquals(1, hits.get(1).getScore());
+    }
+
+    @Test
+    void search_ShouldFilterByPriceRange() {
+
+        List<AdSearchIndex.Hit> hits = adSearchIndex.search("велосипед", false, 5000, 20000, null, 10);
+
+        assertEquals(List.of(1), ids(hits));
+    }
+
+    @Test
+    void search_AfterCursor_ShouldReturnNextPage() {
+
+        List<AdSearchIndex.Hit> firstPage = adSearchIndex.search("велосипед", false, 0, Integer.MAX_VALUE, null, 2);
+        List<AdSearchIndex.Hit> secondPage = adSearchIndex.search("велосипед", false, 0, Integer.MAX_VALUE,
+                firstPage.get(1), 2);
+
+        assertEquals(List.of(3, 2), ids(firstPage));
+        assertEquals(List.of(1), ids(secondPage));
+    }
+
+    @Test
+    void indexAd_ShouldReplacePreviousTermsOfAd() {
+
+        adSearchIndex.indexAd(4, "Кресло", "Мягкое", 8000);
+
+        assertTrue(adSearchIndex.search("диван", false, 0, Integer.MAX_VALUE, null, 10).isEmpty());
+        assertEquals(List.of(4), ids(adSearchIndex.search("кресло", false, 0, Integer.MAX_VALUE, null, 10)));
+        assertEquals(4, adSearchIndex.size());
+    }
+
+    @Test
+    void removeAd_ShouldRemoveAdFromResults() {
+
+        adSearchIndex.removeAd(1);
+
+        assertEquals(List.of(3, 2), ids(adSearchIndex.search("велосипед", false, 0, Integer.MAX_VALUE, null, 10)));
+        assertEquals(3, adSearchIndex.size());
+    }
+
+    @Test
+    void search_WithUnknownTerm_ShouldReturnEmpty() {
+
+        assertTrue(adSearchIndex.search("велосипед холодильник", false, 0, Integer.MAX_VALUE, null, 10).isEmpty());
+        assertTrue(adSearchIndex.search("холодильник", true, 0, Integer.MAX_VALUE, null, 10).isEmpty());
+    }
+
+    @Test
+    void rebuild_ShouldLoadAllAdsFromDatabase() {
+
+        AdSearchDocument document = mock(AdSearchDocument.class);
+        when(document.getId()).thenReturn(10);
+        when(document.getTitle()).thenReturn("Холодильник");
+        when(document.getDescription()).thenReturn("Рабочий");
+        when(document.getPrice()).thenReturn(5000);
+        when(adRepository.streamSearchDocuments()).thenReturn(Stream.of(document));
+
+        adSearchIndex.rebuild();
+
+        assertEquals(1, adSearchIndex.size());
+        assertEquals(List.of(10), ids(adSearchIndex.search("холодильники", false, 0, Integer.MAX_VALUE, null, 10)));
+    }
+
+    @Test
+    void indexAd_WhenEngineIsDatabase_ShouldDoNothing() {
+
+        ReflectionTestUtils.setField(adSearchIndex, "engine", "database");
+        adSearchIndex.rebuild();
+
+        assertFalse(adSearchIndex.isEnabled());
+        verifyNoInteractions(adRepository);
+    }
+
+}
@@ -0,0 +1,48 @@
+package ru.skypro.homework.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdTokenizerTest {
+
+    @Test
+    void words_ShouldLowercaseAndSplitOnPunctuation() {
+
+        List<String> words = AdTokenizer.words("Продам ЁЛКУ, iPhone-12!");
+
+        assertEquals(List.of("продам", "елку", "iphone", "12"), words);
+    }
+
+    @Test
+    void words_WithNullOrBlankText_ShouldReturnEmptyList() {
+
+        assertTrue(AdTokenizer.words(null).isEmpty());
+        assertTrue(AdTokenizer.words(" ,.- ").isEmpty());
+    }
+
+    @Test
+    void terms_ShouldReduceRussianWordFormsToSameStem() {
+
+        assertEquals(AdTokenizer.terms("велосипед"), AdTokenizer.terms("велосипеды"));
+        assertEquals(AdTokenizer.terms("велосипед"), AdTokenizer.terms("велосипедами"));
+        assertEquals(AdTokenizer.terms("новый"), AdTokenizer.terms("новая"));
+    }
+
+    @Test
+    void terms_ShouldReduceEnglishPlurals() {
+
+        assertEquals(List.of("bike"), AdTokenizer.terms("bikes"));
+        assertEquals(List.of("battery"), AdTokenizer.terms("batteries"));
+        assertEquals(List.of("glass"), AdTokenizer.terms("glass"));
+    }
+
+    @Test
+    void terms_ShouldKeepShortWordsAndRemoveDuplicates() {
+
+        assertEquals(List.of("дом", "tv"), AdTokenizer.terms("дом дом TV"));
+    }
+
+}
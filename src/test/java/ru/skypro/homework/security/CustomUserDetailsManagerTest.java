@@ -0,0 +1,112 @@
+package ru.skypro.homework.security;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.core.CredentialsContainer;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.skypro.homework.model.entity.UserEntity;
+import ru.skypro.homework.model.enums.Role;
+import ru.skypro.homework.repository.UserRepository;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CustomUserDetailsManagerTest {
+
+    private static final String EMAIL = "user@example.com";
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private PasswordEncoder passwordEncoder;
+
+    private MeterRegistry meterRegistry;
+    private CustomUserDetailsManager manager;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        manager = new CustomUserDetailsManager(userRepository, passwordEncoder, meterRegistry);
+        ReflectionTestUtils.setField(manager, "maximumSize", 100L);
+        ReflectionTestUtils.setField(manager, "ttl", Duration.ofSeconds(30));
+        manager.init();
+    }
+
+    @Test
+    @DisplayName("loadUserByUsername - пользователь читается из БД один раз, стертый пароль копии не портит кэш")
+    void loadUserByUsername_LoadsOnceThenHits() {
+        // Given
+        when(userRepository.findByEmail(EMAIL)).thenReturn(Optional.of(user("hash")));
+
+        // When
+        UserDetails first = manager.loadUserByUsername(EMAIL);
+        ((CredentialsContainer) first).eraseCredentials();
+        UserDetails second = manager.loadUserByUsername(EMAIL);
+
+        // Then
+        assertThat(second.getPassword()).isEqualTo("hash");
+        assertThat(second.getAuthorities()).extracting(Object::toString).containsExactly("ROLE_USER");
+        verify(userRepository, times(1)).findByEmail(EMAIL);
+        assertThat(meterRegistry.get("cache.gets").tag("cache", CustomUserDetailsManager.CACHE_NAME)
+                .tag("result", "hit").functionCounter().count()).isEqualTo(1.0);
+        assertThat(meterRegistry.get("cache.gets").tag("cache", CustomUserDetailsManager.CACHE_NAME)
+                .tag("result", "miss").functionCounter().count()).isEqualTo(1.0);
+    }
+
+    @Test
+    @DisplayName("changePassword - запись сбрасывается, следующий запрос видит новый пароль")
+    void changePassword_EvictsCachedUser() {
+        // Given
+        UserEntity userEntity = user("old-hash");
+        when(userRepository.findByEmail(EMAIL)).thenReturn(Optional.of(userEntity));
+        when(passwordEncoder.matches("old", "old-hash")).thenReturn(true);
+        when(passwordEncoder.encode("new")).thenReturn("new-hash");
+        assertThat(manager.loadUserByUsername(EMAIL).getPassword()).isEqualTo("old-hash");
+
+        // When
+        manager.changePassword(EMAIL, "old", "new");
+        UserDetails reloaded = manager.loadUserByUsername(EMAIL);
+
+        // Then
+        assertThat(reloaded.getPassword()).isEqualTo("new-hash");
+        verify(userRepository).save(userEntity);
+    }
+
+    @Test
+    @DisplayName("loadUserByUsername - пользователя нет: исключение, отсутствие не кэшируется")
+    void loadUserByUsername_Missing() {
+        // Given
+        when(userRepository.findByEmail(EMAIL)).thenReturn(Optional.empty());
+
+        // When & Then
+        assertThrows(UsernameNotFoundException.class, () -> manager.loadUserByUsername(EMAIL));
+        assertThrows(UsernameNotFoundException.class, () -> manager.loadUserByUsername(EMAIL));
+        // По запросу к primary на каждый вызов
+        verify(userRepository, times(2)).findByEmail(EMAIL);
+    }
+
+    private static UserEntity user(String password) {
+        UserEntity userEntity = new UserEntity();
+        userEntity.setId(1);
+        userEntity.setEmail(EMAIL);
+        userEntity.setPassword(password);
+        userEntity.setRole(Role.USER);
+        return userEntity;
+    }
+
+}
@@ -0,0 +1,171 @@
+package ru.skypro.homework.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.web.multipart.MultipartFile;
+import ru.skypro.homework.model.dto.AdImage;
+import ru.skypro.homework.model.dto.AdImages;
+import ru.skypro.homework.model.entity.AdEntity;
+import ru.skypro.homework.model.entity.ImageEntity;
+import ru.skypro.homework.repository.AdRepository;
+
+import java.io.InputStream;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AdGalleryServiceTest {
+
+    private static final int PHOTOS = 4;
+
+    @Mock
+    private AdRepository adRepository;
+
+    @Mock
+    private ImageService imageService;
+
+    @Mock
+    private ExtendedAdCache extendedAdCache;
+
+    @Mock
+    private ImageMetadataResolver imageMetadataResolver;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @InjectMocks
+    private AdGalleryService adGalleryService;
+
+    private AdEntity ad;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(adGalleryService, "maxImages", 10);
+        ReflectionTestUtils.setField(adGalleryService, "uploadThreads", PHOTOS);
+        ReflectionTestUtils.setField(adGalleryService, "queueCapacity", 10);
+        adGalleryService.init();
+        ad = new AdEntity();
+        ad.setId(1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        adGalleryService.shutdown();
+    }
+
+    @Test
+    @DisplayName("addImages - фотографии пишутся одновременно, затем попадают в галерею по порядку, первая - главная")
+    void addImages_WritesConcurrently() throws Exception {
+        // Given: запись каждой фотографии ждет, пока начнутся все остальные
+        CountDownLatch allStarted = new CountDownLatch(PHOTOS);
+        when(imageService.writeAdImage(any(InputStream.class), anyString())).thenAnswer(invocation -> {
+            allStarted.countDown();
+            if (!allStarted.await(5, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Uploads ran one after another");
+            }
+            return image(null, "/images/ads/" + invocation.getArgument(1, String.class));
+        });
+        when(adRepository.findById(1)).thenReturn(Optional.of(ad));
+        when(adRepository.save(ad)).thenReturn(ad);
+
+        // When
+        AdImages result = adGalleryService.addImages(1, photos(PHOTOS));
+
+        // Then
+        assertThat(result.getCount()).isEqualTo(PHOTOS);
+        assertThat(result.getResults()).extracting(AdImage::getImage)
+                .containsExactly("/images/ads/photo0.jpg", "/images/ads/photo1.jpg",
+                        "/images/ads/photo2.jpg", "/images/ads/photo3.jpg");
+        assertThat(result.getResults()).extracting(AdImage::isMain).containsExactly(true, false, false, false);
+        assertThat(ad.getImages()).extracting(ImageEntity::getPosition).containsExactly(0, 1, 2, 3);
+        verify(imageService, times(PHOTOS)).scheduleVariants(anyString());
+        verify(extendedAdCache).evict(1);
+        verify(imageMetadataResolver).evictAd(1);
+    }
+
+    @Test
+    @DisplayName("addImages - одна фотография не записалась: остальные отпускаются, объявление не меняется")
+    void addImages_FailureReleasesWritten() throws Exception {
+        // Given
+        when(adRepository.findById(1)).thenReturn(Optional.of(ad));
+        ImageEntity written = image(null, "/images/ads/photo0.jpg");
+        when(imageService.writeAdImage(any(InputStream.class), eq("photo0.jpg"))).thenReturn(written);
+        when(imageService.writeAdImage(any(InputStream.class), eq("photo1.jpg")))
+                .thenThrow(new IllegalArgumentException("Unsupported image format"));
+
+        // When & Then
+        assertThrows(IllegalArgumentException.class, () -> adGalleryService.addImages(1, photos(2)));
+        verify(imageService).releaseUnsavedImage(written);
+        verify(adRepository, never()).save(any());
+        assertThat(ad.getImages()).isEmpty();
+    }
+
+    @Test
+    @DisplayName("addImages - больше max-images: отказ до записи файлов")
+    void addImages_TooMany() throws Exception {
+        // Given
+        when(adRepository.findById(1)).thenReturn(Optional.of(ad));
+
+        // When & Then
+        assertThrows(IllegalArgumentException.class, () -> adGalleryService.addImages(1, photos(11)));
+        verify(imageService, never()).writeAdImage(any(), any());
+    }
+
+    @Test
+    @DisplayName("reorderImages и setMainImage - порядок задается списком id, главная выбирается отдельно")
+    void reorderAndSetMain() {
+        // Given
+        ad.addImage(image(10, "/images/ads/a.jpg"));
+        ad.addImage(image(11, "/images/ads/b.jpg"));
+        ad.addImage(image(12, "/images/ads/c.jpg"));
+        when(adRepository.findById(1)).thenReturn(Optional.of(ad));
+        when(adRepository.save(ad)).thenReturn(ad);
+
+        // When
+        AdImages reordered = adGalleryService.reorderImages(1, List.of(12, 10, 11));
+        AdImages withMain = adGalleryService.setMainImage(1, 11);
+
+        // Then
+        assertThat(reordered.getResults()).extracting(AdImage::getId).containsExactly(12, 10, 11);
+        assertThat(reordered.getResults()).extracting(AdImage::isMain).containsExactly(false, true, false);
+        assertThat(withMain.getResults()).extracting(AdImage::isMain).containsExactly(false, false, true);
+        assertThat(ad.getImagePath()).isEqualTo("/images/ads/b.jpg");
+        verify(imageMetadataResolver).evictAd(1);
+        assertThrows(IllegalArgumentException.class, () -> adGalleryService.reorderImages(1, List.of(12, 10)));
+        assertThrows(IllegalArgumentException.class, () -> adGalleryService.setMainImage(1, 99));
+    }
+
+    private static List<MultipartFile> photos(int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> new MockMultipartFile("images", "photo" + i + ".jpg", "image/jpeg", new byte[]{(byte) i}))
+                .collect(Collectors.toList());
+    }
+
+    private static ImageEntity image(Integer id, String filePath) {
+        ImageEntity image = new ImageEntity();
+        image.setId(id);
+        image.setFilePath(filePath);
+        return image;
+    }
+
+}
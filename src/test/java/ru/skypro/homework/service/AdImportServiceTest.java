@@ -0,0 +1,315 @@
+package ru.skypro.homework.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import ru.skypro.homework.mapper.AdMapper;
+import ru.skypro.homework.model.dto.AdImportReport;
+import ru.skypro.homework.model.dto.CreateOrUpdateAd;
+import ru.skypro.homework.model.entity.AdEntity;
+import ru.skypro.homework.model.entity.ImageEntity;
+import ru.skypro.homework.model.entity.UserEntity;
+import ru.skypro.homework.repository.AdRepository;
+import ru.skypro.homework.repository.UserRepository;
+import ru.skypro.homework.search.AdSearchIndex;
+
+import javax.validation.Validation;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AdImportServiceTest {
+
+    private static final String VALID_DESCRIPTION = "Good condition, barely used";
+
+    @Mock
+    private AdRepository adRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private UserService userService;
+
+    @Mock
+    private ImageService imageService;
+
+    @Mock
+    private AdMapper adMapper;
+
+    @Mock
+    private AdSearchIndex adSearchIndex;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private AdImportService adImportService;
+
+    @BeforeEach
+    void setUp() {
+        adImportService = new AdImportService(adRepository, userRepository, userService, imageService, adMapper,
+                adSearchIndex, new ObjectMapper(), Validation.buildDefaultValidatorFactory().getValidator(),
+                transactionManager);
+        ReflectionTestUtils.setField(adImportService, "batchSize", 2);
+        ReflectionTestUtils.setField(adImportService, "maxErrors", 100);
+
+        UserEntity author = new UserEntity();
+        author.setId(7);
+        lenient().when(userService.getCurrentUserEntity()).thenReturn(author);
+        lenient().when(userRepository.getReferenceById(7)).thenReturn(author);
+        lenient().when(adMapper.createOrUpdateAdToEntity(any(CreateOrUpdateAd.class))).thenAnswer(invocation -> {
+            CreateOrUpdateAd dto = invocation.getArgument(0);
+            AdEntity ad = new AdEntity();
+            ad.setTitle(dto.getTitle());
+            ad.setPrice(dto.getPrice());
+            ad.setDescription(dto.getDescription());
+            return ad;
+        });
+    }
+
+    @Test
+    @DisplayName("importAds - NDJSON сохраняется пачками по batch-size")
+    void importAds_NdjsonIsSavedInBatches() throws IOException {
+        // Given
+        MockMultipartFile file = ndjson(
+                record("Bicycle", 100, null),
+                record("Scooter", 200, null),
+                record("Skateboard", 300, null));
+
+        // When
+        AdImportReport report = adImportService.importAds(file, null, null);
+
+        // Then
+        assertThat(report.getTotal()).isEqualTo(3);
+        assertThat(report.getImported()).isEqualTo(3);
+        assertThat(report.getFailed()).isZero();
+        verify(adRepository, times(2)).saveAll(anyIterable());
+        verify(transactionManager, times(2)).commit(any());
+        verify(adSearchIndex, times(3)).indexAd(any(), any(), eq(VALID_DESCRIPTION), any());
+    }
+
+    @Test
+    @DisplayName("importAds - CSV с заголовком разбирается так же, как NDJSON")
+    void importAds_CsvWithHeader() throws IOException {
+        // Given
+        String csv = "title,price,description\n"
+                + "Bicycle,100,\"" + VALID_DESCRIPTION + "\"\n"
+                + "Scooter,200,\"" + VALID_DESCRIPTION + ", with bag\"\n";
+        MockMultipartFile file = new MockMultipartFile("file", "ads.csv", "text/csv",
+                csv.getBytes(StandardCharsets.UTF_8));
+        ArgumentCaptor<List<AdEntity>> saved = ArgumentCaptor.forClass(List.class);
+
+        // When
+        AdImportReport report = adImportService.importAds(file, null, null);
+
+        // Then
+        assertThat(report.getImported()).isEqualTo(2);
+        verify(adRepository).saveAll(saved.capture());
+        assertThat(saved.getValue()).extracting(AdEntity::getTitle).containsExactly("Bicycle", "Scooter");
+        assertThat(saved.getValue().get(1).getDescription()).isEqualTo(VALID_DESCRIPTION + ", with bag");
+        assertThat(saved.getValue()).allSatisfy(ad -> assertThat(ad.getAuthor().getId()).isEqualTo(7));
+    }
+
+    @Test
+    @DisplayName("importAds - невалидные записи попадают в отчет с номером строки, остальные сохраняются")
+    void importAds_InvalidRecordsAreReported() throws IOException {
+        // Given
+        MockMultipartFile file = ndjson(
+                record("Bicycle", 100, null),
+                "{\"title\":\"No\",\"price\":-5,\"description\":\"" + VALID_DESCRIPTION + "\"}",
+                "{not json}",
+                record("Scooter", 200, null));
+
+        // When
+        AdImportReport report = adImportService.importAds(file, null, null);
+
+        // Then
+        assertThat(report.getImported()).isEqualTo(2);
+        assertThat(report.getFailed()).isEqualTo(2);
+        assertThat(report.getErrors()).hasSize(2);
+        assertThat(report.getErrors().get(0).getRow()).isEqualTo(2);
+        assertThat(report.getErrors().get(0).getMessage()).contains("price").contains("title");
+        assertThat(report.getErrors().get(1).getRow()).isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("importAds - картинки берутся из zip-архива, отсутствующая картинка - ошибка строки")
+    void importAds_ImagesFromArchive() throws IOException {
+        // Given
+        MockMultipartFile file = ndjson(
+                record("Bicycle", 100, "photos/bike.jpg"),
+                record("Scooter", 200, "photos/missing.jpg"));
+        MockMultipartFile images = zip("photos/bike.jpg", "jpeg bytes");
+        ImageEntity image = new ImageEntity();
+        image.setFilePath("/images/ads/ad_1.jpg");
+        when(imageService.writeAdImage(any(InputStream.class), eq("photos/bike.jpg"))).thenReturn(image);
+        ArgumentCaptor<List<AdEntity>> saved = ArgumentCaptor.forClass(List.class);
+
+        // When
+        AdImportReport report = adImportService.importAds(file, images, null);
+
+        // Then
+        assertThat(report.getImported()).isEqualTo(1);
+        assertThat(report.getErrors()).singleElement()
+                .satisfies(error -> assertThat(error.getMessage()).contains("not found in archive"));
+        verify(adRepository).saveAll(saved.capture());
+        assertThat(saved.getValue().get(0).getImages()).extracting(ImageEntity::getFilePath)
+                .containsExactly("/images/ads/ad_1.jpg");
+    }
+
+    @Test
+    @DisplayName("importAds - отклоненная картинка (не изображение, больше лимита) - ошибка строки, импорт идет дальше")
+    void importAds_RejectedImage() throws IOException {
+        // Given
+        MockMultipartFile file = ndjson(
+                record("Bicycle", 100, "bike.jpg"),
+                record("Scooter", 200, null));
+        MockMultipartFile images = zip("bike.jpg", "not an image");
+        when(imageService.writeAdImage(any(InputStream.class), eq("bike.jpg")))
+                .thenThrow(new IllegalArgumentException("Unsupported image format"));
+
+        // When
+        AdImportReport report = adImportService.importAds(file, images, null);
+
+        // Then
+        assertThat(report.getImported()).isEqualTo(1);
+        assertThat(report.getErrors()).singleElement()
+                .satisfies(error -> assertThat(error.getMessage())
+                        .isEqualTo("Image bike.jpg rejected: Unsupported image format"));
+    }
+
+    @Test
+    @DisplayName("importAds - при сбое пачки записи сохраняются по одной, плохая отчитывается и ее картинка отпускается")
+    void importAds_FailedBatchIsRetriedRowByRow() throws IOException {
+        // Given
+        MockMultipartFile file = ndjson(
+                record("Bicycle", 100, "bike.jpg"),
+                record("Scooter", 200, null));
+        MockMultipartFile images = zip("bike.jpg", "jpeg bytes");
+        ImageEntity image = new ImageEntity();
+        image.setFilePath("/images/ads/ad_1.jpg");
+        when(imageService.writeAdImage(any(InputStream.class), eq("bike.jpg"))).thenReturn(image);
+        when(adRepository.saveAll(anyIterable())).thenAnswer(invocation -> {
+            List<AdEntity> ads = invocation.getArgument(0);
+            if (ads.stream().anyMatch(ad -> "Bicycle".equals(ad.getTitle()))) {
+                throw new IllegalStateException("constraint violation");
+            }
+            return ads;
+        });
+
+        // When
+        AdImportReport report = adImportService.importAds(file, images, null);
+
+        // Then
+        assertThat(report.getImported()).isEqualTo(1);
+        assertThat(report.getFailed()).isEqualTo(1);
+        assertThat(report.getErrors().get(0).getRow()).isEqualTo(1);
+        verify(adRepository, times(3)).saveAll(anyIterable());
+        verify(imageService).releaseUnsavedImage(image);
+    }
+
+    @Test
+    @DisplayName("importAds - импорт прерван посреди пачки: уже записанные картинки отпускаются")
+    void importAds_AbortedChunkReleasesImages() throws IOException {
+        // Given
+        byte[] firstLine = (record("Bicycle", 100, "bike.jpg") + "\n").getBytes(StandardCharsets.UTF_8);
+        MockMultipartFile file = new MockMultipartFile("file", "ads.ndjson", "application/x-ndjson", firstLine) {
+            @Override
+            public InputStream getInputStream() {
+                // После первой строки соединение с клиентом обрывается
+                return new SequenceInputStream(new ByteArrayInputStream(firstLine), new InputStream() {
+                    @Override
+                    public int read() throws IOException {
+                        throw new IOException("Connection reset");
+                    }
+                });
+            }
+        };
+        MockMultipartFile images = zip("bike.jpg", "jpeg bytes");
+        ImageEntity image = new ImageEntity();
+        image.setFilePath("/images/ads/ad_1.jpg");
+        when(imageService.writeAdImage(any(InputStream.class), eq("bike.jpg"))).thenReturn(image);
+
+        // When
+        assertThrows(IOException.class, () -> adImportService.importAds(file, images, null));
+
+        // Then
+        verify(adRepository, never()).saveAll(anyIterable());
+        verify(imageService).releaseUnsavedImage(image);
+    }
+
+    @Test
+    @DisplayName("importAds - ошибок в отчете не больше max-errors, но считаются все")
+    void importAds_ErrorsAreCapped() throws IOException {
+        // Given
+        ReflectionTestUtils.setField(adImportService, "maxErrors", 1);
+        MockMultipartFile file = ndjson(
+                "{\"title\":\"No\",\"price\":1,\"description\":\"" + VALID_DESCRIPTION + "\"}",
+                "{\"title\":\"No\",\"price\":2,\"description\":\"" + VALID_DESCRIPTION + "\"}");
+
+        // When
+        AdImportReport report = adImportService.importAds(file, null, null);
+
+        // Then
+        assertThat(report.getFailed()).isEqualTo(2);
+        assertThat(report.getErrors()).hasSize(1);
+        verify(adRepository, never()).saveAll(anyIterable());
+    }
+
+    @Test
+    @DisplayName("importAds - неизвестный формат и битый архив отклоняются")
+    void importAds_RejectsBadInput() {
+        // Given
+        MockMultipartFile file = ndjson(record("Bicycle", 100, null));
+        MockMultipartFile notZip = new MockMultipartFile("images", "images.zip", "application/zip",
+                "not a zip".getBytes(StandardCharsets.UTF_8));
+
+        // When / Then
+        assertThrows(IllegalArgumentException.class, () -> adImportService.importAds(file, null, "xml"));
+        assertThrows(IllegalArgumentException.class, () -> adImportService.importAds(file, notZip, null));
+        verify(adRepository, never()).saveAll(anyIterable());
+    }
+
+    private static String record(String title, int price, String image) {
+        return "{\"title\":\"" + title + "\",\"price\":" + price + ",\"description\":\"" + VALID_DESCRIPTION + "\""
+                + (image != null ? ",\"image\":\"" + image + "\"" : "") + "}";
+    }
+
+    private static MockMultipartFile ndjson(String... lines) {
+        return new MockMultipartFile("file", "ads.ndjson", "application/x-ndjson",
+                String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static MockMultipartFile zip(String entryName, String content) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            zip.putNextEntry(new ZipEntry(entryName));
+            zip.write(content.getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+        }
+        return new MockMultipartFile("images", "images.zip", "application/zip", bytes.toByteArray());
+    }
+
+}
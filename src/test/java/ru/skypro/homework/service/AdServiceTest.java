@@ -1,27 +1,41 @@
 package ru.skypro.homework.service;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.web.multipart.MultipartFile;
 import ru.skypro.homework.mapper.AdMapper;
 import ru.skypro.homework.model.dto.*;
 import ru.skypro.homework.model.entity.AdEntity;
 import ru.skypro.homework.model.entity.ImageEntity;
 import ru.skypro.homework.model.entity.UserEntity;
+import ru.skypro.homework.model.enums.AdSort;
+import ru.skypro.homework.model.projection.AdSearchResult;
+import ru.skypro.homework.model.projection.AdSummary;
+import ru.skypro.homework.model.projection.AdSummaryRow;
 import ru.skypro.homework.repository.AdRepository;
+import ru.skypro.homework.search.AdSearchIndex;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.*;
@@ -43,11 +57,26 @@ class AdServiceTest {
     @Mock
     private AdMapper adMapper;
 
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @Mock
+    private AdSearchIndex adSearchIndex;
+
+    @Mock
+    private ExtendedAdCache extendedAdCache;
+
+    @Mock
+    private ImageMetadataResolver imageMetadataResolver;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
     @InjectMocks
     private AdService adService;
 
     @Test
-    @DisplayName("createAd - успешное создание объявления с изображением")
+    @DisplayName("createAd - картинка пишется до транзакции, объявление с ней сохраняется одним save")
     void createAd_WithImage_Success() throws Exception {
         // Given
         CreateOrUpdateAd createAd = new CreateOrUpdateAd();
@@ -57,6 +86,7 @@ class AdServiceTest {
 
         MultipartFile image = mock(MultipartFile.class);
         when(image.isEmpty()).thenReturn(false);
+        when(image.getOriginalFilename()).thenReturn("photo.jpg");
 
         UserEntity author = new UserEntity();
         author.setId(1);
@@ -67,33 +97,31 @@ class AdServiceTest {
         AdEntity savedEntity = new AdEntity();
         savedEntity.setId(1);
 
-        AdEntity finalEntity = new AdEntity();
-        finalEntity.setId(1);
-
         ImageEntity imageEntity = new ImageEntity();
         imageEntity.setFilePath("/images/ads/ad_1.jpg");
 
         Ad adDto = new Ad();
 
+        when(imageService.writeAdImage(any(), eq("photo.jpg"))).thenReturn(imageEntity);
         when(userService.getCurrentUserEntity()).thenReturn(author);
         when(adMapper.createOrUpdateAdToEntity(createAd)).thenReturn(adEntity);
-
-        // Первый save - для получения ID
         when(adRepository.save(adEntity)).thenReturn(savedEntity);
-
-        when(imageService.saveAdImageEntity(image, 1)).thenReturn(imageEntity);
-
-        // Второй save - после добавления изображения
-        when(adRepository.save(savedEntity)).thenReturn(finalEntity);
-        when(adMapper.entityToAdDto(finalEntity)).thenReturn(adDto);
+        when(adMapper.entityToAdDto(savedEntity)).thenReturn(adDto);
 
         // When
         Ad result = adService.createAd(createAd, image);
 
-        // Then
+        // Then: файл записан до начала транзакции
         assertThat(result).isEqualTo(adDto);
-        verify(adRepository, times(2)).save(any(AdEntity.class));
-        verify(imageService).saveAdImageEntity(eq(image), eq(1));
+        assertThat(adEntity.getImage()).isSameAs(imageEntity);
+        assertThat(adEntity.getImagePath()).isEqualTo("/images/ads/ad_1.jpg");
+        InOrder inOrder = inOrder(imageService, transactionManager, adRepository);
+        inOrder.verify(imageService).writeAdImage(any(), eq("photo.jpg"));
+        inOrder.verify(transactionManager).getTransaction(any());
+        inOrder.verify(adRepository).save(adEntity);
+        inOrder.verify(transactionManager).commit(any());
+        verify(imageService).scheduleVariants("/images/ads/ad_1.jpg");
+        verify(imageService, never()).releaseUnsavedImage(any());
     }
 
     @Test
@@ -135,7 +163,7 @@ class AdServiceTest {
     }
 
     @Test
-    @DisplayName("createAd - ошибка при сохранении изображения")
+    @DisplayName("createAd - ошибка при сохранении изображения: объявление не создается")
     void createAd_ImageSaveError() throws Exception {
         // Given
         CreateOrUpdateAd createAd = new CreateOrUpdateAd();
@@ -146,21 +174,8 @@ class AdServiceTest {
         MultipartFile image = mock(MultipartFile.class);
         when(image.isEmpty()).thenReturn(false);
 
-        UserEntity author = new UserEntity();
-        author.setId(1);
-
-        AdEntity adEntity = new AdEntity();
-        adEntity.setId(1);
-
-        AdEntity savedEntity = new AdEntity();
-        savedEntity.setId(1);
-
-        when(userService.getCurrentUserEntity()).thenReturn(author);
-        when(adMapper.createOrUpdateAdToEntity(createAd)).thenReturn(adEntity);
-        when(adRepository.save(adEntity)).thenReturn(savedEntity);
-
         // Ошибка при сохранении изображения
-        when(imageService.saveAdImageEntity(eq(image), eq(1))).thenThrow(new IOException("Save failed"));
+        when(imageService.writeAdImage(any(), any())).thenThrow(new IOException("Save failed"));
 
         // When & Then
         RuntimeException exception = assertThrows(RuntimeException.class,
@@ -169,22 +184,37 @@ class AdServiceTest {
         assertThat(exception.getMessage()).isEqualTo("Failed to save image");
         assertThat(exception.getCause()).isInstanceOf(IOException.class);
 
-        // Проверяем, что объявление было сохранено (первый save)
-        verify(adRepository).save(adEntity);
+        // Транзакция не начиналась, объявление не сохранялось
+        verifyNoInteractions(transactionManager, adRepository);
+    }
 
-        // Проверяем, что была попытка сохранить изображение
-        verify(imageService).saveAdImageEntity(eq(image), eq(1));
+    @Test
+    @DisplayName("createAd - объявление не сохранилось: записанная картинка отпускается")
+    void createAd_SaveFailed_ReleasesImage() throws Exception {
+        // Given
+        CreateOrUpdateAd createAd = new CreateOrUpdateAd();
+        MultipartFile image = mock(MultipartFile.class);
+        when(image.isEmpty()).thenReturn(false);
+        ImageEntity imageEntity = new ImageEntity();
+        imageEntity.setFilePath("/images/ads/ad_1.jpg");
+        when(imageService.writeAdImage(any(), any())).thenReturn(imageEntity);
+        when(userService.getCurrentUserEntity()).thenReturn(new UserEntity());
+        when(adMapper.createOrUpdateAdToEntity(createAd)).thenReturn(new AdEntity());
+        when(adRepository.save(any(AdEntity.class))).thenThrow(new IllegalStateException("Database error"));
 
-        // Проверяем, что второй save не вызывался (из-за ошибки)
-        verify(adRepository, times(1)).save(any(AdEntity.class));
+        // When & Then
+        assertThrows(IllegalStateException.class, () -> adService.createAd(createAd, image));
+        verify(imageService).releaseUnsavedImage(imageEntity);
+        verify(transactionManager).rollback(any());
     }
 
     @Test
-    @DisplayName("updateAdImage - успешное обновление изображения")
+    @DisplayName("updateAdImage - успешное обновление изображения, файл пишется до транзакции")
     void updateAdImage_Success() throws Exception {
         // Given
         Integer adId = 1;
         MultipartFile image = mock(MultipartFile.class);
+        when(image.getOriginalFilename()).thenReturn("new.jpg");
 
         AdEntity adEntity = new AdEntity();
         adEntity.setId(adId);
@@ -193,6 +223,7 @@ class AdServiceTest {
         ImageEntity oldImage = new ImageEntity();
         oldImage.setId(100);
         adEntity.getImages().add(oldImage);
+        adEntity.setImage(oldImage);
 
         ImageEntity newImage = new ImageEntity();
         newImage.setFilePath("/images/ads/ad_1_new.jpg");
@@ -200,8 +231,8 @@ class AdServiceTest {
         AdEntity savedEntity = new AdEntity();
         Ad adDto = new Ad();
 
+        when(imageService.writeAdImage(any(), eq("new.jpg"))).thenReturn(newImage);
         when(adRepository.findById(adId)).thenReturn(Optional.of(adEntity));
-        when(imageService.saveAdImageEntity(eq(image), eq(adId))).thenReturn(newImage);
         when(adRepository.save(adEntity)).thenReturn(savedEntity);
         when(adMapper.entityToAdDto(savedEntity)).thenReturn(adDto);
 
@@ -210,23 +241,33 @@ class AdServiceTest {
 
         // Then
         assertThat(result).isEqualTo(adDto);
-        verify(imageService).deleteImageEntity(100);
-        verify(imageService).saveAdImageEntity(eq(image), eq(adId));
+        assertThat(adEntity.getImage()).isSameAs(newImage);
+        assertThat(adEntity.getImages()).containsExactly(newImage);
+        InOrder inOrder = inOrder(imageService, transactionManager);
+        inOrder.verify(imageService).writeAdImage(any(), eq("new.jpg"));
+        inOrder.verify(transactionManager).getTransaction(any());
+        inOrder.verify(imageService).deleteImageEntity(100);
+        inOrder.verify(transactionManager).commit(any());
+        verify(imageService).scheduleVariants("/images/ads/ad_1_new.jpg");
         verify(adRepository).save(adEntity);
+        verify(extendedAdCache).evict(adId);
     }
 
     @Test
-    @DisplayName("updateAdImage - объявление не найдено")
-    void updateAdImage_AdNotFound() {
+    @DisplayName("updateAdImage - объявление не найдено: записанная картинка отпускается")
+    void updateAdImage_AdNotFound() throws Exception {
         // Given
         Integer adId = 1;
         MultipartFile image = mock(MultipartFile.class);
+        ImageEntity newImage = new ImageEntity();
+        when(imageService.writeAdImage(any(), any())).thenReturn(newImage);
         when(adRepository.findById(adId)).thenReturn(Optional.empty());
 
         // When & Then
         assertThrows(RuntimeException.class, () -> adService.updateAdImage(adId, image));
         verify(adRepository).findById(adId);
         verify(imageService, never()).deleteImageEntity(any(Integer.class));
+        verify(imageService).releaseUnsavedImage(newImage);
     }
 
     @Test
@@ -253,6 +294,8 @@ class AdServiceTest {
         verify(imageService).deleteImageEntity(100);
         verify(imageService).deleteImageEntity(101);
         verify(adRepository).delete(adEntity);
+        verify(adSearchIndex).removeAd(adId);
+        verify(extendedAdCache).evict(adId);
     }
 
     @Test
@@ -275,31 +318,70 @@ class AdServiceTest {
     }
 
     @Test
-    @DisplayName("getAdImage - успешное получение изображения")
+    @DisplayName("getAdById - карточка берется из кэша")
+    void getAdById_ReturnsCachedDetails() {
+        // Given
+        Integer adId = 1;
+        ExtendedAd extendedAd = new ExtendedAd();
+        when(extendedAdCache.get(adId)).thenReturn(Optional.of(extendedAd));
+
+        // When
+        Optional<ExtendedAd> result = adService.getAdById(adId);
+
+        // Then
+        assertThat(result).containsSame(extendedAd);
+        verifyNoInteractions(adRepository);
+    }
+
+    @Test
+    @DisplayName("updateAd - карточка объявления сбрасывается из кэша")
+    void updateAd_EvictsCachedDetails() {
+        // Given
+        Integer adId = 1;
+        CreateOrUpdateAd updateAd = new CreateOrUpdateAd();
+        AdEntity adEntity = new AdEntity();
+        adEntity.setId(adId);
+        Ad adDto = new Ad();
+
+        when(adRepository.findById(adId)).thenReturn(Optional.of(adEntity));
+        when(adRepository.save(adEntity)).thenReturn(adEntity);
+        when(adMapper.entityToAdDto(adEntity)).thenReturn(adDto);
+
+        // When
+        Ad result = adService.updateAd(adId, updateAd);
+
+        // Then
+        assertThat(result).isEqualTo(adDto);
+        verify(adMapper).updateEntityFromDto(updateAd, adEntity);
+        verify(extendedAdCache).evict(adId);
+    }
+
+    @Test
+    @DisplayName("getAdImageFile - успешное получение изображения")
     void getAdImage_Success() throws Exception {
         // Given
         Integer adId = 1;
-        byte[] imageBytes = "image data".getBytes();
-        when(imageService.getAdImage(adId)).thenReturn(imageBytes);
+        ImageFile image = new ImageFile(Path.of("ad_1.jpg"), "image/jpeg", 10, 0, null, null, null, null, null);
+        when(imageService.getAdImageFile(adId, null)).thenReturn(image);
 
         // When
-        byte[] result = adService.getAdImage(adId);
+        ImageFile result = adService.getAdImageFile(adId, null);
 
         // Then
-        assertThat(result).isEqualTo(imageBytes);
-        verify(imageService).getAdImage(adId);
+        assertThat(result).isSameAs(image);
+        verify(imageService).getAdImageFile(adId, null);
     }
 
     @Test
-    @DisplayName("getAdImage - ошибка при получении изображения")
+    @DisplayName("getAdImageFile - ошибка при получении изображения")
     void getAdImage_Error() throws Exception {
         // Given
         Integer adId = 1;
-        when(imageService.getAdImage(adId)).thenThrow(new IOException("Not found"));
+        when(imageService.getAdImageFile(adId, null)).thenThrow(new IOException("Not found"));
 
         // When & Then
-        assertThrows(RuntimeException.class, () -> adService.getAdImage(adId));
-        verify(imageService).getAdImage(adId);
+        assertThrows(RuntimeException.class, () -> adService.getAdImageFile(adId, null));
+        verify(imageService).getAdImageFile(adId, null);
     }
 
     @Test
@@ -363,45 +445,130 @@ class AdServiceTest {
     }
 
     @Test
-    @DisplayName("getAllAds - получение всех объявлений")
-    void getAllAds_Success() {
+    @DisplayName("getAllAds - первая страница ленты с курсором на следующую")
+    void getAllAds_FirstPage_WithNextCursor() {
         // Given
-        AdEntity ad1 = new AdEntity();
-        ad1.setId(1);
-        AdEntity ad2 = new AdEntity();
-        ad2.setId(2);
+        ReflectionTestUtils.setField(adService, "defaultPageSize", 2);
+        ReflectionTestUtils.setField(adService, "maxPageSize", 100);
 
-        List<AdEntity> adEntities = Arrays.asList(ad1, ad2);
+        LocalDateTime now = LocalDateTime.of(2024, 1, 10, 12, 0);
+        AdSummary ad1 = summary(3, now);
+        AdSummary ad2 = summary(2, now.minusMinutes(1));
+        AdSummary ad3 = summary(1, now.minusMinutes(2));
 
         Ad adDto1 = new Ad();
-        adDto1.setPk(1);
+        adDto1.setPk(3);
         Ad adDto2 = new Ad();
         adDto2.setPk(2);
 
-        when(adRepository.findAll()).thenReturn(adEntities);
-        when(adMapper.entityToAdDto(ad1)).thenReturn(adDto1);
-        when(adMapper.entityToAdDto(ad2)).thenReturn(adDto2);
+        when(adRepository.findFeedPage(new AdFeedFilter(), AdSort.NEWEST, null, 3))
+                .thenReturn(Arrays.asList(ad1, ad2, ad3));
+        when(adMapper.summaryToAdDto(ad1)).thenReturn(adDto1);
+        when(adMapper.summaryToAdDto(ad2)).thenReturn(adDto2);
 
         // When
-        Ads result = adService.getAllAds();
+        Ads result = adService.getAllAds(null, null, null, null);
 
         // Then
         assertThat(result.getCount()).isEqualTo(2);
         assertThat(result.getResults()).containsExactly(adDto1, adDto2);
+        assertThat(result.getNextCursor()).isNotNull();
+
+        AdCursor next = AdCursor.decode(result.getNextCursor());
+        assertThat(next.getOrder()).isEqualTo(AdSort.NEWEST.name());
+        assertThat(next.getId()).isEqualTo(2);
+        assertThat(next.toAnchor(AdSort.NEWEST).getCreatedAt()).isEqualTo(ad2.getCreatedAt());
+        verify(adMapper, never()).summaryToAdDto(ad3);
+        verify(adRepository, never()).findAll();
     }
 
     @Test
-    @DisplayName("getAllAds - пустой список объявлений")
-    void getAllAds_EmptyList() {
+    @DisplayName("getAllAds - последняя страница по курсору с фильтром и сортировкой по цене")
+    void getAllAds_ByCursor_LastPage() {
         // Given
-        when(adRepository.findAll()).thenReturn(Collections.emptyList());
+        ReflectionTestUtils.setField(adService, "defaultPageSize", 20);
+        ReflectionTestUtils.setField(adService, "maxPageSize", 100);
+
+        AdFeedFilter filter = new AdFeedFilter(100, 5000, 7);
+        String cursor = new AdCursor(AdSort.PRICE_ASC.name(), 1500, 5).encode();
+
+        AdSummary ad = summary(4, LocalDateTime.now());
+        Ad adDto = new Ad();
+
+        when(adRepository.findFeedPage(eq(filter), eq(AdSort.PRICE_ASC),
+                argThat(after -> after.getId() == 5 && after.getPrice() == 1500), eq(11)))
+                .thenReturn(Collections.singletonList(ad));
+        when(adMapper.summaryToAdDto(ad)).thenReturn(adDto);
 
         // When
-        Ads result = adService.getAllAds();
+        Ads result = adService.getAllAds(filter, AdSort.PRICE_ASC, cursor, 10);
+
+        // Then
+        assertThat(result.getCount()).isEqualTo(1);
+        assertThat(result.getResults()).containsExactly(adDto);
+        assertThat(result.getNextCursor()).isNull();
+    }
+
+    @Test
+    @DisplayName("getFeedPage - ETag меняется только вместе с версиями строк страницы")
+    void getFeedPage_ETagFollowsRowVersions() {
+        // Given
+        ReflectionTestUtils.setField(adService, "defaultPageSize", 20);
+        ReflectionTestUtils.setField(adService, "maxPageSize", 100);
+        LocalDateTime now = LocalDateTime.now();
+
+        when(adRepository.findFeedPage(new AdFeedFilter(), AdSort.NEWEST, null, 21))
+                .thenReturn(Arrays.asList(summary(2, now, 0L), summary(1, now, 0L)))
+                .thenReturn(Arrays.asList(summary(2, now, 0L), summary(1, now, 0L)))
+                .thenReturn(Arrays.asList(summary(2, now, 1L), summary(1, now, 0L)));
+
+        // When
+        AdFeedPage first = adService.getFeedPage(null, null, null, null);
+        AdFeedPage unchanged = adService.getFeedPage(null, null, null, null);
+        AdFeedPage updated = adService.getFeedPage(null, null, null, null);
+
+        // Then
+        assertThat(first.getETag()).startsWith("\"").endsWith("\"");
+        assertThat(unchanged.getETag()).isEqualTo(first.getETag());
+        assertThat(updated.getETag()).isNotEqualTo(first.getETag());
+        verifyNoInteractions(adMapper);
+    }
+
+    @Test
+    @DisplayName("getAllAds - размер страницы ограничивается максимумом")
+    void getAllAds_PageSizeIsCapped() {
+        // Given
+        ReflectionTestUtils.setField(adService, "defaultPageSize", 20);
+        ReflectionTestUtils.setField(adService, "maxPageSize", 50);
+        when(adRepository.findFeedPage(new AdFeedFilter(), AdSort.NEWEST, null, 51)).thenReturn(Collections.emptyList());
+
+        // When
+        Ads result = adService.getAllAds(null, null, null, 1000);
 
         // Then
         assertThat(result.getCount()).isEqualTo(0);
         assertThat(result.getResults()).isEmpty();
+        assertThat(result.getNextCursor()).isNull();
+    }
+
+    @Test
+    @DisplayName("getAllAds - некорректный курсор или размер страницы")
+    void getAllAds_InvalidArguments() {
+        ReflectionTestUtils.setField(adService, "defaultPageSize", 20);
+        ReflectionTestUtils.setField(adService, "maxPageSize", 100);
+
+        String priceCursor = new AdCursor(AdSort.PRICE_ASC.name(), 1500, 5).encode();
+
+        assertThrows(IllegalArgumentException.class, () -> adService.getAllAds(null, null, "not-a-cursor", null));
+        assertThrows(IllegalArgumentException.class, () -> adService.getAllAds(null, null, null, 0));
+        assertThrows(IllegalArgumentException.class,
+                () -> adService.getAllAds(null, AdSort.PRICE_DESC, priceCursor, null));
+        assertThrows(IllegalArgumentException.class,
+                () -> adService.getAllAds(null, null, AdCursor.ofRank(0.9f, 5).encode(), null));
+        // Ключ NULL пагинация бы молча оборвала (created_at < NULL) - такой курсор отклоняется
+        assertThrows(IllegalArgumentException.class,
+                () -> adService.getAllAds(null, AdSort.NEWEST, new AdCursor(AdSort.NEWEST.name(), null, 5).encode(), null));
+        verifyNoInteractions(adRepository);
     }
 
     @Test
@@ -411,12 +578,10 @@ class AdServiceTest {
         UserEntity currentUser = new UserEntity();
         currentUser.setId(1);
 
-        AdEntity ad1 = new AdEntity();
-        ad1.setId(1);
-        AdEntity ad2 = new AdEntity();
-        ad2.setId(2);
+        AdSummary ad1 = summary(1, LocalDateTime.now());
+        AdSummary ad2 = summary(2, LocalDateTime.now());
 
-        List<AdEntity> adEntities = Arrays.asList(ad1, ad2);
+        List<AdSummary> summaries = Arrays.asList(ad1, ad2);
 
         Ad adDto1 = new Ad();
         adDto1.setPk(1);
@@ -424,9 +589,9 @@ class AdServiceTest {
         adDto2.setPk(2);
 
         when(userService.getCurrentUserEntity()).thenReturn(currentUser);
-        when(adRepository.findByAuthorId(1)).thenReturn(adEntities);
-        when(adMapper.entityToAdDto(ad1)).thenReturn(adDto1);
-        when(adMapper.entityToAdDto(ad2)).thenReturn(adDto2);
+        when(adRepository.findSummariesByAuthorId(1)).thenReturn(summaries);
+        when(adMapper.summaryToAdDto(ad1)).thenReturn(adDto1);
+        when(adMapper.summaryToAdDto(ad2)).thenReturn(adDto2);
 
         // When
         Ads result = adService.getAdsByAuthor();
@@ -444,7 +609,7 @@ class AdServiceTest {
         currentUser.setId(1);
 
         when(userService.getCurrentUserEntity()).thenReturn(currentUser);
-        when(adRepository.findByAuthorId(1)).thenReturn(Collections.emptyList());
+        when(adRepository.findSummariesByAuthorId(1)).thenReturn(Collections.emptyList());
 
         // When
         Ads result = adService.getAdsByAuthor();
@@ -454,6 +619,154 @@ class AdServiceTest {
         assertThat(result.getResults()).isEmpty();
     }
 
+    @Test
+    @DisplayName("searchAds - первая страница поиска с курсором по релевантности")
+    void searchAds_FirstPage_WithNextCursor() {
+        // Given
+        ReflectionTestUtils.setField(adService, "defaultPageSize", 1);
+        ReflectionTestUtils.setField(adService, "maxPageSize", 100);
+
+        AdSearchResult best = searchResult(5, 0.9f);
+        AdSearchResult second = searchResult(3, 0.4f);
+        Ad bestDto = new Ad();
+        bestDto.setPk(5);
+
+        when(adRepository.searchFirstPage("велосипед & горный", 0, Integer.MAX_VALUE, 2))
+                .thenReturn(Arrays.asList(best, second));
+        when(adMapper.searchResultToAdDto(best)).thenReturn(bestDto);
+
+        // When
+        Ads result = adService.searchAds("  Велосипед, горный ", false, null, null, null, null);
+
+        // Then
+        assertThat(result.getCount()).isEqualTo(1);
+        assertThat(result.getResults()).containsExactly(bestDto);
+
+        AdCursor next = AdCursor.decode(result.getNextCursor());
+        assertThat(next.getRank()).isEqualTo(0.9f);
+        assertThat(next.getId()).isEqualTo(5);
+    }
+
+    @Test
+    @DisplayName("searchAds - следующая страница по курсору")
+    void searchAds_ByCursor() {
+        // Given
+        ReflectionTestUtils.setField(adService, "defaultPageSize", 20);
+        ReflectionTestUtils.setField(adService, "maxPageSize", 100);
+        String cursor = AdCursor.ofRank(0.9f, 5).encode();
+
+        when(adRepository.searchPageAfter("bike | bmx", 100, 5000, 0.9f, 5, 21)).thenReturn(Collections.emptyList());
+
+        // When
+        Ads result = adService.searchAds("bike bmx", true, 100, 5000, cursor, null);
+
+        // Then
+        assertThat(result.getCount()).isEqualTo(0);
+        assertThat(result.getNextCursor()).isNull();
+    }
+
+    @Test
+    @DisplayName("searchAds - курсор ленты в поиске не принимается")
+    void searchAds_FeedCursorRejected() {
+        // Given
+        ReflectionTestUtils.setField(adService, "defaultPageSize", 20);
+        ReflectionTestUtils.setField(adService, "maxPageSize", 100);
+        String feedCursor = new AdCursor(AdSort.PRICE_ASC.name(), 1500, 5).encode();
+
+        // When & Then
+        assertThrows(IllegalArgumentException.class,
+                () -> adService.searchAds("bike", false, null, null, feedCursor, null));
+        verifyNoInteractions(adRepository);
+    }
+
+    @Test
+    @DisplayName("searchAds - пустой запрос")
+    void searchAds_EmptyQuery() {
+        assertThrows(IllegalArgumentException.class, () -> adService.searchAds(" ,. ", false, null, null, null, null));
+        verifyNoInteractions(adRepository);
+    }
+
+    @Test
+    @DisplayName("searchAds - поиск по индексу в памяти и загрузка страницы одним запросом")
+    void searchAds_InMemoryIndex() {
+        // Given
+        ReflectionTestUtils.setField(adService, "defaultPageSize", 2);
+        ReflectionTestUtils.setField(adService, "maxPageSize", 100);
+
+        AdSummary ad7 = summary(7, LocalDateTime.now());
+        AdSummary ad3 = summary(3, LocalDateTime.now());
+        Ad adDto7 = new Ad();
+        adDto7.setPk(7);
+        Ad adDto3 = new Ad();
+        adDto3.setPk(3);
+
+        when(adSearchIndex.isEnabled()).thenReturn(true);
+        when(adSearchIndex.search("bike", true, 0, 1000, null, 3)).thenReturn(List.of(
+                new AdSearchIndex.Hit(7, 2), new AdSearchIndex.Hit(3, 1), new AdSearchIndex.Hit(1, 1)));
+        // База возвращает строки в произвольном порядке
+        when(adRepository.findSummariesByIdIn(List.of(7, 3))).thenReturn(List.of(ad3, ad7));
+        when(adMapper.summaryToAdDto(ad7)).thenReturn(adDto7);
+        when(adMapper.summaryToAdDto(ad3)).thenReturn(adDto3);
+
+        // When
+        Ads result = adService.searchAds("bike", true, null, 1000, null, null);
+
+        // Then
+        assertThat(result.getResults()).containsExactly(adDto7, adDto3);
+        AdCursor next = AdCursor.decode(result.getNextCursor());
+        assertThat(next.getId()).isEqualTo(3);
+        assertThat(next.getRank()).isEqualTo(1f);
+        verify(adRepository, never()).searchFirstPage(anyString(), anyInt(), anyInt(), anyInt());
+    }
+
+    @Test
+    @DisplayName("writeAdsByAuthor - потоковая запись объявлений автора в формате Ads")
+    void writeAdsByAuthor_WritesAdsShape() throws Exception {
+        // Given
+        AdSummary ad1 = summary(1, LocalDateTime.now());
+        AdSummary ad2 = summary(2, LocalDateTime.now());
+
+        Ad adDto1 = new Ad();
+        adDto1.setPk(1);
+        adDto1.setTitle("Ad 1");
+        Ad adDto2 = new Ad();
+        adDto2.setPk(2);
+        adDto2.setTitle("Ad 2");
+
+        when(adRepository.streamSummariesByAuthorId(1)).thenReturn(Stream.of(ad1, ad2));
+        when(adMapper.summaryToAdDto(ad1)).thenReturn(adDto1);
+        when(adMapper.summaryToAdDto(ad2)).thenReturn(adDto2);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // When
+        adService.writeAdsByAuthor(1, out);
+
+        // Then
+        Ads result = objectMapper.readValue(out.toByteArray(), Ads.class);
+        assertThat(result.getCount()).isEqualTo(2);
+        assertThat(result.getResults()).containsExactly(adDto1, adDto2);
+    }
+
+    @Test
+    @DisplayName("writeAllAds - пустая выгрузка и закрытие Stream")
+    void writeAllAds_EmptyAndClosesStream() throws Exception {
+        // Given
+        boolean[] closed = {false};
+        when(adRepository.streamAllSummaries())
+                .thenReturn(Stream.<AdSummary>empty().onClose(() -> closed[0] = true));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // When
+        adService.writeAllAds(out);
+
+        // Then
+        JsonNode json = objectMapper.readTree(out.toByteArray());
+        assertThat(json.get("count").asInt()).isEqualTo(0);
+        assertThat(json.get("results").isArray()).isTrue();
+        assertThat(json.get("results")).isEmpty();
+        assertThat(closed[0]).isTrue();
+    }
+
     @Test
     @DisplayName("existsById - объявление существует")
     void existsById_AdExists() {
@@ -482,4 +795,19 @@ class AdServiceTest {
         assertThat(result).isFalse();
     }
 
-}
\ No newline at end of file
+    private AdSummary summary(Integer id, LocalDateTime createdAt) {
+        return summary(id, createdAt, 0L);
+    }
+
+    private AdSummary summary(Integer id, LocalDateTime createdAt, Long version) {
+        return new AdSummaryRow(id, 1, "Ad " + id, 1000, null, createdAt, version);
+    }
+
+    private AdSearchResult searchResult(Integer id, Float rank) {
+        AdSearchResult result = mock(AdSearchResult.class);
+        lenient().when(result.getId()).thenReturn(id);
+        lenient().when(result.getRank()).thenReturn(rank);
+        return result;
+    }
+
+}
@@ -13,6 +13,7 @@ import ru.skypro.homework.model.dto.CreateOrUpdateComment;
 import ru.skypro.homework.model.entity.AdEntity;
 import ru.skypro.homework.model.entity.CommentEntity;
 import ru.skypro.homework.model.entity.UserEntity;
+import ru.skypro.homework.model.projection.CommentVersion;
 import ru.skypro.homework.repository.AdRepository;
 import ru.skypro.homework.repository.CommentRepository;
 import ru.skypro.homework.repository.UserRepository;
@@ -20,6 +21,7 @@ import ru.skypro.homework.repository.UserRepository;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -43,6 +45,30 @@ class CommentServiceTest {
     @InjectMocks
     private CommentService commentService;
 
+    @Test
+    void getCommentsETag_ShouldChangeWithCommentOrAuthorVersion() {
+        // Given
+        Integer adId = 1;
+        CommentVersion comment = commentVersion(10, 0L, 5, 0L);
+        CommentVersion editedComment = commentVersion(10, 1L, 5, 0L);
+        CommentVersion renamedAuthor = commentVersion(10, 0L, 5, 1L);
+
+        when(commentRepository.findVersionsByAdId(adId))
+                .thenReturn(List.of(comment), List.of(comment), List.of(editedComment), List.of(renamedAuthor), List.of());
+
+        // When
+        String first = commentService.getCommentsETag(adId);
+        String same = commentService.getCommentsETag(adId);
+        String afterEdit = commentService.getCommentsETag(adId);
+        String afterAuthorUpdate = commentService.getCommentsETag(adId);
+        String afterDelete = commentService.getCommentsETag(adId);
+
+        // Then
+        assertEquals(first, same);
+        assertEquals(4, Set.of(first, afterEdit, afterAuthorUpdate, afterDelete).size());
+        verify(commentRepository, never()).findByAdIdWithAuthor(any());
+    }
+
     @Test
     void getCommentsByAdId_ShouldReturnComments() {
         // Given
@@ -340,4 +366,13 @@ class CommentServiceTest {
         verify(commentRepository).save(existingComment);
     }
 
-}
\ No newline at end of file
+    private CommentVersion commentVersion(Integer id, Long version, Integer authorId, Long authorVersion) {
+        CommentVersion commentVersion = mock(CommentVersion.class);
+        when(commentVersion.getId()).thenReturn(id);
+        when(commentVersion.getVersion()).thenReturn(version);
+        when(commentVersion.getAuthorId()).thenReturn(authorId);
+        when(commentVersion.getAuthorVersion()).thenReturn(authorVersion);
+        return commentVersion;
+    }
+
+}
@@ -0,0 +1,31 @@
+package ru.skypro.homework.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ETagsTest {
+
+    @Test
+    void of_ShouldBeQuotedAndStable() {
+        String eTag = ETags.of("user:1.3");
+
+        assertTrue(eTag.startsWith("\"") && eTag.endsWith("\""));
+        assertEquals(eTag, ETags.of("user:1.3"));
+        assertNotEquals(eTag, ETags.of("user:1.4"));
+    }
+
+    @Test
+    void matches_ShouldHandleListsWildcardAndWeakTags() {
+        String eTag = "\"abc\"";
+
+        assertTrue(ETags.matches("\"abc\"", eTag));
+        assertTrue(ETags.matches("\"x\", \"abc\"", eTag));
+        assertTrue(ETags.matches("W/\"abc\"", eTag));
+        assertTrue(ETags.matches("*", eTag));
+        assertFalse(ETags.matches("\"abd\"", eTag));
+        assertFalse(ETags.matches(null, eTag));
+        assertFalse(ETags.matches(" ", eTag));
+    }
+
+}
@@ -0,0 +1,63 @@
+package ru.skypro.homework.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ExifOrientationTest {
+
+    private static final int RED = 0xFF0000;
+    private static final int BLUE = 0x0000FF;
+
+    @Test
+    @DisplayName("parse - тег Orientation читается при обоих порядках байт, без тега - 1")
+    void parse() {
+        assertThat(ExifOrientation.parse(app1(ByteOrder.BIG_ENDIAN, 0x0112, 6))).isEqualTo(6);
+        assertThat(ExifOrientation.parse(app1(ByteOrder.LITTLE_ENDIAN, 0x0112, 8))).isEqualTo(8);
+        assertThat(ExifOrientation.parse(app1(ByteOrder.BIG_ENDIAN, 0x010F, 6))).isEqualTo(1);
+        assertThat(ExifOrientation.parse(app1(ByteOrder.BIG_ENDIAN, 0x0112, 42))).isEqualTo(1);
+        assertThat(ExifOrientation.parse("Exif\0\0MM".getBytes(StandardCharsets.US_ASCII))).isEqualTo(1);
+        assertThat(ExifOrientation.parse("http://ns.adobe.com/xap/1.0/".getBytes(StandardCharsets.US_ASCII))).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("apply - 6 поворачивает на 90° по часовой, 3 - на 180°, 2 отражает по горизонтали")
+    void apply() {
+        // Given: строка 2x1 - слева красный, справа синий
+        BufferedImage image = new BufferedImage(2, 1, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(0, 0, RED);
+        image.setRGB(1, 0, BLUE);
+
+        // When
+        BufferedImage rotated = ExifOrientation.apply(image, 6);
+        BufferedImage upsideDown = ExifOrientation.apply(image, 3);
+        BufferedImage mirrored = ExifOrientation.apply(image, 2);
+
+        // Then
+        assertThat(rotated.getWidth()).isEqualTo(1);
+        assertThat(rotated.getHeight()).isEqualTo(2);
+        assertThat(rotated.getRGB(0, 0) & 0xFFFFFF).isEqualTo(RED);
+        assertThat(rotated.getRGB(0, 1) & 0xFFFFFF).isEqualTo(BLUE);
+        assertThat(upsideDown.getRGB(0, 0) & 0xFFFFFF).isEqualTo(BLUE);
+        assertThat(mirrored.getRGB(0, 0) & 0xFFFFFF).isEqualTo(BLUE);
+        assertThat(ExifOrientation.apply(image, 1)).isSameAs(image);
+    }
+
+    private static byte[] app1(ByteOrder order, int tag, int value) {
+        ByteBuffer buffer = ByteBuffer.allocate(6 + 8 + 2 + 12 + 4).order(order);
+        buffer.put("Exif\0\0".getBytes(StandardCharsets.US_ASCII));
+        buffer.put(order == ByteOrder.BIG_ENDIAN ? new byte[]{'M', 'M'} : new byte[]{'I', 'I'});
+        buffer.putShort((short) 42).putInt(8);
+        buffer.putShort((short) 1);
+        buffer.putShort((short) tag).putShort((short) 3).putInt(1).putShort((short) value).putShort((short) 0);
+        buffer.putInt(0);
+        return buffer.array();
+    }
+
+}
@@ -0,0 +1,146 @@
+package ru.skypro.homework.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.skypro.homework.mapper.AdMapper;
+import ru.skypro.homework.model.dto.ExtendedAd;
+import ru.skypro.homework.model.entity.AdEntity;
+import ru.skypro.homework.repository.AdRepository;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ExtendedAdCacheTest {
+
+    @Mock
+    private AdRepository adRepository;
+
+    @Mock
+    private AdMapper adMapper;
+
+    private MeterRegistry meterRegistry;
+    private ExtendedAdCache cache;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new ExtendedAdCache(adRepository, adMapper, meterRegistry);
+        ReflectionTestUtils.setField(cache, "maximumSize", 2L);
+        ReflectionTestUtils.setField(cache, "ttl", Duration.ofMinutes(10));
+        cache.init();
+
+        lenient().when(adRepository.findByIdWithAuthor(any())).thenAnswer(invocation -> {
+            AdEntity ad = new AdEntity();
+            ad.setId(invocation.getArgument(0));
+            return Optional.of(ad);
+        });
+        lenient().when(adMapper.entityToExtendedAdDto(any())).thenAnswer(invocation -> {
+            ExtendedAd dto = new ExtendedAd();
+            dto.setPk(invocation.<AdEntity>getArgument(0).getId());
+            return dto;
+        });
+    }
+
+    @Test
+    @DisplayName("get - повторный запрос обслуживается из кэша, попадания видны в метриках")
+    void get_SecondCallIsHit() {
+        // When
+        Optional<ExtendedAd> first = cache.get(1);
+        Optional<ExtendedAd> second = cache.get(1);
+
+        // Then
+        assertThat(first).isPresent();
+        assertThat(second.get()).isSameAs(first.get());
+        verify(adRepository, times(1)).findByIdWithAuthor(1);
+        assertThat(gets("hit")).isEqualTo(1);
+        assertThat(gets("miss")).isEqualTo(1);
+        assertThat(meterRegistry.get("cache.load").tag("cache", ExtendedAdCache.CACHE_NAME)
+                .tag("result", "success").functionCounter().count()).isEqualTo(1);
+        assertThat(meterRegistry.find("cache.load.duration").tag("cache", ExtendedAdCache.CACHE_NAME).gauge())
+                .isNotNull();
+    }
+
+    @Test
+    @DisplayName("get - отсутствующее объявление не кэшируется")
+    void get_MissingAdIsNotCached() {
+        // Given
+        when(adRepository.findByIdWithAuthor(1)).thenReturn(Optional.empty());
+
+        // When
+        Optional<ExtendedAd> first = cache.get(1);
+        Optional<ExtendedAd> second = cache.get(1);
+
+        // Then
+        assertThat(first).isEmpty();
+        assertThat(second).isEmpty();
+        verify(adRepository, times(2)).findByIdWithAuthor(1);
+    }
+
+    @Test
+    @DisplayName("evict - карточка загружается заново")
+    void evict_ReloadsOnNextGet() {
+        // Given
+        cache.get(1);
+        cache.get(2);
+
+        // When
+        cache.evict(1);
+        cache.get(1);
+        cache.get(2);
+
+        // Then
+        verify(adRepository, times(2)).findByIdWithAuthor(1);
+        verify(adRepository, times(1)).findByIdWithAuthor(2);
+    }
+
+    @Test
+    @DisplayName("evictByAuthor - сбрасываются только объявления автора")
+    void evictByAuthor_EvictsAuthorAdsOnly() {
+        // Given
+        when(adRepository.findIdsByAuthorId(7)).thenReturn(List.of(1));
+        cache.get(1);
+        cache.get(2);
+
+        // When
+        cache.evictByAuthor(7);
+        cache.get(1);
+        cache.get(2);
+
+        // Then
+        verify(adRepository, times(2)).findByIdWithAuthor(1);
+        verify(adRepository, times(1)).findByIdWithAuthor(2);
+    }
+
+    @Test
+    @DisplayName("get - размер кэша ограничен, вытеснения видны в метриках")
+    void get_EvictsBeyondMaximumSize() {
+        // When
+        for (int id = 1; id <= 5; id++) {
+            cache.get(id);
+        }
+
+        // Then
+        assertThat(cache.size()).isLessThanOrEqualTo(2);
+        assertThat(meterRegistry.get("cache.evictions").tag("cache", ExtendedAdCache.CACHE_NAME)
+                .functionCounter().count()).isGreaterThanOrEqualTo(3);
+    }
+
+    private double gets(String result) {
+        return meterRegistry.get("cache.gets").tag("cache", ExtendedAdCache.CACHE_NAME)
+                .tag("result", result).functionCounter().count();
+    }
+
+}
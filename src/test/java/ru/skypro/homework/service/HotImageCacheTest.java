@@ -0,0 +1,117 @@
+package ru.skypro.homework.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Policy;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HotImageCacheTest {
+
+    private static final String URL = "/images/blobs/ab/cd/abcd.jpg";
+    private static final String CONTENT = "0123456789";
+
+    private MeterRegistry meterRegistry;
+    private HotImageCache cache;
+
+    @TempDir
+    Path tempDir;
+
+    private Path file;
+    private InputStreamSource source;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new HotImageCache(meterRegistry);
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "maximumSize", DataSize.ofKilobytes(1));
+        ReflectionTestUtils.setField(cache, "maxEntrySize", DataSize.ofBytes(16));
+        ReflectionTestUtils.setField(cache, "legacyTtl", Duration.ofMinutes(1));
+        cache.init();
+        file = tempDir.resolve("abcd.jpg");
+        Files.writeString(file, CONTENT, StandardCharsets.US_ASCII);
+        source = () -> Files.newInputStream(file);
+    }
+
+    @Test
+    @DisplayName("load - картинка попадает в кэш со второго промаха, дальше отдается из памяти")
+    void load_SecondMissAdmits() throws IOException {
+        // When
+        HotImageCache.CachedImage first = cache.load(URL, source, CONTENT.length(), 42L);
+        HotImageCache.CachedImage second = cache.load(URL, source, CONTENT.length(), 42L);
+
+        // Then
+        assertThat(first).isNull();
+        assertThat(second).isNotNull();
+        assertThat(second.getContent().isDirect()).isTrue();
+        assertThat(StandardCharsets.US_ASCII.decode(second.getContent().duplicate()).toString()).isEqualTo(CONTENT);
+        assertThat(cache.get(URL)).isSameAs(second);
+        assertThat(cache.residentBytes()).isEqualTo(CONTENT.length());
+        assertThat(meterRegistry.get("images.hot.resident.bytes").gauge().value()).isEqualTo(CONTENT.length());
+    }
+
+    @Test
+    @DisplayName("load - файлы больше max-entry-size не кэшируются")
+    void load_SkipsLargeFiles() throws IOException {
+        // When
+        cache.load(URL, source, 17, 42L);
+        HotImageCache.CachedImage cached = cache.load(URL, source, 17, 42L);
+
+        // Then
+        assertThat(cached).isNull();
+        assertThat(cache.get(URL)).isNull();
+    }
+
+    @Test
+    @DisplayName("invalidate - удаленная картинка больше не отдается из кэша, метрика попаданий считается")
+    void invalidate_RemovesEntry() throws IOException {
+        // Given
+        cache.load(URL, source, CONTENT.length(), 42L);
+        cache.load(URL, source, CONTENT.length(), 42L);
+        cache.get(URL);
+
+        // When
+        cache.invalidate(URL);
+
+        // Then
+        assertThat(cache.get(URL)).isNull();
+        assertThat(meterRegistry.get("images.hot.hit.ratio").gauge().value()).isEqualTo(0.5);
+    }
+
+    @Test
+    @DisplayName("load - содержимое по хэшу не истекает, картинка по старой ссылке живет не дольше legacy-ttl")
+    void load_LegacyUrlsExpire() throws IOException {
+        // Given
+        String legacyUrl = "/images/ads/ad_1_1700.jpg";
+        cache.load(URL, source, CONTENT.length(), 42L);
+        cache.load(URL, source, CONTENT.length(), 42L);
+        cache.load(legacyUrl, source, CONTENT.length(), 42L);
+        cache.load(legacyUrl, source, CONTENT.length(), 42L);
+
+        // When
+        Cache<String, HotImageCache.CachedImage> entries = (Cache<String, HotImageCache.CachedImage>)
+                ReflectionTestUtils.getField(cache, "cache");
+        Policy.VarExpiration<String, HotImageCache.CachedImage> expiration = entries.policy().expireVariably().orElseThrow();
+
+        // Then
+        assertThat(expiration.getExpiresAfter(legacyUrl, TimeUnit.SECONDS).orElseThrow()).isBetween(1L, 60L);
+        assertThat(expiration.getExpiresAfter(URL, TimeUnit.DAYS).orElseThrow()).isGreaterThan(365L);
+    }
+
+}
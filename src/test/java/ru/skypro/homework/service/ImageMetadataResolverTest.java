@@ -0,0 +1,169 @@
+package ru.skypro.homework.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.skypro.homework.model.enums.ImageVariant;
+import ru.skypro.homework.model.projection.ImageMetadataRow;
+import ru.skypro.homework.repository.AdRepository;
+import ru.skypro.homework.repository.ImageRepository;
+import ru.skypro.homework.repository.UserRepository;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ImageMetadataResolverTest {
+
+    private static final String URL = "/images/ads/ad_1_1.jpg";
+    private static final String BLOB = "/images/blobs/ab/cd/abcd.jpg";
+
+    @Mock
+    private AdRepository adRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private ImageRepository imageRepository;
+
+    private MeterRegistry meterRegistry;
+    private ImageMetadataResolver resolver;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        resolver = new ImageMetadataResolver(adRepository, userRepository, imageRepository, meterRegistry);
+        ReflectionTestUtils.setField(resolver, "maximumSize", 100L);
+        ReflectionTestUtils.setField(resolver, "ttl", Duration.ofMinutes(10));
+        resolver.init();
+    }
+
+    @Test
+    @DisplayName("forAd - строки проекции собираются в метаданные, повторное обращение без запроса")
+    void forAd_LoadsOnceThenHits() {
+        // Given
+        when(adRepository.findImageMetadata(1)).thenReturn(List.of(
+                row(ImageVariant.CARD, "/images/ads/ad_1_1_card.jpg"),
+                row(ImageVariant.THUMBNAIL, "/images/ads/ad_1_1_thumb.jpg")));
+
+        // When
+        ImageMetadata first = resolver.forAd(1).orElseThrow();
+        ImageMetadata second = resolver.forAd(1).orElseThrow();
+
+        // Then
+        assertThat(second).isSameAs(first);
+        assertThat(first.getImageUrl()).isEqualTo(URL);
+        assertThat(first.getStoragePath()).isEqualTo(BLOB);
+        assertThat(first.getContentType()).isEqualTo("image/jpeg");
+        assertThat(first.getVariants()).isEqualTo(Map.of(
+                ImageVariant.CARD, "/images/ads/ad_1_1_card.jpg",
+                ImageVariant.THUMBNAIL, "/images/ads/ad_1_1_thumb.jpg"));
+        verify(adRepository, times(1)).findImageMetadata(1);
+        assertThat(meterRegistry.get("cache.gets").tag("cache", ImageMetadataResolver.CACHE_NAME)
+                .tag("result", "hit").functionCounter().count()).isEqualTo(1.0);
+    }
+
+    @Test
+    @DisplayName("forUser - пользователя нет: пусто, отсутствие не кэшируется")
+    void forUser_Missing() {
+        // Given
+        when(userRepository.findImageMetadata(7)).thenReturn(List.of());
+
+        // When
+        Optional<ImageMetadata> first = resolver.forUser(7);
+        Optional<ImageMetadata> second = resolver.forUser(7);
+
+        // Then
+        assertThat(first).isEmpty();
+        assertThat(second).isEmpty();
+        verify(userRepository, times(2)).findImageMetadata(7);
+    }
+
+    @Test
+    @DisplayName("forUrl - ссылка без ImageEntity отдается как есть и не кэшируется")
+    void forUrl_LegacyUrl() {
+        // Given
+        when(imageRepository.findImageMetadata("/images/users/old.jpg")).thenReturn(List.of());
+
+        // When
+        ImageMetadata metadata = resolver.forUrl("/images/users/old.jpg");
+
+        // Then
+        assertThat(metadata.getStoragePath()).isEqualTo("/images/users/old.jpg");
+        assertThat(metadata.getContentType()).isNull();
+        assertThat(resolver.size()).isZero();
+    }
+
+    @Test
+    @DisplayName("evictAd/evictImage - после сброса метаданные перечитываются из БД")
+    void evict_Reloads() {
+        // Given
+        when(adRepository.findImageMetadata(1)).thenReturn(List.of(row(null, null)));
+        when(imageRepository.findImageMetadata(URL)).thenReturn(List.of(row(null, null)));
+        resolver.forAd(1);
+        resolver.forUrl(URL);
+
+        // When
+        resolver.evictImage(URL);
+        resolver.forAd(1);
+        resolver.evictAd(1);
+        resolver.forAd(1);
+        resolver.forUrl(URL);
+
+        // Then
+        verify(adRepository, times(3)).findImageMetadata(1);
+        verify(imageRepository, times(2)).findImageMetadata(URL);
+    }
+
+    private static ImageMetadataRow row(ImageVariant variant, String variantPath) {
+        return new ImageMetadataRow() {
+            @Override
+            public String getImageUrl() {
+                return URL;
+            }
+
+            @Override
+            public String getBlobPath() {
+                return BLOB;
+            }
+
+            @Override
+            public String getContentType() {
+                return "image/jpeg";
+            }
+
+            @Override
+            public Long getFileSize() {
+                return 1024L;
+            }
+
+            @Override
+            public String getContentHash() {
+                return "abcd";
+            }
+
+            @Override
+            public ImageVariant getVariant() {
+                return variant;
+            }
+
+            @Override
+            public String getVariantPath() {
+                return variantPath;
+            }
+        };
+    }
+
+}
@@ -0,0 +1,308 @@
+package ru.skypro.homework.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import ru.skypro.homework.model.dto.ImageReconciliationReport;
+import ru.skypro.homework.model.dto.ImageReconciliationRun;
+import ru.skypro.homework.model.entity.ImageBlobEntity;
+import ru.skypro.homework.model.entity.ImageEntity;
+import ru.skypro.homework.model.entity.ImageReconciliationRunEntity;
+import ru.skypro.homework.model.enums.ReconciliationStatus;
+import ru.skypro.homework.model.projection.BlobReferenceCount;
+import ru.skypro.homework.repository.AdRepository;
+import ru.skypro.homework.repository.ImageBlobRepository;
+import ru.skypro.homework.repository.ImageReconciliationRunRepository;
+import ru.skypro.homework.repository.ImageRepository;
+import ru.skypro.homework.repository.UserRepository;
+import ru.skypro.homework.storage.FileSystemImageStorage;
+import ru.skypro.homework.storage.ImageFileIndex;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ImageReconciliationServiceTest {
+
+    @Mock
+    private ImageRepository imageRepository;
+
+    @Mock
+    private ImageBlobRepository imageBlobRepository;
+
+    @Mock
+    private AdRepository adRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private HotImageCache hotImageCache;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private ImageFileIndex imageFileIndex;
+
+    @Mock
+    private ImageService imageService;
+
+    @Mock
+    private ClusterLock clusterLock;
+
+    @Mock
+    private ImageReconciliationRunRepository imageReconciliationRunRepository;
+
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @InjectMocks
+    private ImageReconciliationService reconciliationService;
+
+    @TempDir
+    Path tempDir;
+
+    private Path imagesDir;
+    private Path quarantineDir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        imagesDir = tempDir.resolve("images");
+        quarantineDir = tempDir.resolve("quarantine");
+        FileSystemImageStorage imageStorage = new FileSystemImageStorage();
+        ReflectionTestUtils.setField(imageStorage, "imagesPath", imagesDir.toString());
+        ReflectionTestUtils.setField(reconciliationService, "imageStorage", imageStorage);
+        ReflectionTestUtils.setField(reconciliationService, "quarantinePath", quarantineDir.toString());
+        ReflectionTestUtils.setField(reconciliationService, "batchSize", 2);
+        ReflectionTestUtils.setField(reconciliationService, "batchPause", Duration.ZERO);
+        ReflectionTestUtils.setField(reconciliationService, "gracePeriod", Duration.ofHours(1));
+        ReflectionTestUtils.setField(reconciliationService, "quarantineRetention", Duration.ofDays(7));
+        ReflectionTestUtils.setField(reconciliationService, "maxSamples", 10);
+        ReflectionTestUtils.setField(reconciliationService, "lockLease", Duration.ofMinutes(10));
+        lenient().when(clusterLock.tryAcquire("image-reconciliation", Duration.ofMinutes(10))).thenReturn(true);
+        lenient().when(clusterLock.extend("image-reconciliation", Duration.ofMinutes(10))).thenReturn(true);
+        Files.createDirectories(imagesDir.resolve("ads"));
+        Files.createDirectories(imagesDir.resolve("blobs/ab/cd"));
+    }
+
+    @Test
+    @DisplayName("reconcile(dryRun) - сироты попадают в отчет, но остаются на месте; свежие файлы не трогаются")
+    void reconcile_DryRunOnlyReports() throws IOException {
+        // Given
+        oldFile("ads/ad_1.jpg");
+        oldFile("ads/ad_2.jpg");
+        oldFile("ads/ad_2_card.jpg");
+        Files.writeString(imagesDir.resolve("ads/ad_3.jpg"), "uploading");
+        when(imageRepository.findFilePathsIn(anyCollection())).thenAnswer(invocation ->
+                ((Collection<String>) invocation.getArgument(0)).contains("/images/ads/ad_1.jpg")
+                        ? List.of("/images/ads/ad_1.jpg") : List.of());
+        when(imageRepository.findVariantPathsIn(anyCollection())).thenAnswer(invocation ->
+                ((Collection<String>) invocation.getArgument(0)).contains("/images/ads/ad_2_card.jpg")
+                        ? List.of("/images/ads/ad_2_card.jpg") : List.of());
+
+        // When
+        ImageReconciliationReport report = reconciliationService.reconcile(true);
+
+        // Then
+        assertThat(report.isDryRun()).isTrue();
+        assertThat(report.getScannedFiles()).isEqualTo(3);
+        assertThat(report.getOrphanFiles()).isEqualTo(1);
+        assertThat(report.getOrphanBytes()).isEqualTo(3);
+        assertThat(report.getOrphanSamples()).containsExactly("/images/ads/ad_2.jpg");
+        assertThat(report.getQuarantinedFiles()).isZero();
+        assertThat(imagesDir.resolve("ads/ad_2.jpg")).exists();
+        assertThat(quarantineDir).doesNotExist();
+    }
+
+    @Test
+    @DisplayName("reconcile - файлы хранилища без записи содержимого уходят в карантин вместе с вариантами")
+    void reconcile_QuarantinesBlobOrphans() throws IOException {
+        // Given
+        oldFile("blobs/ab/cd/abcd.jpg");
+        oldFile("blobs/ab/cd/abcd_card.jpg");
+        oldFile("blobs/ab/cd/abce.jpg");
+        oldFile("blobs/.upload-1.tmp");
+        when(imageBlobRepository.findContentHashesIn(anyCollection())).thenReturn(List.of("abcd"));
+
+        // When
+        ImageReconciliationReport report = reconciliationService.reconcile(false);
+
+        // Then
+        assertThat(report.getOrphanFiles()).isEqualTo(2);
+        assertThat(report.getQuarantinedFiles()).isEqualTo(2);
+        Path day = quarantineDir.resolve(LocalDate.now().toString());
+        assertThat(day.resolve("blobs/ab/cd/abce.jpg")).exists();
+        assertThat(day.resolve("blobs/.upload-1.tmp")).exists();
+        assertThat(imagesDir.resolve("blobs/ab/cd/abcd.jpg")).exists();
+        assertThat(imagesDir.resolve("blobs/ab/cd/abcd_card.jpg")).exists();
+        verify(hotImageCache).invalidate("/images/blobs/ab/cd/abce.jpg");
+    }
+
+    @Test
+    @DisplayName("reconcile - счетчик ссылок исправляется, содержимое без ссылок удаляется, пропавшие файлы в отчете")
+    void reconcile_FixesRefCountsAndReportsMissingFiles() {
+        // Given
+        ImageBlobEntity shared = blob("aaaa", 3);
+        ImageBlobEntity unreferenced = blob("bbbb", 1);
+        when(imageBlobRepository.findBatchAfter(eq(""), any())).thenReturn(List.of(shared, unreferenced));
+        when(imageBlobRepository.findBatchAfter(eq("bbbb"), any())).thenReturn(List.of());
+        when(imageRepository.countReferences(anyCollection())).thenReturn(List.of(references("aaaa", 2L)));
+        ImageEntity image = new ImageEntity();
+        image.setId(4);
+        image.setFilePath("/images/ads/ad_4.jpg");
+        when(imageRepository.findBatchAfter(eq(0), any())).thenReturn(List.of(image));
+
+        // When
+        ImageReconciliationReport report = reconciliationService.reconcile(false);
+
+        // Then
+        assertThat(report.getRefCountMismatches()).isEqualTo(2);
+        assertThat(report.getUnreferencedBlobs()).isEqualTo(1);
+        verify(imageBlobRepository).updateRefCount("aaaa", 3, 2);
+        verify(imageBlobRepository).updateRefCount("bbbb", 1, 0);
+        verify(imageService).deleteBlobIfUnreferenced("bbbb");
+        verify(imageService, never()).deleteBlobIfUnreferenced("aaaa");
+        assertThat(report.getMissingFiles()).isEqualTo(1);
+        assertThat(report.getMissingSamples()).containsExactly("/images/ads/ad_4.jpg");
+    }
+
+    @Test
+    @DisplayName("reconcile - карантин старше quarantine-retention удаляется")
+    void reconcile_PurgesExpiredQuarantine() throws IOException {
+        // Given
+        Path expired = quarantineDir.resolve(LocalDate.now().minusDays(8).toString()).resolve("ads");
+        Path recent = quarantineDir.resolve(LocalDate.now().minusDays(1).toString()).resolve("ads");
+        Files.createDirectories(expired);
+        Files.createDirectories(recent);
+        Files.writeString(expired.resolve("ad_1.jpg"), "old");
+        Files.writeString(recent.resolve("ad_2.jpg"), "new");
+
+        // When
+        ImageReconciliationReport report = reconciliationService.reconcile(false);
+
+        // Then
+        assertThat(report.getPurgedFiles()).isEqualTo(1);
+        assertThat(expired.getParent()).doesNotExist();
+        assertThat(recent.resolve("ad_2.jpg")).exists();
+    }
+
+    @Test
+    @DisplayName("reconcile - второй прогон, пока идет первый, отклоняется")
+    void reconcile_RejectsConcurrentRun() {
+        // Given
+        when(clusterLock.tryAcquire("image-reconciliation", Duration.ofMinutes(10))).thenReturn(false);
+
+        // When / Then
+        assertThatThrownBy(() -> reconciliationService.start(true)).isInstanceOf(IllegalStateException.class);
+        verifyNoInteractions(imageBlobRepository, imageReconciliationRunRepository);
+        verify(clusterLock, never()).release(anyString());
+    }
+
+    @Test
+    @DisplayName("reconcile - потеряв блокировку, прогон останавливается и счетчики больше не правит")
+    void reconcile_StopsWhenLockLost() {
+        // Given
+        when(imageBlobRepository.findBatchAfter(eq(""), any())).thenReturn(List.of(blob("aaaa", 3), blob("bbbb", 1)));
+        when(imageRepository.countReferences(anyCollection())).thenReturn(List.of(references("aaaa", 3L), references("bbbb", 1L)));
+        when(clusterLock.extend("image-reconciliation", Duration.ofMinutes(10))).thenReturn(false);
+
+        // When / Then
+        assertThatThrownBy(() -> reconciliationService.reconcile(false)).isInstanceOf(IllegalStateException.class);
+        verify(imageBlobRepository).findBatchAfter(eq(""), any());
+        verify(imageBlobRepository, never()).updateRefCount(anyString(), anyInt(), anyInt());
+    }
+
+    @Test
+    @DisplayName("start - прогон идет в фоне, закрывает зависшие прогоны, сохраняет отчет и отпускает блокировку")
+    void start_RunsInBackgroundAndStoresReport() throws InterruptedException {
+        // Given
+        when(clusterLock.getOwner()).thenReturn("node-a");
+        Map<String, ImageReconciliationRunEntity> runs = new HashMap<>();
+        when(imageReconciliationRunRepository.save(any())).thenAnswer(invocation -> {
+            ImageReconciliationRunEntity run = invocation.getArgument(0);
+            runs.put(run.getId(), run);
+            return run;
+        });
+        when(imageReconciliationRunRepository.findById(anyString()))
+                .thenAnswer(invocation -> Optional.ofNullable(runs.get(invocation.<String>getArgument(0))));
+        reconciliationService.init();
+
+        // When
+        ImageReconciliationRun started = reconciliationService.start(true);
+        ThreadPoolExecutor executor = (ThreadPoolExecutor) ReflectionTestUtils.getField(reconciliationService, "executor");
+        executor.shutdown();
+        assertThat(executor.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+
+        // Then
+        assertThat(started.getStatus()).isEqualTo(ReconciliationStatus.RUNNING);
+        assertThat(started.getNode()).isEqualTo("node-a");
+        verify(imageReconciliationRunRepository).failRunning(any(), anyString());
+        ImageReconciliationRun finished = reconciliationService.findRun(started.getId()).orElseThrow();
+        assertThat(finished.getStatus()).isEqualTo(ReconciliationStatus.COMPLETED);
+        assertThat(finished.getFinishedAt()).isNotNull();
+        assertThat(finished.getReport().isDryRun()).isTrue();
+        verify(clusterLock).release("image-reconciliation");
+    }
+
+    private void oldFile(String relativePath) throws IOException {
+        Path file = imagesDir.resolve(relativePath);
+        Files.writeString(file, "img");
+        Files.setLastModifiedTime(file, FileTime.from(Instant.now().minus(Duration.ofDays(1))));
+    }
+
+    private static ImageBlobEntity blob(String hash, int refCount) {
+        ImageBlobEntity blob = new ImageBlobEntity();
+        blob.setContentHash(hash);
+        blob.setFilePath("/images/blobs/" + hash + ".jpg");
+        blob.setRefCount(refCount);
+        blob.setCreatedAt(LocalDateTime.now().minusDays(1));
+        return blob;
+    }
+
+    private static BlobReferenceCount references(String hash, Long count) {
+        return new BlobReferenceCount() {
+            @Override
+            public String getContentHash() {
+                return hash;
+            }
+
+            @Override
+            public Long getReferenceCount() {
+                return count;
+            }
+        };
+    }
+
+}
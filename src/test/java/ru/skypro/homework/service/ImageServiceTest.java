@@ -1,21 +1,48 @@
 package ru.skypro.homework.service;
 
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.multipart.MultipartFile;
-import ru.skypro.homework.model.entity.AdEntity;
+import ru.skypro.homework.model.entity.ImageBlobEntity;
 import ru.skypro.homework.model.entity.ImageEntity;
 import ru.skypro.homework.model.entity.UserEntity;
+import ru.skypro.homework.model.enums.ImageVariant;
+import ru.skypro.homework.repository.ImageBlobRepository;
 import ru.skypro.homework.repository.ImageRepository;
 import ru.skypro.homework.repository.UserRepository;
 import ru.skypro.homework.repository.AdRepository;
+import ru.skypro.homework.storage.FileSystemImageStorage;
+import ru.skypro.homework.storage.ImageFileIndex;
+import ru.skypro.homework.storage.InMemoryImageStorage;
+import ru.skypro.homework.storage.StoredObject;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatNoException;
@@ -35,122 +62,598 @@ class ImageServiceTest {
     @Mock
     private ImageRepository imageRepository;
 
+    @Mock
+    private ImageVariantService imageVariantService;
+
+    @Mock
+    private ImageBlobRepository imageBlobRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private HotImageCache hotImageCache;
+
+    @Mock
+    private ImageMetadataResolver imageMetadataResolver;
+
+    @Mock
+    private ImageFileIndex imageFileIndex;
+
     @InjectMocks
     private ImageService imageService;
 
-    // Тестируем только методы, которые не работают с файлами
-    @Test
-    @DisplayName("getUserAvatar - пользователь не найден")
-    void getUserAvatar_UserNotFound() {
-        // Given
-        Integer userId = 1;
-        when(userRepository.findById(userId)).thenReturn(Optional.empty());
+    @TempDir
+    Path imagesDir;
 
-        // When & Then
-        assertThrows(IOException.class, () -> imageService.getUserAvatar(userId));
+    private static final byte[] PNG = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n', 0, 0, 0, 13, 'I', 'H'};
+
+    @BeforeEach
+    void setUp() {
+        FileSystemImageStorage imageStorage = new FileSystemImageStorage();
+        ReflectionTestUtils.setField(imageStorage, "imagesPath", imagesDir.toString());
+        ReflectionTestUtils.setField(imageService, "imageStorage", imageStorage);
+        ReflectionTestUtils.setField(imageService, "maxFileSize", DataSize.ofBytes(64));
     }
 
     @Test
-    @DisplayName("getUserAvatar - у пользователя нет аватара")
+    @DisplayName("getUserAvatarFile - пользователя нет или у него нет аватара")
     void getUserAvatar_NoAvatar() {
         // Given
         Integer userId = 1;
-        UserEntity user = new UserEntity();
-        user.setImagePath(null);
-
-        when(userRepository.findById(userId)).thenReturn(Optional.of(user));
+        when(imageMetadataResolver.forUser(userId)).thenReturn(Optional.empty());
 
         // When & Then
-        assertThrows(IOException.class, () -> imageService.getUserAvatar(userId));
+        assertThrows(IOException.class, () -> imageService.getUserAvatarFile(userId, null));
+        verifyNoInteractions(userRepository);
     }
 
     @Test
-    @DisplayName("getAdImage - объявление не найдено")
-    void getAdImage_AdNotFound() {
+    @DisplayName("getAdImageFile - объявления нет или у него нет изображения")
+    void getAdImage_NoImage() {
         // Given
         Integer adId = 1;
-        when(adRepository.findById(adId)).thenReturn(Optional.empty());
+        when(imageMetadataResolver.forAd(adId)).thenReturn(Optional.empty());
 
         // When & Then
-        assertThrows(IOException.class, () -> imageService.getAdImage(adId));
+        assertThrows(IOException.class, () -> imageService.getAdImageFile(adId, null));
+        verifyNoInteractions(adRepository);
     }
 
     @Test
-    @DisplayName("getAdImage - у объявления нет изображения")
-    void getAdImage_NoImage() {
+    @DisplayName("saveUserImage - пользователь не найден")
+    void saveUserImage_UserNotFound() {
         // Given
-        Integer adId = 1;
-        AdEntity ad = new AdEntity();
-        ad.setImagePath(null);
+        String userEmail = "nonexistent@example.com";
+        MultipartFile image = mock(MultipartFile.class);
 
-        when(adRepository.findById(adId)).thenReturn(Optional.of(ad));
+        when(userRepository.findByEmail(userEmail)).thenReturn(Optional.empty());
 
         // When & Then
-        assertThrows(IOException.class, () -> imageService.getAdImage(adId));
+        assertThrows(IOException.class, () -> imageService.saveUserImage(image, userEmail));
+
+        verify(userRepository).findByEmail(userEmail);
+        verifyNoInteractions(imageRepository);
     }
 
     @Test
-    @DisplayName("getImageContentType - для пользователя с JPEG")
-    void getImageContentType_UserJpeg() {
+    @DisplayName("saveAdImageEntity - тип по magic bytes, в ImageEntity сохраняются размер и SHA-256")
+    void saveAdImageEntity_StoresContentHash() throws Exception {
+        // Given: клиент называет PNG картинкой JPEG
+        MockMultipartFile image = new MockMultipartFile("image", "photo.jpg", "image/jpeg", PNG);
+        when(imageRepository.save(any(ImageEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        stubNewBlobs();
+
+        // When
+        ImageEntity saved = imageService.saveAdImageEntity(image, 7);
+
+        // Then
+        String hash = sha256Hex(PNG);
+        assertThat(saved.getContentHash()).isEqualTo(hash);
+        assertThat(saved.getFileSize()).isEqualTo(PNG.length);
+        assertThat(saved.getContentType()).isEqualTo("image/png");
+        assertThat(saved.getOriginalFileName()).isEqualTo("photo.jpg");
+        assertThat(saved.getFilePath()).matches("/images/ads/ad_7_[0-9a-f]{8}(-[0-9a-f]{4}){3}-[0-9a-f]{12}\\.png");
+        String blobUrl = "/images/blobs/" + hash.substring(0, 2) + "/" + hash.substring(2, 4) + "/" + hash + ".png";
+        assertThat(saved.getBlob().getFilePath()).isEqualTo(blobUrl);
+        assertThat(saved.getBlob().getRefCount()).isEqualTo(1);
+        assertThat(Files.readAllBytes(imagesDir.resolve(blobUrl.replaceFirst("^/images/", "")))).isEqualTo(PNG);
+        assertThat(listFiles(imagesDir.resolve("blobs"))).containsExactly(hash.substring(0, 2));
+    }
+
+    @Test
+    @DisplayName("saveAdImageEntity - то же содержимое повторно: +1 ссылка на имеющийся файл, новый не пишется")
+    void saveAdImageEntity_DeduplicatesContent() throws Exception {
         // Given
-        Integer userId = 1;
+        String hash = sha256Hex(PNG);
+        ImageBlobEntity blob = new ImageBlobEntity();
+        Path blobFile = imagesDir.resolve("blobs/" + hash.substring(0, 2) + "/" + hash.substring(2, 4) + "/" + hash + ".png");
+        Files.createDirectories(blobFile.getParent());
+        Files.writeString(blobFile, "stored");
+        when(imageBlobRepository.incrementRefCount(hash)).thenReturn(1);
+        when(imageBlobRepository.getReferenceById(hash)).thenReturn(blob);
+        when(imageRepository.save(any(ImageEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // When
+        ImageEntity saved = imageService.saveAdImageEntity(
+                new MockMultipartFile("image", "photo.png", "image/png", PNG), 7);
+
+        // Then
+        assertThat(saved.getBlob()).isSameAs(blob);
+        assertThat(saved.getFilePath()).startsWith("/images/ads/ad_7_");
+        assertThat(Files.readString(blobFile)).isEqualTo("stored");
+        assertThat(listFiles(blobFile.getParent())).containsExactly(blobFile.getFileName().toString());
+        assertThat(listFiles(imagesDir.resolve("blobs"))).containsExactly(hash.substring(0, 2));
+        verify(imageBlobRepository, never()).insertIfAbsent(anyString(), anyString(), anyLong(), anyString());
+    }
+
+    @Test
+    @DisplayName("saveAdImageEntity - то же содержимое параллельно создала другая загрузка: ссылка берется UPDATE, без конфликта ключа")
+    void saveAdImageEntity_ConcurrentFirstUpload() throws Exception {
+        // Given: UPDATE не нашел записи, вставка дождалась чужого коммита и ничего не вставила
+        String hash = sha256Hex(PNG);
+        ImageBlobEntity blob = new ImageBlobEntity();
+        Path blobFile = imagesDir.resolve("blobs/" + hash.substring(0, 2) + "/" + hash.substring(2, 4) + "/" + hash + ".png");
+        Files.createDirectories(blobFile.getParent());
+        Files.write(blobFile, PNG);
+        when(imageBlobRepository.incrementRefCount(hash)).thenReturn(0, 1);
+        when(imageBlobRepository.insertIfAbsent(eq(hash), anyString(), eq((long) PNG.length), eq("image/png")))
+                .thenReturn(0);
+        when(imageBlobRepository.getReferenceById(hash)).thenReturn(blob);
+        when(imageRepository.save(any(ImageEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // When
+        ImageEntity saved = imageService.saveAdImageEntity(
+                new MockMultipartFile("image", "photo.png", "image/png", PNG), 7);
+
+        // Then
+        assertThat(saved.getBlob()).isSameAs(blob);
+        verify(imageBlobRepository, times(2)).incrementRefCount(hash);
+        assertThat(listFiles(blobFile.getParent())).containsExactly(blobFile.getFileName().toString());
+    }
+
+    @Test
+    @DisplayName("evictMissing - пропавший файл убирается из описи и горячего кэша")
+    void evictMissing_RemovesIndexAndHotEntries() {
+        // Given
+        ImageFile image = new ImageFile(null, "image/jpeg", 16, 0L, null, null, null, "ads/ad_1.jpg", null);
+
+        // When
+        imageService.evictMissing(image);
+
+        // Then
+        verify(imageFileIndex).remove("ads/ad_1.jpg");
+        verify(hotImageCache).invalidate("/images/ads/ad_1.jpg");
+    }
+
+    @Test
+    @DisplayName("deleteImageEntity - последняя ссылка на содержимое: удаляются запись, файл и варианты")
+    void deleteImageEntity_LastReferenceDeletesBlob() throws Exception {
+        // Given
+        ImageEntity image = blobImage(5, "/images/blobs/ab/cd/abcd.jpg");
+        Files.createDirectories(imagesDir.resolve("blobs/ab/cd"));
+        Files.writeString(imagesDir.resolve("blobs/ab/cd/abcd.jpg"), "original");
+        Files.writeString(imagesDir.resolve("blobs/ab/cd/abcd_card.jpg"), "card");
+        when(imageRepository.findById(5)).thenReturn(Optional.of(image));
+        when(imageBlobRepository.findByIdForUpdate("abcd")).thenReturn(Optional.of(image.getBlob()));
+        when(imageBlobRepository.deleteIfUnreferenced("abcd")).thenReturn(1);
+
+        // When
+        imageService.deleteImageEntity(5);
+
+        // Then: файлы удаляются под блокировкой строки, до коммита
+        verify(imageRepository).deleteById(5);
+        verify(imageBlobRepository).decrementRefCount("abcd");
+        assertThat(listFiles(imagesDir.resolve("blobs/ab/cd"))).isEmpty();
+        InOrder inOrder = inOrder(imageBlobRepository, imageFileIndex, transactionManager);
+        inOrder.verify(imageBlobRepository).findByIdForUpdate("abcd");
+        inOrder.verify(imageBlobRepository).deleteIfUnreferenced("abcd");
+        inOrder.verify(imageFileIndex).remove("blobs/ab/cd/abcd.jpg");
+        inOrder.verify(transactionManager).commit(any());
+    }
+
+    @Test
+    @DisplayName("saveUserImage - прежний аватар удаляется: ссылка на его содержимое отпускается, файлы удаляются")
+    void saveUserImage_ReleasesPreviousAvatar() throws Exception {
+        // Given
+        ImageEntity previous = blobImage(5, "/images/blobs/ab/cd/abcd.jpg");
+        Files.createDirectories(imagesDir.resolve("blobs/ab/cd"));
+        Files.writeString(imagesDir.resolve("blobs/ab/cd/abcd.jpg"), "original");
         UserEntity user = new UserEntity();
-        user.setImagePath("/images/users/avatar.jpg");
+        user.setId(3);
+        user.setImage(previous);
+        when(userRepository.findByEmail("user@example.com")).thenReturn(Optional.of(user));
+        stubNewBlobs();
+        when(imageRepository.save(any(ImageEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(imageRepository.findById(5)).thenReturn(Optional.of(previous));
+        when(imageBlobRepository.findByIdForUpdate("abcd")).thenReturn(Optional.of(previous.getBlob()));
+        when(imageBlobRepository.deleteIfUnreferenced("abcd")).thenReturn(1);
 
-        when(userRepository.findById(userId)).thenReturn(Optional.of(user));
+        // When
+        String imageUrl = imageService.saveUserImage(
+                new MockMultipartFile("image", "avatar.png", "image/png", PNG), "user@example.com");
+
+        // Then
+        assertThat(user.getImage().getFilePath()).isEqualTo(imageUrl);
+        verify(imageRepository).deleteById(5);
+        verify(imageBlobRepository).decrementRefCount("abcd");
+        assertThat(listFiles(imagesDir.resolve("blobs/ab/cd"))).isEmpty();
+    }
+
+    @Test
+    @DisplayName("saveUserImage - файл пишется и хэшируется до транзакции, пользователь меняется короткой транзакцией")
+    void saveUserImage_SpoolsOutsideTransaction() throws Exception {
+        // Given
+        UserEntity user = new UserEntity();
+        user.setId(3);
+        when(userRepository.findByEmail("user@example.com")).thenReturn(Optional.of(user));
+        stubNewBlobs();
+        when(imageRepository.save(any(ImageEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        AtomicBoolean readFully = new AtomicBoolean();
+        MultipartFile image = new MockMultipartFile("image", "avatar.png", "image/png", PNG) {
+            @Override
+            public InputStream getInputStream() {
+                return new ByteArrayInputStream(PNG) {
+                    @Override
+                    public synchronized int read(byte[] b, int off, int len) {
+                        int read = super.read(b, off, len);
+                        readFully.compareAndSet(false, read == -1);
+                        return read;
+                    }
+                };
+            }
+        };
+        when(transactionManager.getTransaction(any())).thenAnswer(invocation -> {
+            assertThat(readFully).isTrue();
+            return null;
+        });
 
         // When
-        String contentType = imageService.getImageContentType(userId, "user");
+        String imageUrl = imageService.saveUserImage(image, "user@example.com");
+
+        // Then: одна транзакция на ссылку на содержимое и одна на пользователя
+        assertThat(imageUrl).startsWith("/images/users/user_3_").endsWith(".png");
+        assertThat(user.getImage().getBlob().getContentHash()).isEqualTo(sha256Hex(PNG));
+        verify(transactionManager, times(2)).getTransaction(any());
+        verify(transactionManager, times(2)).commit(any());
+        verify(userRepository).save(user);
+    }
+
+    @Test
+    @DisplayName("deleteBlobIfUnreferenced - хранилище не на диске: объекты оригинала и вариантов удаляются вместе с записью")
+    void deleteBlobIfUnreferenced_DeletesObjectsFromNonLocalStorage() throws Exception {
+        // Given
+        InMemoryImageStorage storage = new InMemoryImageStorage();
+        ReflectionTestUtils.setField(imageService, "imageStorage", storage);
+        storage.put("blobs/ab/cd/abcd.jpg", new ByteArrayInputStream(PNG), PNG.length, "image/png");
+        storage.put("blobs/ab/cd/abcd_card.jpg", new ByteArrayInputStream(PNG), PNG.length, "image/jpeg");
+        ImageEntity image = blobImage(5, "/images/blobs/ab/cd/abcd.jpg");
+        when(imageBlobRepository.findByIdForUpdate("abcd")).thenReturn(Optional.of(image.getBlob()));
+        when(imageBlobRepository.deleteIfUnreferenced("abcd")).thenReturn(1);
+
+        // When
+        boolean deleted = imageService.deleteBlobIfUnreferenced("abcd");
 
         // Then
-        assertThat(contentType).isEqualTo("image/jpeg");
+        assertThat(deleted).isTrue();
+        assertThat(storage.exists("blobs/ab/cd/abcd.jpg")).isFalse();
+        assertThat(storage.exists("blobs/ab/cd/abcd_card.jpg")).isFalse();
     }
 
     @Test
-    @DisplayName("getImageContentType - для объявления с PNG")
-    void getImageContentType_AdPng() {
+    @DisplayName("deleteImageEntity - на содержимое ссылаются другие картинки: файл остается")
+    void deleteImageEntity_SharedBlobIsKept() throws Exception {
         // Given
-        Integer adId = 1;
-        AdEntity ad = new AdEntity();
-        ad.setImagePath("/images/ads/image.png");
+        ImageEntity image = blobImage(5, "/images/blobs/ab/cd/abcd.jpg");
+        Files.createDirectories(imagesDir.resolve("blobs/ab/cd"));
+        Files.writeString(imagesDir.resolve("blobs/ab/cd/abcd.jpg"), "original");
+        when(imageRepository.findById(5)).thenReturn(Optional.of(image));
+        when(imageBlobRepository.findByIdForUpdate("abcd")).thenReturn(Optional.of(image.getBlob()));
+        when(imageBlobRepository.deleteIfUnreferenced("abcd")).thenReturn(0);
+
+        // When
+        imageService.deleteImageEntity(5);
+
+        // Then
+        verify(imageRepository).deleteById(5);
+        verify(imageBlobRepository).decrementRefCount("abcd");
+        assertThat(listFiles(imagesDir.resolve("blobs/ab/cd"))).containsExactly("abcd.jpg");
+    }
+
+    @Test
+    @DisplayName("getImageFileByUrl - по ссылке загрузки отдается файл из хранилища по хэшу")
+    void getImageFileByUrl_FromBlobStore() throws Exception {
+        // Given
+        ImageEntity image = blobImage(5, "/images/blobs/ab/cd/abcd.jpg");
+        image.setFilePath("/images/ads/ad_1_1.jpg");
+        Files.createDirectories(imagesDir.resolve("blobs/ab/cd"));
+        Files.writeString(imagesDir.resolve("blobs/ab/cd/abcd.jpg"), "original");
+        when(imageMetadataResolver.forUrl("/images/ads/ad_1_1.jpg")).thenReturn(metadataOf(image));
+
+        // When
+        ImageFile file = imageService.getImageFileByUrl("/images/ads/ad_1_1.jpg", null);
+
+        // Then
+        assertThat(file.getPath()).isEqualTo(imagesDir.resolve("blobs/ab/cd/abcd.jpg"));
+        assertThat(file.getLength()).isEqualTo(8L);
+    }
+
+    @Test
+    @DisplayName("getImageFileByUrl - файл есть в описи ImageFileIndex: атрибуты берутся из нее, без stat")
+    void getImageFileByUrl_FromIndex() throws Exception {
+        // Given: файла на диске нет, но опись его помнит
+        ImageEntity image = blobImage(5, "/images/blobs/ab/cd/abcd.jpg");
+        image.setFilePath("/images/ads/ad_1_1.jpg");
+        when(imageMetadataResolver.forUrl("/images/ads/ad_1_1.jpg")).thenReturn(metadataOf(image));
+        when(imageFileIndex.get("blobs/ab/cd/abcd.jpg")).thenReturn(new StoredObject(8L, 42L));
+
+        // When
+        ImageFile file = imageService.getImageFileByUrl("/images/ads/ad_1_1.jpg", null);
 
-        when(adRepository.findById(adId)).thenReturn(Optional.of(ad));
+        // Then
+        assertThat(file.getLength()).isEqualTo(8L);
+        assertThat(file.getLastModified()).isEqualTo(42L);
+        verify(imageFileIndex, never()).put(anyString(), any());
+    }
+
+    @Test
+    @DisplayName("getImageFileByUrl - промах горячего кэша: только stat, содержимое не читается ни в кэш, ни из хранилища")
+    void getImageFileByUrl_DoesNotReadContent() throws Exception {
+        // Given: ответ может оказаться 304 или X-Accel-Redirect, тогда тело не нужно
+        InMemoryImageStorage storage = spy(new InMemoryImageStorage());
+        storage.put("ads/ad_1.jpg", new ByteArrayInputStream("original".getBytes(StandardCharsets.UTF_8)), 8L,
+                "image/jpeg");
+        ReflectionTestUtils.setField(imageService, "imageStorage", storage);
+        when(imageMetadataResolver.forUrl("/images/ads/ad_1.jpg")).thenReturn(ImageMetadata.ofUrl("/images/ads/ad_1.jpg"));
 
         // When
-        String contentType = imageService.getImageContentType(adId, "ad");
+        ImageFile file = imageService.getImageFileByUrl("/images/ads/ad_1.jpg", null);
 
         // Then
-        assertThat(contentType).isEqualTo("image/png");
+        assertThat(file.getLength()).isEqualTo(8L);
+        assertThat(file.getContent()).isNull();
+        verify(storage).stat("ads/ad_1.jpg");
+        verify(storage, never()).get(anyString());
+        verify(storage, never()).get(anyString(), anyLong(), anyLong());
+        verify(hotImageCache, never()).load(anyString(), any(), anyLong(), anyLong());
     }
 
     @Test
-    @DisplayName("getImageContentType - fallback при отсутствии сущности")
-    void getImageContentType_Fallback() {
+    @DisplayName("loadHotContent - картинка читается из хранилища в HotImageCache по своей ссылке")
+    void loadHotContent_LoadsIntoHotCache() throws Exception {
         // Given
-        Integer entityId = 1;
-        when(userRepository.findById(entityId)).thenReturn(Optional.empty());
+        Files.createDirectories(imagesDir.resolve("ads"));
+        Files.writeString(imagesDir.resolve("ads/ad_1.jpg"), "original");
+        ImageFile file = new ImageFile(imagesDir.resolve("ads/ad_1.jpg"), "image/jpeg", 8L, 42L, null, null, null,
+                "ads/ad_1.jpg", null);
+        ByteBuffer content = ByteBuffer.wrap("original".getBytes(StandardCharsets.UTF_8)).asReadOnlyBuffer();
+        when(hotImageCache.load(eq("/images/ads/ad_1.jpg"), any(), eq(8L), eq(42L)))
+                .thenAnswer(invocation -> {
+                    try (InputStream in = invocation.<InputStreamSource>getArgument(1).getInputStream()) {
+                        assertThat(new String(in.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo("original");
+                    }
+                    return new HotImageCache.CachedImage(content, 42L);
+                });
 
         // When
-        String contentType = imageService.getImageContentType(entityId, "user");
+        ByteBuffer loaded = imageService.loadHotContent(file);
 
         // Then
-        assertThat(contentType).isEqualTo("image/jpeg");
+        assertThat(loaded).isSameAs(content);
     }
 
     @Test
-    @DisplayName("saveUserImage - пользователь не найден")
-    void saveUserImage_UserNotFound() {
+    @DisplayName("saveAdImageEntity и getImageFileByUrl - хранилище не на диске: файл пишется и читается через ImageStorage")
+    void saveAndGet_WithNonLocalStorage() throws Exception {
         // Given
-        String userEmail = "nonexistent@example.com";
-        MultipartFile image = mock(MultipartFile.class);
+        InMemoryImageStorage storage = new InMemoryImageStorage();
+        ReflectionTestUtils.setField(imageService, "imageStorage", storage);
+        stubNewBlobs();
+        when(imageRepository.save(any(ImageEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        ImageEntity saved = imageService.saveAdImageEntity(
+                new MockMultipartFile("image", "photo.png", "image/png", PNG), 7);
+        when(imageMetadataResolver.forUrl(saved.getFilePath())).thenReturn(metadataOf(saved));
 
-        when(userRepository.findByEmail(userEmail)).thenReturn(Optional.empty());
+        // When
+        ImageFile file = imageService.getImageFileByUrl(saved.getFilePath(), null);
+
+        // Then
+        String blobKey = saved.getBlob().getFilePath().replaceFirst("^/images/", "");
+        assertThat(file.getPath()).isNull();
+        assertThat(file.getStorageKey()).isEqualTo(blobKey);
+        assertThat(file.getLength()).isEqualTo(PNG.length);
+        try (InputStream content = file.getStorage().get(file.getStorageKey())) {
+            assertThat(content.readAllBytes()).isEqualTo(PNG);
+        }
+        assertThat(listFiles(imagesDir)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("saveAdImageEntity - не картинка отклоняется, временный файл удаляется")
+    void saveAdImageEntity_RejectsNonImage() {
+        // Given
+        MockMultipartFile image = new MockMultipartFile(
+                "image", "photo.jpg", "image/jpeg", "<?php echo 1; ?>".getBytes(StandardCharsets.US_ASCII));
 
         // When & Then
-        assertThrows(IOException.class, () -> imageService.saveUserImage(image, userEmail));
+        assertThrows(IllegalArgumentException.class, () -> imageService.saveAdImageEntity(image, 7));
+        assertThat(listFiles(imagesDir.resolve("blobs"))).isEmpty();
+        verifyNoInteractions(imageRepository, imageBlobRepository);
+    }
 
-        verify(userRepository).findByEmail(userEmail);
-        verifyNoInteractions(imageRepository);
+    @Test
+    @DisplayName("writeAdImage - поток больше лимита обрывается, временный файл удаляется")
+    void writeAdImage_RejectsTooLarge() {
+        // Given
+        byte[] content = new byte[65];
+        System.arraycopy(PNG, 0, content, 0, PNG.length);
+
+        // When & Then
+        assertThrows(IllegalArgumentException.class,
+                () -> imageService.writeAdImage(new ByteArrayInputStream(content), "big.png"));
+        assertThat(listFiles(imagesDir.resolve("blobs"))).isEmpty();
+        verifyNoInteractions(transactionManager);
+    }
+
+    @Test
+    @DisplayName("writeAdImage - поток пишется и хэшируется до транзакции, транзакция только на ссылку")
+    void writeAdImage_SpoolsOutsideTransaction() throws Exception {
+        // Given
+        AtomicBoolean readFully = new AtomicBoolean();
+        InputStream content = new ByteArrayInputStream(PNG) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                int read = super.read(b, off, len);
+                readFully.compareAndSet(false, read == -1);
+                return read;
+            }
+        };
+        stubNewBlobs();
+        when(transactionManager.getTransaction(any())).thenAnswer(invocation -> {
+            assertThat(readFully).isTrue();
+            return null;
+        });
+
+        // When
+        ImageEntity image = imageService.writeAdImage(content, "photo.png");
+
+        // Then
+        assertThat(image.getBlob().getContentHash()).isEqualTo(sha256Hex(PNG));
+        assertThat(image.getFilePath()).startsWith("/images/ads/ad_").endsWith(".png");
+        verify(transactionManager, times(1)).getTransaction(any());
+        verify(transactionManager).commit(any());
+    }
+
+    @Test
+    @DisplayName("getImageFileByUrl - хэш берется из ImageEntity и становится частью ImageFile")
+    void getImageFileByUrl_WithHash() throws Exception {
+        // Given
+        Files.createDirectories(imagesDir.resolve("ads"));
+        Files.writeString(imagesDir.resolve("ads/ad_1_1.png"), "png");
+        ImageEntity entity = new ImageEntity();
+        entity.setFilePath("/images/ads/ad_1_1.png");
+        entity.setContentHash("cafe");
+        when(imageMetadataResolver.forUrl("/images/ads/ad_1_1.png")).thenReturn(metadataOf(entity));
+
+        // When
+        ImageFile file = imageService.getImageFileByUrl("/images/ads/ad_1_1.png", null);
+
+        // Then
+        assertThat(file.getContentHash()).isEqualTo("cafe");
+        assertThat(file.getContentType()).isEqualTo("image/png");
+        assertThat(file.getLength()).isEqualTo(3L);
+    }
+
+    @Test
+    @DisplayName("getImageFileByUrl - файла нет на диске")
+    void getImageFileByUrl_Missing() {
+        // Given
+        when(imageMetadataResolver.forUrl("/images/ads/none.jpg")).thenReturn(ImageMetadata.ofUrl("/images/ads/none.jpg"));
+
+        // When & Then
+        assertThrows(IOException.class, () -> imageService.getImageFileByUrl("/images/ads/none.jpg", null));
+    }
+
+    @Test
+    @DisplayName("getAdImageFile - готовый вариант отдается со своим ETag, пропавший файл варианта - оригинал")
+    void getAdImageFile_Variant() throws Exception {
+        // Given
+        Files.createDirectories(imagesDir.resolve("ads"));
+        Files.writeString(imagesDir.resolve("ads/ad_1_1.jpg"), "original");
+        Files.writeString(imagesDir.resolve("ads/ad_1_1_card.jpg"), "card");
+        ImageEntity image = new ImageEntity();
+        image.setFilePath("/images/ads/ad_1_1.jpg");
+        image.setContentHash("cafe");
+        image.getVariants().put(ImageVariant.CARD, "/images/ads/ad_1_1_card.jpg");
+        image.getVariants().put(ImageVariant.THUMBNAIL, "/images/ads/ad_1_1_thumbnail.jpg");
+        image.getVariants().put(ImageVariant.FULL, "/images/ads/ad_1_1.jpg");
+        when(imageMetadataResolver.forAd(1)).thenReturn(Optional.of(metadataOf(image)));
+
+        // When
+        ImageFile card = imageService.getAdImageFile(1, ImageVariant.CARD);
+        ImageFile thumbnail = imageService.getAdImageFile(1, ImageVariant.THUMBNAIL);
+        ImageFile full = imageService.getAdImageFile(1, ImageVariant.FULL);
+
+        // Then
+        assertThat(card.getLength()).isEqualTo(4L);
+        assertThat(card.getContentHash()).isEqualTo("cafe-card");
+        assertThat(card.getVariant()).isEqualTo(ImageVariant.CARD);
+        assertThat(thumbnail.getLength()).isEqualTo(8L);
+        assertThat(thumbnail.getContentHash()).isEqualTo("cafe");
+        assertThat(thumbnail.getVariant()).isNull();
+        assertThat(full.getContentHash()).isEqualTo("cafe");
+        assertThat(full.getVariant()).isEqualTo(ImageVariant.FULL);
+    }
+
+    @Test
+    @DisplayName("saveAdImageEntity - после сохранения ставится генерация вариантов")
+    void saveAdImageEntity_SchedulesVariants() throws Exception {
+        // Given
+        MockMultipartFile image = new MockMultipartFile("image", "photo.png", "image/png", PNG);
+        stubNewBlobs();
+        when(imageRepository.save(any(ImageEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // When
+        ImageEntity saved = imageService.saveAdImageEntity(image, 7);
+
+        // Then
+        verify(imageVariantService).scheduleAfterCommit(saved.getFilePath());
+    }
+
+    private static String sha256Hex(byte[] content) throws Exception {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : MessageDigest.getInstance("SHA-256").digest(content)) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Метаданные, которые ImageMetadataResolver собрал бы из строк запроса по этой картинке
+     */
+    private static ImageMetadata metadataOf(ImageEntity image) {
+        return new ImageMetadata(image.getFilePath(), image.getStoragePath(), image.getContentType(),
+                image.getFileSize(), image.getContentHash(), image.getVariants());
+    }
+
+    private static ImageEntity blobImage(Integer id, String blobUrl) {
+        ImageBlobEntity blob = new ImageBlobEntity();
+        blob.setContentHash("abcd");
+        blob.setFilePath(blobUrl);
+        ImageEntity image = new ImageEntity();
+        image.setId(id);
+        image.setFilePath("/images/ads/ad_" + id + ".jpg");
+        image.setContentHash("abcd");
+        image.setBlob(blob);
+        return image;
+    }
+
+    private static List<String> listFiles(Path directory) {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(path -> path.getFileName().toString()).collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * insertIfAbsent создает запись содержимого, getReferenceById ее возвращает
+     */
+    private void stubNewBlobs() {
+        Map<String, ImageBlobEntity> blobs = new HashMap<>();
+        when(imageBlobRepository.insertIfAbsent(anyString(), anyString(), anyLong(), anyString()))
+                .thenAnswer(invocation -> {
+                    ImageBlobEntity blob = new ImageBlobEntity();
+                    blob.setContentHash(invocation.getArgument(0));
+                    blob.setFilePath(invocation.getArgument(1));
+                    blob.setFileSize(invocation.getArgument(2));
+                    blob.setContentType(invocation.getArgument(3));
+                    blob.setRefCount(1);
+                    blobs.put(blob.getContentHash(), blob);
+                    return 1;
+                });
+        when(imageBlobRepository.getReferenceById(anyString()))
+                .thenAnswer(invocation -> blobs.get(invocation.<String>getArgument(0)));
     }
 
-}
\ No newline at end of file
+}
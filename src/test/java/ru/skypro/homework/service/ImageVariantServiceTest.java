@@ -0,0 +1,248 @@
+package ru.skypro.homework.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import ru.skypro.homework.model.entity.ImageBlobEntity;
+import ru.skypro.homework.model.entity.ImageEntity;
+import ru.skypro.homework.model.enums.ImageVariant;
+import ru.skypro.homework.repository.ImageRepository;
+import ru.skypro.homework.storage.FileSystemImageStorage;
+import ru.skypro.homework.storage.ImageFileIndex;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ImageVariantServiceTest {
+
+    @Mock
+    private ImageRepository imageRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private HotImageCache hotImageCache;
+
+    @Mock
+    private ImageMetadataResolver imageMetadataResolver;
+
+    @Mock
+    private ImageFileIndex imageFileIndex;
+
+    @InjectMocks
+    private ImageVariantService imageVariantService;
+
+    @TempDir
+    Path imagesDir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        FileSystemImageStorage imageStorage = new FileSystemImageStorage();
+        ReflectionTestUtils.setField(imageStorage, "imagesPath", imagesDir.toString());
+        ReflectionTestUtils.setField(imageVariantService, "imageStorage", imageStorage);
+        ReflectionTestUtils.setField(imageVariantService, "jpegQuality", 0.8f);
+        ReflectionTestUtils.setField(imageVariantService, "maxSourcePixels", 50_000_000L);
+        Files.createDirectories(imagesDir.resolve("ads"));
+    }
+
+    @Test
+    @DisplayName("generate - уменьшенные копии пишутся рядом с оригиналом и записываются в ImageEntity")
+    void generate_WritesVariantsAndRecordsThem() throws IOException {
+        // Given: 800x600, больше THUMBNAIL и CARD, но меньше FULL
+        writeImage("ads/ad_1_100.jpg", 800, 600, BufferedImage.TYPE_INT_RGB, "jpeg");
+        ImageEntity image = new ImageEntity();
+        image.setFilePath("/images/ads/ad_1_100.jpg");
+        when(imageRepository.findByFilePath("/images/ads/ad_1_100.jpg")).thenReturn(Optional.of(image));
+
+        // When
+        imageVariantService.generate("/images/ads/ad_1_100.jpg");
+
+        // Then
+        assertThat(image.getVariants()).containsOnly(
+                entry(ImageVariant.THUMBNAIL, "/images/ads/ad_1_100_thumbnail.jpg"),
+                entry(ImageVariant.CARD, "/images/ads/ad_1_100_card.jpg"),
+                entry(ImageVariant.FULL, "/images/ads/ad_1_100.jpg"));
+        BufferedImage card = ImageIO.read(imagesDir.resolve("ads/ad_1_100_card.jpg").toFile());
+        assertThat(card.getWidth()).isEqualTo(400);
+        assertThat(card.getHeight()).isEqualTo(300);
+        BufferedImage thumbnail = ImageIO.read(imagesDir.resolve("ads/ad_1_100_thumbnail.jpg").toFile());
+        assertThat(thumbnail.getWidth()).isEqualTo(160);
+        assertThat(thumbnail.getHeight()).isEqualTo(120);
+    }
+
+    @Test
+    @DisplayName("generate - картинка с прозрачностью уменьшается в PNG")
+    void generate_KeepsTransparencyAsPng() throws IOException {
+        // Given
+        writeImage("ads/ad_2_100.png", 300, 200, BufferedImage.TYPE_INT_ARGB, "png");
+        ImageEntity image = new ImageEntity();
+        image.setFilePath("/images/ads/ad_2_100.png");
+        when(imageRepository.findByFilePath("/images/ads/ad_2_100.png")).thenReturn(Optional.of(image));
+
+        // When
+        imageVariantService.generate("/images/ads/ad_2_100.png");
+
+        // Then
+        assertThat(image.getVariants()).containsEntry(ImageVariant.THUMBNAIL, "/images/ads/ad_2_100_thumbnail.png");
+        BufferedImage thumbnail = ImageIO.read(imagesDir.resolve("ads/ad_2_100_thumbnail.png").toFile());
+        assertThat(thumbnail.getColorModel().hasAlpha()).isTrue();
+    }
+
+    @Test
+    @DisplayName("generate - картинку удалили до записи вариантов: файлы вариантов удаляются")
+    void generate_ImageDeletedMeanwhile() throws IOException {
+        // Given
+        writeImage("ads/ad_3_100.jpg", 500, 500, BufferedImage.TYPE_INT_RGB, "jpeg");
+        ImageEntity image = new ImageEntity();
+        image.setFilePath("/images/ads/ad_3_100.jpg");
+        when(imageRepository.findByFilePath("/images/ads/ad_3_100.jpg"))
+                .thenReturn(Optional.of(image), Optional.empty());
+
+        // When
+        imageVariantService.generate("/images/ads/ad_3_100.jpg");
+
+        // Then
+        try (var files = Files.list(imagesDir.resolve("ads"))) {
+            assertThat(files).extracting(path -> path.getFileName().toString()).containsExactly("ad_3_100.jpg");
+        }
+    }
+
+    @Test
+    @DisplayName("generate - содержимое из хранилища по хэшу: варианты рядом с ним, готовые не пересчитываются")
+    void generate_SharedBlobReusesVariants() throws IOException {
+        // Given
+        Files.createDirectories(imagesDir.resolve("blobs/ab/cd"));
+        writeImage("blobs/ab/cd/abcd.jpg", 800, 600, BufferedImage.TYPE_INT_RGB, "jpeg");
+        Files.writeString(imagesDir.resolve("blobs/ab/cd/abcd_card.jpg"), "ready");
+        ImageBlobEntity blob = new ImageBlobEntity();
+        blob.setFilePath("/images/blobs/ab/cd/abcd.jpg");
+        ImageEntity image = new ImageEntity();
+        image.setFilePath("/images/ads/ad_4_100.jpg");
+        image.setBlob(blob);
+        when(imageRepository.findByFilePath("/images/ads/ad_4_100.jpg")).thenReturn(Optional.of(image));
+
+        // When
+        imageVariantService.generate("/images/ads/ad_4_100.jpg");
+
+        // Then
+        assertThat(image.getVariants()).containsOnly(
+                entry(ImageVariant.THUMBNAIL, "/images/blobs/ab/cd/abcd_thumbnail.jpg"),
+                entry(ImageVariant.CARD, "/images/blobs/ab/cd/abcd_card.jpg"),
+                entry(ImageVariant.FULL, "/images/ads/ad_4_100.jpg"));
+        assertThat(Files.readString(imagesDir.resolve("blobs/ab/cd/abcd_card.jpg"))).isEqualTo("ready");
+        assertThat(imagesDir.resolve("blobs/ab/cd/abcd_thumbnail.jpg")).exists();
+    }
+
+    @Test
+    @DisplayName("variantUrl - суффикс варианта вставляется перед расширением")
+    void variantUrl() {
+        assertThat(ImageVariantService.variantUrl("/images/users/user_1_5.gif", ImageVariant.CARD, ".png"))
+                .isEqualTo("/images/users/user_1_5_card.png");
+    }
+
+    @Test
+    @DisplayName("generate - картинка больше max-source-pixels не декодируется, варианты не создаются")
+    void generate_SkipsSourceAboveMaxPixels() throws IOException {
+        // Given
+        ReflectionTestUtils.setField(imageVariantService, "maxSourcePixels", 100_000L);
+        writeImage("ads/ad_5_100.jpg", 800, 600, BufferedImage.TYPE_INT_RGB, "jpeg");
+        ImageEntity image = new ImageEntity();
+        image.setFilePath("/images/ads/ad_5_100.jpg");
+        when(imageRepository.findByFilePath("/images/ads/ad_5_100.jpg")).thenReturn(Optional.of(image));
+
+        // When
+        imageVariantService.generate("/images/ads/ad_5_100.jpg");
+
+        // Then
+        assertThat(image.getVariants()).isEmpty();
+        assertThat(imagesDir.resolve("ads/ad_5_100_card.jpg")).doesNotExist();
+        verifyNoInteractions(imageMetadataResolver);
+    }
+
+    @Test
+    @DisplayName("generate - большой оригинал декодируется с прореживанием, размеры вариантов прежние")
+    void generate_SubsamplesLargeSource() throws IOException {
+        // Given: 5200 по длинной стороне - прореживание через пиксель
+        writeImage("ads/ad_6_100.jpg", 5200, 100, BufferedImage.TYPE_INT_RGB, "jpeg");
+        ImageEntity image = new ImageEntity();
+        image.setFilePath("/images/ads/ad_6_100.jpg");
+        when(imageRepository.findByFilePath("/images/ads/ad_6_100.jpg")).thenReturn(Optional.of(image));
+
+        // When
+        imageVariantService.generate("/images/ads/ad_6_100.jpg");
+
+        // Then
+        assertThat(ImageVariantService.subsampling(5200)).isEqualTo(2);
+        BufferedImage full = ImageIO.read(imagesDir.resolve("ads/ad_6_100_full.jpg").toFile());
+        assertThat(full.getWidth()).isEqualTo(1280);
+        assertThat(full.getHeight()).isEqualTo(25);
+    }
+
+    @Test
+    @DisplayName("generate - поворот из EXIF применяется к вариантам")
+    void generate_AppliesExifOrientation() throws IOException {
+        // Given: 800x400, в EXIF - повернуть на 90° по часовой
+        BufferedImage source = new BufferedImage(800, 400, BufferedImage.TYPE_INT_RGB);
+        ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+        ImageIO.write(source, "jpeg", jpeg);
+        Files.write(imagesDir.resolve("ads/ad_7_100.jpg"), withExifOrientation(jpeg.toByteArray(), 6));
+        ImageEntity image = new ImageEntity();
+        image.setFilePath("/images/ads/ad_7_100.jpg");
+        when(imageRepository.findByFilePath("/images/ads/ad_7_100.jpg")).thenReturn(Optional.of(image));
+
+        // When
+        imageVariantService.generate("/images/ads/ad_7_100.jpg");
+
+        // Then
+        BufferedImage card = ImageIO.read(imagesDir.resolve("ads/ad_7_100_card.jpg").toFile());
+        assertThat(card.getWidth()).isEqualTo(200);
+        assertThat(card.getHeight()).isEqualTo(400);
+    }
+
+    /**
+     * JPEG как с камеры телефона: APP0 JFIF заменен сегментом APP1 Exif, IFD0 из одного тега Orientation
+     */
+    static byte[] withExifOrientation(byte[] jpeg, int orientation) {
+        ByteBuffer app1 = ByteBuffer.allocate(2 + 2 + 6 + 8 + 2 + 12 + 4);
+        app1.putShort((short) 0xFFE1);
+        app1.putShort((short) (app1.capacity() - 2));
+        app1.put("Exif\0\0".getBytes(StandardCharsets.US_ASCII));
+        app1.put(new byte[]{'M', 'M', 0, 42}).putInt(8);
+        app1.putShort((short) 1);
+        app1.putShort((short) 0x0112).putShort((short) 3).putInt(1).putShort((short) orientation).putShort((short) 0);
+        app1.putInt(0);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int app0End = 4 + (((jpeg[4] & 0xFF) << 8) | (jpeg[5] & 0xFF));
+        out.write(jpeg, 0, 2);
+        out.write(app1.array(), 0, app1.capacity());
+        out.write(jpeg, app0End, jpeg.length - app0End);
+        return out.toByteArray();
+    }
+
+    private void writeImage(String relativePath, int width, int height, int type, String format) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, type);
+        ImageIO.write(image, format, imagesDir.resolve(relativePath).toFile());
+    }
+
+}
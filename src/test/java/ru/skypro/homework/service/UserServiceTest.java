@@ -15,7 +15,9 @@ import org.springframework.security.core.context.SecurityContextHolder;
 import ru.skypro.homework.mapper.UserMapper;
 import ru.skypro.homework.model.dto.User;
 import ru.skypro.homework.model.entity.UserEntity;
+import ru.skypro.homework.model.projection.EntityVersion;
 import ru.skypro.homework.repository.UserRepository;
+import ru.skypro.homework.security.CustomUserDetailsManager;
 
 import java.util.Collection;
 import java.util.List;
@@ -35,6 +37,15 @@ class UserServiceTest {
     @Mock
     private UserMapper userMapper;
 
+    @Mock
+    private ExtendedAdCache extendedAdCache;
+
+    @Mock
+    private ImageMetadataResolver imageMetadataResolver;
+
+    @Mock
+    private CustomUserDetailsManager userDetailsManager;
+
     @InjectMocks
     private UserService userService;
 
@@ -64,6 +75,33 @@ class UserServiceTest {
         verify(userMapper).entityToDto(userEntity);
     }
 
+    @Test
+    void getCurrentUserETag_ShouldDependOnVersionOnly() {
+        // Given
+        String email = "test@example.com";
+        EntityVersion version = mock(EntityVersion.class);
+        EntityVersion nextVersion = mock(EntityVersion.class);
+        when(version.getId()).thenReturn(1);
+        when(version.getVersion()).thenReturn(3L);
+        when(nextVersion.getId()).thenReturn(1);
+        when(nextVersion.getVersion()).thenReturn(4L);
+
+        setupSecurityContextDirectly(email, "ROLE_USER");
+        when(userRepository.findVersionByEmail(email))
+                .thenReturn(Optional.of(version), Optional.of(version), Optional.of(nextVersion));
+
+        // When
+        String first = userService.getCurrentUserETag();
+        String same = userService.getCurrentUserETag();
+        String changed = userService.getCurrentUserETag();
+
+        // Then
+        assertEquals(first, same);
+        assertNotEquals(first, changed);
+        verify(userRepository, never()).findByEmail(any());
+        verifyNoInteractions(userMapper);
+    }
+
     @Test
     void getCurrentUser_WithNonExistingUser_ShouldThrowException() {
         // Given
@@ -251,6 +289,9 @@ class UserServiceTest {
         verify(userMapper).updateEntityFromDto(userDto, existingEntity);
         verify(userRepository).save(existingEntity);
         verify(userMapper).entityToDto(savedEntity);
+        verify(extendedAdCache).evictByAuthor(userId);
+        verify(userDetailsManager).evict("old@example.com");
+        verify(userDetailsManager).evict("updated@example.com");
     }
 
     @Test
@@ -269,6 +310,7 @@ class UserServiceTest {
         verify(userRepository).findById(userId);
         verify(userMapper, never()).updateEntityFromDto(any(), any());
         verify(userRepository, never()).save(any());
+        verify(extendedAdCache, never()).evictByAuthor(any());
     }
 
     @Test
@@ -0,0 +1,129 @@
+package ru.skypro.homework.storage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BlobPackTest {
+
+    private static final long SEGMENT_SIZE = 1024;
+
+    @TempDir
+    Path packDir;
+
+    private BlobPack pack;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        pack = new BlobPack(packDir, SEGMENT_SIZE);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        pack.close();
+    }
+
+    @Test
+    @DisplayName("put/read/delete - последняя версия объекта читается из сегмента, удаленный пропадает")
+    void putReadDelete() throws IOException {
+        // When
+        pack.put("users/a.jpg", bytes("first"), 1L);
+        pack.put("users/a.jpg", bytes("second"), 2L);
+        pack.put("users/b.jpg", bytes("other"), 3L);
+        boolean deleted = pack.delete("users/b.jpg");
+
+        // Then
+        assertThat(text(pack.read("users/a.jpg"))).isEqualTo("second");
+        assertThat(pack.stat("users/a.jpg")).isEqualTo(new StoredObject(6, 2L));
+        assertThat(deleted).isTrue();
+        assertThat(pack.read("users/b.jpg")).isNull();
+        assertThat(pack.delete("users/b.jpg")).isFalse();
+        assertThat(pack.segmentCount()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Открытие - каталог уже открыт другим писателем: ошибка; после закрытия открывается")
+    void open_SingleWriter() throws IOException {
+        // Given
+        pack.put("users/a.jpg", bytes("avatar"), 1L);
+
+        // When & Then
+        assertThrows(IllegalStateException.class, () -> new BlobPack(packDir, SEGMENT_SIZE));
+        pack.close();
+        pack = new BlobPack(packDir, SEGMENT_SIZE);
+        assertThat(text(pack.read("users/a.jpg"))).isEqualTo("avatar");
+    }
+
+    @Test
+    @DisplayName("Открытие заново - индекс восстанавливается из сегментов, надгробия учитываются, хвост отрезается")
+    void reopen_RecoversIndex() throws IOException {
+        // Given
+        pack.put("users/a.jpg", bytes("avatar"), 1L);
+        pack.put("users/b.jpg", bytes("deleted"), 2L);
+        pack.delete("users/b.jpg");
+        pack.close();
+        Path segment = packDir.resolve("pack-000001.dat");
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.allocate(10).putInt(0, BlobPack.MAGIC));
+        }
+
+        // When
+        pack = new BlobPack(packDir, SEGMENT_SIZE);
+        pack.put("users/c.jpg", bytes("after"), 3L);
+
+        // Then
+        assertThat(text(pack.read("users/a.jpg"))).isEqualTo("avatar");
+        assertThat(pack.read("users/b.jpg")).isNull();
+        assertThat(text(pack.read("users/c.jpg"))).isEqualTo("after");
+        assertThat(pack.objectCount()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("compact - сегмент с мусором переписывается, живые объекты и удаления переживают перезапуск")
+    void compact_ReclaimsGarbage() throws IOException {
+        // Given: первый сегмент заполнен перезаписанными объектами, второй - активный
+        pack.put("users/deleted.jpg", bytes("gone"), 1L);
+        for (int i = 0; pack.segmentCount() == 1; i++) {
+            pack.put("users/a.jpg", bytes("version " + i), i);
+        }
+        pack.put("users/keep.jpg", bytes("keep"), 2L);
+        pack.delete("users/deleted.jpg");
+        pack.put("users/first-live.jpg", bytes("x"), 3L);
+        long totalBefore = pack.totalBytes();
+
+        // When
+        int compacted = pack.compact(0.5);
+
+        // Then
+        assertThat(compacted).isEqualTo(1);
+        assertThat(pack.totalBytes()).isLessThan(totalBefore);
+        assertThat(packDir.resolve("pack-000001.dat")).doesNotExist();
+        assertThat(text(pack.read("users/a.jpg"))).startsWith("version ");
+        pack.close();
+        pack = new BlobPack(packDir, SEGMENT_SIZE);
+        assertThat(text(pack.read("users/keep.jpg"))).isEqualTo("keep");
+        assertThat(text(pack.read("users/a.jpg"))).startsWith("version ");
+        assertThat(pack.read("users/deleted.jpg")).isNull();
+    }
+
+    private static byte[] bytes(String content) {
+        return content.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static String text(ByteBuffer buffer) {
+        return StandardCharsets.US_ASCII.decode(buffer).toString();
+    }
+
+}
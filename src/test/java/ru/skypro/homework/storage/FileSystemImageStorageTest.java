@@ -0,0 +1,98 @@
+package ru.skypro.homework.storage;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class FileSystemImageStorageTest {
+
+    private static final String CONTENT = "0123456789";
+
+    @TempDir
+    Path imagesDir;
+
+    private FileSystemImageStorage storage;
+
+    @BeforeEach
+    void setUp() {
+        storage = new FileSystemImageStorage();
+        ReflectionTestUtils.setField(storage, "imagesPath", imagesDir.toString());
+    }
+
+    @Test
+    @DisplayName("put/get/stat/delete - объект пишется в файл под ключом, читается целиком и диапазоном")
+    void putGetStatDelete() throws IOException {
+        // When
+        storage.put("blobs/ab/cd/abcd.jpg", stream(CONTENT), CONTENT.length(), "image/jpeg");
+
+        // Then
+        assertThat(Files.readString(imagesDir.resolve("blobs/ab/cd/abcd.jpg"))).isEqualTo(CONTENT);
+        assertThat(read(storage.get("blobs/ab/cd/abcd.jpg"))).isEqualTo(CONTENT);
+        assertThat(read(storage.get("blobs/ab/cd/abcd.jpg", 3, 4))).isEqualTo("3456");
+        assertThat(storage.stat("blobs/ab/cd/abcd.jpg").getLength()).isEqualTo(CONTENT.length());
+        assertThat(storage.localPath("blobs/ab/cd/abcd.jpg")).isEqualTo(imagesDir.resolve("blobs/ab/cd/abcd.jpg"));
+        try (var files = Files.list(imagesDir.resolve("blobs/ab/cd"))) {
+            assertThat(files).hasSize(1);
+        }
+
+        storage.delete("blobs/ab/cd/abcd.jpg");
+        assertThat(storage.exists("blobs/ab/cd/abcd.jpg")).isFalse();
+        assertThat(storage.stat("blobs/ab/cd/abcd.jpg")).isNull();
+        assertThrows(NoSuchFileException.class, () -> storage.get("blobs/ab/cd/abcd.jpg"));
+    }
+
+    @Test
+    @DisplayName("put - поток короче заявленной длины: объект не появляется, временный файл удаляется")
+    void put_ShortStream() throws IOException {
+        // When & Then
+        assertThrows(IOException.class, () -> storage.put("ads/ad_1.jpg", stream(CONTENT), 20, "image/jpeg"));
+        assertThat(storage.exists("ads/ad_1.jpg")).isFalse();
+        try (var files = Files.list(imagesDir.resolve("ads"))) {
+            assertThat(files).isEmpty();
+        }
+    }
+
+    @Test
+    @DisplayName("putFile - файл переносится в хранилище")
+    void putFile_MovesFile() throws IOException {
+        // Given
+        Path upload = Files.writeString(imagesDir.resolve("upload.tmp"), CONTENT);
+
+        // When
+        storage.putFile("ads/ad_1.jpg", upload, "image/jpeg");
+
+        // Then
+        assertThat(upload).doesNotExist();
+        assertThat(read(storage.get("ads/ad_1.jpg"))).isEqualTo(CONTENT);
+    }
+
+    @Test
+    @DisplayName("Ключ с выходом из каталога хранилища отклоняется")
+    void rejectsKeyOutsideStorage() {
+        assertThrows(IllegalArgumentException.class, () -> storage.get("../secret.txt"));
+    }
+
+    private static InputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static String read(InputStream in) throws IOException {
+        try (in) {
+            return new String(in.readAllBytes(), StandardCharsets.US_ASCII);
+        }
+    }
+
+}
@@ -0,0 +1,96 @@
+package ru.skypro.homework.storage;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PackedImageStorageTest {
+
+    private static final String SMALL = "0123456789";
+    private static final String LARGE = "0123456789abcdef0123456789abcdef";
+
+    @TempDir
+    Path tempDir;
+
+    private Path imagesDir;
+    private PackedImageStorage storage;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        imagesDir = tempDir.resolve("images");
+        storage = new PackedImageStorage(new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(storage, "imagesPath", imagesDir.toString());
+        ReflectionTestUtils.setField(storage, "packPath", tempDir.resolve("packs").toString());
+        ReflectionTestUtils.setField(storage, "maxObjectSize", DataSize.ofBytes(16));
+        ReflectionTestUtils.setField(storage, "segmentSize", DataSize.ofKilobytes(128));
+        ReflectionTestUtils.setField(storage, "garbageRatio", 0.5);
+        storage.init();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        storage.close();
+    }
+
+    @Test
+    @DisplayName("Мелкий объект упаковывается в сегмент: файла нет, чтение целиком и диапазоном из памяти")
+    void smallObject_Packed() throws IOException {
+        // When
+        storage.put("users/avatar.jpg", stream(SMALL), SMALL.length(), "image/jpeg");
+
+        // Then
+        assertThat(imagesDir.resolve("users/avatar.jpg")).doesNotExist();
+        assertThat(storage.localPath("users/avatar.jpg")).isNull();
+        assertThat(read(storage.get("users/avatar.jpg"))).isEqualTo(SMALL);
+        assertThat(read(storage.get("users/avatar.jpg", 3, 4))).isEqualTo("3456");
+        assertThat(storage.stat("users/avatar.jpg").getLength()).isEqualTo(SMALL.length());
+
+        storage.delete("users/avatar.jpg");
+        assertThat(storage.exists("users/avatar.jpg")).isFalse();
+        assertThrows(NoSuchFileException.class, () -> storage.get("users/avatar.jpg"));
+    }
+
+    @Test
+    @DisplayName("Крупный объект ложится файлом и заменяет упакованную версию того же ключа")
+    void largeObject_StoredAsFile() throws IOException {
+        // Given
+        storage.put("ads/ad_1.jpg", stream(SMALL), SMALL.length(), "image/jpeg");
+        Path upload = Files.writeString(tempDir.resolve("upload.tmp"), LARGE);
+
+        // When
+        storage.putFile("ads/ad_1.jpg", upload, "image/jpeg");
+
+        // Then
+        assertThat(storage.localPath("ads/ad_1.jpg")).isEqualTo(imagesDir.resolve("ads/ad_1.jpg"));
+        assertThat(Files.readString(imagesDir.resolve("ads/ad_1.jpg"))).isEqualTo(LARGE);
+        assertThat(read(storage.get("ads/ad_1.jpg"))).isEqualTo(LARGE);
+        assertThat(storage.stat("ads/ad_1.jpg").getLength()).isEqualTo(LARGE.length());
+    }
+
+    private static InputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static String read(InputStream in) throws IOException {
+        try (in) {
+            return new String(in.readAllBytes(), StandardCharsets.US_ASCII);
+        }
+    }
+
+}
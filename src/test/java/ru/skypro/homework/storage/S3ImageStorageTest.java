@@ -0,0 +1,406 @@
+package ru.skypro.homework.storage;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * S3ImageStorage против локальной заглушки в духе MinIO: HTTP-сервер в тесте хранит объекты
+ * в памяти, понимает PUT/GET (с Range)/HEAD/DELETE path-style и проверяет ключ в подписи SigV4.
+ * Multipart, отмена загрузки и перевод ошибок SDK проверяются на мок-клиенте.
+ */
+class S3ImageStorageTest {
+
+    private static final String BUCKET = "images";
+    private static final String ACCESS_KEY = "minio";
+    private static final String SECRET_KEY = "minio-secret";
+    private static final String REGION = "us-east-1";
+    private static final String CONTENT = "0123456789abcdef";
+    private static final Pattern AUTHORIZATION = Pattern.compile(
+            "AWS4-HMAC-SHA256 Credential=([^/]+)/(\\d{8})/([^/]+)/s3/aws4_request, "
+                    + "SignedHeaders=([^,]+), Signature=([0-9a-f]{64})");
+    private static final Pattern CHUNK_HEADER = Pattern.compile("([0-9a-fA-F]+)(;[^\r\n]*)?");
+
+    private final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+    private final List<String> contentTypes = new CopyOnWriteArrayList<>();
+    private final List<String> securityTokens = new CopyOnWriteArrayList<>();
+
+    private HttpServer server;
+    private S3ImageStorage storage;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+
+        storage = new S3ImageStorage();
+        ReflectionTestUtils.setField(storage, "endpoint", "http://127.0.0.1:" + server.getAddress().getPort() + "/");
+        ReflectionTestUtils.setField(storage, "region", REGION);
+        ReflectionTestUtils.setField(storage, "bucket", BUCKET);
+        ReflectionTestUtils.setField(storage, "accessKey", ACCESS_KEY);
+        ReflectionTestUtils.setField(storage, "secretKey", SECRET_KEY);
+        ReflectionTestUtils.setField(storage, "sessionToken", "");
+        ReflectionTestUtils.setField(storage, "timeout", Duration.ofSeconds(5));
+        ReflectionTestUtils.setField(storage, "maxRetries", 0);
+        ReflectionTestUtils.setField(storage, "maxConnections", 5);
+        ReflectionTestUtils.setField(storage, "multipartThreshold", DataSize.ofMegabytes(16));
+        ReflectionTestUtils.setField(storage, "multipartPartSize", DataSize.ofMegabytes(8));
+        storage.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        storage.close();
+        server.stop(0);
+    }
+
+    @Test
+    @DisplayName("put/get/stat/delete - объект загружается подписанным PUT, читается целиком и диапазоном")
+    void putGetStatDelete() throws IOException {
+        // When
+        storage.put("blobs/ab/cd/abcd.jpg", stream(CONTENT), CONTENT.length(), "image/jpeg");
+
+        // Then
+        assertThat(objects).containsOnlyKeys("blobs/ab/cd/abcd.jpg");
+        assertThat(contentTypes).containsExactly("image/jpeg");
+        assertThat(read(storage.get("blobs/ab/cd/abcd.jpg"))).isEqualTo(CONTENT);
+        assertThat(read(storage.get("blobs/ab/cd/abcd.jpg", 10, 6))).isEqualTo("abcdef");
+        StoredObject stored = storage.stat("blobs/ab/cd/abcd.jpg");
+        assertThat(stored.getLength()).isEqualTo(CONTENT.length());
+        assertThat(stored.getLastModified()).isPositive();
+        assertThat(storage.localPath("blobs/ab/cd/abcd.jpg")).isNull();
+
+        storage.delete("blobs/ab/cd/abcd.jpg");
+        assertThat(objects).isEmpty();
+        assertThat(storage.exists("blobs/ab/cd/abcd.jpg")).isFalse();
+        assertThrows(NoSuchFileException.class, () -> storage.get("blobs/ab/cd/abcd.jpg"));
+    }
+
+    @Test
+    @DisplayName("putFile - файл загружается в бакет, сам файл не трогается")
+    void putFile_UploadsFile() throws IOException {
+        // Given
+        Path upload = Files.writeString(tempDir.resolve("upload.tmp"), CONTENT);
+
+        // When
+        storage.putFile("ads/ad_1.png", upload, "image/png");
+
+        // Then
+        assertThat(new String(objects.get("ads/ad_1.png"), StandardCharsets.US_ASCII)).isEqualTo(CONTENT);
+        assertThat(upload).exists();
+    }
+
+    @Test
+    @DisplayName("session-token - временные учетные данные, токен уходит в X-Amz-Security-Token")
+    void sessionToken_IsSent() throws IOException {
+        // Given
+        storage.close();
+        ReflectionTestUtils.setField(storage, "sessionToken", "session-token");
+        storage.init();
+
+        // When
+        storage.put("ads/ad_1.jpg", stream(CONTENT), CONTENT.length(), "image/jpeg");
+
+        // Then
+        assertThat(securityTokens).containsExactly("session-token");
+    }
+
+    @Test
+    @DisplayName("Неверный секретный ключ - хранилище отвечает 403, ошибка доходит до вызывающего")
+    void wrongSecret_Fails() {
+        // Given
+        storage.close();
+        ReflectionTestUtils.setField(storage, "secretKey", "wrong");
+        storage.init();
+
+        // When & Then
+        assertThrows(IOException.class,
+                () -> storage.put("ads/ad_1.jpg", stream(CONTENT), CONTENT.length(), "image/jpeg"));
+        assertThat(objects).isEmpty();
+    }
+
+    @Test
+    @DisplayName("put - объект от multipart-threshold грузится частями и собирается completeMultipartUpload")
+    void put_LargeObjectUploadsInParts() throws IOException {
+        // Given
+        S3Client s3Client = multipartClient();
+        List<String> parts = new CopyOnWriteArrayList<>();
+        doAnswer(invocation -> {
+            RequestBody body = invocation.getArgument(1);
+            try (InputStream in = body.contentStreamProvider().newStream()) {
+                parts.add(new String(in.readAllBytes(), StandardCharsets.US_ASCII));
+            }
+            return UploadPartResponse.builder().eTag("etag-" + parts.size()).build();
+        }).when(s3Client).uploadPart(any(UploadPartRequest.class), any(RequestBody.class));
+
+        // When
+        storage.put("ads/ad_1.jpg", stream(CONTENT), CONTENT.length(), "image/jpeg");
+
+        // Then
+        assertThat(parts).containsExactly("012345", "6789ab", "cdef");
+        ArgumentCaptor<CompleteMultipartUploadRequest> complete = ArgumentCaptor.forClass(CompleteMultipartUploadRequest.class);
+        verify(s3Client).completeMultipartUpload(complete.capture());
+        assertThat(complete.getValue().uploadId()).isEqualTo("upload-1");
+        assertThat(complete.getValue().multipartUpload().parts())
+                .extracting(CompletedPart::partNumber, CompletedPart::eTag)
+                .containsExactly(tuple(1, "etag-1"), tuple(2, "etag-2"), tuple(3, "etag-3"));
+        verify(s3Client, never()).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+    }
+
+    @Test
+    @DisplayName("put - сбой части отменяет multipart-загрузку, ошибка доходит как IOException")
+    void put_PartFailureAbortsUpload() {
+        // Given
+        S3Client s3Client = multipartClient();
+        doThrow(SdkClientException.create("connection reset"))
+                .when(s3Client).uploadPart(any(UploadPartRequest.class), any(RequestBody.class));
+
+        // When & Then
+        assertThrows(IOException.class,
+                () -> storage.put("ads/ad_1.jpg", stream(CONTENT), CONTENT.length(), "image/jpeg"));
+        ArgumentCaptor<AbortMultipartUploadRequest> abort = ArgumentCaptor.forClass(AbortMultipartUploadRequest.class);
+        verify(s3Client).abortMultipartUpload(abort.capture());
+        assertThat(abort.getValue().uploadId()).isEqualTo("upload-1");
+        verify(s3Client, never()).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+    }
+
+    /**
+     * Мок-клиент вместо HTTP: порог и часть в несколько байт, чтобы CONTENT ушел тремя частями
+     */
+    private S3Client multipartClient() {
+        S3Client s3Client = mock(S3Client.class, withSettings().defaultAnswer(CALLS_REAL_METHODS));
+        doReturn(CreateMultipartUploadResponse.builder().uploadId("upload-1").build())
+                .when(s3Client).createMultipartUpload(any(CreateMultipartUploadRequest.class));
+        doReturn(CompleteMultipartUploadResponse.builder().build())
+                .when(s3Client).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+        doReturn(AbortMultipartUploadResponse.builder().build())
+                .when(s3Client).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+        storage.close();
+        ReflectionTestUtils.setField(storage, "s3Client", s3Client);
+        ReflectionTestUtils.setField(storage, "multipartThreshold", DataSize.ofBytes(10));
+        ReflectionTestUtils.setField(storage, "multipartPartSize", DataSize.ofBytes(6));
+        return s3Client;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getRawPath();
+            byte[] body = exchange.getRequestBody().readAllBytes();
+            if (!verifySignature(exchange)) {
+                exchange.sendResponseHeaders(403, -1);
+                return;
+            }
+            String prefix = "/" + BUCKET + "/";
+            if (!path.startsWith(prefix)) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            String key = path.substring(prefix.length());
+            switch (exchange.getRequestMethod()) {
+                case "PUT":
+                    objects.put(key, decodeAwsChunked(exchange, body));
+                    contentTypes.add(exchange.getRequestHeaders().getFirst("Content-Type"));
+                    String token = exchange.getRequestHeaders().getFirst("X-Amz-Security-Token");
+                    if (token != null) {
+                        securityTokens.add(token);
+                    }
+                    exchange.sendResponseHeaders(200, -1);
+                    break;
+                case "DELETE":
+                    objects.remove(key);
+                    exchange.sendResponseHeaders(204, -1);
+                    break;
+                case "HEAD":
+                case "GET":
+                    serve(exchange, objects.get(key));
+                    break;
+                default:
+                    exchange.sendResponseHeaders(405, -1);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void serve(HttpExchange exchange, byte[] object) throws IOException {
+        if (object == null) {
+            exchange.sendResponseHeaders(404, -1);
+            return;
+        }
+        exchange.getResponseHeaders().set("Last-Modified", "Tue, 14 Nov 2023 22:13:20 GMT");
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            exchange.getResponseHeaders().set("Content-Length", String.valueOf(object.length));
+            exchange.sendResponseHeaders(200, -1);
+            return;
+        }
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        int status = 200;
+        byte[] content = object;
+        if (range != null) {
+            String[] bounds = range.substring("bytes=".length()).split("-");
+            content = Arrays.copyOfRange(object, Integer.parseInt(bounds[0]), Integer.parseInt(bounds[1]) + 1);
+            status = 206;
+        }
+        exchange.sendResponseHeaders(status, content.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(content);
+        }
+    }
+
+    /**
+     * Без TLS SDK подписывает тело по кускам (aws-chunked): "размер;chunk-signature=...\\r\\nданные\\r\\n"
+     */
+    private static byte[] decodeAwsChunked(HttpExchange exchange, byte[] body) {
+        String payload = exchange.getRequestHeaders().getFirst("x-amz-content-sha256");
+        if (payload == null || !payload.startsWith("STREAMING-")) {
+            return body;
+        }
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+        int position = 0;
+        while (position < body.length) {
+            int lineEnd = indexOfCrlf(body, position);
+            Matcher header = CHUNK_HEADER.matcher(new String(body, position, lineEnd - position, StandardCharsets.US_ASCII));
+            if (!header.matches()) {
+                throw new IllegalStateException("Malformed aws-chunked body");
+            }
+            int size = Integer.parseInt(header.group(1), 16);
+            if (size == 0) {
+                break;
+            }
+            decoded.write(body, lineEnd + 2, size);
+            position = lineEnd + 2 + size + 2;
+        }
+        return decoded.toByteArray();
+    }
+
+    private static int indexOfCrlf(byte[] bytes, int from) {
+        for (int i = from; i < bytes.length - 1; i++) {
+            if (bytes[i] == '\r' && bytes[i + 1] == '\n') {
+                return i;
+            }
+        }
+        return bytes.length;
+    }
+
+    /**
+     * Подпись пересчитывается по тому, что пришло по сети, - так же, как это делает S3
+     */
+    private static boolean verifySignature(HttpExchange exchange) {
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        Matcher matcher = authorization != null ? AUTHORIZATION.matcher(authorization) : null;
+        if (matcher == null || !matcher.matches() || !ACCESS_KEY.equals(matcher.group(1))) {
+            return false;
+        }
+        String date = matcher.group(2);
+        String signedHeaders = matcher.group(4);
+        StringBuilder canonicalHeaders = new StringBuilder();
+        for (String header : signedHeaders.split(";")) {
+            canonicalHeaders.append(header).append(':')
+                    .append(exchange.getRequestHeaders().getFirst(header).trim()).append('\n');
+        }
+        String canonicalRequest = exchange.getRequestMethod() + "\n"
+                + exchange.getRequestURI().getRawPath() + "\n"
+                + "\n"
+                + canonicalHeaders + "\n"
+                + signedHeaders + "\n"
+                + exchange.getRequestHeaders().getFirst("x-amz-content-sha256");
+        String scope = date + "/" + matcher.group(3) + "/s3/aws4_request";
+        String stringToSign = "AWS4-HMAC-SHA256\n" + exchange.getRequestHeaders().getFirst("x-amz-date") + "\n"
+                + scope + "\n" + hex(sha256(canonicalRequest));
+        byte[] key = hmac(("AWS4" + SECRET_KEY).getBytes(StandardCharsets.UTF_8), date);
+        key = hmac(key, matcher.group(3));
+        key = hmac(key, "s3");
+        key = hmac(key, "aws4_request");
+        return hex(hmac(key, stringToSign)).equals(matcher.group(5));
+    }
+
+    private static byte[] sha256(String value) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] hmac(byte[] key, String value) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(key, "HmacSHA256"));
+            return mac.doFinal(value.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private static InputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static String read(InputStream in) throws IOException {
+        try (in) {
+            return new String(in.readAllBytes(), StandardCharsets.US_ASCII);
+        }
+    }
+
+}